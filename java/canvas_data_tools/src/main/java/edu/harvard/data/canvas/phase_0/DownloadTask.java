@@ -1,6 +1,9 @@
 package edu.harvard.data.canvas.phase_0;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
 
 import org.apache.logging.log4j.LogManager;
@@ -15,6 +18,7 @@ import edu.harvard.data.canvas.data_api.ApiClient;
 import edu.harvard.data.canvas.data_api.DataArtifact;
 import edu.harvard.data.canvas.data_api.DataDump;
 import edu.harvard.data.canvas.data_api.DataFile;
+import edu.harvard.data.io.GzipFileSplitter;
 
 public class DownloadTask implements Callable<Void> {
   private static final Logger log = LogManager.getLogger();
@@ -52,11 +56,46 @@ public class DownloadTask implements Callable<Void> {
     final String filename = getArtifactFileName(artifact);
     final File downloadFile = new File(tempDir, filename);
     dataFile.download(downloadFile);
-    archiveFile(dump, artifact.getTableName(), downloadFile);
+    final List<File> parts = splitFile(downloadFile);
+    if (parts.size() > 1) {
+      for (final File part : parts) {
+        archiveFile(dump, artifact.getTableName(), part);
+      }
+      downloadFile.delete();
+    } else {
+      for (final File part : parts) {
+        part.delete();
+      }
+      archiveFile(dump, artifact.getTableName(), downloadFile);
+    }
 
     return null;
   }
 
+  // Canvas delivers some tables (requests in particular) as single gzip files
+  // of several gigabytes. Gzip can't be split, so each of those files would be
+  // read by a single map task in every later phase. If configured, split large
+  // files into parts before archiving them; each part becomes a separate file
+  // in the table's input directory. Most files are below the limit; they are
+  // checked without being recompressed, and archived as they are.
+  private List<File> splitFile(final File downloadFile) throws IOException {
+    final Long maxPartBytes = config.getPhase0MaxPartBytes();
+    if (maxPartBytes == null) {
+      return new ArrayList<File>();
+    }
+    final GzipFileSplitter splitter = new GzipFileSplitter(maxPartBytes);
+    if (splitter.fitsInOnePart(downloadFile)) {
+      return new ArrayList<File>();
+    }
+    final String name = downloadFile.getName();
+    final String prefix = name.substring(0, name.length() - ".gz".length());
+    final List<File> parts = splitter.split(downloadFile, new File(tempDir, prefix), prefix);
+    if (parts.size() > 1) {
+      log.info("Split " + downloadFile + " into " + parts.size() + " parts");
+    }
+    return parts;
+  }
+
   private String getArtifactFileName(final DataArtifact artifact) {
     return artifact.getTableName() + "-" + dumpId + "-" + String.format("%05d", index) + ".gz";
   }
@@ -145,6 +145,7 @@ public class DumpManager {
   public InputTableIndex getDumpIndex(final S3ObjectId dumpDir) {
     final InputTableIndex dataIndex = new InputTableIndex();
     log.info("Getting dump index for " + dumpDir);
+    aws.cacheListing(dumpDir);
     for (final S3ObjectId tableDir : aws.listDirectories(dumpDir)) {
       if (!tableDir.getKey().contains("/identity_map")) {
         if (!aws.isFile(AwsUtils.key(tableDir, "empty_file"))) {
@@ -78,6 +78,7 @@ public class Phase0PostVerifier implements Verifier {
 
   private long verifyDump(final S3ObjectId dumpObj) throws IOException, VerificationException {
     final Set<Future<Long>> futures = new HashSet<Future<Long>>();
+    aws.cacheListing(dumpObj);
     for (final S3ObjectId dir : aws.listDirectories(dumpObj)) {
       final String tableName = dir.getKey().substring(dir.getKey().lastIndexOf("/") + 1);
       // XXX Previous versions of the archiving code stored the identity map
@@ -1,92 +0,0 @@
-package edu.harvard.data.canvas.phase_1;
-
-import java.io.IOException;
-import java.net.URI;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
-
-import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.Path;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-
-import edu.harvard.data.DataConfigurationException;
-import edu.harvard.data.HadoopUtilities;
-import edu.harvard.data.TableFormat;
-import edu.harvard.data.VerificationException;
-import edu.harvard.data.Verifier;
-import edu.harvard.data.identity.IdentifierType;
-import edu.harvard.data.identity.IdentityMap;
-import edu.harvard.data.io.HdfsTableReader;
-
-/**
- * Verification class that checks the integrity of the identity map after the
- * Hadoop identity jobs have completed. This class reads the identity map that
- * was cached before the identity jobs started and checks it against the
- * identity map generated by the Hadoop jobs to ensure that no research UUIDs
- * have changed during the identity scrub process.
- */
-public class PostVerifyIdentityMap implements Verifier {
-  private static final Logger log = LogManager.getLogger();
-  private final String originalDir;
-  private final String updatedDir;
-  private final URI hdfsService;
-  private final Configuration hadoopConfig;
-  private final TableFormat format;
-  private final HadoopUtilities hadoopUtils;
-
-  public PostVerifyIdentityMap(final Configuration hadoopConfig, final URI hdfsService,
-      final String originalDir, final String updatedDir, final TableFormat format) {
-    this.hadoopConfig = hadoopConfig;
-    this.hdfsService = hdfsService;
-    this.originalDir = originalDir;
-    this.updatedDir = updatedDir;
-    this.format = format;
-    this.hadoopUtils = new HadoopUtilities();
-  }
-
-  @Override
-  public void verify() throws VerificationException, IOException, DataConfigurationException {
-    log.info(
-        "Verifying identity map. Original dir: " + originalDir + ", updated dir: " + updatedDir);
-    final Map<Long, String> originalIds = readIdMap(originalDir);
-    final Map<Long, String> updatedIds = readIdMap(updatedDir);
-
-    for (final Entry<Long, String> entry : originalIds.entrySet()) {
-      // Not every original ID will necessarily be in the updated map; the
-      // updated map is generated based on the tables used during this run of
-      // the pipeline; if a user is not referenced in those tables they won't be
-      // in the updated map. The identity map is stored back to Redshift as an
-      // update operation, so any users that aren't in the updated map will be
-      // unaffected in the database.
-      if (updatedIds.containsKey(entry.getKey())) {
-        final String updatedRid = updatedIds.get(entry.getKey());
-        if (!updatedRid.equals(entry.getValue())) {
-          throw new VerificationException("Canvas data ID " + entry.getKey() + " should map to "
-              + entry.getValue() + " but actually mapped to Research ID " + updatedRid + "");
-        }
-      }
-    }
-  }
-
-  private Map<Long, String> readIdMap(final String dir) throws IOException {
-    final FileSystem fs = FileSystem.get(hdfsService, hadoopConfig);
-    final Map<Long, String> ids = new HashMap<Long, String>();
-    for (final Path path : hadoopUtils.listFiles(hdfsService, dir)) {
-      try (HdfsTableReader<IdentityMap> in = new HdfsTableReader<IdentityMap>(IdentityMap.class,
-          format, fs, path)) {
-        log.info("Loading IDs from path " + path);
-        for (final IdentityMap id : in) {
-            if (id.get(IdentifierType.CanvasDataID) != null ) {
-        	    ids.put( (Long) id.get(IdentifierType.CanvasDataID),
-                         (String) id.get(IdentifierType.ResearchUUID) );
-            }
-        }
-      }
-    }
-    return ids;
-  }
-
-}
@@ -0,0 +1,55 @@
+package edu.harvard.data.canvas.phase_1;
+
+import java.io.IOException;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+
+import edu.harvard.data.HadoopUtilities;
+import edu.harvard.data.TableFormat;
+import edu.harvard.data.canvas.bindings.phase1.Phase1Requests;
+import edu.harvard.data.identity.JoinKey;
+import edu.harvard.data.identity.RecordIdentityVerifyJob;
+
+/**
+ * Request post-verification mapper. This class runs through all requests,
+ * outputting the research UUID found in each one keyed by the request ID.
+ *
+ * The {@link RecordIdentityVerifyJob} joins this output with the research UUIDs
+ * that we expect to see for the requests that were flagged as interesting by
+ * the {@link PreVerifyRequestsJob} mapper, and checks that the two match.
+ * Requests that weren't flagged are discarded by the job's reducer.
+ */
+class PostVerifyRequestMapper extends Mapper<Object, Text, JoinKey, Text> {
+
+  private final HadoopUtilities hadoopUtils;
+  private final JoinKey outKey;
+  private final Text outValue;
+  private TableFormat format;
+
+  public PostVerifyRequestMapper() {
+    this.hadoopUtils = new HadoopUtilities();
+    this.outKey = new JoinKey();
+    this.outValue = new Text();
+  }
+
+  @Override
+  protected void setup(final Context context) throws IOException, InterruptedException {
+    super.setup(context);
+    this.format = hadoopUtils.getFormat(context);
+  }
+
+  @Override
+  public void map(final Object key, final Text value, final Context context)
+      throws IOException, InterruptedException {
+    final CSVParser parser = CSVParser.parse(value.toString(), format.getCsvFormat());
+    for (final CSVRecord csvRecord : parser.getRecords()) {
+      final Phase1Requests request = new Phase1Requests(format, csvRecord);
+      outKey.set(request.getId(), RecordIdentityVerifyJob.ACTUAL);
+      outValue.set(String.valueOf(request.getUserIdResearchUuid()));
+      context.write(outKey, outValue);
+    }
+  }
+}
@@ -4,7 +4,6 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -27,6 +26,7 @@ import org.apache.hadoop.fs.Path;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import edu.harvard.data.RedshiftConnectionPool;
 import edu.harvard.data.TableFormat;
 import edu.harvard.data.canvas.CanvasDataConfig;
 import edu.harvard.data.canvas.bindings.phase0.Phase0Requests;
@@ -159,8 +159,7 @@ public class VerificationPeople {
     queryString = queryString.substring(0, queryString.length() - 2) + ");";
     log.info("Executing query \n" + queryString + "\n on " + url);
     try (
-        Connection connection = DriverManager.getConnection(url, config.getRedshiftUserName(),
-            config.getRedshiftPassword());
+        Connection connection = RedshiftConnectionPool.forConfig(config).getConnection();
         PreparedStatement statement = connection.prepareStatement(queryString);) {
       for (int i = 0; i < people.size(); i++) {
         statement.setLong(i + 1, people.get(i));
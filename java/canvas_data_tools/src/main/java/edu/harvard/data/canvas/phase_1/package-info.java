@@ -42,21 +42,22 @@
  *
  * <h2>Post-Verifier</h2>
  * <ol>
- * <li>Read the identity map that was stored on HDFS by the identity job. This
- * is the identity map that will ultimately be written back to Redshift.
- * <li>Iterate through the request data saved by the pre-verifier to replace
- * Canvas Data IDs with research UUIDs. We know that the set of requests is
- * small (since we only sampled a subset of the data in the pre-verifier), so we
- * can run this step inline rather than as a new Hadoop job. On modest AWS
- * hardware, this step runs in under a minute.
- * <li>Spawn a set of post-verification Hadoop jobs (currently
- * {@link edu.harvard.data.canvas.phase_1.PostVerifyRequestMapper}) and wait for
- * the result.
+ * <li>Join the identity map that was stored on HDFS by the identity job with
+ * the original identity map, checking that no existing research UUIDs have
+ * changed. The updated map is the one that will ultimately be written back to
+ * Redshift.
+ * <li>Join the request data saved by the pre-verifier with the updated identity
+ * map to replace Canvas Data IDs with research UUIDs.
+ * <li>Join the full set of requests from the dump with the output of the
+ * previous step (using {@link
+ * edu.harvard.data.canvas.phase_1.PostVerifyRequestMapper}) and check that the
+ * expected research UUIDs are found.
  * </ol>
  *
- * A post-verification Hadoop job reads in whatever saved state is required from
- * HDFS, and then iterates over the full set of records from the dump. It checks
- * each record to see if it was flagged as interesting by the pre-verifier, and
- * if so verifies that the expected research UUIDs are found.
+ * Each post-verification step is a reduce-side join (see
+ * {@link edu.harvard.data.identity.PostVerifyJob}), so none of the steps holds
+ * a full table in memory and every sampled record is verified, however large
+ * the dump. Failures are counted by the jobs and described in the
+ * <code>failures</code> directory under the verify directory.
  */
 package edu.harvard.data.canvas.phase_1;
@@ -3,10 +3,7 @@ package edu.harvard.data.canvasrest;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -17,6 +14,8 @@ import com.amazonaws.services.s3.model.S3ObjectSummary;
 import edu.harvard.data.AwsUtils;
 import edu.harvard.data.Phase0;
 import edu.harvard.data.ReturnStatus;
+import edu.harvard.data.VerificationException;
+import edu.harvard.data.io.StagedInputParser;
 import edu.harvard.data.pipeline.InputTableIndex;
 
 public class CanvasrestPhase0 extends Phase0 {
@@ -24,34 +23,29 @@ public class CanvasrestPhase0 extends Phase0 {
   private static final Logger log = LogManager.getLogger();
   private final CanvasrestDataConfig config;
   private final String runId;
-  private final ExecutorService exec;
 
+  // Files are parsed by a StagedInputParser, which sizes its own thread pools
+  // from the data config, so the executor is not used.
   public CanvasrestPhase0(final CanvasrestDataConfig config, final String runId,
       final ExecutorService exec) {
     this.config = config;
     this.runId = runId;
-    this.exec = exec;
   }
 
   @Override
-  protected ReturnStatus run() throws IOException, InterruptedException, ExecutionException {
+  protected ReturnStatus run() throws IOException, InterruptedException, VerificationException {
     log.info("Starting Canvasrest Phase0...");
     // Start
     final AwsUtils aws = new AwsUtils();
-    final InputTableIndex dataIndex = new InputTableIndex();
-    final List<Future<InputTableIndex>> jobs = new ArrayList<Future<InputTableIndex>>();
+    final S3ObjectId outputLocation = AwsUtils.key(config.getS3WorkingLocation(runId));
+    final List<InputParser> files = new ArrayList<InputParser>();
     for (final S3ObjectSummary obj : aws.listKeys(config.getDropboxBucket())) {
         if (obj.getKey().endsWith(".gz")) {
-            final S3ObjectId outputLocation = AwsUtils.key(config.getS3WorkingLocation(runId));
-            final CanvasrestSingleFileParser parser = new CanvasrestSingleFileParser(obj,
-            	outputLocation, config);
-            jobs.add(exec.submit(parser));
+            files.add(new InputParser(config, AwsUtils.key(obj), outputLocation));
             log.info("Queuing file " + obj.getBucketName() + "/" + obj.getKey());
         }
     }
-    for (final Future<InputTableIndex> job : jobs ) {
-       dataIndex.addAll(job.get());
-    }
+    final InputTableIndex dataIndex = new StagedInputParser(aws, config).parseFiles(files);
     dataIndex.setSchemaVersion("1.0");
     for (final String table : dataIndex.getTableNames()) {
        if ( table.equals("Syllabus") ) {
@@ -74,29 +68,3 @@ public class CanvasrestPhase0 extends Phase0 {
     // End
   }
 }
-
-class CanvasrestSingleFileParser implements Callable<InputTableIndex> {
-	  private static final Logger log = LogManager.getLogger();
-
-	  private final S3ObjectSummary inputObj;
-	  private final CanvasrestDataConfig config;
-	  private final S3ObjectId outputLocation;
-	  private final AwsUtils aws;
-
-	  public CanvasrestSingleFileParser(final S3ObjectSummary inputObj, final S3ObjectId outputLocation,
-	      final CanvasrestDataConfig config) {
-	    this.inputObj = inputObj;
-	    this.outputLocation = outputLocation;
-	    this.config = config;
-	    this.aws = new AwsUtils();
-	  }
-
-	  @Override
-	  public InputTableIndex call() throws Exception {
-	    log.info("Parsing file " + inputObj.getBucketName() + "/" + inputObj.getKey());
-	    final InputParser parser = new InputParser(config, aws, AwsUtils.key(inputObj), outputLocation);
-	    return parser.parseFile();
-	  }
-
-	}
-
@@ -1,11 +1,7 @@
 package edu.harvard.data.canvasrest;
 
 import java.sql.Timestamp;
-import java.text.ParseException;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
@@ -14,167 +10,43 @@ import org.apache.logging.log4j.Logger;
 import edu.harvard.data.DataTable;
 import edu.harvard.data.TableFormat;
 import edu.harvard.data.VerificationException;
-import edu.harvard.data.io.JsonDocumentParser;
+import edu.harvard.data.io.DataProductRegistry;
+import edu.harvard.data.io.SingleTableJsonDocumentParser;
 import edu.harvard.data.canvasrest.bindings.phase0.Phase0Syllabus;
 import edu.harvard.data.canvasrest.bindings.phase0.Phase0SyllabusBody;
-import edu.harvard.data.canvasrest.bindings.phase0.Phase0SyllabusLink;
-import edu.harvard.data.canvasrest.bindings.phase0.Phase0SyllabusNameLookup;
 import edu.harvard.data.canvasrest.bindings.phase0.Phase0SyllabusDelta;
 import edu.harvard.data.canvasrest.bindings.phase0.Phase0SyllabusFiles;
+import edu.harvard.data.canvasrest.bindings.phase0.Phase0SyllabusLink;
+import edu.harvard.data.canvasrest.bindings.phase0.Phase0SyllabusNameLookup;
 
-public class EventJsonDocumentParser implements JsonDocumentParser {
+public class EventJsonDocumentParser extends SingleTableJsonDocumentParser {
   private static final Logger log = LogManager.getLogger();
 
-  private final TableFormat format;
-  private final boolean verify;
-  private final String dataproduct;
+  // Each Canvas REST input file holds exactly one of these data products.
+  static final DataProductRegistry PRODUCTS = new DataProductRegistry()
+      .register("Syllabus", Phase0Syllabus.class)
+      .register("SyllabusBody", Phase0SyllabusBody.class)
+      .register("SyllabusLink", Phase0SyllabusLink.class)
+      .register("SyllabusNameLookup", Phase0SyllabusNameLookup.class)
+      .register("SyllabusDelta", Phase0SyllabusDelta.class)
+      .register("SyllabusFiles", Phase0SyllabusFiles.class);
 
   public EventJsonDocumentParser(final TableFormat format, final boolean verify, final String dataproduct) {
-    this.format = format;
-    this.verify = verify;
-    this.dataproduct = dataproduct;
+    super(format, dataproduct, PRODUCTS.getTableClass(dataproduct), verify);
   }
 
-  @SuppressWarnings("unchecked")
   @Override
-  public Map<String, List<? extends DataTable>> getDocuments(final Map<String, Object> values)
-      throws ParseException, VerificationException {
-    final Map<String, List<? extends DataTable>> tables = new HashMap<String, List<? extends DataTable>>();
-    // Start
-    // Syllabus
-    final Phase0Syllabus syllabus = new Phase0Syllabus(format, values);
-    final List<Phase0Syllabus> syllabi = new ArrayList<Phase0Syllabus>();
-    syllabi.add(syllabus);
-    tables.put("Syllabus", syllabi);
-
-    // SyllabusBody
-    final Phase0SyllabusBody syllabusbody = new Phase0SyllabusBody(format, values);
-    final List<Phase0SyllabusBody> syllabusbodys = new ArrayList<Phase0SyllabusBody>();
-    syllabusbodys.add(syllabusbody);
-    tables.put("SyllabusBody", syllabusbodys);
-
-    // SyllabusLink
-    final Phase0SyllabusLink syllink = new Phase0SyllabusLink(format, values);
-    final List<Phase0SyllabusLink> syllinks = new ArrayList<Phase0SyllabusLink>();
-    syllinks.add(syllink);
-    tables.put("SyllabusLink", syllinks);    
-    
-    // Syllabus Namelookup
-    final Phase0SyllabusNameLookup sylnamelookup = new Phase0SyllabusNameLookup(format, values);
-    final List<Phase0SyllabusNameLookup> sylnamelookups = new ArrayList<Phase0SyllabusNameLookup>();
-    sylnamelookups.add(sylnamelookup);
-    tables.put("SyllabusNameLookup", sylnamelookups);
-
-    // Syllabus Delta
-    final Phase0SyllabusDelta syllabusdelta = new Phase0SyllabusDelta(format, values);
-    final List<Phase0SyllabusDelta> syllabusdeltas = new ArrayList<Phase0SyllabusDelta>();
-    syllabusdeltas.add(syllabusdelta);
-    tables.put("SyllabusDelta", syllabusdeltas);    
-
-    // Syllabus Files
-    final Phase0SyllabusFiles syllabusfile = new Phase0SyllabusFiles(format, values);
-    final List<Phase0SyllabusFiles> syllabusfiles = new ArrayList<Phase0SyllabusFiles>();
-    syllabusfiles.add(syllabusfile);
-    tables.put("SyllabusFiles", syllabusfiles);     
-    
-    // Verification Step (optional)
-    if (verify) {
-    	verifyParser(values, tables);
+  protected void verify(final Map<String, Object> values, final DataTable record)
+      throws VerificationException {
+    final Map<String, Object> parsed = record.getFieldsAsMap();
+    try {
+      compareMaps(values, parsed);
+    } catch (final VerificationException e) {
+      log.error("Failed to verify JSON document. " + e.getMessage());
+      log.error("Original map: " + values);
+      log.error("Parsed map:   " + parsed);
+      throw e;
     }
-    return tables;
-  }
-
-  public void verifyParser(final Map<String, Object> values,
-      final Map<String, List<? extends DataTable>> tables) throws VerificationException {
-    // Start
-	final List<? extends DataTable> syllabi = tables.get("Syllabus");
-	final List<? extends DataTable> sylbody = tables.get("SyllabusBody");
-	final List<? extends DataTable> syllink = tables.get("SyllabusLink");
-	final List<? extends DataTable> sylnamelookup = tables.get("SyllabusNameLookup");
-	final List<? extends DataTable> syldelta = tables.get("SyllabusDelta");
-	final List<? extends DataTable> sylfiles = tables.get("SyllabusFiles");
-
-
-	final Map<String, Object> parsedSyllabi = syllabi.get(0).getFieldsAsMap();
-	final Map<String, Object> parsedSylbody = sylbody.get(0).getFieldsAsMap();
-	final Map<String, Object> parsedSyllink = syllink.get(0).getFieldsAsMap();
-	final Map<String, Object> parsedSylnamelookup = sylnamelookup.get(0).getFieldsAsMap();
-	final Map<String, Object> parsedSyldelta = syldelta.get(0).getFieldsAsMap();
-	final Map<String, Object> parsedSylfiles = sylfiles.get(0).getFieldsAsMap();
-
-	
-	// Syllabi
-	if (dataproduct.equals("Syllabus")) {
-		
-	    try {
-		    compareMaps(values, parsedSyllabi);
-	    } catch (final VerificationException e) {
-	        log.error("Failed to verify JSON document. " + e.getMessage());
-	        log.error("Original map: " + values);
-	        log.error("Parsed map:   " + parsedSyllabi);
-	        throw e;			
-	    }
-	}
-	// Syllabus Body
-	else if (dataproduct.equals("SyllabusBody")) {
-		
-		try {	
-			compareMaps(values, parsedSylbody);		
-		} catch (final VerificationException e) {
-		    log.error("Failed to verify JSON document. " + e.getMessage());
-		    log.error("Original map: " + values);
-		    log.error("Parsed map:   " + parsedSylbody);
-		    throw e;				
-		}
-	}
-	// SyllabusLink
-	else if (dataproduct.equals("SyllabusLink")) {
-		
-		try {
-			compareMaps(values, parsedSyllink);
-		} catch (final VerificationException e) {
-		    log.error("Failed to verify JSON document. " + e.getMessage());
-		    log.error("Original map: " + values);
-		    log.error("Parsed map:   " + parsedSyllink);
-		    throw e;
-		}
-	}
-	// Syllabus Name Lookup
-	else if (dataproduct.equals("SyllabusNameLookup")) {
-
-		try {
-			compareMaps(values, parsedSylnamelookup);
-		} catch (final VerificationException e) {
-		    log.error("Failed to verify JSON document. " + e.getMessage());
-		    log.error("Original map: " + values);
-		    log.error("Parsed map:   " + parsedSylnamelookup);
-		    throw e;			
-		}
-	}
-	// Syllabus Delta
-	else if (dataproduct.equals("SyllabusDelta")) {
-
-		try {
-			compareMaps(values, parsedSyldelta);
-		} catch (final VerificationException e) {
-		    log.error("Failed to verify JSON document. " + e.getMessage());
-		    log.error("Original map: " + values);
-		    log.error("Parsed map:   " + parsedSyldelta);
-		    throw e;			
-		}
-	}	
-	// Syllabus Files
-	else if (dataproduct.equals("SyllabusFiles")) {
-
-		try {
-			compareMaps(values, parsedSylfiles);
-		} catch (final VerificationException e) {
-		    log.error("Failed to verify JSON document. " + e.getMessage());
-		    log.error("Original map: " + values);
-		    log.error("Parsed map:   " + parsedSylfiles);
-		    throw e;			
-		}
-	}	
   }
 
   @SuppressWarnings("unchecked")
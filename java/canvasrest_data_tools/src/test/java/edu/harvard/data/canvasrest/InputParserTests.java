@@ -0,0 +1,105 @@
+package edu.harvard.data.canvasrest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.s3.model.S3ObjectId;
+
+import edu.harvard.data.AwsUtils;
+import edu.harvard.data.DataConfigurationException;
+import edu.harvard.data.DataTable;
+import edu.harvard.data.TableFormat;
+import edu.harvard.data.io.JsonFileReader;
+import edu.harvard.data.io.StagedOutputTable;
+import edu.harvard.data.io.TableWriter;
+
+// Parses a fixture for each Canvas REST data product and compares the result
+// with the output of the parser that built every data product for each
+// document. The .expected files in parser_fixtures were written by that parser.
+public class InputParserTests {
+
+  private static final String FIXTURES = "parser_fixtures/";
+  private static final S3ObjectId OUTPUT = AwsUtils.key("output", "phase_0");
+
+  private CanvasrestDataConfig config;
+  private File tempDir;
+
+  @Before
+  public void setup() throws IOException, DataConfigurationException {
+    final String properties = "main_identifier=HUID\npipeline_format=decompressed_internal\n"
+        + "fulltext_format=decompressed_internal\n";
+    config = new CanvasrestDataConfig(Collections.singletonList(
+        new ByteArrayInputStream(properties.getBytes(StandardCharsets.UTF_8))), false);
+    tempDir = Files.createTempDirectory("canvasrest_input_parser").toFile();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(tempDir);
+  }
+
+  @Test
+  public void everyProductMatchesPreviousParser() throws Exception {
+    assertFalse(EventJsonDocumentParser.PRODUCTS.getProducts().isEmpty());
+    for (final String product : EventJsonDocumentParser.PRODUCTS.getProducts()) {
+      assertEquals(product, read(product + ".expected"), parse(product));
+    }
+  }
+
+  private String parse(final String product) throws IOException {
+    final InputParser input = new InputParser(config,
+        AwsUtils.key("input", "PrepCanvasRest_" + product + ".json.gz"), OUTPUT);
+    final StagedOutputTable output = input.getOutputs().get(0);
+    assertEquals(product, output.getTableName());
+    final TableFormat inFormat = input.createInputFormat();
+    final File outFile = new File(tempDir, product + ".gz");
+    try (final JsonFileReader in = new JsonFileReader(inFormat, resource(product + ".json"),
+        input.createParser(inFormat))) {
+      write(in, product, output.getTableClass(), input.createOutputFormat(), outFile);
+    }
+    try (InputStream in = new GZIPInputStream(new FileInputStream(outFile))) {
+      return IOUtils.toString(in, StandardCharsets.UTF_8);
+    }
+  }
+
+  private <T extends DataTable> void write(final JsonFileReader in, final String product,
+      final Class<T> tableClass, final TableFormat format, final File outFile)
+          throws IOException {
+    try (final TableWriter<T> out = new TableWriter<T>(tableClass, format, outFile)) {
+      for (final Map<String, List<? extends DataTable>> tables : in) {
+        out.add(tableClass.cast(tables.get(product).get(0)));
+      }
+    }
+  }
+
+  private String read(final String name) throws IOException {
+    try (InputStream in = resource(name)) {
+      return IOUtils.toString(in, StandardCharsets.UTF_8);
+    }
+  }
+
+  private InputStream resource(final String name) {
+    final InputStream in = getClass().getClassLoader().getResourceAsStream(FIXTURES + name);
+    assertNotNull(name, in);
+    return in;
+  }
+}
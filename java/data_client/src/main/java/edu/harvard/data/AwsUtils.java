@@ -7,13 +7,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.zip.GZIPInputStream;
@@ -27,6 +27,7 @@ import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.model.CopyObjectRequest;
 import com.amazonaws.services.s3.model.DeleteObjectRequest;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
 import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
@@ -38,92 +39,199 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import edu.harvard.data.schema.redshift.RedshiftSchema;
 
 // TODO: Convert RuntimeExceptions to checked.
+//
+// Listing and existence queries normally go to S3 each time they are called.
+// Callers that make many queries under the same prefix (for example, checking
+// every table directory in a dump) can call cacheListing once to snapshot the
+// prefix; queries covered by a snapshot are then answered from memory. Writes
+// made through this object discard any snapshot that covers the written key.
+// Writes made through other AwsUtils instances or other processes are not
+// seen, so a snapshot should only be taken for the duration of a run over data
+// that isn't being changed elsewhere.
 public class AwsUtils {
 
   private static final Logger log = LogManager.getLogger();
 
-  private final AmazonS3Client client;
+  private final AmazonS3 client;
   private final ObjectMapper jsonMapper;
+  private final List<S3Listing> listings;
 
   public AwsUtils() {
-    this.client = new AmazonS3Client();
+    this(new AmazonS3Client());
+  }
+
+  public AwsUtils(final AmazonS3 client) {
+    this.client = client;
     this.jsonMapper = new ObjectMapper();
     this.jsonMapper.setDateFormat(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ"));
     this.jsonMapper.enable(SerializationFeature.INDENT_OUTPUT);
+    this.listings = new ArrayList<S3Listing>();
   }
 
   public AmazonS3 getClient() {
     return client;
   }
 
+  /**
+   * Snapshot every key under a directory, so that later calls to
+   * {@link #isFile}, {@link #keyExists}, {@link #getSize}, {@link #listKeys}
+   * and {@link #listDirectories} for keys within that directory can be
+   * answered without calling S3.
+   *
+   * @param dir
+   *          the directory to snapshot. Keys are listed under the prefix
+   *          {@code dir.getKey() + "/"}.
+   */
+  public void cacheListing(final S3ObjectId dir) {
+    final String prefix = dir.getKey() + "/";
+    if (getListing(dir.getBucket(), prefix) != null) {
+      return;
+    }
+    log.debug("Caching listing for " + dir);
+    final List<S3ObjectSummary> summaries = listSummaries(
+        new ListObjectsRequest().withBucketName(dir.getBucket()).withPrefix(prefix));
+    synchronized (listings) {
+      listings.add(new S3Listing(dir.getBucket(), prefix, summaries));
+    }
+  }
+
+  public void clearListingCache() {
+    synchronized (listings) {
+      listings.clear();
+    }
+  }
+
   public boolean isFile(final S3ObjectId obj) {
-    final ObjectListing objects = client.listObjects(obj.getBucket(), obj.getKey());
+    final S3Listing listing = getListing(obj.getBucket(), obj.getKey());
+    if (listing != null) {
+      return listing.countWithPrefix(obj.getKey(), 2) == 1;
+    }
+    // Only need to know whether there is more than one key with this prefix.
+    final ObjectListing objects = client.listObjects(new ListObjectsRequest()
+        .withBucketName(obj.getBucket()).withPrefix(obj.getKey()).withMaxKeys(2));
     final List<S3ObjectSummary> summaries = objects.getObjectSummaries();
     return summaries.size() == 1;
   }
 
+  public boolean keyExists(final S3ObjectId obj) {
+    final S3Listing listing = getListing(obj.getBucket(), obj.getKey());
+    if (listing != null) {
+      return listing.countWithPrefix(obj.getKey(), 1) > 0;
+    }
+    final ObjectListing objects = client.listObjects(new ListObjectsRequest()
+        .withBucketName(obj.getBucket()).withPrefix(obj.getKey()).withMaxKeys(1));
+    return !objects.getObjectSummaries().isEmpty();
+  }
+
+  /**
+   * @return the size in bytes of the object with exactly this key, or null if
+   *         there is no such object.
+   */
+  public Long getSize(final S3ObjectId obj) {
+    final S3Listing listing = getListing(obj.getBucket(), obj.getKey());
+    if (listing != null) {
+      final S3ObjectSummary summary = listing.get(obj.getKey());
+      return summary == null ? null : summary.getSize();
+    }
+    final ObjectListing objects = client.listObjects(new ListObjectsRequest()
+        .withBucketName(obj.getBucket()).withPrefix(obj.getKey()).withMaxKeys(1));
+    for (final S3ObjectSummary summary : objects.getObjectSummaries()) {
+      if (summary.getKey().equals(obj.getKey())) {
+        return summary.getSize();
+      }
+    }
+    return null;
+  }
+
   public List<S3ObjectSummary> listKeys(final S3ObjectId obj) {
     log.debug("Listing keys for " + obj);
-    final ObjectListing objects = client.listObjects(obj.getBucket(), obj.getKey());
-    return listSummaries(objects);
+    final S3Listing listing = getListing(obj.getBucket(), obj.getKey());
+    if (listing != null) {
+      return listing.withPrefix(obj.getKey());
+    }
+    return listSummaries(
+        new ListObjectsRequest().withBucketName(obj.getBucket()).withPrefix(obj.getKey()));
   }
 
   public List<S3ObjectSummary> listKeys(final String bucket) {
     log.debug("Listing keys for bucket " + bucket);
-    final ObjectListing objects = client.listObjects(bucket);
-    return listSummaries(objects);
+    return listSummaries(new ListObjectsRequest().withBucketName(bucket));
   }
 
-  private List<S3ObjectSummary> listSummaries(ObjectListing objects) {
+  private List<S3ObjectSummary> listSummaries(final ListObjectsRequest request) {
     final List<S3ObjectSummary> summaries = new ArrayList<S3ObjectSummary>();
-    do {
+    ObjectListing objects = client.listObjects(request);
+    while (true) {
       for (final S3ObjectSummary objectSummary : objects.getObjectSummaries()) {
         summaries.add(objectSummary);
         log.debug("  key: " + objectSummary.getKey());
       }
+      if (!objects.isTruncated()) {
+        return summaries;
+      }
       objects = client.listNextBatchOfObjects(objects);
-    } while (objects.isTruncated());
-    for (final S3ObjectSummary objectSummary : objects.getObjectSummaries()) {
-        summaries.add(objectSummary);
-        log.debug("  key: " + objectSummary.getKey());
     }
-    return summaries;
   }
 
   public Set<S3ObjectId> listDirectories(final S3ObjectId obj) {
     log.debug("Listing directories for " + obj);
-    final Set<String> keys = new HashSet<String>();
     final String prefix = obj.getKey() + "/";
-    ObjectListing objects = client.listObjects(obj.getBucket(), prefix);
-    do {
-      for (final S3ObjectSummary objectSummary : objects.getObjectSummaries()) {
-        final String subKey = objectSummary.getKey().substring(prefix.length());
-        final String[] keyParts = subKey.split("/");
-        if (keyParts.length >= 2) {
-          keys.add(keyParts[0]);
+    final S3Listing listing = getListing(obj.getBucket(), prefix);
+    if (listing != null) {
+      return listing.directories(obj);
+    }
+    // With a delimiter, S3 returns each subdirectory once as a common prefix
+    // rather than returning every key within it.
+    final Set<S3ObjectId> dirs = new HashSet<S3ObjectId>();
+    ObjectListing objects = client.listObjects(new ListObjectsRequest()
+        .withBucketName(obj.getBucket()).withPrefix(prefix).withDelimiter("/"));
+    while (true) {
+      for (final String commonPrefix : objects.getCommonPrefixes()) {
+        final String dir = commonPrefix.substring(prefix.length(), commonPrefix.length() - 1);
+        if (!dir.isEmpty()) {
+          dirs.add(key(obj, dir));
         }
       }
+      if (!objects.isTruncated()) {
+        return dirs;
+      }
       objects = client.listNextBatchOfObjects(objects);
-    } while (objects.isTruncated());
-    final Set<S3ObjectId> dirs = new HashSet<S3ObjectId>();
-    for (final String k : keys) {
-      dirs.add(key(obj, k));
     }
-    return dirs;
+  }
+
+  private S3Listing getListing(final String bucket, final String key) {
+    synchronized (listings) {
+      for (final S3Listing listing : listings) {
+        if (listing.covers(bucket, key)) {
+          return listing;
+        }
+      }
+    }
+    return null;
+  }
+
+  // Called before every write, so that a snapshot is never consulted after a
+  // change to the keys it covers.
+  private void invalidateListings(final S3ObjectId obj) {
+    synchronized (listings) {
+      final Iterator<S3Listing> it = listings.iterator();
+      while (it.hasNext()) {
+        if (it.next().covers(obj.getBucket(), obj.getKey())) {
+          it.remove();
+        }
+      }
+    }
   }
 
   public void rename(final S3ObjectId oldKey, final S3ObjectId newKey) {
     final CopyObjectRequest copyObjRequest = new CopyObjectRequest(oldKey.getBucket(),
         oldKey.getKey(), newKey.getBucket(), newKey.getKey());
+    invalidateListings(oldKey);
+    invalidateListings(newKey);
     client.copyObject(copyObjRequest);
     client.deleteObject(new DeleteObjectRequest(oldKey.getBucket(), oldKey.getKey()));
   }
 
-  public boolean keyExists(final S3ObjectId obj) {
-    final ObjectListing objects = client.listObjects(obj.getBucket(), obj.getKey());
-    return !objects.getObjectSummaries().isEmpty();
-  }
-
   public static String uri(final S3ObjectId obj) {
     return "s3://" + obj.getBucket() + "/" + obj.getKey();
   }
@@ -178,6 +286,7 @@ public class AwsUtils {
     final byte[] bytes = json.getBytes();
     final ObjectMetadata metadata = new ObjectMetadata();
     metadata.setContentLength(bytes.length);
+    invalidateListings(obj);
     client.putObject(obj.getBucket(), obj.getKey(), new ByteArrayInputStream(bytes), metadata);
   }
 
@@ -189,9 +298,10 @@ public class AwsUtils {
       throws IOException {
     log.debug("Downloading " + objId + " to " + file);
     file.getParentFile().mkdirs();
-    final InputStream in = getInputStream(objId, gunzip);
-    final OutputStream out = new FileOutputStream(file);
-    IOUtils.copy(in, out);
+    try (InputStream in = getInputStream(objId, gunzip);
+        OutputStream out = new FileOutputStream(file)) {
+      IOUtils.copy(in, out);
+    }
   }
 
   public InputStream getInputStream(final S3ObjectId objId, final boolean gunzip)
@@ -206,10 +316,12 @@ public class AwsUtils {
 
   public void putFile(final S3ObjectId objId, final File file) throws IOException {
     log.debug("Uploading " + file + " to " + objId);
+    invalidateListings(objId);
     client.putObject(objId.getBucket(), objId.getKey(), file);
   }
 
   public void deleteKey(final S3ObjectId key) {
+    invalidateListings(key);
     client.deleteObject(key.getBucket(), key.getKey());
   }
 
@@ -218,15 +330,19 @@ public class AwsUtils {
     final byte[] bytes = new byte[0];
     final ObjectMetadata metadata = new ObjectMetadata();
     metadata.setContentLength(bytes.length);
+    invalidateListings(obj);
     client.putObject(obj.getBucket(), obj.getKey(), new ByteArrayInputStream(bytes), metadata);
   }
 
   public RedshiftSchema getRedshiftSchema(final DataConfig config) throws SQLException {
+    return getRedshiftSchema(RedshiftConnectionPool.forConfig(config));
+  }
+
+  public RedshiftSchema getRedshiftSchema(final RedshiftConnectionPool pool)
+      throws SQLException {
     final String query = "SELECT * FROM information_schema.columns WHERE table_schema='public'";
-    final String url = config.getRedshiftUrl();
     try (
-        Connection connection = DriverManager.getConnection(url, config.getRedshiftUserName(),
-            config.getRedshiftPassword());
+        Connection connection = pool.getConnection();
         Statement st = connection.createStatement();
         ResultSet resultSet = st.executeQuery(query);) {
       return new RedshiftSchema(resultSet);
@@ -235,12 +351,7 @@ public class AwsUtils {
 
   public void executeRedshiftQuery(final String query, final DataConfig config)
       throws SQLException {
-    final String url = config.getRedshiftUrl();
-    log.info("Executing query \n" + query + "\n on " + url);
-    try (Connection connection = DriverManager.getConnection(url, config.getRedshiftUserName(),
-        config.getRedshiftPassword()); Statement st = connection.createStatement();) {
-      st.execute(query);
-    }
+    RedshiftConnectionPool.forConfig(config).execute(query);
   }
 
 }
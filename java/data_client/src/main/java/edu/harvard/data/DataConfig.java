@@ -9,12 +9,18 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 
 import com.amazonaws.services.s3.model.S3ObjectId;
 
 import edu.harvard.data.FormatLibrary.Format;
+import edu.harvard.data.generator.CodeGenerator;
+import edu.harvard.data.generator.GeneratorRunner;
 import edu.harvard.data.identity.IdentifierType;
+import edu.harvard.data.io.StagedInputParser;
+import edu.harvard.data.pipeline.S3ToHdfsCopyPlanner;
 
 /**
  * The DataConfig class is a central repository for all configuration settings
@@ -57,6 +63,10 @@ public class DataConfig {
   private final String leaseDynamoTable;
   private final String identityLease;
   private final Integer identityLeaseLengthSeconds;
+  private final Integer identityScrubMaxRunningJobs;
+  private final Integer redshiftMaxConnections;
+  private final Integer redshiftUnloadParallelism;
+  private final String unloadProgressDynamoTable;
 
   private final String logBucket;
   private final String codeBucket;
@@ -112,6 +122,11 @@ public class DataConfig {
   private final String phase0Ami;
   private final String phase0SecurityGroup;
   private final String phase0AvailabilityZoneGroup;
+  private final Integer phase0MaxPartMb;
+  private final Integer phase0FetchThreads;
+  private final Integer phase0ParseThreads;
+  private final Integer phase0UploadThreads;
+  private final Integer phase0FilesInProgress;
 
   private final String ec2GitDir;
   private final String ec2CodeDir;
@@ -124,6 +139,8 @@ public class DataConfig {
   private final String redshiftUnloadScript;
   private final String fullTextScriptFile;
   private final String s3ToHdfsManifestFile;
+  private final Integer s3ToHdfsCopyTasks;
+  private final Integer generatorThreads;
   private final String redshiftLoadScript;
   private final String redshiftStagingDir;
   private final String hdfsBase;
@@ -145,15 +162,19 @@ public class DataConfig {
     this.identityRedshiftLoadScript = "s3_to_redshift_identity_loader.sql";
     this.redshiftUnloadScript = "redshift_unload.sql";
     this.redshiftLoadScript = "s3_to_redshift_loader.sql";
-    this.s3ToHdfsManifestFile = "s3_to_hdfs_manifest.gz";
+    this.s3ToHdfsManifestFile = "s3_to_hdfs_manifest";
     this.fullTextScriptFile = "full_text_copy.sh";
     this.redshiftStagingDir = "redshift_staging";
     this.identityRedshiftSchema = "pii";
-    this.emrCodeDir = "/home/hadoop/code";
+    final String codeDir = getConfigParameter("emr_code_dir", false);
+    this.emrCodeDir = codeDir == null ? "/home/hadoop/code" : codeDir;
     this.emrLogDir = "/home/hadoop";
     this.fullTextDir = "/tmp/full_text";
-    this.hdfsBase = "/phase_";
-    this.hdfsVerifyBase = "/verify" + this.hdfsBase;
+    // The HDFS root is only overridden when running the pipeline locally, where
+    // a directory on the local file system stands in for HDFS.
+    final String hdfsRoot = getConfigParameter("hdfs_root", false);
+    this.hdfsBase = (hdfsRoot == null ? "" : hdfsRoot) + "/phase_";
+    this.hdfsVerifyBase = (hdfsRoot == null ? "" : hdfsRoot) + "/verify/phase_";
     this.ec2GitDir = "/home/ec2-user/harvard-data-tools";
     this.ec2CodeDir = "/home/ec2-user/code";
     this.phase0Class = Phase0.class.getCanonicalName();
@@ -187,6 +208,11 @@ public class DataConfig {
     this.redshiftDatabase = getConfigParameter("redshift_database", verify);
     this.redshiftUserName = getConfigParameter("redshift_user_name", verify);
     this.redshiftPassword = getConfigParameter("redshift_password", verify);
+    this.redshiftMaxConnections = getIntConfigParameter("redshift_max_connections", false);
+    this.redshiftUnloadParallelism = getIntConfigParameter("redshift_unload_parallelism", false);
+    this.s3ToHdfsCopyTasks = getIntConfigParameter("s3_to_hdfs_copy_tasks", false);
+    this.generatorThreads = getIntConfigParameter("generator_threads", false);
+    this.unloadProgressDynamoTable = getConfigParameter("unload_progress_dynamo_table", false);
     this.failureSnsArn = getConfigParameter("failure_sns_arn", verify);
     this.successSnsArn = getConfigParameter("success_sns_arn", verify);
     this.completionSnsArn = getConfigParameter("completion_sns_arn", verify);
@@ -207,6 +233,8 @@ public class DataConfig {
     this.identityLease = getConfigParameter("identity_lease", verify);
     this.identityLeaseLengthSeconds = getIntConfigParameter("identity_lease_length_seconds",
         verify);
+    this.identityScrubMaxRunningJobs = getIntConfigParameter(
+        "identity_scrub_max_running_jobs", false);
 
     this.emrMaximumRetries = getConfigParameter("emr_maximum_retries", verify);
     this.emrReleaseLabel = getConfigParameter("emr_release_label", verify);
@@ -231,6 +259,11 @@ public class DataConfig {
     this.phase0SecurityGroup = getConfigParameter("phase_0_security_group", verify);
     this.phase0AvailabilityZoneGroup = getConfigParameter("phase_0_availability_zone_group",
         verify);
+    this.phase0MaxPartMb = getIntConfigParameter("phase_0_max_part_mb", false);
+    this.phase0FetchThreads = getIntConfigParameter("phase_0_fetch_threads", false);
+    this.phase0ParseThreads = getIntConfigParameter("phase_0_parse_threads", false);
+    this.phase0UploadThreads = getIntConfigParameter("phase_0_upload_threads", false);
+    this.phase0FilesInProgress = getIntConfigParameter("phase_0_files_in_progress", false);
   }
 
   public static <T extends DataConfig> T parseInputFiles(final Class<T> cls,
@@ -327,10 +360,29 @@ public class DataConfig {
     return AwsUtils.key(getS3WorkingLocation(runId), "directoryList.json");
   }
 
+  public S3ObjectId getS3ToHdfsCopyPlanS3Location(final String runId) {
+    return AwsUtils.key(getS3WorkingLocation(runId), "s3ToHdfsCopyPlan.json");
+  }
+
   public S3ObjectId getMavenRepoCacheS3Location() {
     return AwsUtils.key(codeBucket, "maven_cache.tgz");
   }
 
+  public S3ObjectId getGeneratorCacheS3Location() {
+    return AwsUtils.key(codeBucket, "generator_cache", datasetName);
+  }
+
+  /**
+   * @return every setting read from the configuration files, keyed by name.
+   */
+  public Map<String, String> getSettings() {
+    final Map<String, String> settings = new TreeMap<String, String>();
+    for (final String key : properties.stringPropertyNames()) {
+      settings.put(key, properties.getProperty(key));
+    }
+    return settings;
+  }
+
   public String getHdfsDir(final int phase) {
     return hdfsBase + phase;
   }
@@ -547,8 +599,30 @@ public class DataConfig {
     return fullTextScriptFile;
   }
 
-  public String getS3ToHdfsManifestFile() {
-    return s3ToHdfsManifestFile;
+  /**
+   * @return the name of the s3-dist-cp manifest for one of the copy tasks
+   *         produced by an {@link S3ToHdfsCopyPlanner}.
+   */
+  public String getS3ToHdfsManifestFile(final int task) {
+    return s3ToHdfsManifestFile + "_" + task + ".gz";
+  }
+
+  public int getS3ToHdfsCopyTasks() {
+    if (s3ToHdfsCopyTasks == null) {
+      return S3ToHdfsCopyPlanner.DEFAULT_COPY_TASKS;
+    }
+    return s3ToHdfsCopyTasks;
+  }
+
+  /**
+   * @return the number of generators that {@link CodeGenerator} runs at once.
+   *         A value of one runs them one after another.
+   */
+  public int getGeneratorThreads() {
+    if (generatorThreads == null) {
+      return GeneratorRunner.DEFAULT_THREADS;
+    }
+    return generatorThreads;
   }
 
   public String getRedshiftStagingDir() {
@@ -595,6 +669,51 @@ public class DataConfig {
     return phase0AvailabilityZoneGroup;
   }
 
+  /**
+   * @return the largest number of uncompressed bytes to store in a single
+   *         gzipped file during Phase 0, or null if input files are archived
+   *         as they are. Larger files are split with a
+   *         {@link edu.harvard.data.io.GzipFileSplitter}.
+   */
+  public Long getPhase0MaxPartBytes() {
+    if (phase0MaxPartMb == null) {
+      return null;
+    }
+    return phase0MaxPartMb * 1024L * 1024L;
+  }
+
+  public int getPhase0FetchThreads() {
+    if (phase0FetchThreads == null) {
+      return StagedInputParser.DEFAULT_FETCH_THREADS;
+    }
+    return phase0FetchThreads;
+  }
+
+  /**
+   * @return the number of threads that parse JSON documents in a
+   *         {@link StagedInputParser}. Defaults to one per processor.
+   */
+  public int getPhase0ParseThreads() {
+    if (phase0ParseThreads == null) {
+      return Runtime.getRuntime().availableProcessors();
+    }
+    return phase0ParseThreads;
+  }
+
+  public int getPhase0UploadThreads() {
+    if (phase0UploadThreads == null) {
+      return StagedInputParser.DEFAULT_UPLOAD_THREADS;
+    }
+    return phase0UploadThreads;
+  }
+
+  public int getPhase0FilesInProgress() {
+    if (phase0FilesInProgress == null) {
+      return StagedInputParser.DEFAULT_FILES_IN_PROGRESS;
+    }
+    return phase0FilesInProgress;
+  }
+
   public String getEc2GitDir() {
     return ec2GitDir;
   }
@@ -643,6 +762,35 @@ public class DataConfig {
     return identityLeaseLengthSeconds;
   }
 
+  public int getIdentityScrubMaxRunningJobs() {
+    if (identityScrubMaxRunningJobs == null) {
+      return HadoopJobRunner.DEFAULT_MAX_RUNNING_JOBS;
+    }
+    return identityScrubMaxRunningJobs;
+  }
+
+  public int getRedshiftMaxConnections() {
+    if (redshiftMaxConnections == null) {
+      return RedshiftConnectionPool.DEFAULT_MAX_CONNECTIONS;
+    }
+    return redshiftMaxConnections;
+  }
+
+  public int getRedshiftUnloadParallelism() {
+    if (redshiftUnloadParallelism == null) {
+      return UnloadExistingTables.DEFAULT_PARALLELISM;
+    }
+    return redshiftUnloadParallelism;
+  }
+
+  /**
+   * @return the name of the DynamoDB table that records which Redshift tables
+   *         have been unloaded, or null if progress is not tracked.
+   */
+  public String getUnloadProgressDynamoTable() {
+    return unloadProgressDynamoTable;
+  }
+
   public FormatLibrary.Format getPipelineFormat() {
     return pipelineFormat;
   }
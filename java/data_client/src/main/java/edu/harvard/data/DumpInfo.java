@@ -2,23 +2,29 @@ package edu.harvard.data;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAttribute;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIgnore;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexRangeKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.TableNameOverride;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
-import com.amazonaws.services.dynamodbv2.datamodeling.PaginatedScanList;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
 import com.amazonaws.services.s3.model.S3ObjectId;
 
 @DynamoDBTable(tableName = "DummyTableName")
@@ -30,22 +36,47 @@ public class DumpInfo {
   private static String tableName;
   private static DynamoDBMapperConfig mapperConfig;
 
+  /**
+   * Name of the global secondary index that orders dumps by sequence number.
+   * The index is keyed on {@link #SEQUENCE_PARTITION}, which is the same for
+   * every dump, so that a single Query can return a range of sequence numbers.
+   * Dumps arrive at most a few times a day, so the single partition is never
+   * hot. The index definition is in the data pipeline CloudFormation template.
+   */
+  public static final String SEQUENCE_INDEX = "sequence-index";
+  public static final String SEQUENCE_PARTITION = "dumps";
+
+  // Item saved once every dump in the table has the sequence index key. It has
+  // no sequence, and so never appears in the index.
+  private static final String BACKFILL_MARKER_ID = "sequence-index-backfill";
+  private static boolean backfillComplete;
+
   public static void init(final String table) throws DataConfigurationException {
+    init(new AmazonDynamoDBClient(), table);
+  }
+
+  public static void init(final AmazonDynamoDB client, final String table)
+      throws DataConfigurationException {
     log.info("Initializing dump info table as " + table);
-    mapper = new DynamoDBMapper(new AmazonDynamoDBClient());
+    mapper = new DynamoDBMapper(client);
     if (table == null) {
       throw new DataConfigurationException("Dump Info table name can't be null");
     }
     tableName = table;
     mapperConfig = new DynamoDBMapperConfig(new TableNameOverride(tableName));
+    backfillComplete = false;
   }
 
   @DynamoDBHashKey(attributeName = "id")
   private String id;
 
-  @DynamoDBAttribute(attributeName = "sequence")
+  @DynamoDBIndexRangeKey(attributeName = "sequence", globalSecondaryIndexName = SEQUENCE_INDEX)
   private Long sequence;
 
+  @DynamoDBIndexHashKey(attributeName = "sequence_partition",
+      globalSecondaryIndexName = SEQUENCE_INDEX)
+  private String sequencePartition;
+
   @DynamoDBAttribute(attributeName = "downloaded")
   private boolean downloaded;
 
@@ -99,6 +130,14 @@ public class DumpInfo {
     this.sequence = sequence;
   }
 
+  public String getSequencePartition() {
+    return sequencePartition;
+  }
+
+  public void setSequencePartition(final String sequencePartition) {
+    this.sequencePartition = sequencePartition;
+  }
+
   public String getSchemaVersion() {
     return schemaVersion;
   }
@@ -163,24 +202,103 @@ public class DumpInfo {
     return mapper.load(DumpInfo.class, dumpId, mapperConfig);
   }
 
+  /**
+   * Find all dumps with a sequence number greater than or equal to
+   * {@code startSequence}, in sequence order. This queries the sequence index,
+   * so the read cost depends only on the number of dumps returned. Results are
+   * fetched a page at a time as the returned list is iterated.
+   * <P>
+   * The index projects the dump's location, schema version and status flags,
+   * but not the download start and end times; use {@link #find} to load a
+   * complete record. The returned objects must never be passed to
+   * {@link #save}: the mapper writes missing attributes as deletions, so saving
+   * a projected record would erase the download times.
+   * <P>
+   * If {@link #addMissingSequenceIndexKeys} has never completed on this table,
+   * it is run first and its scan is used to answer the request, so dumps saved
+   * before the index existed are never missed.
+   */
   public static List<DumpInfo> getAllDumpsSince(final long startSequence) {
     if (tableName == null) {
       throw new RuntimeException("DumpInfo.getAllDumpsSince called before init(tableName) method");
     }
-    final DynamoDBScanExpression scan = new DynamoDBScanExpression();
-    scan.setFilterExpression("#sequence >= :start");
-    scan.setExpressionAttributeNames(Collections.singletonMap("#sequence", "sequence"));
-    scan.setExpressionAttributeValues(
-        Collections.singletonMap(":start", new AttributeValue().withN("" + startSequence)));
+    if (!isBackfillComplete()) {
+      // Index updates are eventually consistent, so the items saved by the
+      // backfill may not be visible to a query yet.
+      final List<DumpInfo> all = new ArrayList<DumpInfo>();
+      backfill(all);
+      final List<DumpInfo> dumps = new ArrayList<DumpInfo>();
+      for (final DumpInfo info : all) {
+        if (info.getSequence() != null && info.getSequence() >= startSequence) {
+          dumps.add(info);
+        }
+      }
+      Collections.sort(dumps, new Comparator<DumpInfo>() {
+        @Override
+        public int compare(final DumpInfo d1, final DumpInfo d2) {
+          return d1.getSequence().compareTo(d2.getSequence());
+        }
+      });
+      return dumps;
+    }
+    final DumpInfo hashKey = new DumpInfo();
+    hashKey.setSequencePartition(SEQUENCE_PARTITION);
+    final Condition rangeCondition = new Condition()
+        .withComparisonOperator(ComparisonOperator.GE)
+        .withAttributeValueList(new AttributeValue().withN("" + startSequence));
+    // Global secondary indexes don't support consistent reads.
+    final DynamoDBQueryExpression<DumpInfo> query = new DynamoDBQueryExpression<DumpInfo>()
+        .withIndexName(SEQUENCE_INDEX).withConsistentRead(false).withHashKeyValues(hashKey)
+        .withRangeKeyCondition("sequence", rangeCondition);
     log.debug("Finding all dumps since " + startSequence + " from table " + tableName);
-    final PaginatedScanList<DumpInfo> results = mapper.scan(DumpInfo.class, scan, mapperConfig);
-    results.loadAllResults();
+    return mapper.query(DumpInfo.class, query, mapperConfig);
+  }
+
+  /**
+   * Add the sequence index key to any dumps that were saved before the index
+   * was created. Items without the key are not included in the index, and so
+   * are not returned by a query. This performs a full table scan, and only
+   * needs to run once when the index is added to an existing table; once it
+   * completes it saves a marker item so that {@link #getAllDumpsSince} can use
+   * the index from then on. {@code getAllDumpsSince} runs it automatically if
+   * the marker is missing.
+   *
+   * @return the number of dumps that were updated.
+   */
+  public static int addMissingSequenceIndexKeys() {
+    if (tableName == null) {
+      throw new RuntimeException(
+          "DumpInfo.addMissingSequenceIndexKeys called before init(tableName) method");
+    }
+    return backfill(new ArrayList<DumpInfo>());
+  }
 
-    final List<DumpInfo> dumps = new ArrayList<DumpInfo>();
-    for (final DumpInfo result : results) {
-      dumps.add(result);
+  // Scans the whole table, saving the index key on any dump that lacks it, and
+  // adds every dump to the list. The scan returns complete records, so saving
+  // them does not lose any attributes.
+  private static int backfill(final List<DumpInfo> dumps) {
+    int updated = 0;
+    for (final DumpInfo info : mapper.scan(DumpInfo.class, new DynamoDBScanExpression(),
+        mapperConfig)) {
+      if (!info.getId().equals(BACKFILL_MARKER_ID)) {
+        if (info.getSequencePartition() == null) {
+          info.save();
+          updated++;
+        }
+        dumps.add(info);
+      }
     }
-    return dumps;
+    log.info("Added sequence index keys to " + updated + " dumps in " + tableName);
+    mapper.save(new DumpInfo(BACKFILL_MARKER_ID), mapperConfig);
+    backfillComplete = true;
+    return updated;
+  }
+
+  private static boolean isBackfillComplete() {
+    if (!backfillComplete) {
+      backfillComplete = mapper.load(DumpInfo.class, BACKFILL_MARKER_ID, mapperConfig) != null;
+    }
+    return backfillComplete;
   }
 
   @DynamoDBIgnore
@@ -188,10 +306,19 @@ public class DumpInfo {
     return AwsUtils.key(bucket, key);
   }
 
+  /**
+   * Write this record to the table. Attributes that are null in this object
+   * are deleted from the stored item. Only save records returned by
+   * {@link #find} or created locally, never those returned by
+   * {@link #getAllDumpsSince}.
+   */
   public void save() {
     if (tableName == null) {
       throw new RuntimeException("DumpInfo object saved before init(tableName) method called");
     }
+    if (sequencePartition == null) {
+      sequencePartition = SEQUENCE_PARTITION;
+    }
     log.info("Saving dump info sequence " + sequence + " to table " + tableName);
     mapper.save(this, mapperConfig);
   }
@@ -40,17 +40,13 @@ public abstract class HadoopJob {
   public void runJob() throws IOException, DataConfigurationException {
     Job job;
     try {
-      job = getJob();
+      job = prepareJob();
     } catch (final NoInputDataException e) {
       // If there's no input data we don't run the job, but don't fail since we
       // may be running against a subset of the data.
       log.info(e.getMessage());
       return;
     }
-    for (final URI file : cacheFiles) {
-      job.addCacheFile(file);
-    }
-    job.setJarByClass(HadoopJob.class);
     try {
       log.info("Submitted job " + job.getJobName());
       //      job.submit();
@@ -63,6 +59,19 @@ public abstract class HadoopJob {
     }
   }
 
+  /**
+   * Create the job returned by {@link #getJob} and add any cache files, ready
+   * for submission.
+   */
+  public Job prepareJob() throws IOException, NoInputDataException {
+    final Job job = getJob();
+    for (final URI file : cacheFiles) {
+      job.addCacheFile(file);
+    }
+    job.setJarByClass(HadoopJob.class);
+    return job;
+  }
+
   public void addCacheFile(final URI file) {
     this.cacheFiles.add(file);
   }
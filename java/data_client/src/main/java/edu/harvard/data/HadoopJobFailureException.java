@@ -0,0 +1,13 @@
+package edu.harvard.data;
+
+import java.util.List;
+
+public class HadoopJobFailureException extends Exception {
+
+  private static final long serialVersionUID = 1L;
+
+  public HadoopJobFailureException(final List<String> failedJobs) {
+    super("Hadoop jobs failed: " + failedJobs);
+  }
+
+}
@@ -0,0 +1,131 @@
+package edu.harvard.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Submits a set of independent Hadoop jobs to the cluster and waits for all of
+ * them to finish. By default every job is submitted at once, and the resource
+ * manager schedules their tasks as capacity allows. A caller can instead limit
+ * the number of jobs in flight with {@code maxRunningJobs}; as each job
+ * completes the next queued job is submitted.
+ * <P>
+ * While the jobs run, the runner polls their status and logs the aggregated
+ * progress of the batch. A failed job does not stop the remaining jobs; once
+ * every job has finished, the names of all failed jobs are reported together.
+ * <P>
+ * This class is not thread-safe.
+ */
+public class HadoopJobRunner {
+  private static final Logger log = LogManager.getLogger();
+
+  public static final int DEFAULT_MAX_RUNNING_JOBS = Integer.MAX_VALUE;
+  public static final long DEFAULT_POLL_INTERVAL_MILLIS = 5000;
+
+  private final int maxRunningJobs;
+  private final long pollIntervalMillis;
+
+  public HadoopJobRunner(final int maxRunningJobs, final long pollIntervalMillis) {
+    if (maxRunningJobs < 1) {
+      throw new IllegalArgumentException("maxRunningJobs must be positive: " + maxRunningJobs);
+    }
+    this.maxRunningJobs = maxRunningJobs;
+    this.pollIntervalMillis = pollIntervalMillis;
+  }
+
+  public HadoopJobRunner(final int maxRunningJobs) {
+    this(maxRunningJobs, DEFAULT_POLL_INTERVAL_MILLIS);
+  }
+
+  /**
+   * Run a set of jobs to completion.
+   *
+   * @param jobs
+   *          the jobs to run. Jobs are submitted in list order. None of the
+   *          jobs should have been submitted already.
+   *
+   * @throws IOException
+   *           if an error occurs while submitting a job or querying its status.
+   *           Any running jobs are killed before the exception is thrown.
+   * @throws InterruptedException
+   *           if the thread is interrupted while waiting for jobs to finish.
+   *           Any running jobs are killed before the exception is thrown.
+   * @throws ClassNotFoundException
+   *           if a job's classes cannot be loaded at submission time. Any
+   *           running jobs are killed before the exception is thrown.
+   * @throws HadoopJobFailureException
+   *           if one or more jobs did not complete successfully.
+   */
+  public void run(final List<Job> jobs) throws IOException, InterruptedException,
+  ClassNotFoundException, HadoopJobFailureException {
+    final LinkedList<Job> queued = new LinkedList<Job>(jobs);
+    final List<Job> running = new ArrayList<Job>();
+    final List<String> failed = new ArrayList<String>();
+    int complete = 0;
+    try {
+      while (!queued.isEmpty() || !running.isEmpty()) {
+        while (running.size() < maxRunningJobs && !queued.isEmpty()) {
+          final Job job = queued.removeFirst();
+          job.submit();
+          running.add(job);
+          log.info("Submitted job " + job.getJobName() + " (" + running.size() + " running, "
+              + queued.size() + " queued)");
+        }
+        Thread.sleep(pollIntervalMillis);
+        final List<Job> finished = new ArrayList<Job>();
+        for (final Job job : running) {
+          if (job.isComplete()) {
+            finished.add(job);
+            complete++;
+            if (job.isSuccessful()) {
+              log.info("Job complete: " + job.getJobName());
+            } else {
+              log.error("Job failed: " + job.getJobName() + " (" + job.getStatus().getState()
+                  + ")");
+              failed.add(job.getJobName());
+            }
+          }
+        }
+        running.removeAll(finished);
+        logProgress(running, complete, jobs.size());
+      }
+    } catch (final InterruptedException | IOException | ClassNotFoundException e) {
+      killAll(running);
+      throw e;
+    }
+    if (!failed.isEmpty()) {
+      throw new HadoopJobFailureException(failed);
+    }
+  }
+
+  // Best effort, so that a failure to kill one job does not leave the others
+  // running or hide the original exception.
+  private void killAll(final List<Job> running) {
+    for (final Job job : running) {
+      log.warn("Killing job " + job.getJobName());
+      try {
+        job.killJob();
+      } catch (final IOException e) {
+        log.error("Failed to kill job " + job.getJobName(), e);
+      }
+    }
+  }
+
+  private void logProgress(final List<Job> running, final int complete, final int total)
+      throws IOException {
+    final StringBuilder msg = new StringBuilder();
+    msg.append(complete).append("/").append(total).append(" jobs complete");
+    for (final Job job : running) {
+      msg.append(String.format(", %s (map %.0f%%, reduce %.0f%%)", job.getJobName(),
+          job.mapProgress() * 100, job.reduceProgress() * 100));
+    }
+    log.info(msg.toString());
+  }
+
+}
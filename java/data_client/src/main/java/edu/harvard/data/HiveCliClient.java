@@ -0,0 +1,123 @@
+package edu.harvard.data;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * {@link HiveClient} that runs the Hive command line tool. Each call starts one
+ * Hive session.
+ */
+public class HiveCliClient implements HiveClient {
+  private static final Logger log = LogManager.getLogger();
+
+  static final String TABLE_MARKER = "#table ";
+  private static final Pattern PROPERTY_VALUE = Pattern.compile("[0-9a-zA-Z_-]+");
+
+  private final List<String> hiveCommand;
+
+  /**
+   * @param hiveCommand
+   *          the command that starts the Hive CLI, such as
+   *          {@code sudo hive}.
+   */
+  public HiveCliClient(final List<String> hiveCommand) {
+    this.hiveCommand = hiveCommand;
+  }
+
+  public HiveCliClient() {
+    this(Arrays.asList("sudo", "hive"));
+  }
+
+  // Hive can't look up a property for several tables in one statement, so the
+  // session runs one SHOW TBLPROPERTIES statement per table, each preceded by
+  // a SELECT of the table's name so that the output can be matched up.
+  // Statement errors (for tables that don't exist) are ignored.
+  @Override
+  public Map<String, String> getTableProperty(final List<String> tables, final String property)
+      throws IOException {
+    final StringBuilder script = new StringBuilder();
+    script.append("SET hive.cli.errors.ignore=true;\n");
+    for (final String table : tables) {
+      script.append("SELECT '" + TABLE_MARKER + table + "';\n");
+      script.append("SHOW TBLPROPERTIES " + table + "('" + property + "');\n");
+    }
+    return parseTableProperties(run(script.toString(), true));
+  }
+
+  @Override
+  public void execute(final String script) throws IOException {
+    run(script, false);
+  }
+
+  /**
+   * Read the output of the script built by {@link #getTableProperty}. A table
+   * without the property shows a message in place of the value; a table that
+   * doesn't exist shows nothing.
+   */
+  static Map<String, String> parseTableProperties(final List<String> lines) {
+    final Map<String, String> values = new HashMap<String, String>();
+    String table = null;
+    for (final String line : lines) {
+      final String value = line.trim();
+      if (value.startsWith(TABLE_MARKER)) {
+        table = value.substring(TABLE_MARKER.length());
+      } else if (table != null && PROPERTY_VALUE.matcher(value).matches()) {
+        values.put(table, value);
+        table = null;
+      }
+    }
+    return values;
+  }
+
+  private List<String> run(final String script, final boolean silent) throws IOException {
+    final File scriptFile = File.createTempFile("hive-", ".q");
+    try {
+      FileUtils.writeStringToFile(scriptFile, script, StandardCharsets.UTF_8);
+      final List<String> command = new ArrayList<String>(hiveCommand);
+      if (silent) {
+        command.add("-S");
+      }
+      command.add("-f");
+      command.add(scriptFile.getPath());
+      final Process process = new ProcessBuilder(command)
+          .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+      final List<String> lines = new ArrayList<String>();
+      try (BufferedReader in = new BufferedReader(
+          new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+        String line = in.readLine();
+        while (line != null) {
+          lines.add(line);
+          line = in.readLine();
+        }
+      }
+      final int status;
+      try {
+        status = process.waitFor();
+      } catch (final InterruptedException e) {
+        process.destroy();
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for Hive", e);
+      }
+      if (status != 0) {
+        throw new IOException("Hive exited with status " + status);
+      }
+      log.debug("Hive wrote " + lines.size() + " lines");
+      return lines;
+    } finally {
+      scriptFile.delete();
+    }
+  }
+}
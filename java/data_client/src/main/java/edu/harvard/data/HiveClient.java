@@ -0,0 +1,29 @@
+package edu.harvard.data;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The operations that {@link HiveDdlRunner} needs from Hive. The cluster
+ * implementation is {@link HiveCliClient}.
+ */
+public interface HiveClient {
+
+  /**
+   * Look up a table property for a set of tables in a single session.
+   *
+   * @return the property value for each table that exists and has the
+   *         property set. Other tables are left out of the map.
+   */
+  Map<String, String> getTableProperty(List<String> tables, String property)
+      throws IOException;
+
+  /**
+   * Run a script of semicolon-terminated statements in a single session.
+   *
+   * @throws IOException
+   *           if a statement fails.
+   */
+  void execute(String script) throws IOException;
+}
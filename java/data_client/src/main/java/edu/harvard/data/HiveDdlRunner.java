@@ -0,0 +1,130 @@
+package edu.harvard.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Applies a DDL file generated by
+ * {@link edu.harvard.data.generator.CreateHiveTableGenerator} in a single Hive
+ * session, leaving out the statements for tables whose definition has not
+ * changed.
+ * <P>
+ * The file is made up of blocks, each introduced by a comment of the form
+ * {@code -- table <name> <schema hash>}. A block re-creates a table, and the
+ * table's {@code CREATE} statement records the schema hash in the table's
+ * {@value #SCHEMA_HASH_PROPERTY} property. Before running anything, the runner
+ * reads that property for every table in one session; a block is left out if
+ * the table already has the hash that the block would give it. Blocks without
+ * a hash (such as those that only drop a table) are always run. Any text before
+ * the first block is always run.
+ * <P>
+ * The remaining blocks are run together in a second session. If there are
+ * none, no second session is started.
+ */
+public class HiveDdlRunner {
+  private static final Logger log = LogManager.getLogger();
+
+  public static final String TABLE_MARKER = "-- table ";
+  public static final String SCHEMA_HASH_PROPERTY = "schema_hash";
+
+  private final HiveClient hive;
+
+  /**
+   * Usage: {@code HiveDdlRunner <ddl file>}.
+   */
+  public static void main(final String[] args) throws IOException {
+    final String ddl = FileUtils.readFileToString(new File(args[0]), StandardCharsets.UTF_8);
+    new HiveDdlRunner(new HiveCliClient()).run(ddl);
+  }
+
+  public HiveDdlRunner(final HiveClient hive) {
+    this.hive = hive;
+  }
+
+  /**
+   * Calculate the schema hash for a table definition.
+   *
+   * @param definition
+   *          the table's {@code CREATE} statement, up to but not including its
+   *          table properties.
+   */
+  public static String schemaHash(final String definition) {
+    return DigestUtils.md5Hex(definition);
+  }
+
+  /**
+   * Run the blocks of a DDL file whose tables have changed.
+   *
+   * @return the names of the tables whose blocks were run.
+   */
+  public List<String> run(final String ddl) throws IOException {
+    final StringBuilder preamble = new StringBuilder();
+    final List<Block> blocks = parse(ddl, preamble);
+    final List<String> hashedTables = new ArrayList<String>();
+    for (final Block block : blocks) {
+      if (block.hash != null) {
+        hashedTables.add(block.table);
+      }
+    }
+    final Map<String, String> current = hashedTables.isEmpty()
+        ? new HashMap<String, String>()
+        : hive.getTableProperty(hashedTables, SCHEMA_HASH_PROPERTY);
+
+    final StringBuilder script = new StringBuilder(preamble);
+    final List<String> changed = new ArrayList<String>();
+    for (final Block block : blocks) {
+      if (block.hash != null && block.hash.equals(current.get(block.table))) {
+        log.info("Table " + block.table + " is unchanged");
+      } else {
+        changed.add(block.table);
+        script.append(block.statements);
+      }
+    }
+    if (changed.isEmpty()) {
+      log.info("No tables have changed");
+    } else {
+      log.info("Updating tables " + changed);
+      hive.execute(script.toString());
+    }
+    return changed;
+  }
+
+  private static List<Block> parse(final String ddl, final StringBuilder preamble) {
+    final List<Block> blocks = new ArrayList<Block>();
+    Block block = null;
+    for (final String line : ddl.split("\n")) {
+      if (line.startsWith(TABLE_MARKER)) {
+        final String[] parts = line.substring(TABLE_MARKER.length()).trim().split("\\s+");
+        block = new Block(parts[0], parts.length > 1 ? parts[1] : null);
+        blocks.add(block);
+      } else if (block == null) {
+        preamble.append(line).append("\n");
+      } else {
+        block.statements.append(line).append("\n");
+      }
+    }
+    return blocks;
+  }
+
+  private static class Block {
+    private final String table;
+    private final String hash;
+    private final StringBuilder statements;
+
+    Block(final String table, final String hash) {
+      this.table = table;
+      this.hash = hash;
+      this.statements = new StringBuilder();
+    }
+  }
+}
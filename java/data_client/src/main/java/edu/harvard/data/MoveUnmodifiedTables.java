@@ -0,0 +1,199 @@
+package edu.harvard.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Moves the directories of tables that a phase does not modify from the
+ * phase's input directory to its output directory, so that they are available
+ * to the next phase.
+ * <P>
+ * All existence checks are answered by a single listing of the input
+ * directory, and the moves are made in parallel through one
+ * {@link FileSystem} instance. This replaces a shell script that ran a
+ * separate {@code hadoop fs -test} and {@code hadoop fs -mv} command, each in
+ * a new JVM, for every table.
+ * <P>
+ * A table that has no directory in the input directory is skipped, since the
+ * current data set may not contain every table.
+ */
+public class MoveUnmodifiedTables {
+  private static final Logger log = LogManager.getLogger();
+
+  public static final int DEFAULT_THREADS = 8;
+
+  private final FileSystem fs;
+  private final int threads;
+
+  /**
+   * Usage: {@code MoveUnmodifiedTables [--dry-run] <input dir> <output dir>
+   * <table>...}. With {@code --dry-run}, the moves are reported but not made.
+   */
+  public static void main(final String[] args) throws IOException, InterruptedException {
+    final boolean dryRun = args.length > 0 && args[0].equals("--dry-run");
+    final int first = dryRun ? 1 : 0;
+    final Path inputDir = new Path(args[first]);
+    final Path outputDir = new Path(args[first + 1]);
+    final List<String> tables = Arrays.asList(args).subList(first + 2, args.length);
+    final FileSystem fs = inputDir.getFileSystem(new Configuration());
+    final MoveUnmodifiedTables mover = new MoveUnmodifiedTables(fs, DEFAULT_THREADS);
+    final Plan plan = mover.plan(inputDir, outputDir, tables);
+    for (final String line : plan.report()) {
+      System.out.println(line);
+    }
+    if (!dryRun) {
+      mover.move(plan);
+    }
+  }
+
+  public MoveUnmodifiedTables(final FileSystem fs, final int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be positive: " + threads);
+    }
+    this.fs = fs;
+    this.threads = threads;
+  }
+
+  /**
+   * Work out which tables can be moved. The file system is not modified.
+   *
+   * @param inputDir
+   *          the directory that holds a directory for each table read by the
+   *          phase. If it does not exist, there is nothing to move.
+   * @param outputDir
+   *          the directory to which table directories are moved.
+   * @param tables
+   *          the tables that the phase does not modify.
+   */
+  public Plan plan(final Path inputDir, final Path outputDir, final List<String> tables)
+      throws IOException {
+    final Set<String> existing = new HashSet<String>();
+    if (fs.exists(inputDir)) {
+      for (final FileStatus status : fs.listStatus(inputDir)) {
+        if (status.isDirectory()) {
+          existing.add(status.getPath().getName());
+        }
+      }
+    }
+    final Plan plan = new Plan(outputDir);
+    for (final String table : tables) {
+      if (existing.contains(table)) {
+        plan.moved.add(table);
+        plan.sources.add(new Path(inputDir, table));
+      } else {
+        plan.missing.add(table);
+      }
+    }
+    return plan;
+  }
+
+  /**
+   * Make the moves in a plan. The output directory is created if it does not
+   * already exist.
+   *
+   * @throws IOException
+   *           if any of the moves fails. The remaining moves are still made,
+   *           and the exception lists every table that could not be moved.
+   */
+  public void move(final Plan plan) throws IOException, InterruptedException {
+    if (!fs.exists(plan.outputDir) && !fs.mkdirs(plan.outputDir)) {
+      throw new IOException("Failed to create directory " + plan.outputDir);
+    }
+    final ExecutorService exec = Executors.newFixedThreadPool(threads);
+    final List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+    try {
+      for (int i = 0; i < plan.sources.size(); i++) {
+        final Path source = plan.sources.get(i);
+        final Path destination = new Path(plan.outputDir, plan.moved.get(i));
+        results.add(exec.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws IOException {
+            return fs.rename(source, destination);
+          }
+        }));
+      }
+      final List<String> failed = new ArrayList<String>();
+      for (int i = 0; i < results.size(); i++) {
+        boolean renamed;
+        try {
+          renamed = results.get(i).get();
+        } catch (final ExecutionException e) {
+          log.error("Failed to move " + plan.sources.get(i), e.getCause());
+          renamed = false;
+        }
+        if (!renamed) {
+          failed.add(plan.moved.get(i));
+        }
+      }
+      if (!failed.isEmpty()) {
+        throw new IOException("Failed to move tables " + failed + " to " + plan.outputDir);
+      }
+      log.info("Moved " + results.size() + " tables to " + plan.outputDir);
+    } finally {
+      exec.shutdownNow();
+    }
+  }
+
+  /**
+   * The moves that {@link MoveUnmodifiedTables#move} will make.
+   */
+  public static class Plan {
+    private final Path outputDir;
+    private final List<Path> sources;
+    private final List<String> moved;
+    private final List<String> missing;
+
+    Plan(final Path outputDir) {
+      this.outputDir = outputDir;
+      this.sources = new ArrayList<Path>();
+      this.moved = new ArrayList<String>();
+      this.missing = new ArrayList<String>();
+    }
+
+    /**
+     * @return the tables to be moved, in the order in which they were passed
+     *         to {@link MoveUnmodifiedTables#plan}.
+     */
+    public List<String> getMovedTables() {
+      return moved;
+    }
+
+    /**
+     * @return the tables that have no directory in the input directory.
+     */
+    public List<String> getMissingTables() {
+      return missing;
+    }
+
+    /**
+     * @return one line for each table, describing the move or why the table is
+     *         skipped.
+     */
+    public List<String> report() {
+      final List<String> lines = new ArrayList<String>();
+      for (int i = 0; i < moved.size(); i++) {
+        lines.add("mv " + sources.get(i) + " " + new Path(outputDir, moved.get(i)));
+      }
+      for (final String table : missing) {
+        lines.add("skip " + table + " (no input directory)");
+      }
+      return lines;
+    }
+  }
+}
@@ -0,0 +1,271 @@
+package edu.harvard.data;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A small pool of JDBC connections to Redshift. Opening a Redshift connection
+ * requires an SSL handshake and authentication, which takes far longer than
+ * most of the statements that we run; the pool lets a sequence of statements
+ * reuse the same connection.
+ * <P>
+ * Connections are handed out by {@link #getConnection}, and are returned to
+ * the pool when the caller closes them, so the usual try-with-resources
+ * pattern works unchanged. At most {@code maxConnections} connections are in
+ * use at once; further callers block until a connection is returned. Idle
+ * connections are checked before being reused, and replaced if the server has
+ * dropped them.
+ * <P>
+ * Code that works against the Redshift cluster named in a {@link DataConfig}
+ * should share the pool returned by {@link #forConfig}. This class is
+ * thread-safe.
+ */
+public class RedshiftConnectionPool implements AutoCloseable {
+  private static final Logger log = LogManager.getLogger();
+
+  public static final int DEFAULT_MAX_CONNECTIONS = 4;
+  private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+  private static final Map<String, RedshiftConnectionPool> pools = new HashMap<String, RedshiftConnectionPool>();
+
+  private final String url;
+  private final String userName;
+  private final String password;
+  private final Semaphore permits;
+  private final LinkedList<Connection> idle;
+  private int openedConnections;
+  private boolean closed;
+
+  /**
+   * Get the pool for the Redshift cluster and user in a configuration,
+   * creating it if necessary.
+   */
+  public static RedshiftConnectionPool forConfig(final DataConfig config) {
+    final String key = config.getRedshiftUserName() + "@" + config.getRedshiftUrl();
+    synchronized (pools) {
+      if (!pools.containsKey(key) || pools.get(key).closed) {
+        pools.put(key, new RedshiftConnectionPool(config.getRedshiftUrl(),
+            config.getRedshiftUserName(), config.getRedshiftPassword(),
+            config.getRedshiftMaxConnections()));
+      }
+      return pools.get(key);
+    }
+  }
+
+  public RedshiftConnectionPool(final String url, final String userName, final String password,
+      final int maxConnections) {
+    if (maxConnections < 1) {
+      throw new IllegalArgumentException("maxConnections must be positive: " + maxConnections);
+    }
+    this.url = url;
+    this.userName = userName;
+    this.password = password;
+    this.permits = new Semaphore(maxConnections, true);
+    this.idle = new LinkedList<Connection>();
+    this.openedConnections = 0;
+    this.closed = false;
+  }
+
+  /**
+   * Borrow a connection from the pool, opening a new connection if there are
+   * no idle ones. The returned connection must be closed to return it to the
+   * pool. The connection is in auto-commit mode.
+   *
+   * @throws SQLException
+   *           if a new connection cannot be opened.
+   */
+  public Connection getConnection() throws SQLException {
+    try {
+      permits.acquire();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for a connection to " + url, e);
+    }
+    try {
+      return wrap(takeIdleConnection());
+    } catch (final SQLException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Run a single statement on a pooled connection.
+   */
+  public void execute(final String sql) throws SQLException {
+    log.info("Executing query \n" + sql + "\n on " + url);
+    try (Connection connection = getConnection(); Statement st = connection.createStatement()) {
+      st.execute(sql);
+    }
+  }
+
+  /**
+   * Run a list of statements as a single batch in one transaction. Either all
+   * of the statements take effect or, if any fails, none do.
+   */
+  public void executeInTransaction(final List<String> statements) throws SQLException {
+    log.info("Executing " + statements.size() + " statements in a transaction on " + url);
+    try (Connection connection = getConnection()) {
+      connection.setAutoCommit(false);
+      try (Statement st = connection.createStatement()) {
+        for (final String sql : statements) {
+          log.debug("  " + sql);
+          st.addBatch(sql);
+        }
+        st.executeBatch();
+        connection.commit();
+      } catch (final SQLException | RuntimeException e) {
+        connection.rollback();
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * @return the number of physical connections that this pool has opened over
+   *         its lifetime.
+   */
+  public synchronized int getOpenedConnections() {
+    return openedConnections;
+  }
+
+  public synchronized int getIdleConnections() {
+    return idle.size();
+  }
+
+  /**
+   * Close all idle connections. Connections that are currently borrowed are
+   * closed when they are returned.
+   */
+  @Override
+  public synchronized void close() {
+    closed = true;
+    for (final Connection connection : idle) {
+      closeQuietly(connection);
+    }
+    idle.clear();
+  }
+
+  /**
+   * Open a new physical connection. Overridden in tests.
+   */
+  protected Connection openConnection() throws SQLException {
+    log.debug("Opening connection to " + url);
+    return DriverManager.getConnection(url, userName, password);
+  }
+
+  private Connection takeIdleConnection() throws SQLException {
+    while (true) {
+      final Connection connection;
+      synchronized (this) {
+        if (closed) {
+          throw new SQLException("Connection pool for " + url + " is closed");
+        }
+        if (idle.isEmpty()) {
+          openedConnections++;
+          break;
+        }
+        connection = idle.removeFirst();
+      }
+      if (isUsable(connection)) {
+        return connection;
+      }
+      log.info("Discarding stale connection to " + url);
+      closeQuietly(connection);
+    }
+    try {
+      return openConnection();
+    } catch (final SQLException | RuntimeException e) {
+      synchronized (this) {
+        openedConnections--;
+      }
+      throw e;
+    }
+  }
+
+  private void release(final Connection connection) {
+    boolean keep = false;
+    try {
+      // Don't hand the next caller an open transaction.
+      if (!connection.isClosed()) {
+        if (!connection.getAutoCommit()) {
+          connection.rollback();
+          connection.setAutoCommit(true);
+        }
+        keep = true;
+      }
+    } catch (final SQLException e) {
+      log.warn("Discarding connection to " + url + " after error: " + e.getMessage());
+    }
+    synchronized (this) {
+      if (keep && !closed) {
+        idle.addFirst(connection);
+      } else {
+        closeQuietly(connection);
+      }
+    }
+    permits.release();
+  }
+
+  private static boolean isUsable(final Connection connection) {
+    try {
+      return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+    } catch (final SQLException e) {
+      return false;
+    }
+  }
+
+  private static void closeQuietly(final Connection connection) {
+    try {
+      connection.close();
+    } catch (final SQLException e) {
+      log.warn("Error closing connection: " + e.getMessage());
+    }
+  }
+
+  // Wrap a physical connection so that closing it returns it to the pool.
+  private Connection wrap(final Connection connection) {
+    return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+        new Class<?>[] { Connection.class }, new InvocationHandler() {
+      private boolean returned = false;
+
+      @Override
+      public Object invoke(final Object proxy, final Method method, final Object[] args)
+          throws Throwable {
+        if (method.getName().equals("close")) {
+          if (!returned) {
+            returned = true;
+            release(connection);
+          }
+          return null;
+        }
+        if (method.getName().equals("isClosed")) {
+          return returned || connection.isClosed();
+        }
+        if (returned) {
+          throw new SQLException("Connection has been returned to the pool");
+        }
+        try {
+          return method.invoke(connection, args);
+        } catch (final InvocationTargetException e) {
+          throw e.getCause();
+        }
+      }
+    });
+  }
+
+}
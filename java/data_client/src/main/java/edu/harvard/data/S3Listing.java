@@ -0,0 +1,104 @@
+package edu.harvard.data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.amazonaws.services.s3.model.S3ObjectId;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+/**
+ * In-memory snapshot of every key under an S3 prefix, used by
+ * {@link AwsUtils} to answer listing and existence queries without further
+ * requests to S3. Keys are held in sorted order, so that the keys beginning
+ * with any prefix form a contiguous range.
+ */
+class S3Listing {
+
+  private final String bucket;
+  private final String prefix;
+  private final NavigableMap<String, S3ObjectSummary> keys;
+
+  /**
+   * @param bucket
+   *          the bucket that was listed.
+   * @param prefix
+   *          the prefix that was listed. All keys in the snapshot begin with
+   *          this string.
+   * @param summaries
+   *          every object under the prefix.
+   */
+  S3Listing(final String bucket, final String prefix, final List<S3ObjectSummary> summaries) {
+    this.bucket = bucket;
+    this.prefix = prefix;
+    this.keys = new TreeMap<String, S3ObjectSummary>();
+    for (final S3ObjectSummary summary : summaries) {
+      keys.put(summary.getKey(), summary);
+    }
+  }
+
+  /**
+   * @return true if every key beginning with {@code key} in the bucket
+   *         would be included in this snapshot.
+   */
+  boolean covers(final String keyBucket, final String key) {
+    return bucket.equals(keyBucket) && key.startsWith(prefix);
+  }
+
+  /**
+   * @return the summaries of all objects whose keys begin with
+   *         {@code keyPrefix}, in key order.
+   */
+  List<S3ObjectSummary> withPrefix(final String keyPrefix) {
+    return new ArrayList<S3ObjectSummary>(range(keyPrefix).values());
+  }
+
+  int countWithPrefix(final String keyPrefix, final int limit) {
+    int count = 0;
+    for (final String key : range(keyPrefix).keySet()) {
+      if (++count >= limit) {
+        break;
+      }
+    }
+    return count;
+  }
+
+  S3ObjectSummary get(final String key) {
+    return keys.get(key);
+  }
+
+  /**
+   * @return the immediate subdirectories of {@code dir}, as in
+   *         {@link AwsUtils#listDirectories}. As with a delimited S3 listing, a
+   *         subdirectory is returned if any key begins with its name and a
+   *         slash, including an empty directory marker such as {@code a/}.
+   */
+  Set<S3ObjectId> directories(final S3ObjectId dir) {
+    final String dirPrefix = dir.getKey() + "/";
+    final Set<String> names = new LinkedHashSet<String>();
+    for (final String key : range(dirPrefix).keySet()) {
+      final String subKey = key.substring(dirPrefix.length());
+      final int slash = subKey.indexOf('/');
+      if (slash > 0) {
+        names.add(subKey.substring(0, slash));
+      }
+    }
+    // S3ObjectId doesn't implement equals, so duplicates are removed by name.
+    final Set<S3ObjectId> dirs = new LinkedHashSet<S3ObjectId>();
+    for (final String name : names) {
+      dirs.add(AwsUtils.key(dir, name));
+    }
+    return dirs;
+  }
+
+  private Map<String, S3ObjectSummary> range(final String keyPrefix) {
+    // Every key starting with keyPrefix sorts between keyPrefix itself and
+    // keyPrefix followed by the highest character.
+    return keys.subMap(keyPrefix, true, keyPrefix + Character.MAX_VALUE, false);
+  }
+
+}
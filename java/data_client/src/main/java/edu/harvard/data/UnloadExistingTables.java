@@ -1,7 +1,15 @@
 package edu.harvard.data;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -11,8 +19,28 @@ import edu.harvard.data.schema.DataSchema;
 import edu.harvard.data.schema.existing.ExistingSchema;
 import edu.harvard.data.schema.existing.ExistingSchemaTable;
 
+/**
+ * Unload the tables described in an {@link ExistingSchema} from Redshift to
+ * S3. Each UNLOAD runs on its own pooled connection, and up to
+ * {@link DataConfig#getRedshiftUnloadParallelism} run at once; Redshift
+ * handles several concurrent UNLOAD statements far better than one long
+ * sequence of them.
+ * <P>
+ * If the configuration names an unload progress table, each table's progress
+ * is recorded in DynamoDB as an {@link UnloadProgress} item. A table that the
+ * same pipeline run has already unloaded to the same location with the same
+ * query is skipped, so a failed run can be restarted without repeating the work
+ * that succeeded. A different run always unloads every table, even if it reuses
+ * the location, since the data in Redshift may have changed in between.
+ * <P>
+ * A failed UNLOAD does not stop the others; once every table has been
+ * attempted, the names of all failed tables are reported together.
+ */
 public class UnloadExistingTables {
   private static final Logger log = LogManager.getLogger();
+
+  public static final int DEFAULT_PARALLELISM = 4;
+
   private final ExistingSchema existingSchema;
   private final DataSchema schema;
 
@@ -21,16 +49,140 @@ public class UnloadExistingTables {
     this.schema = schema;
   }
 
-  public void unload(final AwsUtils aws, final DataConfig config, final String s3Location,
-      final Date dataBeginDate) throws SQLException {
-    log.info("Connecting to Redshift to unload existing tables");
-    for (final String tableName : existingSchema.getTables().keySet()) {
+  public void unload(final AwsUtils aws, final DataConfig config, final String runId,
+      final String s3Location, final Date dataBeginDate)
+          throws SQLException, DataConfigurationException {
+    if (config.getUnloadProgressDynamoTable() != null) {
+      UnloadProgress.init(config.getUnloadProgressDynamoTable());
+    }
+    unload(RedshiftConnectionPool.forConfig(config), config, runId, s3Location, dataBeginDate);
+  }
+
+  /**
+   * Unload all tables through a connection pool. If
+   * {@link DataConfig#getUnloadProgressDynamoTable} is set, {@link UnloadProgress}
+   * must already have been initialized.
+   *
+   * @throws SQLException
+   *           if any table could not be unloaded. The message lists every
+   *           failed table.
+   */
+  public void unload(final RedshiftConnectionPool pool, final DataConfig config,
+      final String runId, final String s3Location, final Date dataBeginDate)
+          throws SQLException {
+    final boolean trackProgress = config.getUnloadProgressDynamoTable() != null;
+    final String redshiftSchema = config.getDatasetName();
+    final List<String> tableNames = new ArrayList<String>(existingSchema.getTables().keySet());
+    Collections.sort(tableNames);
+
+    final List<UnloadTask> tasks = new ArrayList<UnloadTask>();
+    for (final String tableName : tableNames) {
       final ExistingSchemaTable table = existingSchema.getTables().get(tableName);
-      log.info("Unloading " + tableName);
-      final String unload = SqlGenerator.generateUnloadStatement(table, config.getDatasetName(),
+      final String destination = SqlGenerator.generateUnloadDestination(table, redshiftSchema,
+          s3Location);
+      final String query = SqlGenerator.generateUnloadQuery(table, redshiftSchema,
+          schema.getTableByName(tableName), dataBeginDate);
+      if (trackProgress && isComplete(destination, runId, query)) {
+        log.info("Skipping " + tableName + "; already unloaded to " + destination);
+        continue;
+      }
+      final String unload = SqlGenerator.generateUnloadStatement(table, redshiftSchema,
           schema.getTableByName(tableName), s3Location, config.getAwsKeyId(),
           config.getAwsSecretKey(), dataBeginDate);
-      aws.executeRedshiftQuery(unload, config);
+      tasks.add(new UnloadTask(pool, tableName, destination, runId, query, unload,
+          trackProgress));
+    }
+    if (tasks.isEmpty()) {
+      log.info("No tables to unload");
+      return;
+    }
+
+    final int threads = Math.min(config.getRedshiftUnloadParallelism(), tasks.size());
+    log.info("Unloading " + tasks.size() + " tables with " + threads + " concurrent statements");
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final List<String> failed = new ArrayList<String>();
+    SQLException firstFailure = null;
+    try {
+      final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (final UnloadTask task : tasks) {
+        futures.add(executor.submit(task));
+      }
+      for (int i = 0; i < tasks.size(); i++) {
+        try {
+          futures.get(i).get();
+        } catch (final ExecutionException e) {
+          log.error("Failed to unload " + tasks.get(i).tableName, e.getCause());
+          failed.add(tasks.get(i).tableName);
+          if (firstFailure == null) {
+            firstFailure = new SQLException(e.getCause());
+          }
+        }
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while unloading tables", e);
+    } finally {
+      executor.shutdownNow();
+    }
+    if (!failed.isEmpty()) {
+      throw new SQLException("Failed to unload tables: " + failed, firstFailure);
+    }
+  }
+
+  private static boolean isComplete(final String destination, final String runId,
+      final String query) {
+    final UnloadProgress progress = UnloadProgress.find(destination);
+    return progress != null && UnloadProgress.Status.Complete.toString().equals(progress.getStatus())
+        && runId.equals(progress.getRunId()) && query.equals(progress.getQuery());
+  }
+
+  private static class UnloadTask implements Callable<Void> {
+    private final RedshiftConnectionPool pool;
+    private final String tableName;
+    private final String destination;
+    private final String runId;
+    private final String query;
+    private final String unload;
+    private final boolean trackProgress;
+
+    UnloadTask(final RedshiftConnectionPool pool, final String tableName, final String destination,
+        final String runId, final String query, final String unload, final boolean trackProgress) {
+      this.pool = pool;
+      this.tableName = tableName;
+      this.destination = destination;
+      this.runId = runId;
+      this.query = query;
+      this.unload = unload;
+      this.trackProgress = trackProgress;
+    }
+
+    @Override
+    public Void call() throws SQLException {
+      log.info("Unloading " + tableName);
+      final UnloadProgress progress = new UnloadProgress(destination, runId, query);
+      progress.setStart(new Date());
+      progress.setStatus(UnloadProgress.Status.Running.toString());
+      if (trackProgress) {
+        progress.save();
+      }
+      try {
+        pool.execute(unload);
+      } catch (final SQLException | RuntimeException e) {
+        if (trackProgress) {
+          progress.setEnd(new Date());
+          progress.setStatus(UnloadProgress.Status.Failed.toString());
+          progress.setError(e.getMessage());
+          progress.save();
+        }
+        throw e;
+      }
+      if (trackProgress) {
+        progress.setEnd(new Date());
+        progress.setStatus(UnloadProgress.Status.Complete.toString());
+        progress.save();
+      }
+      log.info("Unloaded " + tableName + " to " + destination);
+      return null;
     }
   }
 }
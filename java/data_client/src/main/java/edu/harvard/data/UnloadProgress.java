@@ -0,0 +1,154 @@
+package edu.harvard.data;
+
+import java.util.Date;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAttribute;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.TableNameOverride;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+
+/**
+ * Record of a single Redshift UNLOAD run by {@link UnloadExistingTables}. The
+ * record is keyed on the S3 location that the table is unloaded to, and also
+ * stores the pipeline run and the query that produced the data, so that a
+ * restart of the same run can skip any table whose data is already in place. A
+ * later run that reuses the location replaces the record.
+ */
+@DynamoDBTable(tableName = "DummyTableName")
+public class UnloadProgress {
+
+  private static final Logger log = LogManager.getLogger();
+
+  private static DynamoDBMapper mapper;
+  private static String tableName;
+  private static DynamoDBMapperConfig mapperConfig;
+
+  public enum Status {
+    Running, Complete, Failed
+  }
+
+  public static void init(final String table) throws DataConfigurationException {
+    init(new AmazonDynamoDBClient(), table);
+  }
+
+  public static void init(final AmazonDynamoDB client, final String table)
+      throws DataConfigurationException {
+    log.info("Initializing unload progress table as " + table);
+    mapper = new DynamoDBMapper(client);
+    if (table == null) {
+      throw new DataConfigurationException("Unload progress table name can't be null");
+    }
+    tableName = table;
+    mapperConfig = new DynamoDBMapperConfig(new TableNameOverride(tableName));
+  }
+
+  @DynamoDBHashKey(attributeName = "destination")
+  private String destination;
+
+  @DynamoDBAttribute(attributeName = "run_id")
+  private String runId;
+
+  @DynamoDBAttribute(attributeName = "query")
+  private String query;
+
+  @DynamoDBAttribute(attributeName = "status")
+  private String status;
+
+  @DynamoDBAttribute(attributeName = "start")
+  private Date start;
+
+  @DynamoDBAttribute(attributeName = "end")
+  private Date end;
+
+  @DynamoDBAttribute(attributeName = "error")
+  private String error;
+
+  public UnloadProgress() {
+  }
+
+  public UnloadProgress(final String destination, final String runId, final String query) {
+    this.destination = destination;
+    this.runId = runId;
+    this.query = query;
+  }
+
+  public String getDestination() {
+    return destination;
+  }
+
+  public void setDestination(final String destination) {
+    this.destination = destination;
+  }
+
+  public String getRunId() {
+    return runId;
+  }
+
+  public void setRunId(final String runId) {
+    this.runId = runId;
+  }
+
+  public String getQuery() {
+    return query;
+  }
+
+  public void setQuery(final String query) {
+    this.query = query;
+  }
+
+  public String getStatus() {
+    return status;
+  }
+
+  public void setStatus(final String status) {
+    this.status = status;
+  }
+
+  public Date getStart() {
+    return start;
+  }
+
+  public void setStart(final Date start) {
+    this.start = start;
+  }
+
+  public Date getEnd() {
+    return end;
+  }
+
+  public void setEnd(final Date end) {
+    this.end = end;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  public void setError(final String error) {
+    this.error = error;
+  }
+
+  public static UnloadProgress find(final String destination) {
+    if (tableName == null) {
+      throw new RuntimeException("UnloadProgress.find called before init(tableName) method");
+    }
+    log.debug("Finding unload progress for " + destination + " from table " + tableName);
+    return mapper.load(UnloadProgress.class, destination, mapperConfig);
+  }
+
+  public void save() {
+    if (tableName == null) {
+      throw new RuntimeException(
+          "UnloadProgress object saved before init(tableName) method called");
+    }
+    log.debug("Saving unload progress for " + destination + " to table " + tableName);
+    mapper.save(this, mapperConfig);
+  }
+}
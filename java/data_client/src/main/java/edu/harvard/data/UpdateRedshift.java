@@ -1,6 +1,8 @@
 package edu.harvard.data;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
@@ -22,8 +24,13 @@ public class UpdateRedshift {
   }
 
   public void update(final AwsUtils aws, final DataConfig config) throws SQLException {
+    update(aws, RedshiftConnectionPool.forConfig(config), config.getDatasetName());
+  }
+
+  public void update(final AwsUtils aws, final RedshiftConnectionPool pool,
+      final String redshiftSchema) throws SQLException {
     log.info("Connecting to Redshift to retrieve schema");
-    final RedshiftSchema rs = aws.getRedshiftSchema(config);
+    final RedshiftSchema rs = aws.getRedshiftSchema(pool);
     final SchemaComparison diff = new SchemaComparison(expectedSchema, rs);
     final Map<String, DataSchemaTable> additions = diff.getAdditions();
     if (additions.size() > 0) {
@@ -31,18 +38,25 @@ public class UpdateRedshift {
     } else {
       log.info("No changes to be made to Redshift");
     }
+    applyAdditions(additions, pool, redshiftSchema);
+  }
+
+  // New columns for an existing table are added in a single batch, in one
+  // transaction, so that a table is never left with only some of its new
+  // columns.
+  static void applyAdditions(final Map<String, DataSchemaTable> additions,
+      final RedshiftConnectionPool pool, final String redshiftSchema) throws SQLException {
     for (final String tableName : additions.keySet()) {
       final DataSchemaTable table = additions.get(tableName);
       if (!table.isTemporary()) {
         if (table.getNewlyGenerated()) {
-          final String create = SqlGenerator.generateCreateStatement(table, config.getDatasetName());
-          aws.executeRedshiftQuery(create, config);
+          pool.execute(SqlGenerator.generateCreateStatement(table, redshiftSchema));
         } else {
+          final List<String> alters = new ArrayList<String>();
           for (final DataSchemaColumn column : table.getColumns()) {
-            final String alter = SqlGenerator.generateAlterStatement(table, config.getDatasetName(),
-                column);
-            aws.executeRedshiftQuery(alter, config);
+            alters.add(SqlGenerator.generateAlterStatement(table, redshiftSchema, column));
           }
+          pool.executeInTransaction(alters);
         }
       }
     }
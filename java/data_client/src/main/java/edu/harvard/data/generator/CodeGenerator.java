@@ -3,7 +3,9 @@ package edu.harvard.data.generator;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -17,6 +19,7 @@ import edu.harvard.data.VerificationException;
 import edu.harvard.data.identity.IdentifierType;
 import edu.harvard.data.identity.IdentitySchemaTransformer;
 import edu.harvard.data.pipeline.InputTableIndex;
+import edu.harvard.data.pipeline.S3ToHdfsCopyPlan;
 import edu.harvard.data.schema.DataSchema;
 import edu.harvard.data.schema.DataSchemaColumn;
 import edu.harvard.data.schema.DataSchemaTable;
@@ -46,6 +49,7 @@ public abstract class CodeGenerator {
   private final S3ObjectId workingDir;
   private final DataConfig config;
   private final S3ObjectId dataIndexLocation;
+  private final S3ObjectId copyPlanLocation;
   private final AwsUtils aws;
 
   /**
@@ -61,11 +65,17 @@ public abstract class CodeGenerator {
    *          initial Lambda bootstrap process.
    */
   public CodeGenerator(final DataConfig config, final File codeDir, final String runId) {
+    this(config, codeDir, runId, new AwsUtils());
+  }
+
+  protected CodeGenerator(final DataConfig config, final File codeDir, final String runId,
+      final AwsUtils aws) {
     this.config = config;
     this.codeDir = codeDir;
     this.workingDir = AwsUtils.key(config.getS3WorkingLocation(runId));
     this.dataIndexLocation = config.getIndexFileS3Location(runId);
-    this.aws = new AwsUtils();
+    this.copyPlanLocation = config.getS3ToHdfsCopyPlanS3Location(runId);
+    this.aws = aws;
   }
 
   /**
@@ -204,48 +214,139 @@ public abstract class CodeGenerator {
     spec.setOutputBaseDirectory(codeDir);
     spec.setMainIdentifier(getMainIdentifier());
 
-    // Generate the bindings.
-    log.info("Generating Java bindings in " + codeDir);
-    new JavaBindingGenerator(spec).generate();
-
-    log.info("Generating Java identity Hadoop jobs in " + codeDir);
-    new IdentityJobGenerator(spec, IdentitySchema.read(getIdentifierResource())).generate();
-
-    log.info("Generating Redshift table definitions in " + codeDir);
-    new CreateRedshiftTableGenerator(codeDir, spec, config).generate();
-
-    // Generate pipeline utility code only if we have an index of the data to be
-    // processed.
+    // Everything that the generators read is fetched here, before any of them
+    // start, so that they can run concurrently. The full text listing answers
+    // CreateHiveTableGenerator's existence checks for every table.
+    final IdentitySchema identities = IdentitySchema.read(getIdentifierResource());
+    final FullTextSchema textSchema = FullTextSchema.read(getFullTextResource());
+    final boolean restored = restoreDataToolsJar(spec);
+    InputTableIndex index = null;
+    S3ToHdfsCopyPlan plan = null;
     if (aws.isFile(dataIndexLocation)) {
-      final InputTableIndex dataIndex = InputTableIndex.read(aws, dataIndexLocation);
-      dataIndex.addNewlyGeneratedTables(spec.getSchemaPhases());
-
-      log.info("Generating Redshift unload script in " + codeDir);
-      new RedshiftUnloadGenerator(codeDir, config, workingDir).generate();
-
-      log.info("Generating S3 to HDFS copy manifest in " + codeDir);
-      new S3ToHdfsManifestGenerator(codeDir, config, dataIndex).generate();
-
-      log.info("Generating Hive table definitions in " + codeDir);
-      new CreateHiveTableGenerator(codeDir, config, spec, FullTextSchema.read(getFullTextResource() )).generate();
-
-      log.info("Generating Hive query manifests in " + codeDir);
-      new HiveQueryManifestGenerator(codeDir, spec).generate();
+      index = InputTableIndex.read(aws, dataIndexLocation);
+      index.addNewlyGeneratedTables(spec.getSchemaPhases());
+      aws.cacheListing(config.getFullTextLocation());
+      if (aws.isFile(copyPlanLocation)) {
+        plan = S3ToHdfsCopyPlan.read(aws, copyPlanLocation);
+      }
+    }
+    final InputTableIndex dataIndex = index;
+    final S3ToHdfsCopyPlan copyPlan = plan;
 
-      log.info("Generating Redshift copy from S3 script in " + codeDir);
-      new S3ToRedshiftLoaderGenerator(codeDir, spec, config, workingDir, dataIndex, IdentitySchema.read(getIdentifierResource()), FullTextSchema.read(getFullTextResource())).generate();
+    final GeneratorRunner runner = new GeneratorRunner(config.getGeneratorThreads());
 
-      log.info("Generating move unmodified files script in " + codeDir);
-      new MoveUnmodifiedTableGenerator(codeDir, spec).generate();
+    // Generate the bindings, unless the data tools jar that they are compiled
+    // into can be restored from the cache.
+    if (restored) {
+      log.info("Skipping Java bindings and identity Hadoop jobs");
+    } else {
+      runner.add(new GeneratorRunner.Generator() {
+        @Override
+        public void generate() throws IOException {
+          log.info("Generating Java bindings in " + codeDir);
+          new JavaBindingGenerator(spec).generate();
+        }
+      });
+      runner.add(new GeneratorRunner.Generator() {
+        @Override
+        public void generate() throws IOException, VerificationException {
+          log.info("Generating Java identity Hadoop jobs in " + codeDir);
+          new IdentityJobGenerator(spec, identities).generate();
+        }
+      });
+    }
 
-      log.info("Generating copy full text script in " + codeDir);
-      new FullTextCopyScriptGenerator(codeDir, config, FullTextSchema.read(getFullTextResource()),
-          dataIndex).generate();
+    runner.add(new GeneratorRunner.Generator() {
+      @Override
+      public void generate() throws IOException {
+        log.info("Generating Redshift table definitions in " + codeDir);
+        new CreateRedshiftTableGenerator(codeDir, spec, config).generate();
+      }
+    });
 
+    // Generate pipeline utility code only if we have an index of the data to be
+    // processed.
+    if (dataIndex != null) {
+      runner.add(new GeneratorRunner.Generator() {
+        @Override
+        public void generate() throws IOException {
+          log.info("Generating Redshift unload script in " + codeDir);
+          new RedshiftUnloadGenerator(codeDir, config, workingDir).generate();
+        }
+      });
+      if (copyPlan != null) {
+        runner.add(new GeneratorRunner.Generator() {
+          @Override
+          public void generate() throws IOException {
+            log.info("Generating S3 to HDFS copy manifests in " + codeDir);
+            new S3ToHdfsManifestGenerator(codeDir, config, dataIndex, copyPlan).generate();
+          }
+        });
+      } else {
+        log.info("No copy plan at " + AwsUtils.uri(copyPlanLocation)
+        + ". Skipping S3 to HDFS copy manifests");
+      }
+      runner.add(new GeneratorRunner.Generator() {
+        @Override
+        public void generate() throws IOException {
+          log.info("Generating Hive table definitions in " + codeDir);
+          new CreateHiveTableGenerator(codeDir, config, spec, textSchema, aws).generate();
+        }
+      });
+      runner.add(new GeneratorRunner.Generator() {
+        @Override
+        public void generate() throws IOException {
+          log.info("Generating Hive query manifests in " + codeDir);
+          new HiveQueryManifestGenerator(codeDir, spec).generate();
+        }
+      });
+      runner.add(new GeneratorRunner.Generator() {
+        @Override
+        public void generate() throws IOException {
+          log.info("Generating Redshift copy from S3 script in " + codeDir);
+          new S3ToRedshiftLoaderGenerator(codeDir, spec, config, workingDir, dataIndex, identities,
+              textSchema).generate();
+        }
+      });
+      runner.add(new GeneratorRunner.Generator() {
+        @Override
+        public void generate() throws IOException {
+          log.info("Generating move unmodified files script in " + codeDir);
+          new MoveUnmodifiedTableGenerator(codeDir, config, spec).generate();
+        }
+      });
+      runner.add(new GeneratorRunner.Generator() {
+        @Override
+        public void generate() throws IOException {
+          log.info("Generating copy full text script in " + codeDir);
+          new FullTextCopyScriptGenerator(codeDir, config, textSchema, dataIndex).generate();
+        }
+      });
     } else {
       log.info("No data index at " + AwsUtils.uri(dataIndexLocation)
       + ". Skipping pipeline-specific files");
     }
+    runner.run();
+  }
+
+  // See GeneratorCache. Caching is only enabled when the generator version is
+  // known.
+  private boolean restoreDataToolsJar(final GenerationSpec spec) throws IOException {
+    final String version = System.getProperty(GeneratorCache.VERSION_PROPERTY);
+    if (version == null) {
+      log.info("Generator version not set. Not using the generator cache");
+      return false;
+    }
+    final List<DataSchema> schemas = new ArrayList<DataSchema>();
+    for (final SchemaPhase phase : spec.getSchemaPhases()) {
+      schemas.add(phase.getSchema());
+    }
+    final Map<String, byte[]> resources = GeneratorCache.readResources(Arrays.asList(
+        getExistingTableResource(), getPhaseZeroModificationResource(), getIdentifierResource(),
+        getFullTextResource(), getPhaseTwoAdditionsResource(), getPhaseThreeAdditionsResource()));
+    final String hash = GeneratorCache.hash(version, config.getSettings(), schemas, resources);
+    return new GeneratorCache(aws, config.getGeneratorCacheS3Location(), codeDir,
+        config.getDataToolsJar()).restore(hash);
   }
 
   /**
@@ -9,16 +9,14 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.lang.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import com.amazonaws.services.s3.internal.S3DirectSpi;
 import com.amazonaws.services.s3.model.S3ObjectId;
 
 import edu.harvard.data.AwsUtils;
 import edu.harvard.data.DataConfig;
-import edu.harvard.data.FormatLibrary;
+import edu.harvard.data.HiveDdlRunner;
 import edu.harvard.data.schema.DataSchemaColumn;
 import edu.harvard.data.schema.DataSchemaTable;
 import edu.harvard.data.schema.DataSchemaType;
@@ -30,62 +28,89 @@ public class CreateHiveTableGenerator {
 
   private static final Logger log = LogManager.getLogger();
 
+  private static final String ROW_FORMAT_DELIMITED =
+      "    ROW FORMAT DELIMITED FIELDS TERMINATED BY '\\t' LINES TERMINATED By '\\n'";
+
   private final GenerationSpec schemaVersions;
   private final File dir;
   private final FullTextSchema textSchema;
   private final DataConfig config;
+  private final AwsUtils aws;
 
-
+  /**
+   * @param aws
+   *          used to check which tables have full text data. The caller should
+   *          already have cached a listing of the full text location, so that
+   *          the checks don't make a request per table.
+   */
   public CreateHiveTableGenerator(final File dir, final DataConfig config, 
-		  final GenerationSpec schemaVersions, final FullTextSchema textSchema ) {
+		  final GenerationSpec schemaVersions, final FullTextSchema textSchema,
+		  final AwsUtils aws ) {
 	this.config = config;
     this.dir = dir;
     this.schemaVersions = schemaVersions;
     this.textSchema = textSchema;
+    this.aws = aws;
   }
 
   public void generate() throws IOException {
     for (int i=1; i<3; i++) {
-      final String fileBase = "phase_" + (i+1) + "_create_tables";
+      final int phase = i + 1;
+      final String fileBase = "phase_" + phase + "_create_tables";
+      final String persistentBase = "phase_" + phase + "_create_persistent_tables";
       final File phaseFile = new File(dir, fileBase + ".sh");
-      try (final PrintStream out = new PrintStream(new FileOutputStream(phaseFile))) {
-        log.info("Creating Hive " + phaseFile + " file in " + dir);
-        
-        generateCreateTablesFile(out, i + 1, schemaVersions.getPhase(i), schemaVersions.getPhase(i + 1),
-           config.getEmrLogDir() + "/" + fileBase + ".out");
+      final File ddlFile = new File(dir, fileBase + ".q");
+      final File persistentFile = new File(dir, persistentBase + ".q");
+      log.info("Creating Hive " + phaseFile + " file in " + dir);
+      try (final PrintStream out = new PrintStream(new FileOutputStream(phaseFile));
+          final PrintStream ddl = new PrintStream(new FileOutputStream(ddlFile));
+          final PrintStream persistent = new PrintStream(new FileOutputStream(persistentFile))) {
+        generateCreateTablesFile(out, ddl, persistent, phase, schemaVersions.getPhase(i),
+            schemaVersions.getPhase(i + 1), config.getEmrLogDir() + "/" + fileBase + ".out",
+            fileBase + ".q", persistentBase + ".q");
       }
     }
   }
 
-  private void generateCreateTablesFile(final PrintStream out, final int phase, final SchemaPhase input,
-      final SchemaPhase output, final String logFile) {
-    final List<String> tableNames = new ArrayList<String>(input.getSchema().getTables().keySet());
-    Collections.sort(tableNames);
+  // The DDL for the in_ and out_ tables is written to a file that HiveDdlRunner
+  // applies in one session, skipping tables whose definition is unchanged. The
+  // merged_ and cur_ tables are only created when the cluster has no current
+  // data, so their DDL goes in a second file that is run only in that case.
+  private void generateCreateTablesFile(final PrintStream out, final PrintStream ddl,
+      final PrintStream persistent, final int phase, final SchemaPhase input,
+      final SchemaPhase output, final String logFile, final String ddlFile,
+      final String persistentFile) {
     out.println("sudo mkdir -p /var/log/hive/user/hadoop # Workaround for Hive logging bug");
     out.println("sudo chown hive:hive -R /var/log/hive");
-    generatePersistentTables(out, phase, input, "merged_", true, true, logFile, true );
-    generatePersistentTables(out, phase, input, "cur_", true, false, logFile, true );    
-    generateDropStatements(out, phase, "in_", tableNames, input.getSchema().getTables(), logFile );
+    out.println("if ! hadoop fs -test -e " + "/current" + "; then ");
+    out.println("echo \"Creating persistent tables...\"");
+    generatePersistentTables(out, persistent, phase, input, "merged_", true, true, logFile, true );
+    generatePersistentTables(out, persistent, phase, input, "cur_", true, false, logFile, true );
+    out.println("sudo hive -f " + config.getEmrCodeDir() + "/" + persistentFile + " >> " + logFile
+        + " 2>&1");
+    out.println("fi");
     out.println();
-    generateDropStatements(out, phase, "out_", tableNames, output.getSchema().getTables(), logFile );
-    out.println(); 
-    generateCreateStatements(out, phase, input, "in_", true, logFile, false );
-    generateCreateStatements(out, phase, output, "out_", false, logFile, false );
+    generateTableBlocks(ddl, phase, input, "in_", true, false );
+    generateTableBlocks(ddl, phase, output, "out_", false, false );
+    out.println("java -cp " + config.getEmrCodeDir() + "/" + config.getDataToolsJar() + " "
+        + HiveDdlRunner.class.getCanonicalName() + " " + config.getEmrCodeDir() + "/" + ddlFile
+        + " >> " + logFile + " 2>&1");
     out.println("exit $?");
   }
-  
-  private void generatePersistentTables(final PrintStream out, final int phase, final SchemaPhase currentPhase, 
-		  final String prefix, final boolean ignoreOwner, final boolean isTransactional, final String logFile,
-		  final boolean addMetadata ) {
-  	  
-  	final AwsUtils aws = new AwsUtils();  
+
+  private void generatePersistentTables(final PrintStream out, final PrintStream ddl,
+      final int phase, final SchemaPhase currentPhase, final String prefix,
+      final boolean ignoreOwner, final boolean isTransactional, final String logFile,
+      final boolean addMetadata ) {
 	if (currentPhase != null) {
 	  final Map<String, DataSchemaTable> inTables = currentPhase.getSchema().getTables();
 	  final List<String> inTableKeys = new ArrayList<String>(inTables.keySet());
 	  Collections.sort(inTableKeys);
+	  if (!isTransactional && !textSchema.tableNames().isEmpty()) {
+	    // One listing of the full text location answers the check for every table
+	    aws.cacheListing(config.getFullTextLocation());
+	  }
 
-      out.println("if ! hadoop fs -test -e " + "/current" + "; then ");
-      out.println("echo \"Creating persistent tables...\"");      
 	  for (final String tableKey : inTableKeys) {
 	    final DataSchemaTable table = inTables.get(tableKey);
 	    if (!(table.isTemporary() && table.getExpirationPhase() < phase)) {
@@ -94,13 +119,12 @@ public class CreateHiveTableGenerator {
 	        log.info("List text schema tables " + textSchema.tableNames() + "Current: " + tableName );
 	        if (textSchema.tableNames().contains(table.getTableName() ) ) {
 	            if ( isTransactional ) {
-	                createTableTransactional( out, tableName, table, logFile, addMetadata );
+	                createTableTransactional( ddl, tableName, table, addMetadata );
 	            } else {
 	                final S3ObjectId fulltextobj = AwsUtils.key(config.getFullTextLocation(), table.getTableName() + "/fulltable");
 	                if ( aws.keyExists(fulltextobj) ) {
 	                    generateCopyStatement(out, tableName, table );
-	                    createTablePartial( out, tableName, table, "/current", logFile, addMetadata );
-	            	    out.println();
+	                    createTablePartial( ddl, tableName, table, "/current", addMetadata );
 	                } else {
 	                	out.println("echo \"Full text table for " + table.getTableName() + " does not exist.\"" + " >> " + logFile + " 2>&1");
 	                }
@@ -109,25 +133,14 @@ public class CreateHiveTableGenerator {
 	      }
 	    }
 	  }
-      out.println("fi");
 	}
-	out.println();
-  }
-
-  private void generateDropStatements(final PrintStream out, final int phase, final String prefix,
-      final List<String> tableNames, final Map<String, DataSchemaTable> tables, final String logFile ) {
-	out.println("sudo hive -e \"");
-	for (final String tableName : tableNames) {
-      final DataSchemaTable table = tables.get(tableName);
-        if (!(table.isTemporary() && table.getExpirationPhase() < phase)) {
-          out.println("  DROP TABLE IF EXISTS " + prefix + table.getTableName() + " PURGE;");
-        }
-    }
-	out.println("\" >> " + logFile + " 2>&1");
   }
 
-  private void generateCreateStatements(final PrintStream out, final int phase, final SchemaPhase currentPhase,
-      final String prefix, final boolean ignoreOwner, final String logFile, final boolean addMetadata ) {
+  // Each table gets a block that drops it and, unless the table has expired or
+  // is not owned by Hive, creates it again. See HiveDdlRunner for the format.
+  private void generateTableBlocks(final PrintStream ddl, final int phase,
+      final SchemaPhase currentPhase, final String prefix, final boolean ignoreOwner,
+      final boolean addMetadata ) {
     if (currentPhase != null) {
       final Map<String, DataSchemaTable> inTables = currentPhase.getSchema().getTables();
       final List<String> inTableKeys = new ArrayList<String>(inTables.keySet());
@@ -135,12 +148,21 @@ public class CreateHiveTableGenerator {
 
       for (final String tableKey : inTableKeys) {
         final DataSchemaTable table = inTables.get(tableKey);
-        if (!(table.isTemporary() && table.getExpirationPhase() < phase)) {
-          if (ignoreOwner || (table.getOwner() != null && table.getOwner().equals(TableOwner.hive))) {
-            final String tableName = prefix + table.getTableName();
-            createTable(out, tableName, table, currentPhase.getHDFSDir(), logFile, addMetadata );
-          }
+        final String tableName = prefix + table.getTableName();
+        final String drop = "DROP TABLE IF EXISTS " + tableName + " PURGE;";
+        if (!(table.isTemporary() && table.getExpirationPhase() < phase)
+            && (ignoreOwner || (table.getOwner() != null && table.getOwner().equals(TableOwner.hive)))) {
+          final String create = createTable(tableName, table, currentPhase.getHDFSDir(), addMetadata );
+          final String hash = HiveDdlRunner.schemaHash(create);
+          ddl.println(HiveDdlRunner.TABLE_MARKER + tableName + " " + hash);
+          ddl.println(drop);
+          ddl.println(create);
+          ddl.println("    TBLPROPERTIES ('" + HiveDdlRunner.SCHEMA_HASH_PROPERTY + "'='" + hash + "');");
+        } else {
+          ddl.println(HiveDdlRunner.TABLE_MARKER + tableName);
+          ddl.println(drop);
         }
+        ddl.println();
       }
     }
   }
@@ -153,124 +175,96 @@ public class CreateHiveTableGenerator {
     		      + " --dest=hdfs:///current" + "/" + table.getTableName() );
   }
 
-  private void createTable(final PrintStream out, final String tableName,
-      final DataSchemaTable table, final String locationVar, final String logFile, final boolean addMetadata ) {
-
-      final FormatLibrary formatLibrary = new FormatLibrary();
-      final boolean isQuotedFormat = formatLibrary.getFormat(config.getFulltextFormat())
-						  .getCsvFormat()
-						  .isQuoteCharacterSet();
-	  
-	out.println("sudo hive -e \"");
-    out.println("  CREATE EXTERNAL TABLE " + tableName + " (");
-    listFields(out, table, table.getListofColumns(), addMetadata );
-    out.println("    )");
-    //out.println("    ROW FORMAT DELIMITED FIELDS TERMINATED BY '\\t' LINES TERMINATED By '\\n'");
-    addRowFormat(out, false );
-    out.println("    STORED AS TEXTFILE");
-    out.println("    LOCATION '" + locationVar + "/" + table.getTableName() + "/';");
-    out.println();
-    out.println("\" >> " + logFile + " 2>&1");
+  // Returns the statement without its table properties or terminating
+  // semicolon, so that the text can be hashed.
+  private String createTable(final String tableName, final DataSchemaTable table,
+      final String locationVar, final boolean addMetadata ) {
+    final StringBuilder s = new StringBuilder();
+    s.append("CREATE EXTERNAL TABLE ").append(tableName).append(" (\n");
+    appendFields(s, table, table.getListofColumns(), addMetadata).append("\n");
+    s.append("    )\n");
+    s.append(ROW_FORMAT_DELIMITED).append("\n");
+    s.append("    STORED AS TEXTFILE\n");
+    s.append("    LOCATION '").append(locationVar).append("/").append(table.getTableName());
+    return s.append("/'").toString();
   }
 
   private void createTablePartial(final PrintStream out, final String tableName,
-	      final DataSchemaTable table, final String locationVar, final String logFile, final boolean addMetadata ) {
-	
-	final FormatLibrary formatLibrary = new FormatLibrary();
-	final boolean isQuotedFormat = formatLibrary.getFormat(config.getFulltextFormat())
-						    .getCsvFormat()
-						    .isQuoteCharacterSet();
-	
+	      final DataSchemaTable table, final String locationVar, final boolean addMetadata ) {
 	final FullTextTable fulltexttable = textSchema.get( table.getTableName() );
-	final List<String> textfieldsonly = fulltexttable.getColumns();
+	final List<String> textfieldsonly = new ArrayList<String>(fulltexttable.getColumns());
 	textfieldsonly.add(0, fulltexttable.getKey());
-	out.println("sudo hive -e \"");
-	out.println("  CREATE EXTERNAL TABLE " + tableName + " (");
+	out.println("CREATE EXTERNAL TABLE " + tableName + " (");
 	listFields(out, table, textfieldsonly, addMetadata );
 	out.println("    )");
-	//out.println("    ROW FORMAT DELIMITED FIELDS TERMINATED BY '\\t' LINES TERMINATED By '\\n'");
 	addRowFormat(out, false );
 	out.println("    STORED AS TEXTFILE");
 	out.println("    LOCATION '" + locationVar + "/" + table.getTableName() + "/';");
 	out.println();
-	out.println("\" >> " + logFile + " 2>&1");
   }  
   
   private void createTableTransactional(final PrintStream out, final String tableName,
-	      final DataSchemaTable table, final String logFile, final boolean addMetadata ) {
+	      final DataSchemaTable table, final boolean addMetadata ) {
 	final FullTextTable fulltexttable = textSchema.get( table.getTableName() );
-	final List<String> textfieldsonly = fulltexttable.getColumns();
+	final List<String> textfieldsonly = new ArrayList<String>(fulltexttable.getColumns());
 	textfieldsonly.add(0, fulltexttable.getKey());
-	out.println("sudo hive -e \"");	
-	out.println("  CREATE TABLE " + tableName + " (");
+	out.println("CREATE TABLE " + tableName + " (");
 	listFields(out, table, textfieldsonly, addMetadata );
 	out.println("    )");
 	out.println("    COMMENT 'Latest comprehensive output data merging current + historical'");
 	out.println("    CLUSTERED BY (" + fulltexttable.getKey() + ") into 2 buckets stored as orc");
 	out.println("    TBLPROPERTIES ('transactional'='true');");
-    out.println("\" >> " + logFile + " 2>&1");	
 	out.println();
   }
 
-  private void listFields(final PrintStream out, final DataSchemaTable table, 
-		  final List<String> subsetcolumns, final boolean addMetadata ) {
-	final FullTextTable fulltexttable = textSchema.get( table.getTableName() );
-	final List<DataSchemaColumn> columns = table.getColumns();
-    String concatFields = new String();
-    List<String> listofstrings = new ArrayList<String>();
-    List<String> listofmeta = new ArrayList<String>();
-    String separator = ",\n";
-	final DataSchemaType timestamptype = (DataSchemaType) DataSchemaType.parse("timestamp");
-    for (int i = 0; i < columns.size(); i++) {
-      final DataSchemaColumn column = columns.get(i);
-      String columnName = column.getName();
-      String newColumnName = new String();
+  private void listFields(final PrintStream out, final DataSchemaTable table,
+      final List<String> subsetcolumns, final boolean addMetadata) {
+    out.println(appendFields(new StringBuilder(), table, subsetcolumns, addMetadata));
+  }
+
+  private StringBuilder appendFields(final StringBuilder s, final DataSchemaTable table,
+      final List<String> subsetcolumns, final boolean addMetadata) {
+    final FullTextTable fulltexttable = textSchema.get(table.getTableName());
+    final List<String> fields = new ArrayList<String>();
+    final List<String> times = new ArrayList<String>();
+    for (final DataSchemaColumn column : table.getColumns()) {
+      final String columnName = column.getName();
       if (subsetcolumns.contains(columnName)) {
-    	  newColumnName = checkField( columnName, column, true );
-    	  listofstrings.add(newColumnName);
-    	  if (addMetadata && !columnName.equals( fulltexttable.getKey()) ) {
-    		  String timestampField = addTimestamp( columnName );
-    		  listofmeta.add( addCheckedField(timestampField, timestamptype.getHiveType(), true ));
-    	  }
+        fields.add(field(SqlEmitter.columnName(column), column.getType().getHiveType()));
+        if (addMetadata && !columnName.equals(fulltexttable.getKey())) {
+          times.add(field(addTimestamp(columnName), DataSchemaType.Timestamp.getHiveType()));
+        }
       }
     }
-    List<String> orderList = new ArrayList<String>(listofstrings);
-    if (addMetadata) orderList.addAll(listofmeta);
-    concatFields = StringUtils.join( orderList, separator );
-    out.println(concatFields);
+    if (addMetadata) {
+      fields.addAll(times);
+      // Checksums of the full text columns; see FullTextCopyScriptGenerator.
+      fields.add(field("fingerprint", DataSchemaType.Text.getHiveType()));
+    }
+    return SqlEmitter.join(s, fields, ",\n");
   }
-  
+
   private String addTimestamp( final String columnName ) {
 	  return ("time_" + columnName );
   }
-  
-  private String checkField( final String columnName, final DataSchemaColumn column,
-		  final boolean protectAgainstReservedKeywords ) {
-	String verifiedColumn = new String();
-    if (columnName.contains(".")) verifiedColumn = columnName.substring(columnName.lastIndexOf(".") + 1);  
-    else verifiedColumn = columnName;
-    return addCheckedField( verifiedColumn, column.getType().getHiveType(), protectAgainstReservedKeywords);
-  }
-  
-  private String addCheckedField( final String columnName, final String columnType,
-		  final boolean protectAgainstReservedKeywords ) {
-	if (protectAgainstReservedKeywords) {
-	        return ("    " + "\\`" + columnName + "\\`" + " " + columnType);
-	} else {
-	    	return ("    " + columnName + " " + columnType);
-	}
+
+  // Column names are quoted to protect against Hive reserved keywords.
+  private String field(final String columnName, final String columnType) {
+    final StringBuilder s = new StringBuilder("    ");
+    SqlEmitter.hiveQuoted(s, SqlEmitter.plain(columnName));
+    return s.append(" ").append(columnType).toString();
   }
-  
+
   private void addRowFormat( final PrintStream out, final boolean quotedFields ) {
 	  
 	  if (quotedFields) {
 		  out.println("    ROW FORMAT SERDE 'org.apache.hadoop.hive.serde2.OpenCSVSerde'");
 		  out.println("    WITH SERDEPROPERTIES (");
-		  out.println("       'separatorChar' = '\\\\t',");
-		  out.println("       'escapeChar' = '\\\\\\\\'");
+		  out.println("       'separatorChar' = '\\t',");
+		  out.println("       'escapeChar' = '\\\\'");
 		  out.println("    )");
 	  } else {
-		  out.println("    ROW FORMAT DELIMITED FIELDS TERMINATED BY '\\t' LINES TERMINATED By '\\n'");
+		  out.println(ROW_FORMAT_DELIMITED);
 	  }
   }
   
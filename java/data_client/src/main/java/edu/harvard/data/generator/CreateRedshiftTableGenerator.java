@@ -33,17 +33,20 @@ public class CreateRedshiftTableGenerator {
   }
 
   private void generateCreateTableFile(final PrintStream out, final SchemaPhase phase) {
-    out.println("create schema " + config.getDatasetName() + ";");
+    out.println("create schema " + SqlEmitter.plain(config.getDatasetName()) + ";");
     out.println();
     final List<String> tableNames = new ArrayList<String>();
     for (final DataSchemaTable table : phase.getSchema().getTables().values()) {
       tableNames.add(table.getTableName());
     }
     Collections.sort(tableNames);
+    final StringBuilder statement = new StringBuilder();
     for (final String tableName : tableNames) {
       final DataSchemaTable table = phase.getSchema().getTableByName(tableName);
       if (!table.isTemporary()) {
-        out.println(SqlGenerator.generateCreateStatement(table, config.getDatasetName()));
+        statement.setLength(0);
+        SqlGenerator.appendCreateStatement(statement, table, config.getDatasetName());
+        out.println(statement);
       }
     }
   }
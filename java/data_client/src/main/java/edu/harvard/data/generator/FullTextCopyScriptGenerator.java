@@ -11,13 +11,16 @@ import org.apache.commons.lang.StringUtils;
 
 import edu.harvard.data.AwsUtils;
 import edu.harvard.data.DataConfig;
-import edu.harvard.data.FormatLibrary;
+import edu.harvard.data.io.FullTextExtractor;
 import edu.harvard.data.pipeline.InputTableIndex;
 import edu.harvard.data.schema.fulltext.FullTextSchema;
 import edu.harvard.data.schema.fulltext.FullTextTable;
 
 public class FullTextCopyScriptGenerator {
 
+  // Stands in for the checksum of a null column in a row's fingerprint.
+  static final String NULL_CHECKSUM = "-";
+
   private final File dir;
   private final InputTableIndex dataIndex;
   private final DataConfig config;
@@ -50,54 +53,47 @@ public class FullTextCopyScriptGenerator {
   }
 
   private void generateTable(final PrintStream out, final String tableName, final String logFile ) {
-    
+    // The queries are passed to Hive inside double-quoted shell strings.
+    checkIdentifiers(tableName, textSchema.get(tableName));
 	if (dataIndex.isPartial(tableName)) {
 	    out.println("if hadoop fs -test -e " + "/current" + "; then ");	       
     	generateMergeTable(out, tableName, "cur_", logFile );
         out.println("fi");
     	generateMergeTable(out, tableName, "in_", logFile );
-    	generatePartialTable(out, tableName, "merged_");
-    	generateFullTable(out, tableName, "merged_");
+    	generateExtract(out, tableName, "merged_");
     } else {
     	generateMergeTable(out, tableName, "in_", logFile );
-    	generatePartialTable( out, tableName, "merged_");
-    	generateFullTable(out, tableName, "merged_");
+    	generateExtract(out, tableName, "merged_");
         out.println();
     }
   }
-  
-  private void generatePartialTable( final PrintStream out, final String tableName, 
-		  final String outputFrom ) {
-	final FullTextTable table = textSchema.get(tableName);
-    out.println("mkdir -p " + config.getFullTextDir() + "/" + tableName);
-    for (final String column : table.getColumns()) {
-      final String filename = config.getFullTextDir() + "/" + tableName + "/" + column;
-      out.print("sudo hive -S -e \"SELECT " + table.getKey() + ", ");
-      extractField( out, column, true );
-      out.print(" FROM " + outputFrom + tableName + ";\" > " + filename);
-      out.println("");
-      out.println("gzip " + filename);
-    }  
-  }
-	  
-  private void generateFullTable( final PrintStream out, final String tableName, 
-		  final String outputFrom ) {
+
+  // Read the table once, and let FullTextExtractor write and compress the
+  // per-column files and the full table in parallel.
+  private void generateExtract(final PrintStream out, final String tableName,
+      final String outputFrom) {
     final FullTextTable table = textSchema.get(tableName);
-    out.println("mkdir -p " + config.getFullTextDir() + "/" + tableName + "/fulltable");
-    final String filename = config.getFullTextDir() + "/" + tableName + "/fulltable/" + tableName;
-    out.print("sudo hive -S -e \"SELECT " );
-    extractFields(out, table, tableName, outputFrom, true );
-    out.println(" FROM " + outputFrom + tableName + ";\" > " + filename);
-    out.println("gzip " + filename);
+    out.print("sudo hive -S -e \"SELECT ");
+    extractFields(out, table, tableName, outputFrom, true);
+    out.println(" FROM " + outputFrom + tableName + ";\" | java -cp " + config.getEmrCodeDir()
+        + "/" + config.getDataToolsJar() + " " + FullTextExtractor.class.getCanonicalName() + " "
+        + config.getFullTextDir() + " " + tableName + " " + config.getFulltextFormat() + " "
+        + table.getKey() + " " + StringUtils.join(table.getColumns(), " "));
   }
   
+  // Every row of merged_ holds a fingerprint of its full text columns, which is
+  // calculated once when the row is written. The merge compares fingerprints,
+  // so rows that haven't changed are skipped without reading their text.
   private void generateMergeTable( final PrintStream out, final String tableName, final String copyFrom,
 		  final String logFile ) {
 	final FullTextTable table = textSchema.get(tableName);
+    final String source = copyFrom + tableName;
+    final String target = "merged_" + tableName;
     out.println("sudo hive -e \"");
-	out.println("  MERGE INTO merged_" + tableName );
-	out.println("  USING " + copyFrom + tableName + " ON merged_" + tableName
-			    + "." + table.getKey() + " = " + copyFrom + tableName + "." + table.getKey() );
+	out.println("  MERGE INTO " + target );
+	out.println("  USING (SELECT " + sourceFields(table, source, copyFrom) + " FROM " + source
+	    + ") " + source + " ON " + target + "." + table.getKey() + " = " + source + "."
+	    + table.getKey() );
 	matchFields( out, table, tableName, copyFrom, true);
     out.println("  WHEN NOT MATCHED THEN");
     out.println("  INSERT VALUES (");
@@ -106,6 +102,58 @@ public class FullTextCopyScriptGenerator {
 	out.println("");
 	out.println("\" >> " + logFile + " 2>&1");    
   }
+
+  private String sourceFields(final FullTextTable table, final String source,
+      final String copyFrom) {
+    final List<String> fields = new ArrayList<String>();
+    fields.add(table.getKey());
+    for (final String column : textColumns(table)) {
+      fields.add(column);
+    }
+    if (copyFrom.equals("cur_")) {
+      for (final String column : textColumns(table)) {
+        fields.add(addTimestamp(column));
+      }
+      // Tables archived before fingerprints were introduced have no
+      // fingerprint column.
+      fields.add("coalesce(fingerprint, " + fingerprint(table) + ") AS fingerprint");
+    } else {
+      fields.add(fingerprint(table) + " AS fingerprint");
+    }
+    return StringUtils.join(fields, ", ");
+  }
+
+  // The comma-separated MD5 checksums of the full text columns, with a
+  // placeholder for null values.
+  private String fingerprint(final FullTextTable table) {
+    final List<String> checksums = new ArrayList<String>();
+    for (final String column : textColumns(table)) {
+      checksums.add("coalesce(md5(" + column + "), '" + NULL_CHECKSUM + "')");
+    }
+    return "concat_ws(',', " + StringUtils.join(checksums, ", ") + ")";
+  }
+
+  private String columnChecksum(final String tableName, final int index) {
+    return "split(" + tableName + ".fingerprint, ',')[" + index + "]";
+  }
+
+  private void checkIdentifiers(final String tableName, final FullTextTable table) {
+    SqlEmitter.plain(tableName);
+    SqlEmitter.plain(table.getKey());
+    for (final String column : table.getColumns()) {
+      SqlEmitter.plain(column);
+    }
+  }
+
+  private List<String> textColumns(final FullTextTable table) {
+    final List<String> columns = new ArrayList<String>();
+    for (final String column : table.getColumns()) {
+      if (!column.equals(table.getKey())) {
+        columns.add(column);
+      }
+    }
+    return columns;
+  }
   
   private void extractFields( final PrintStream out, final FullTextTable table,
 		  final String tableName, final String extractFrom, final boolean addMetadata ) {
@@ -121,26 +169,12 @@ public class FullTextCopyScriptGenerator {
 	  }
 	}
 	List<String> orderList = new ArrayList<String>(listofstrings);
-	if (addMetadata) orderList.addAll(listofmeta);    
-	finalstring = StringUtils.join( orderList, separator );
-	out.println(finalstring);  
-  }
-  
-  private void extractField( final PrintStream out, final String textcolumn, 
-		  final boolean addMetadata ) {
-	String finalstring = new String();
-	List<String> listofstrings = new ArrayList<String>();
-    List<String> listofmeta = new ArrayList<String>();
-	String separator = ", ";
-	listofstrings.add(textcolumn);
 	if (addMetadata) {
-	    listofstrings.add( addChecksum(textcolumn));
-		listofmeta.add( addTimestamp(textcolumn));
+	  orderList.addAll(listofmeta);
+	  orderList.add("fingerprint");
 	}
-    List<String> orderList = new ArrayList<String>(listofstrings);
-    if (addMetadata) orderList.addAll(listofmeta);    	
 	finalstring = StringUtils.join( orderList, separator );
-	out.println(finalstring);
+	out.println(finalstring);  
   }
   
   private void matchFields( final PrintStream out, final FullTextTable table,
@@ -149,51 +183,41 @@ public class FullTextCopyScriptGenerator {
 	List<String> listofstrings = new ArrayList<String>();
 	List<String> listofmeta = new ArrayList<String>();
 	String separator = ",\n";
-	out.println("  WHEN MATCHED THEN UPDATE SET ");	
-	for (final String column : table.getColumns() ) {
-		listofstrings.add( "    " + column + "=" + "( CASE " +
-					" WHEN ( " + "md5( merged_" + tableName + "." + column + " ) != md5( " + copyFrom + tableName + "." + column + " ) ) " +
-				    " THEN " + copyFrom + tableName + "." + column + 
-				    " ELSE " + "merged_" + tableName + "." + column + 
+    final String source = copyFrom + tableName;
+    final String target = "merged_" + tableName;
+	out.println("  WHEN MATCHED AND " + target + ".fingerprint != " + source + ".fingerprint"
+	    + " THEN UPDATE SET ");
+	final List<String> columns = textColumns(table);
+	for (int i = 0; i < columns.size(); i++) {
+		final String column = columns.get(i);
+		final String changed = " WHEN ( " + columnChecksum(target, i) + " != "
+		    + columnChecksum(source, i) + " ) ";
+		listofstrings.add( "    " + column + "=" + "( CASE " + changed +
+				    " THEN " + source + "." + column + 
+				    " ELSE " + target + "." + column + 
 				    " END )");
 		if (addMetadata) {
 			String timevalue = new String();
 			if (copyFrom.equals("in_")) {
 				timevalue = "current_timestamp";
 			} else {
-				timevalue = copyFrom + tableName + "." + "time_" + column;
+				timevalue = source + "." + "time_" + column;
 			}
-			listofmeta.add( "    " + "time_" + column + "=" + "( CASE " +
-					" WHEN ( " + "md5( merged_" + tableName + "." + column + " ) != md5( " + copyFrom + tableName + "." + column + " ) ) " +
+			listofmeta.add( "    " + "time_" + column + "=" + "( CASE " + changed +
 				    " THEN " + timevalue + 
-				    " ELSE " + "merged_" + tableName + "." + "time_" + column + 
+				    " ELSE " + target + "." + "time_" + column + 
 				    " END )");		
 		}
 	}
     List<String> orderList = new ArrayList<String>(listofstrings);
-    if (addMetadata) orderList.addAll(listofmeta);    	
+    if (addMetadata) {
+      orderList.addAll(listofmeta);
+      orderList.add("    fingerprint=" + source + ".fingerprint");
+    }
 	finalstring = StringUtils.join( orderList, separator );
 	out.println(finalstring);	
   }
 
-  private String addChecksum( final String fulltextfield ) {
-	final FormatLibrary formatLibrary = new FormatLibrary();
-	final boolean isQuotedFormat = formatLibrary.getFormat(config.getFulltextFormat())
-							    .getCsvFormat()
-							    .isQuoteCharacterSet();	  
-	String checkSumString = new String();
-	
-	if (isQuotedFormat) {
-		// If quoted, then remove quotes and replace escaped double quotes with single quotes
-	    checkSumString = ("md5(substr(regexp_replace(" + fulltextfield + ", '\\" + "\"" + "\\" + "\"" + "', '" + "\\" + "\"" + "'), " +
-	    				  "2, length(regexp_replace(" + fulltextfield + ", '\\" + "\"" + "\\" + "\"" + "', '" + "\\" + "\"" +
-	    		          "')) -2) )");
-	} else {
-	    checkSumString = ("md5(" + fulltextfield + ")");
-	}
-	return checkSumString;
-  }
-  
   private String addTimestamp(final String fulltextfield ) {
 	  return ("time_" + fulltextfield );
   }
@@ -235,7 +259,10 @@ public class FullTextCopyScriptGenerator {
       
     }
     List<String> orderList = new ArrayList<String>(listofstrings);
-    if (addMetadata) orderList.addAll(listofmeta);
+    if (addMetadata) {
+      orderList.addAll(listofmeta);
+      orderList.add(copyFrom + tableName + ".fingerprint");
+    }
     finalstring = StringUtils.join( orderList, separator );
     out.println(finalstring);
   }  
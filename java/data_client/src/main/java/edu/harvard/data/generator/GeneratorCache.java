@@ -0,0 +1,178 @@
+package edu.harvard.data.generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.amazonaws.services.s3.model.S3ObjectId;
+
+import edu.harvard.data.AwsUtils;
+import edu.harvard.data.schema.DataSchema;
+import edu.harvard.data.schema.DataSchemaColumn;
+import edu.harvard.data.schema.DataSchemaTable;
+
+/**
+ * Stores the compiled data tools jar for a set of generator inputs, so that a
+ * cluster whose inputs match an earlier run does not have to generate and
+ * compile the Java bindings again.
+ * <P>
+ * The cache is keyed on a hash of the generator version, the configuration
+ * settings, the schema for each phase and the contents of the schema resources
+ * on the classpath. These are all the inputs to the Java code that goes into
+ * the jar. The pipeline scripts are not cached; they are cheap to generate, and
+ * several of them depend on the data index for the current run.
+ * <P>
+ * On a cache hit, {@link #restore} downloads the jar into the code directory.
+ * On a miss, the generator writes the S3 location of the cache entry to
+ * {@value #LOCATION_FILE} in the code directory; the generator script uploads
+ * the jar there once it has been compiled.
+ */
+public class GeneratorCache {
+  private static final Logger log = LogManager.getLogger();
+
+  /**
+   * The system property that holds the generator version (normally the git
+   * commit of the checked out code). Without it, nothing is cached.
+   */
+  public static final String VERSION_PROPERTY = "edu.harvard.data.generator.version";
+  public static final String LOCATION_FILE = "generator_cache_location";
+
+  private final AwsUtils aws;
+  private final S3ObjectId cacheLocation;
+  private final File codeDir;
+  private final String jarName;
+
+  /**
+   * @param cacheLocation
+   *          the S3 directory that holds a jar for each hash.
+   * @param codeDir
+   *          the directory where generated files are stored.
+   * @param jarName
+   *          the file name of the data tools jar in the code directory.
+   */
+  public GeneratorCache(final AwsUtils aws, final S3ObjectId cacheLocation, final File codeDir,
+      final String jarName) {
+    this.aws = aws;
+    this.cacheLocation = cacheLocation;
+    this.codeDir = codeDir;
+    this.jarName = jarName;
+  }
+
+  /**
+   * Calculate the hash of a set of generator inputs. The hash does not depend
+   * on the order in which tables or resources are held in their maps.
+   *
+   * @param version
+   *          the generator version.
+   * @param settings
+   *          the configuration settings.
+   * @param schemas
+   *          the schema for each phase.
+   * @param resources
+   *          the contents of each schema resource, keyed by resource name.
+   */
+  public static String hash(final String version, final Map<String, String> settings,
+      final List<DataSchema> schemas, final Map<String, byte[]> resources) {
+    final MessageDigest md5;
+    try {
+      md5 = MessageDigest.getInstance("MD5");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    update(md5, "version", version);
+    for (final String key : sorted(settings.keySet())) {
+      update(md5, "setting", key, settings.get(key));
+    }
+    for (int i = 0; i < schemas.size(); i++) {
+      update(md5, "phase", "" + i);
+      updateSchema(md5, schemas.get(i));
+    }
+    for (final String name : sorted(resources.keySet())) {
+      update(md5, "resource", name);
+      md5.update(resources.get(name));
+    }
+    return Hex.encodeHexString(md5.digest());
+  }
+
+  /**
+   * Read the resources that contribute to the hash from the classpath.
+   * Resources that are null or not present are left out.
+   */
+  public static Map<String, byte[]> readResources(final List<String> names) throws IOException {
+    final Map<String, byte[]> resources = new HashMap<String, byte[]>();
+    final ClassLoader classLoader = CodeGenerator.class.getClassLoader();
+    for (final String name : names) {
+      if (name != null) {
+        try (final InputStream in = classLoader.getResourceAsStream(name)) {
+          if (in != null) {
+            resources.put(name, IOUtils.toByteArray(in));
+          }
+        }
+      }
+    }
+    return resources;
+  }
+
+  /**
+   * Download the jar for a hash into the code directory if the cache holds
+   * one. If not, record where the jar should be stored once it has been built.
+   *
+   * @return true if the jar was restored from the cache.
+   */
+  public boolean restore(final String hash) throws IOException {
+    final S3ObjectId jar = AwsUtils.key(cacheLocation, hash, jarName);
+    if (aws.isFile(jar)) {
+      log.info("Restoring " + jarName + " from " + AwsUtils.uri(jar));
+      aws.getFile(jar, new File(codeDir, jarName));
+      return true;
+    }
+    log.info("No cached " + jarName + " for generator inputs " + hash);
+    FileUtils.writeStringToFile(new File(codeDir, LOCATION_FILE), AwsUtils.uri(jar) + "\n",
+        StandardCharsets.UTF_8);
+    return false;
+  }
+
+  private static void updateSchema(final MessageDigest md5, final DataSchema schema) {
+    final Map<String, DataSchemaTable> tables = schema.getTables();
+    for (final String name : sorted(tables.keySet())) {
+      final DataSchemaTable table = tables.get(name);
+      update(md5, "table", name, table.getTableName(), "" + table.getOwner(),
+          "" + table.getExpirationPhase(), table.getLikeTable(), "" + table.getNewlyGenerated());
+      for (final DataSchemaColumn column : table.getColumns()) {
+        update(md5, "column", column.getName(), column.getSourceName(), column.getDescription(),
+            "" + column.getType(), "" + column.getLength(), "" + column.getNewlyGenerated());
+      }
+    }
+  }
+
+  // Each value is written with its length so that adjacent values can't run
+  // together to give the same bytes.
+  private static void update(final MessageDigest md5, final String... values) {
+    for (final String value : values) {
+      final byte[] bytes = ("" + value).getBytes(StandardCharsets.UTF_8);
+      md5.update((bytes.length + ":").getBytes(StandardCharsets.UTF_8));
+      md5.update(bytes);
+    }
+  }
+
+  private static List<String> sorted(final Collection<String> values) {
+    final List<String> list = new ArrayList<String>(values);
+    Collections.sort(list);
+    return list;
+  }
+}
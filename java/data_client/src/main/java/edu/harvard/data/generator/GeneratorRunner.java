@@ -0,0 +1,108 @@
+package edu.harvard.data.generator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.harvard.data.VerificationException;
+
+/**
+ * Runs the generators used by {@link CodeGenerator} on a bounded thread pool.
+ * <P>
+ * Every generator is given all of its inputs (the generation spec, the
+ * configuration, the data index and any S3 listings) before it starts, and
+ * writes its own set of files. No generator reads another's output, so the
+ * generated files are the same whatever order the generators run in. With a
+ * single thread, the generators run one after another in the order in which
+ * they were added.
+ */
+public class GeneratorRunner {
+  private static final Logger log = LogManager.getLogger();
+
+  public static final int DEFAULT_THREADS = 4;
+
+  private final int threads;
+  private final List<Generator> generators;
+
+  /**
+   * A single generator, with the inputs it needs captured when it is created.
+   */
+  public interface Generator {
+    void generate() throws IOException, VerificationException;
+  }
+
+  public GeneratorRunner(final int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be positive: " + threads);
+    }
+    this.threads = threads;
+    this.generators = new ArrayList<Generator>();
+  }
+
+  public void add(final Generator generator) {
+    generators.add(generator);
+  }
+
+  /**
+   * Run every generator that has been added, and wait for them all to finish.
+   *
+   * @throws IOException
+   *           if a generator fails to write its output. If several generators
+   *           fail, the exception is the one from the generator that was added
+   *           first.
+   * @throws VerificationException
+   *           if a generator finds an error in the input schemas.
+   */
+  public void run() throws IOException, VerificationException {
+    if (threads == 1) {
+      for (final Generator generator : generators) {
+        generator.generate();
+      }
+      return;
+    }
+    final ExecutorService exec = Executors.newFixedThreadPool(threads);
+    try {
+      final List<Future<Void>> results = new ArrayList<Future<Void>>();
+      for (final Generator generator : generators) {
+        results.add(exec.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException, VerificationException {
+            generator.generate();
+            return null;
+          }
+        }));
+      }
+      for (final Future<Void> result : results) {
+        try {
+          result.get();
+        } catch (final ExecutionException e) {
+          final Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          }
+          if (cause instanceof VerificationException) {
+            throw (VerificationException) cause;
+          }
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          }
+          throw new IOException(cause);
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while waiting for generators", e);
+        }
+      }
+      log.info("Ran " + generators.size() + " generators on " + threads + " threads");
+    } finally {
+      exec.shutdownNow();
+    }
+  }
+}
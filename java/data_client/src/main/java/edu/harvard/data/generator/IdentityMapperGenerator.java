@@ -132,8 +132,8 @@ public class IdentityMapperGenerator {
     out.println("      " + fieldType + " " + fieldName + " = phase0." + getter + "();");
     for (final IdentifierType identifierType : identities.get(columnName)) {
       if (identifierType != IdentifierType.Other) {
-        out.println("      if (IdentifierType." + identifierType + ".getPattern().matcher("
-            + fieldName + ").matches()) {");
+        out.println("      if (IdentifierType." + identifierType + ".matches(" + fieldName
+            + ")) {");
         out.println("        $id.set(IdentifierType." + identifierType.toString() + ", phase0."
             + getter + "());");
         out.println("        populated = true;");
@@ -11,16 +11,21 @@ import java.util.List;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import edu.harvard.data.DataConfig;
+import edu.harvard.data.MoveUnmodifiedTables;
 import edu.harvard.data.schema.DataSchemaTable;
 
 public class MoveUnmodifiedTableGenerator {
   private static final Logger log = LogManager.getLogger();
 
   private final File dir;
+  private final DataConfig config;
   private final GenerationSpec schemaVersions;
 
-  public MoveUnmodifiedTableGenerator(final File dir, final GenerationSpec schemaVersions) {
+  public MoveUnmodifiedTableGenerator(final File dir, final DataConfig config,
+      final GenerationSpec schemaVersions) {
     this.dir = dir;
+    this.config = config;
     this.schemaVersions = schemaVersions;
   }
 
@@ -36,10 +41,10 @@ public class MoveUnmodifiedTableGenerator {
     }
   }
 
+  // All of the moves for a phase are made by MoveUnmodifiedTables in a single
+  // JVM, which also creates the output directory.
   private void moveUnmodifiedFiles(final PrintStream out, final int phase,
       final SchemaPhase inputPhase, final SchemaPhase outputPhase, final String logFile) {
-    out.println("if ! hadoop fs -test -e " + outputPhase.getHDFSDir() + "; then hadoop fs -mkdir "
-        + outputPhase.getHDFSDir() + "; fi");
     out.println("set -e"); // Exit on any failure
     out.println("sudo mkdir -p /var/log/hive/user/hadoop # Workaround for Hive logging bug");
     out.println("sudo chown hive:hive -R /var/log/hive");
@@ -49,20 +54,24 @@ public class MoveUnmodifiedTableGenerator {
       tableNames.add(table.getTableName());
     }
     Collections.sort(tableNames);
+    final List<String> unmodified = new ArrayList<String>();
     for (final String tableName : tableNames) {
       final DataSchemaTable table = outputPhase.getSchema().getTableByName(tableName);
       if (!(table.isTemporary() && table.getExpirationPhase() < phase)) {
         if (!table.hasNewlyGeneratedElements()) {
           if (table.getOwner() == null) {
-            final String hdfsDir = inputPhase.getHDFSDir() + "/" + table.getTableName();
-            final String test = "hadoop fs -test -d " + hdfsDir;
-            final String move = "hadoop fs -mv " + hdfsDir + " " + outputPhase.getHDFSDir() + "/"
-                + table.getTableName();
-            out.println(test + " && " + move + " &>> " + logFile);
+            unmodified.add(table.getTableName());
           }
         }
       }
     }
+    out.print("hadoop jar " + config.getEmrCodeDir() + "/" + config.getDataToolsJar() + " "
+        + MoveUnmodifiedTables.class.getCanonicalName() + " " + inputPhase.getHDFSDir() + " "
+        + outputPhase.getHDFSDir());
+    for (final String tableName : unmodified) {
+      out.print(" " + tableName);
+    }
+    out.println(" &>> " + logFile);
     out.println("exit 0");
   }
 }
@@ -4,8 +4,12 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.List;
 import java.util.zip.GZIPOutputStream;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
 import com.amazonaws.services.s3.model.S3ObjectId;
 import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.databind.JsonMappingException;
@@ -14,35 +18,46 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import edu.harvard.data.AwsUtils;
 import edu.harvard.data.DataConfig;
 import edu.harvard.data.pipeline.InputTableIndex;
+import edu.harvard.data.pipeline.S3ToHdfsCopyPlan;
 
 public class S3ToHdfsManifestGenerator {
+  private static final Logger log = LogManager.getLogger();
+
   private final File dir;
   private final InputTableIndex dataIndex;
+  private final S3ToHdfsCopyPlan copyPlan;
   private final DataConfig config;
   private final ObjectMapper jsonMapper;
 
   public S3ToHdfsManifestGenerator(final File dir, final DataConfig config,
-      final InputTableIndex dataIndex) {
+      final InputTableIndex dataIndex, final S3ToHdfsCopyPlan copyPlan) {
     this.config = config;
     this.dir = dir;
     this.dataIndex = dataIndex;
+    this.copyPlan = copyPlan;
     this.jsonMapper = new ObjectMapper();
   }
 
+  /**
+   * Write one manifest for each task in the copy plan stored by the pipeline
+   * setup. Each manifest is copied by a separate s3-dist-cp activity; see
+   * {@link edu.harvard.data.pipeline.EmrStartupPipelineSetup}.
+   */
   public void generate() throws IOException {
-    final File manifestFile = new File(dir, config.getS3ToHdfsManifestFile());
-
-    try (final PrintStream out = new PrintStream(
-        new GZIPOutputStream(new FileOutputStream(manifestFile)))) {
-      for (final String table : dataIndex.getTableNames()) {
-        generateManifestEntries(out, table);
+    for (int task = 0; task < copyPlan.getTaskCount(); task++) {
+      final File manifestFile = new File(dir, config.getS3ToHdfsManifestFile(task));
+      final List<S3ObjectId> files = copyPlan.getFiles(task);
+      log.info("Copy task " + task + ": " + files.size() + " files");
+      try (final PrintStream out = new PrintStream(
+          new GZIPOutputStream(new FileOutputStream(manifestFile)))) {
+        generateManifestEntries(out, files);
       }
     }
   }
 
-  private void generateManifestEntries(final PrintStream out, final String table)
+  private void generateManifestEntries(final PrintStream out, final List<S3ObjectId> files)
       throws JsonGenerationException, JsonMappingException, IOException {
-    for (final S3ObjectId file : dataIndex.getFiles(table)) {
+    for (final S3ObjectId file : files) {
       final S3ToHdfsManifestLine line = new S3ToHdfsManifestLine();
       final String[] keyParts = file.getKey().split("/");
       line.path = AwsUtils.uri(file);
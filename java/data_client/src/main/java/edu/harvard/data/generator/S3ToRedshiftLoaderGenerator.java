@@ -105,20 +105,11 @@ public class S3ToRedshiftLoaderGenerator {
   }
 
   private String getColumnList(final DataSchemaTable table) {
-    String columnList = "(";
-    for (int i = 0; i < table.getColumns().size(); i++) {
-      final DataSchemaColumn column = table.getColumns().get(i);
-      String columnName = column.getName();
-      if (columnName.contains(".")) {
-        columnName = columnName.substring(columnName.lastIndexOf(".") + 1);
-      }
-      if (i > 0) {
-        columnList += ",";
-      }
-      columnList += columnName;
+    final List<String> columnNames = new ArrayList<String>();
+    for (final DataSchemaColumn column : table.getColumns()) {
+      columnNames.add(SqlEmitter.plain(SqlEmitter.columnName(column)));
     }
-    columnList += ")";
-    return columnList;
+    return SqlEmitter.join(new StringBuilder("("), columnNames, ",").append(")").toString();
   }
 
   private void outputPartialTableUpdate(final PrintStream out, final DataSchemaTable table,
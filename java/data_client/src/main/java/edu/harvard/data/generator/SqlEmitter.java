@@ -0,0 +1,92 @@
+package edu.harvard.data.generator;
+
+import java.util.regex.Pattern;
+
+import edu.harvard.data.schema.DataSchemaColumn;
+
+/**
+ * Identifier quoting and list formatting shared by the generators that write
+ * SQL, HiveQL and shell scripts.
+ * <P>
+ * Identifiers come from schema files, so every identifier that is written
+ * without quotes is checked before it is used. A name that could change the
+ * meaning of the generated statement (by containing a space, quote, semicolon
+ * or similar) causes an {@link IllegalArgumentException} at generation time,
+ * rather than a broken statement when the pipeline runs.
+ * <P>
+ * The methods append to a {@link StringBuilder} supplied by the caller, so
+ * that a statement can be built up without creating intermediate strings and
+ * then written to the output stream in one call.
+ */
+public final class SqlEmitter {
+
+  private static final Pattern PLAIN_IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+  private SqlEmitter() {
+  }
+
+  /**
+   * Check that an identifier can be written without quotes in both Redshift
+   * and Hive, and inside a double-quoted shell string.
+   *
+   * @return the identifier, unchanged.
+   *
+   * @throws IllegalArgumentException
+   *           if the identifier is null, empty, starts with a digit or
+   *           contains a character other than a letter, digit or underscore.
+   */
+  public static String plain(final String identifier) {
+    if (identifier == null || !PLAIN_IDENTIFIER.matcher(identifier).matches()) {
+      throw new IllegalArgumentException("Invalid SQL identifier: " + identifier);
+    }
+    return identifier;
+  }
+
+  /**
+   * @return a qualified name of the form {@code schema.table}, with both parts
+   *         checked by {@link #plain}.
+   */
+  public static String qualified(final String schema, final String table) {
+    return plain(schema) + "." + plain(table);
+  }
+
+  /**
+   * Quote an identifier for Redshift. Double quotes in the identifier are
+   * doubled.
+   */
+  public static StringBuilder redshiftQuoted(final StringBuilder out, final String identifier) {
+    return out.append('"').append(identifier.replace("\"", "\"\"")).append('"');
+  }
+
+  /**
+   * Quote an identifier for Hive. Backticks in the identifier are doubled.
+   */
+  public static StringBuilder hiveQuoted(final StringBuilder out, final String identifier) {
+    return out.append('`').append(identifier.replace("`", "``")).append('`');
+  }
+
+  /**
+   * @return the name of a column in its table. Column names of the form
+   *         {@code map.key} are stored in a column named {@code key}.
+   */
+  public static String columnName(final DataSchemaColumn column) {
+    final String name = column.getName();
+    return name.contains(".") ? name.substring(name.lastIndexOf(".") + 1) : name;
+  }
+
+  /**
+   * Append a list of items with a separator between each pair.
+   */
+  public static StringBuilder join(final StringBuilder out, final Iterable<String> items,
+      final String separator) {
+    boolean first = true;
+    for (final String item : items) {
+      if (!first) {
+        out.append(separator);
+      }
+      out.append(item);
+      first = false;
+    }
+    return out;
+  }
+}
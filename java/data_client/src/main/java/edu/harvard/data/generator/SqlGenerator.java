@@ -13,48 +13,65 @@ import edu.harvard.data.schema.existing.ExistingSchemaTable;
 public class SqlGenerator {
   public static String generateCreateStatement(final DataSchemaTable table,
       final String redshiftSchema) {
-    final String tableName = redshiftSchema + "." + table.getTableName();
-    String s = "CREATE TABLE " + tableName + " (\n";
+    return appendCreateStatement(new StringBuilder(), table, redshiftSchema).toString();
+  }
+
+  /**
+   * Append a CREATE TABLE statement to a buffer, so that generators writing
+   * many statements can reuse one buffer.
+   */
+  public static StringBuilder appendCreateStatement(final StringBuilder s,
+      final DataSchemaTable table, final String redshiftSchema) {
+    s.append("CREATE TABLE ").append(SqlEmitter.qualified(redshiftSchema, table.getTableName()));
+    s.append(" (\n");
     final List<DataSchemaColumn> columns = table.getColumns();
     for (int i = 0; i < columns.size(); i++) {
       final DataSchemaColumn column = columns.get(i);
-      String columnName = column.getName();
-      if (columnName.contains(".")) {
-        columnName = columnName.substring(columnName.lastIndexOf(".") + 1);
-      }
-      final String redshiftType = column.getType().getRedshiftType(column.getLength());
-      s += "    " + columnName + " " + redshiftType;
-      if (i < columns.size() - 1) {
-        s += ",\n";
-      } else {
-        s += "\n";
-      }
+      s.append("    ").append(SqlEmitter.plain(SqlEmitter.columnName(column))).append(" ");
+      s.append(column.getType().getRedshiftType(column.getLength()));
+      s.append(i < columns.size() - 1 ? ",\n" : "\n");
     }
-    s += ");\n";
-    return s;
+    return s.append(");\n");
   }
 
   public static String generateAlterStatement(final DataSchemaTable table,
       final String redshiftSchema, final DataSchemaColumn column) {
-    final String tableName = redshiftSchema + "." + table.getTableName();
-
-    final String redshiftType = column.getType().getRedshiftType(column.getLength());
-    return "ALTER TABLE " + tableName + " ADD COLUMN " + column.getName() + " " + redshiftType
-        + ";";
+    final StringBuilder s = new StringBuilder();
+    s.append("ALTER TABLE ").append(SqlEmitter.qualified(redshiftSchema, table.getTableName()));
+    s.append(" ADD COLUMN ").append(SqlEmitter.plain(SqlEmitter.columnName(column))).append(" ");
+    s.append(column.getType().getRedshiftType(column.getLength())).append(";");
+    return s.toString();
   }
 
   public static String generateUnloadStatement(final ExistingSchemaTable table,
       final String redshiftSchema, final DataSchemaTable tableSchema, final String s3Location,
       final String awsKey, final String awsSecret, final Date dataBeginDate) {
-    String s = "UNLOAD ('SELECT ";
+    final StringBuilder s = new StringBuilder();
+    s.append("UNLOAD ('");
+    s.append(generateUnloadQuery(table, redshiftSchema, tableSchema, dataBeginDate));
+    s.append("') TO '").append(generateUnloadDestination(table, redshiftSchema, s3Location));
+    s.append("' CREDENTIALS 'aws_access_key_id=").append(awsKey);
+    s.append(";aws_secret_access_key=").append(awsSecret);
+    s.append("' delimiter '\\t' ALLOWOVERWRITE;");
+    return s.toString();
+  }
+
+  /**
+   * @return the SELECT statement run by an UNLOAD, with quotes escaped for
+   *         inclusion in the UNLOAD statement.
+   */
+  public static String generateUnloadQuery(final ExistingSchemaTable table,
+      final String redshiftSchema, final DataSchemaTable tableSchema, final Date dataBeginDate) {
+    final StringBuilder s = new StringBuilder();
+    s.append("SELECT ");
     final List<DataSchemaColumn> columns = tableSchema.getColumns();
     for (int i = 0; i < columns.size(); i++) {
-      s += "\"" + columns.get(i).getName() + "\"";
+      SqlEmitter.redshiftQuoted(s, SqlEmitter.plain(columns.get(i).getName()));
       if (i < columns.size() - 1) {
-        s += ", ";
+        s.append(", ");
       }
     }
-    s += " FROM " + redshiftSchema + "." + table.getSourceTable();
+    s.append(" FROM ").append(SqlEmitter.qualified(redshiftSchema, table.getSourceTable()));
 
     if (table.getDays() != null) {
       final Calendar fromDate = new GregorianCalendar();
@@ -64,15 +81,15 @@ public class SqlGenerator {
       fromDate.add(Calendar.DATE, (table.getDays() * -1));
 
       final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
-      s += " WHERE " + table.getTimestampColumn() + " >= \\'" + format.format(fromDate.getTime())
-      + "\\'";
+      s.append(" WHERE ").append(SqlEmitter.plain(table.getTimestampColumn())).append(" >= \\'")
+      .append(format.format(fromDate.getTime())).append("\\'");
     }
+    return s.toString();
+  }
 
-    s += "') TO '" + s3Location + "/" + redshiftSchema + "." + table.getTableName()
-    + "/' CREDENTIALS 'aws_access_key_id=" + awsKey + ";aws_secret_access_key=" + awsSecret
-    + "' delimiter '\\t' ALLOWOVERWRITE;";
-
-    return s;
+  public static String generateUnloadDestination(final ExistingSchemaTable table,
+      final String redshiftSchema, final String s3Location) {
+    return s3Location + "/" + redshiftSchema + "." + table.getTableName() + "/";
   }
 
 }
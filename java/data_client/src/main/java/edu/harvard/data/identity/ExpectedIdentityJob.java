@@ -0,0 +1,95 @@
+package edu.harvard.data.identity;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.harvard.data.NoInputDataException;
+import edu.harvard.data.VerificationException;
+
+/**
+ * Converts a sample of records saved before the identity jobs ran into the
+ * research UUIDs that those records should hold afterwards.
+ * <P>
+ * The samples are tab-separated lines of a record ID and the main identifier
+ * of the user that the record refers to. They are joined with the updated
+ * identity map on the main identifier, and the job writes tab-separated lines
+ * of the record ID and the expected research UUID. A
+ * {@link RecordIdentityVerifyJob} then checks the scrubbed table against this
+ * output.
+ * <P>
+ * A sampled user that is missing from the identity map is counted as a failure.
+ * If there are no samples the job is skipped, but the identity map must exist.
+ */
+public class ExpectedIdentityJob extends PostVerifyJob {
+
+  static final int SAMPLE = 1;
+
+  private final String identityMapDir;
+  private final String samplesDir;
+
+  public ExpectedIdentityJob(final Configuration hadoopConfig, final String identityMapDir,
+      final String samplesDir, final String outputDir) {
+    super(hadoopConfig, "postverify-expected-identities", outputDir);
+    this.identityMapDir = identityMapDir;
+    this.samplesDir = samplesDir;
+  }
+
+  @Override
+  protected Job getJob() throws IOException, NoInputDataException, VerificationException {
+    final Job job = newJob();
+    addInput(job, identityMapDir, IdentityMapJoinMapper.class);
+    addOptionalInput(job, samplesDir, SampleJoinMapper.class);
+    job.setReducerClass(ExpectedIdentityReducer.class);
+    return job;
+  }
+}
+
+class SampleJoinMapper extends Mapper<Object, Text, JoinKey, Text> {
+
+  private final JoinKey outKey = new JoinKey();
+  private final Text outValue = new Text();
+
+  @Override
+  public void map(final Object key, final Text value, final Context context)
+      throws IOException, InterruptedException {
+    final String[] parts = value.toString().split("\t");
+    outKey.set(parts[1], ExpectedIdentityJob.SAMPLE);
+    outValue.set(parts[0]);
+    context.write(outKey, outValue);
+  }
+}
+
+/**
+ * Outputs the research UUID for each sampled record. The identity map entry
+ * sorts before the samples, so only that entry is held in memory.
+ */
+class ExpectedIdentityReducer extends Reducer<JoinKey, Text, Text, Text> {
+  private static final Logger log = LogManager.getLogger();
+
+  private final Text researchId = new Text();
+
+  @Override
+  public void reduce(final JoinKey key, final Iterable<Text> values, final Context context)
+      throws IOException, InterruptedException {
+    boolean found = false;
+    for (final Text value : values) {
+      if (key.getTag() != ExpectedIdentityJob.SAMPLE) {
+        researchId.set(value);
+        found = true;
+      } else if (found) {
+        context.getCounter(PostVerifyJob.Counter.VERIFIED).increment(1);
+        context.write(value, researchId);
+      } else {
+        context.getCounter(PostVerifyJob.Counter.MISSING_IDENTITY).increment(1);
+        log.error("ID " + key.getId() + " for record " + value + " missing from identity map");
+      }
+    }
+  }
+}
@@ -52,9 +52,9 @@ public enum IdentifierType {
 
   Other("other", ".*", Void.class);
 
-  private String fieldName;
-  private Pattern pattern;
-  private Class<?> type;
+  private final String fieldName;
+  private final Pattern pattern;
+  private final Class<?> type;
 
   private IdentifierType(final String fieldName, final String regex, final Class<?> type) {
     this.fieldName = fieldName;
@@ -109,6 +109,111 @@ public enum IdentifierType {
     return pattern;
   }
 
+  /**
+   * Determine whether a value is an identifier of this String-typed type. The
+   * result is the same as matching the value against {@link #getPattern}, but
+   * the fixed-shape identifiers ({@code ResearchUUID}, {@code HUID} and
+   * {@code XID}) are checked character by character without creating a
+   * {@link java.util.regex.Matcher}, since this method is called for every
+   * value of every multiplexed identifier column.
+   *
+   * @param value
+   *          the value to check. Must not be null.
+   *
+   * @return true if the value is an identifier of this type.
+   *
+   * @throws IdentityImplementationException
+   *           if {@code this} value is not typed as a {@code String}.
+   */
+  public boolean matches(final String value) {
+    switch (this) {
+    case ResearchUUID:
+      return isResearchUuid(value);
+    case HUID:
+      return isHuid(value);
+    case XID:
+      return isXid(value);
+    default:
+      return getPattern().matcher(value).matches();
+    }
+  }
+
+  // [a-f0-9]{8}-[a-f0-9]{4}-4[a-f0-9]{3}-[89ab][a-f0-9]{3}-[a-f0-9]{12},
+  // ignoring case.
+  private static boolean isResearchUuid(final String value) {
+    if (value.length() != 36) {
+      return false;
+    }
+    for (int i = 0; i < 36; i++) {
+      final char c = value.charAt(i);
+      switch (i) {
+      case 8:
+      case 13:
+      case 18:
+      case 23:
+        if (c != '-') {
+          return false;
+        }
+        break;
+      case 14:
+        if (c != '4') {
+          return false;
+        }
+        break;
+      case 19:
+        if (c != '8' && c != '9' && c != 'a' && c != 'b' && c != 'A' && c != 'B') {
+          return false;
+        }
+        break;
+      default:
+        if (!isHexDigit(c)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  // \d{8}
+  private static boolean isHuid(final String value) {
+    if (value.length() != 8) {
+      return false;
+    }
+    for (int i = 0; i < 8; i++) {
+      if (!isDigit(value.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // [a-zA-Z][\d|\w]{7}. The pipe inside the character class is a literal.
+  private static boolean isXid(final String value) {
+    if (value.length() != 8 || !isLetter(value.charAt(0))) {
+      return false;
+    }
+    for (int i = 1; i < 8; i++) {
+      final char c = value.charAt(i);
+      if (!isLetter(c) && !isDigit(c) && c != '_' && c != '|') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Without UNICODE_CHARACTER_CLASS, regex character classes are ASCII only.
+  private static boolean isDigit(final char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isLetter(final char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static boolean isHexDigit(final char c) {
+    return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+  }
+
   /**
    * Get the Java type of this identifier.
    *
@@ -3,6 +3,7 @@ package edu.harvard.data.identity;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -55,13 +56,36 @@ import edu.harvard.data.schema.extension.ExtensionSchemaTable;
  */
 public class IdentityMap implements DataTable, Comparable<IdentityMap> {
 
-  private final Map<IdentifierType, Object> identities;
+  private static final IdentifierType[] TYPES = IdentifierType.values();
+
+  // The index of each Long-typed identifier in longValues, or -1 for other
+  // identifiers.
+  private static final int[] LONG_SLOTS = new int[TYPES.length];
+  private static final int LONG_SLOT_COUNT;
+
+  static {
+    int slot = 0;
+    for (final IdentifierType type : TYPES) {
+      LONG_SLOTS[type.ordinal()] = type.getType().equals(Long.class) ? slot++ : -1;
+    }
+    LONG_SLOT_COUNT = slot;
+  }
+
+  // Many millions of identity maps are held by the identity jobs, so rather
+  // than a HashMap the values are held in arrays indexed by identifier type.
+  // Long-typed identifiers are stored unboxed, with a bit in longsSet to show
+  // which of them have a value. A null entry in values means that the
+  // identifier is not set.
+  private final Object[] values;
+  private final long[] longValues;
+  private int longsSet;
 
   /**
    * Create a new empty identity map.
    */
   public IdentityMap() {
-    this.identities = new HashMap<IdentifierType, Object>();
+    this.values = new Object[TYPES.length];
+    this.longValues = new long[LONG_SLOT_COUNT];
   }
 
   /**
@@ -140,27 +164,27 @@ public class IdentityMap implements DataTable, Comparable<IdentityMap> {
 
   private void populate(final CSVRecord record) {
     if (record.get(0) != null && record.get(0).length() > 0) {
-      identities.put(IdentifierType.ResearchUUID, record.get(0));
+      set(IdentifierType.ResearchUUID, record.get(0));
     }
     if (record.get(1) != null && record.get(0).length() > 0) {
-      identities.put(IdentifierType.HUID, record.get(1));
+      set(IdentifierType.HUID, record.get(1));
     }
     if (record.get(2) != null && record.get(0).length() > 0) {
-      identities.put(IdentifierType.XID, record.get(2));
+      set(IdentifierType.XID, record.get(2));
     }
     final String $canvasId = record.get(3);
     if ($canvasId != null && $canvasId.length() > 0) {
-      identities.put(IdentifierType.CanvasID, Long.valueOf($canvasId));
+      set(IdentifierType.CanvasID, Long.valueOf($canvasId));
     }
     final String $canvasDataId = record.get(4);
     if ($canvasDataId != null && $canvasDataId.length() > 0) {
-      identities.put(IdentifierType.CanvasDataID, Long.valueOf($canvasDataId));
+      set(IdentifierType.CanvasDataID, Long.valueOf($canvasDataId));
     }
     if (record.get(5) != null && record.get(0).length() > 0) {
-      identities.put(IdentifierType.EPPN, record.get(5));
+      set(IdentifierType.EPPN, record.get(5));
     }
     if (record.get(6) != null && record.get(0).length() > 0) {
-      identities.put(IdentifierType.ActiveDirectoryID, record.get(6));
+      set(IdentifierType.ActiveDirectoryID, record.get(6));
     }
   }
 
@@ -181,27 +205,27 @@ public class IdentityMap implements DataTable, Comparable<IdentityMap> {
   public IdentityMap(final ResultSet resultSet) throws SQLException {
     this();
     if (resultSet.getString("research_id") != null) {
-      identities.put(IdentifierType.ResearchUUID, resultSet.getString("research_id"));
+      set(IdentifierType.ResearchUUID, resultSet.getString("research_id"));
     }
     if (resultSet.getString("huid") != null) {
-      identities.put(IdentifierType.HUID, resultSet.getString("huid"));
+      set(IdentifierType.HUID, resultSet.getString("huid"));
     }
     if (resultSet.getString("xid") != null) {
-      identities.put(IdentifierType.XID, resultSet.getString("xid"));
+      set(IdentifierType.XID, resultSet.getString("xid"));
     }
     final long canvasId = resultSet.getLong("canvas_id");
     if (!resultSet.wasNull()) {
-      identities.put(IdentifierType.CanvasID, canvasId);
+      set(IdentifierType.CanvasID, canvasId);
     }
     final long canvasDataId = resultSet.getLong("canvas_data_id");
     if (!resultSet.wasNull()) {
-      identities.put(IdentifierType.CanvasDataID, canvasDataId);
+      set(IdentifierType.CanvasDataID, canvasDataId);
     }
     if (resultSet.getString("eppn") != null) {
-      identities.put(IdentifierType.EPPN, resultSet.getString("eppn"));
+      set(IdentifierType.EPPN, resultSet.getString("eppn"));
     }
     if (resultSet.getString("eppn") != null) {
-      identities.put(IdentifierType.ActiveDirectoryID, resultSet.getString("active_directory_id"));
+      set(IdentifierType.ActiveDirectoryID, resultSet.getString("active_directory_id"));
     }
 
   }
@@ -209,24 +233,22 @@ public class IdentityMap implements DataTable, Comparable<IdentityMap> {
   @Override
   public List<Object> getFieldsAsList(final TableFormat formatter) {
     final List<Object> fields = new ArrayList<Object>();
-    fields.add(identities.containsKey(IdentifierType.ResearchUUID)
-        ? identities.get(IdentifierType.ResearchUUID) : formatter.getCsvFormat().getNullString());
-    fields.add(identities.containsKey(IdentifierType.HUID) ? identities.get(IdentifierType.HUID)
-        : formatter.getCsvFormat().getNullString());
-    fields.add(identities.containsKey(IdentifierType.XID) ? identities.get(IdentifierType.XID)
-        : formatter.getCsvFormat().getNullString());
-    fields.add(identities.containsKey(IdentifierType.CanvasID)
-        ? identities.get(IdentifierType.CanvasID) : formatter.getCsvFormat().getNullString());
-    fields.add(identities.containsKey(IdentifierType.CanvasDataID)
-        ? identities.get(IdentifierType.CanvasDataID) : formatter.getCsvFormat().getNullString());
-    fields.add(identities.containsKey(IdentifierType.EPPN) ? identities.get(IdentifierType.EPPN)
-        : formatter.getCsvFormat().getNullString());
-    fields.add(identities.containsKey(IdentifierType.ActiveDirectoryID)
-        ? identities.get(IdentifierType.ActiveDirectoryID)
-            : formatter.getCsvFormat().getNullString());
+    final String nullString = formatter.getCsvFormat().getNullString();
+    fields.add(getOrDefault(IdentifierType.ResearchUUID, nullString));
+    fields.add(getOrDefault(IdentifierType.HUID, nullString));
+    fields.add(getOrDefault(IdentifierType.XID, nullString));
+    fields.add(getOrDefault(IdentifierType.CanvasID, nullString));
+    fields.add(getOrDefault(IdentifierType.CanvasDataID, nullString));
+    fields.add(getOrDefault(IdentifierType.EPPN, nullString));
+    fields.add(getOrDefault(IdentifierType.ActiveDirectoryID, nullString));
     return fields;
   }
 
+  private Object getOrDefault(final IdentifierType idType, final Object defaultValue) {
+    final Object value = get(idType);
+    return value == null ? defaultValue : value;
+  }
+
   @Override
   public List<String> getFieldNames() {
     final List<String> fields = new ArrayList<String>();
@@ -242,70 +264,132 @@ public class IdentityMap implements DataTable, Comparable<IdentityMap> {
 
   @Override
   public String toString() {
-    String s = "";
-    for (final IdentifierType type : IdentifierType.values()) {
+    final StringBuilder s = new StringBuilder();
+    for (final IdentifierType type : TYPES) {
       if (type != IdentifierType.Other) {
-        s += type.getFieldName() + ": " + identities.get(type) + " ";
+        if (s.length() > 0) {
+          s.append(" ");
+        }
+        s.append(type.getFieldName()).append(": ").append(get(type));
       }
     }
-    return s.trim();
+    return s.toString();
   }
 
+  /**
+   * Order identity maps by each identifier in turn, in the order in which the
+   * identifiers are declared in {@link IdentifierType}. A map without a value
+   * for an identifier sorts before one with a value. Long-typed identifiers
+   * are compared numerically and others by their String values, so for the
+   * String and Long values held by the identity jobs the ordering is
+   * consistent with {@link #equals}.
+   */
   @Override
   public int compareTo(final IdentityMap o) {
-    return toString().compareTo(o.toString());
+    for (final IdentifierType type : TYPES) {
+      final int slot = LONG_SLOTS[type.ordinal()];
+      final int cmp;
+      if (slot >= 0) {
+        final boolean set = isLongSet(slot);
+        final boolean otherSet = o.isLongSet(slot);
+        if (set && otherSet) {
+          cmp = Long.compare(longValues[slot], o.longValues[slot]);
+        } else {
+          cmp = Boolean.compare(set, otherSet);
+        }
+      } else {
+        final Object v1 = values[type.ordinal()];
+        final Object v2 = o.values[type.ordinal()];
+        if (v1 == null || v2 == null) {
+          cmp = Boolean.compare(v1 != null, v2 != null);
+        } else {
+          cmp = v1.toString().compareTo(v2.toString());
+        }
+      }
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+    return 0;
   }
 
   @Override
   public boolean equals(final Object o) {
-    if (o == null || !(o instanceof IdentityMap)) {
+    if (o == this) {
+      return true;
+    }
+    if (!(o instanceof IdentityMap)) {
       return false;
     }
     final IdentityMap other = (IdentityMap) o;
-    for (final IdentifierType type : IdentifierType.values()) {
-      final Object v1 = identities.get(type);
-      final Object v2 = other.identities.get(type);
-      if (v1 == null) {
-        if (v2 != null) {
-          return false;
-        }
-      } else {
-        if (v2 == null) {
-          return false;
-        }
-        if (!v1.equals(v2)) {
-          return false;
-        }
+    if (longsSet != other.longsSet) {
+      return false;
+    }
+    for (int i = 0; i < longValues.length; i++) {
+      if (isLongSet(i) && longValues[i] != other.longValues[i]) {
+        return false;
       }
     }
-    return true;
+    return Arrays.equals(values, other.values);
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 31 * Arrays.hashCode(values) + longsSet;
+    for (int i = 0; i < longValues.length; i++) {
+      final long value = isLongSet(i) ? longValues[i] : 0;
+      hash = 31 * hash + (int) (value ^ (value >>> 32));
+    }
+    return hash;
   }
 
   @Override
   public Map<String, Object> getFieldsAsMap() {
     final Map<String, Object> fields = new HashMap<String, Object>();
-    for (final IdentifierType id : IdentifierType.values()) {
-      if (identities.containsKey(id)) {
-        fields.put(id.getFieldName(), identities.get(id));
+    for (final IdentifierType id : TYPES) {
+      final Object value = get(id);
+      if (value != null) {
+        fields.put(id.getFieldName(), value);
       }
     }
     return fields;
   }
 
   public void setFieldsAsMap(final Map<String, Object> map) {
-    for (final IdentifierType id : IdentifierType.values()) {
+    for (final IdentifierType id : TYPES) {
       if (id != IdentifierType.Other) {
-        identities.put(id, map.get(id.getFieldName()));
+        set(id, map.get(id.getFieldName()));
       }
     }
   }
 
   public Object get(final IdentifierType idType) {
-    return identities.get(idType);
+    final int slot = LONG_SLOTS[idType.ordinal()];
+    if (slot >= 0) {
+      return isLongSet(slot) ? Long.valueOf(longValues[slot]) : null;
+    }
+    return values[idType.ordinal()];
   }
 
+  /**
+   * Set the value of an identifier, or clear it if the value is null. The
+   * value of a Long-typed identifier may be any {@link Number}, since values
+   * read from JSON are parsed as the smallest type that fits.
+   */
   public void set(final IdentifierType idType, final Object value) {
-    identities.put(idType, value);
+    final int slot = LONG_SLOTS[idType.ordinal()];
+    if (slot < 0) {
+      values[idType.ordinal()] = value;
+    } else if (value == null) {
+      longsSet &= ~(1 << slot);
+    } else {
+      longValues[slot] = ((Number) value).longValue();
+      longsSet |= 1 << slot;
+    }
+  }
+
+  private boolean isLongSet(final int slot) {
+    return (longsSet & (1 << slot)) != 0;
   }
 
 }
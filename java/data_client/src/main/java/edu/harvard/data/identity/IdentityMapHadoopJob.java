@@ -5,16 +5,20 @@ import java.net.URI;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.MultipleInputs;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
@@ -32,13 +36,30 @@ import edu.harvard.data.DataConfigurationException;
 import edu.harvard.data.FormatLibrary;
 import edu.harvard.data.HadoopUtilities;
 import edu.harvard.data.TableFormat;
+import edu.harvard.data.leases.LeaseLossListener;
 import edu.harvard.data.leases.LeaseRenewalException;
 import edu.harvard.data.leases.LeaseRenewalThread;
 import edu.harvard.data.pipeline.InputTableIndex;
 
+/**
+ * Runs the identity map job, which merges the identities found in the current
+ * data set with the existing identity map.
+ * <P>
+ * The existing identity map is read as a second input to the job, rather than
+ * loaded into memory by every reducer. Map output is keyed by {@link JoinKey},
+ * so the existing entry for a user (tagged {@link #KNOWN}) reaches the reducer
+ * before the identities found by the table mappers (tagged
+ * {@link #DISCOVERED}), and the reducer merges them as it reads them. A
+ * combiner removes duplicate identities on the map side, so a user who
+ * appears in millions of records (a shared or system account, for example)
+ * sends only a handful of records to the reducer.
+ */
 public class IdentityMapHadoopJob {
   private static final Logger log = LogManager.getLogger();
 
+  static final int KNOWN = 0;
+  static final int DISCOVERED = 1;
+
   private final DataConfig config;
   private final String inputDir;
   private final String runId;
@@ -82,14 +103,30 @@ public class IdentityMapHadoopJob {
     hadoopConfig.set("mainIdentifier", mainIdentifier.toString());
 
     final Job job = getIdentityMapJob(config);
-    addInitialIdentityMapPaths(config, job);
+    addKnownIdentityPaths(job);
     configureMapperClasses(job);
 
+    // The job updates the shared identity map, so it must not outlive the
+    // lease.
+    leaseThread.addLeaseLossListener(new LeaseLossListener() {
+      @Override
+      public void leaseLost(final String leaseName, final LeaseRenewalException cause) {
+        try {
+          if (!job.isComplete()) {
+            log.error("Killing job " + job.getJobName() + " after losing lease " + leaseName);
+            job.killJob();
+          }
+        } catch (final IOException | IllegalStateException e) {
+          log.error("Failed to kill job " + job.getJobName(), e);
+        }
+      }
+    });
     try {
       job.waitForCompletion(true);
     } catch (ClassNotFoundException | InterruptedException e) {
       throw new RuntimeException(e);
     }
+    leaseThread.checkLease();
 
     lookupEppnAndHuid(mainIdentifier);
     leaseThread.checkLease();
@@ -137,41 +174,112 @@ public class IdentityMapHadoopJob {
     FileOutputFormat.setOutputPath(job, new Path(config.getPhase1IdMapPath()));
   }
 
-  private void addInitialIdentityMapPaths(final DataConfig config2, final Job job)
-      throws IllegalArgumentException, IOException {
+  private void addKnownIdentityPaths(final Job job) throws IOException {
     for (final Path path : hadoopUtils.listHdfsFiles(hadoopConfig,
         new Path(config.getPhase0IdMapPath()))) {
-      log.info("Adding identity file " + path + " to map job cache");
-      job.addCacheFile(path.toUri());
+      log.info("Adding identity file " + path + " to map job input");
+      MultipleInputs.addInputPath(job, path, TextInputFormat.class, KnownIdentityMapper.class);
     }
   }
 
   private Job getIdentityMapJob(final DataConfig config) throws IOException {
-    final IdentifierType mainIdentifier = config.getMainIdentifier();
     final Job job = Job.getInstance(hadoopConfig, "identity-map");
     job.setJarByClass(IdentityMapHadoopJob.class);
+    configure(job, config.getMainIdentifier(), config.getPhase1TempIdMapOutput(),
+        config.getPhase1EmailOutput(), config.getPhase1NameOutput());
+    return job;
+  }
+
+  /**
+   * Set up the reduce side of an identity map job: the map output key and
+   * value, the combiner, the reducer for the main identifier's type and the
+   * named outputs to which the reducer writes. Inputs are added separately.
+   */
+  static void configure(final Job job, final IdentifierType mainIdentifier,
+      final String... namedOutputs) {
     job.setOutputKeyClass(Text.class);
     job.setOutputValueClass(NullWritable.class);
     if (mainIdentifier.getType() == Long.class) {
       job.setReducerClass(LongIdentityReducer.class);
-      job.setMapOutputKeyClass(LongWritable.class);
     } else if (mainIdentifier.getType() == String.class) {
       job.setReducerClass(StringIdentityReducer.class);
-      job.setMapOutputKeyClass(Text.class);
     } else {
       throw new RuntimeException("Unknown main identifier type: " + mainIdentifier.getType());
     }
+    JoinKey.configure(job);
     job.setMapOutputValueClass(HadoopIdentityKey.class);
+    job.setCombinerClass(IdentityCombiner.class);
     job.setInputFormatClass(TextInputFormat.class);
     job.setOutputFormatClass(TextOutputFormat.class);
 
-    MultipleOutputs.addNamedOutput(job, config.getPhase1TempIdMapOutput(), TextOutputFormat.class,
-        Text.class, NullWritable.class);
-    MultipleOutputs.addNamedOutput(job, config.getPhase1EmailOutput(), TextOutputFormat.class,
-        Text.class, NullWritable.class);
-    MultipleOutputs.addNamedOutput(job, config.getPhase1NameOutput(), TextOutputFormat.class,
-        Text.class, NullWritable.class);
+    for (final String output : namedOutputs) {
+      MultipleOutputs.addNamedOutput(job, output, TextOutputFormat.class, Text.class,
+          NullWritable.class);
+    }
+  }
+}
 
-    return job;
+/**
+ * Reads entries from the existing identity map, keyed by the main identifier
+ * and tagged to sort before the identities found in the current data. Entries
+ * without a value for the main identifier come from other data sets and are
+ * skipped.
+ */
+class KnownIdentityMapper extends Mapper<Object, Text, JoinKey, HadoopIdentityKey> {
+
+  private final HadoopUtilities hadoopUtils;
+  private final JoinKey outKey;
+  private final HadoopIdentityKey outValue;
+  private TableFormat format;
+  private IdentifierType mainIdentifier;
+
+  public KnownIdentityMapper() {
+    this.hadoopUtils = new HadoopUtilities();
+    this.outKey = new JoinKey();
+    this.outValue = new HadoopIdentityKey();
+  }
+
+  @Override
+  protected void setup(final Context context) throws IOException, InterruptedException {
+    super.setup(context);
+    this.format = hadoopUtils.getFormat(context);
+    this.mainIdentifier = hadoopUtils.getMainIdentifier(context);
+  }
+
+  @Override
+  public void map(final Object key, final Text value, final Context context)
+      throws IOException, InterruptedException {
+    final CSVParser parser = CSVParser.parse(value.toString(), format.getCsvFormat());
+    for (final CSVRecord csvRecord : parser.getRecords()) {
+      final IdentityMap id = new IdentityMap(format, csvRecord);
+      final Object mainId = id.get(mainIdentifier);
+      if (mainId != null) {
+        outKey.set(mainId.toString(), IdentityMapHadoopJob.KNOWN);
+        outValue.setId(id);
+        context.write(outKey, outValue);
+      }
+    }
+  }
+}
+
+/**
+ * Removes duplicate identities for a user before they are sent to the
+ * reducer. The reducer's result does not depend on how many times an identity
+ * appears, so only the first copy of each distinct identity is kept. Hadoop
+ * calls the combiner once for each key and tag, so the set of distinct
+ * identities for one user is held in memory; this is small even for users who
+ * appear in very many records.
+ */
+class IdentityCombiner extends Reducer<JoinKey, HadoopIdentityKey, JoinKey, HadoopIdentityKey> {
+
+  @Override
+  public void reduce(final JoinKey key, final Iterable<HadoopIdentityKey> values,
+      final Context context) throws IOException, InterruptedException {
+    final Set<IdentityMap> seen = new HashSet<IdentityMap>();
+    for (final HadoopIdentityKey value : values) {
+      if (seen.add(value.getIdentityMap())) {
+        context.write(key, value);
+      }
+    }
   }
 }
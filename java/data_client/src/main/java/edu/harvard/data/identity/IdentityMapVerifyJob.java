@@ -0,0 +1,133 @@
+package edu.harvard.data.identity;
+
+import java.io.IOException;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+
+import edu.harvard.data.HadoopUtilities;
+import edu.harvard.data.TableFormat;
+import edu.harvard.data.VerificationException;
+
+/**
+ * Checks the identity map generated by the identity jobs against the identity
+ * map that was cached before the jobs started, to ensure that no research UUIDs
+ * have changed during the identity scrub process.
+ * <P>
+ * The two maps are joined on the main identifier. Not every original ID will
+ * necessarily be in the updated map; the updated map is generated based on the
+ * tables used during this run of the pipeline, and if a user is not referenced
+ * in those tables they won't be in the updated map. The identity map is stored
+ * back to Redshift as an update operation, so any users that aren't in the
+ * updated map will be unaffected in the database.
+ */
+public class IdentityMapVerifyJob extends PostVerifyJob {
+
+  static final int ORIGINAL = 0;
+  static final int UPDATED = 1;
+
+  private final String originalDir;
+  private final String updatedDir;
+
+  public IdentityMapVerifyJob(final Configuration hadoopConfig, final String originalDir,
+      final String updatedDir, final String outputDir) {
+    super(hadoopConfig, "postverify-identity-map", outputDir);
+    this.originalDir = originalDir;
+    this.updatedDir = updatedDir;
+  }
+
+  @Override
+  protected Job getJob() throws IOException, VerificationException {
+    final Job job = newJob();
+    addInput(job, originalDir, IdentityMapJoinMapper.class);
+    addInput(job, updatedDir, UpdatedIdentityMapJoinMapper.class);
+    job.setReducerClass(IdentityMapVerifyReducer.class);
+    return job;
+  }
+}
+
+/**
+ * Reads identity map records, keyed by the main identifier, and outputs the
+ * research UUID for each. Records are tagged as coming from the first input of
+ * a join; {@link UpdatedIdentityMapJoinMapper} tags them as coming from the
+ * second.
+ */
+class IdentityMapJoinMapper extends Mapper<Object, Text, JoinKey, Text> {
+
+  private final int tag;
+  private final HadoopUtilities hadoopUtils;
+  private final JoinKey outKey;
+  private final Text outValue;
+  private TableFormat format;
+  private IdentifierType mainIdentifier;
+
+  public IdentityMapJoinMapper() {
+    this(0);
+  }
+
+  protected IdentityMapJoinMapper(final int tag) {
+    this.tag = tag;
+    this.hadoopUtils = new HadoopUtilities();
+    this.outKey = new JoinKey();
+    this.outValue = new Text();
+  }
+
+  @Override
+  protected void setup(final Context context) throws IOException, InterruptedException {
+    super.setup(context);
+    this.format = hadoopUtils.getFormat(context);
+    this.mainIdentifier = hadoopUtils.getMainIdentifier(context);
+  }
+
+  @Override
+  public void map(final Object key, final Text value, final Context context)
+      throws IOException, InterruptedException {
+    final CSVParser parser = CSVParser.parse(value.toString(), format.getCsvFormat());
+    for (final CSVRecord csvRecord : parser.getRecords()) {
+      final IdentityMap id = new IdentityMap(format, csvRecord);
+      final Object mainId = id.get(mainIdentifier);
+      if (mainId != null) {
+        outKey.set(mainId.toString(), tag);
+        outValue.set((String) id.get(IdentifierType.ResearchUUID));
+        context.write(outKey, outValue);
+      }
+    }
+  }
+}
+
+class UpdatedIdentityMapJoinMapper extends IdentityMapJoinMapper {
+  public UpdatedIdentityMapJoinMapper() {
+    super(IdentityMapVerifyJob.UPDATED);
+  }
+}
+
+/**
+ * Compares the research UUID of each updated identity map entry with the
+ * original entry, if there is one. The original entry sorts first.
+ */
+class IdentityMapVerifyReducer extends Reducer<JoinKey, Text, Text, Text> {
+
+  @Override
+  public void reduce(final JoinKey key, final Iterable<Text> values, final Context context)
+      throws IOException, InterruptedException {
+    String original = null;
+    for (final Text value : values) {
+      if (key.getTag() == IdentityMapVerifyJob.ORIGINAL) {
+        original = value.toString();
+      } else if (original != null) {
+        if (original.equals(value.toString())) {
+          context.getCounter(PostVerifyJob.Counter.VERIFIED).increment(1);
+        } else {
+          context.getCounter(PostVerifyJob.Counter.MISMATCHED).increment(1);
+          context.write(new Text(key.getId()), new Text("should map to " + original
+              + " but actually mapped to Research ID " + value));
+        }
+      }
+    }
+  }
+}
@@ -30,8 +30,9 @@ import edu.harvard.data.generator.IdentityMapperGenerator;
  * <p>
  * @param <T>
  *          the Java type of the main identifier over which this job operates.
- *          Thus, for a mapper job that returns a map from {@code LongWritable}
- *          to {@code Text}, this parameter would be {@code Long}.
+ *          The map output key is always a {@link JoinKey} holding the
+ *          identifier, so for {@link LongIdentityMapper}, whose main
+ *          identifier is a {@code long}, this parameter would be {@code Long}.
  */
 public class IdentityMapper<T> {
   TableFormat format;
@@ -2,9 +2,7 @@ package edu.harvard.data.identity;
 
 import java.io.IOException;
 import java.io.StringWriter;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -17,25 +15,24 @@ import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
 import edu.harvard.data.FormatLibrary.Format;
 import edu.harvard.data.HadoopUtilities;
 import edu.harvard.data.TableFormat;
-import edu.harvard.data.io.TableReader;
 
 /**
  * Helper class that implements the actual logic for the reduce phase during the
- * identity generation job. Since Hadoop requires that Hadoop-specific wrapper
- * types for the input key and value types be specified as part of the reducer
- * class declaration, we declare a separate reducer class for each possible type
- * for a data set's main identifier. See {@code LongIdentityReducer} for an
- * example.
+ * identity generation job. The job's reducer input is keyed by a
+ * {@link JoinKey} holding the main identifier as a string, but the identity map
+ * stores the identifier with its own type. We therefore declare a separate
+ * reducer class for each possible type of a data set's main identifier, which
+ * converts the key's ID before calling this class. See
+ * {@code LongIdentityReducer} for an example.
  *
  * @param <T>
- *          the Java language class of the reducer's input key type. For
- *          example, a reducer that consumes
- *          {@link org.apache.hadoop.io.LongWritable} keys should declare an
- *          {@code IdentityReducer} parameterized with {@link Long}.
+ *          the Java language class of the main identifier. For example,
+ *          {@code LongIdentityReducer} parses the ID of each {@link JoinKey}
+ *          as a {@link Long} and uses an {@code IdentityReducer} parameterized
+ *          with {@link Long}.
  */
 public class IdentityReducer<T> {
 
-  Map<T, IdentityMap> identities;
   TableFormat format;
   IdentifierType mainIdentifier;
   private final HadoopUtilities hadoopUtils;
@@ -43,68 +40,62 @@ public class IdentityReducer<T> {
   public IdentityReducer() {
     this.hadoopUtils = new HadoopUtilities();
   }
-  
+
   /**
    * Perform initial setup tasks before running the reducer. This method should
    * be called by the {@code setup} method of the actual identity reducer Hadoop
    * task.
    * <p>
-   * This method populates three fields in the class. First, it retrieves the
-   * format configuration setting from the Hadoop context and converts it into a
-   * {@link Format} instance in order to correctly parse the incoming data. It
-   * does the same for the main identifier value: the {@link IdentifierType}
-   * that represents the primary identifier used in the data set. This is
-   * generally the primary key in a <code>users</code> table, or some external
-   * user identifier. The type of the identifier (determined by
-   * {@link IdentifierType#getType}) must be the same as the class parameter
-   * {@code T}.
+   * This method retrieves the format configuration setting from the Hadoop
+   * context and converts it into a {@link Format} instance in order to
+   * correctly parse the incoming data. It does the same for the main
+   * identifier value: the {@link IdentifierType} that represents the primary
+   * identifier used in the data set. This is generally the primary key in a
+   * <code>users</code> table, or some external user identifier. The type of
+   * the identifier (determined by {@link IdentifierType#getType}) must be the
+   * same as the class parameter {@code T}.
    * <p>
-   * It then fetches the incoming identity map files from the Hadoop distributed
-   * cache and builds up a map from the main identifier type to identity map
-   * values that can be used during the reduce phase to ensure that consistent
-   * research UUIDs are assigned to existing users.
+   * Existing identities are not loaded here; the reducer reads them from its
+   * input.
    *
    * @param context
    *          the Hadoop context for the reducer.
-   * @throws IOException
-   *           if an error occurs while reading and parsing the identity map
-   *           files in the Hadoop distributed cache.
    */
-  @SuppressWarnings("unchecked")
-  public void setup(final Reducer<?, ?, ?, ?>.Context context) throws IOException {
+  public void readConfiguration(final Reducer<?, ?, ?, ?>.Context context) {
     this.format = hadoopUtils.getFormat(context);
     this.mainIdentifier = hadoopUtils.getMainIdentifier(context);
-    this.identities = new HashMap<T, IdentityMap>();
-    try (TableReader<IdentityMap> in = hadoopUtils.getHdfsTableReader(context, format,
-        IdentityMap.class)) {
-      for (final IdentityMap id : in) {
-        identities.put((T) id.get(mainIdentifier), id);
-      }
-    }
   }
 
   /**
-   * Merge the identities of a single user. This method operates over the set of
+   * Merge the identities of a single user. This method operates over the
+   * user's entry in the existing identity map, if there is one, and the set of
    * {@link IdentityMap} objects generated by the various identity mapper jobs.
-   * For each main identifier it fist checks to see whether a user with that
-   * identifier exists in the existing identity map. If not, it creates a new
-   * identity for that individual. It then scans through all the identity
-   * information gathered by the mappers to supplement the user's identity with
-   * any newly-discovered identities.
+   * If the user has no existing entry, a new identity is created with a new
+   * research UUID. The identity is then supplemented with any
+   * newly-discovered identities.
    * <p>
-   * This method should be called by the {@code reduce} method of the actual
-   * identity reducer Hadoop task.
+   * The input is sorted so that the entry from the existing identity map,
+   * tagged {@link IdentityMapHadoopJob#KNOWN}, comes before the identities
+   * found by the mappers, tagged {@link IdentityMapHadoopJob#DISCOVERED}. The
+   * values are therefore merged as they are read, and memory use does not
+   * depend on how many records share the main identifier. Only the distinct
+   * e-mail addresses and names of the user are held until the end of the
+   * group.
+   * <p>
+   * A user who appears in the existing identity map but not in the current
+   * data produces no output.
    * <p>
    * TODO: This method does not currently handle the case where different
    * mappers produce contradictory identities.
-   * <p>
    *
    * @param mainIdValue
    *          the key used to identify this user in the data set.
+   * @param key
+   *          the reducer's key. Hadoop updates the key's tag as the values are
+   *          read, so it shows which input each value came from.
    * @param values
-   *          all identity values calculated by the various identity mapper
-   *          jobs. The {@code IdentityMap} objects are wrapped in
-   *          Hadoop-friendly {@link HadoopIdentityKey} objects.
+   *          the user's existing identity, if any, followed by all identity
+   *          values calculated by the identity mapper jobs.
    * @param outputs
    *          a MultipleOutputs instance that is configured to allow writing
    *          values to the identity map file, as well as any other identity
@@ -118,48 +109,68 @@ public class IdentityReducer<T> {
    * @throws InterruptedException
    *           if interrupted while writing to the context.
    */
-  public void reduce(final T mainIdValue, final Iterable<HadoopIdentityKey> values,
-      final MultipleOutputs<Text, NullWritable> outputs) throws IOException, InterruptedException {
-    final IdentityMap id;
+  public void reduce(final T mainIdValue, final JoinKey key,
+      final Iterable<HadoopIdentityKey> values, final MultipleOutputs<Text, NullWritable> outputs)
+          throws IOException, InterruptedException {
+    IdentityMap id = null;
+    boolean discovered = false;
     final Set<String> emails = new HashSet<String>();
     final Set<String> names = new HashSet<String>();
-    if (identities.containsKey(mainIdValue)) {
-      id = identities.get(mainIdValue);
-    } else {
-      id = new IdentityMap();
-      id.set(mainIdentifier, mainIdValue);
-      id.set(IdentifierType.ResearchUUID, UUID.randomUUID().toString());
-    }
     for (final HadoopIdentityKey value : values) {
-      for (final IdentifierType type : IdentifierType.values()) {
-        if (type != mainIdentifier) {
-          final Object obj = value.getIdentityMap().get(type);
-          if (obj != null && id.get(type) == null) {
-            id.set(type, obj);
-          }
+      if (key.getTag() == IdentityMapHadoopJob.KNOWN) {
+        if (id == null) {
+          id = value.getIdentityMap();
         }
+      } else {
+        if (id == null) {
+          id = newIdentity(mainIdValue);
+        }
+        merge(id, value.getIdentityMap(), emails, names);
+        discovered = true;
       }
-      final String email = (String) value.getIdentityMap().get(IdentifierType.EmailAddress);
-      if (email != null && !email.isEmpty()) {
-          emails.add(email);
-      }
-      final String name = (String) value.getIdentityMap().get(IdentifierType.Name);
-      if (name != null && !name.isEmpty() && name.length() > 1) {
-          names.add(name);
+    }
+    if (discovered) {
+      output(id, emails, names, outputs);
+    }
+  }
+
+  private IdentityMap newIdentity(final T mainIdValue) {
+    final IdentityMap id = new IdentityMap();
+    id.set(mainIdentifier, mainIdValue);
+    id.set(IdentifierType.ResearchUUID, UUID.randomUUID().toString());
+    return id;
+  }
+
+  private void merge(final IdentityMap id, final IdentityMap value, final Set<String> emails,
+      final Set<String> names) {
+    for (final IdentifierType type : IdentifierType.values()) {
+      if (type != mainIdentifier) {
+        final Object obj = value.get(type);
+        if (obj != null && id.get(type) == null) {
+          id.set(type, obj);
+        }
       }
     }
+    final String email = (String) value.get(IdentifierType.EmailAddress);
+    if (email != null && !email.isEmpty()) {
+      emails.add(email);
+    }
+    final String name = (String) value.get(IdentifierType.Name);
+    if (name != null && !name.isEmpty() && name.length() > 1) {
+      names.add(name);
+    }
+  }
+
+  private void output(final IdentityMap id, final Set<String> emails, final Set<String> names,
+      final MultipleOutputs<Text, NullWritable> outputs) throws IOException, InterruptedException {
     outputResult("tempidentitymap", outputs, id.getFieldsAsList(format).toArray());
     for (final String email : emails) {
-      if (email != null && !email.isEmpty()) {	
-    	  outputResult(IdentifierType.EmailAddress.getFieldName(), outputs,
-    	     id.get(IdentifierType.ResearchUUID), email);
-      }
+      outputResult(IdentifierType.EmailAddress.getFieldName(), outputs,
+          id.get(IdentifierType.ResearchUUID), email);
     }
     for (final String name : names) {
-      if (name != null && !name.isEmpty() && name.length() > 1) {
-          outputResult(IdentifierType.Name.getFieldName(), outputs, id.get(IdentifierType.ResearchUUID),
-             name);
-      }
+      outputResult(IdentifierType.Name.getFieldName(), outputs,
+          id.get(IdentifierType.ResearchUUID), name);
     }
   }
 
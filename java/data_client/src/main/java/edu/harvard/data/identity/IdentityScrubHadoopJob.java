@@ -21,8 +21,11 @@ import edu.harvard.data.AwsUtils;
 import edu.harvard.data.CodeManager;
 import edu.harvard.data.DataConfig;
 import edu.harvard.data.DataConfigurationException;
+import edu.harvard.data.HadoopJobFailureException;
+import edu.harvard.data.HadoopJobRunner;
 import edu.harvard.data.HadoopUtilities;
 import edu.harvard.data.NoInputDataException;
+import edu.harvard.data.leases.LeaseLossListener;
 import edu.harvard.data.leases.LeaseRenewalException;
 import edu.harvard.data.leases.LeaseRenewalThread;
 import edu.harvard.data.pipeline.InputTableIndex;
@@ -38,7 +41,7 @@ public class IdentityScrubHadoopJob {
 
   public static void main(final String[] args) throws IOException, DataConfigurationException,
   LeaseRenewalException, InstantiationException, IllegalAccessException, NoInputDataException,
-  URISyntaxException, ClassNotFoundException, InterruptedException {
+  URISyntaxException, ClassNotFoundException, InterruptedException, HadoopJobFailureException {
     final String configPathString = args[0];
     final String runId = args[1];
     final String codeManagerClassName = args[2];
@@ -63,7 +66,8 @@ public class IdentityScrubHadoopJob {
   }
 
   protected void run() throws InstantiationException, IllegalAccessException, IOException,
-  NoInputDataException, ClassNotFoundException, InterruptedException, LeaseRenewalException {
+  NoInputDataException, ClassNotFoundException, InterruptedException, LeaseRenewalException,
+  HadoopJobFailureException {
     final LeaseRenewalThread leaseThread = LeaseRenewalThread.setup(config.getLeaseDynamoTable(),
         config.getIdentityLease(), runId, config.getIdentityLeaseLengthSeconds());
 
@@ -77,11 +81,23 @@ public class IdentityScrubHadoopJob {
       }
     }
 
-    for (final Job job : jobs) {
-      job.submit();
-    }
-    for (final Job job : jobs) {
-      job.waitForCompletion(true);
+    // If the lease is lost, interrupt the runner; it kills any running jobs.
+    final Thread runnerThread = Thread.currentThread();
+    leaseThread.addLeaseLossListener(new LeaseLossListener() {
+      @Override
+      public void leaseLost(final String leaseName, final LeaseRenewalException cause) {
+        runnerThread.interrupt();
+      }
+    });
+
+    // Each table is scrubbed by an independent map-only job. Unless the
+    // configuration sets a limit, every job is submitted at once.
+    try {
+      new HadoopJobRunner(config.getIdentityScrubMaxRunningJobs()).run(jobs);
+    } catch (final InterruptedException e) {
+      // Report the lost lease rather than the interrupt, if that's the cause.
+      leaseThread.checkLease();
+      throw e;
     }
     leaseThread.checkLease();
   }
@@ -0,0 +1,128 @@
+package edu.harvard.data.identity;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+/**
+ * Map output key for a reduce-side join. The key combines the value being
+ * joined on (the ID) with a tag that identifies the input that the record came
+ * from.
+ * <P>
+ * Records are partitioned and grouped by ID alone, but sorted by ID and then
+ * by tag. Each call to a reducer therefore sees every record that shares an
+ * ID, with the records of the lowest tag first. A reducer can hold on to the
+ * single record from the first input (for example, an identity map entry) and
+ * stream through the records from the other inputs, so that its memory use
+ * does not depend on how many records share an ID. Hadoop updates the key as
+ * the reducer iterates over the values, so {@link #getTag} tells the reducer
+ * which input the current value came from.
+ */
+public class JoinKey implements WritableComparable<JoinKey> {
+
+  private final Text id;
+  private int tag;
+
+  public JoinKey() {
+    this.id = new Text();
+  }
+
+  public JoinKey(final String id, final int tag) {
+    this();
+    set(id, tag);
+  }
+
+  public void set(final String id, final int tag) {
+    this.id.set(id);
+    this.tag = tag;
+  }
+
+  public String getId() {
+    return id.toString();
+  }
+
+  public int getTag() {
+    return tag;
+  }
+
+  /**
+   * Set up a job to partition, sort and group its map output by
+   * {@code JoinKey}.
+   */
+  public static void configure(final Job job) {
+    job.setMapOutputKeyClass(JoinKey.class);
+    job.setPartitionerClass(IdPartitioner.class);
+    job.setGroupingComparatorClass(IdGroupingComparator.class);
+  }
+
+  @Override
+  public void write(final DataOutput out) throws IOException {
+    id.write(out);
+    out.writeInt(tag);
+  }
+
+  @Override
+  public void readFields(final DataInput in) throws IOException {
+    id.readFields(in);
+    tag = in.readInt();
+  }
+
+  @Override
+  public int compareTo(final JoinKey other) {
+    final int cmp = id.compareTo(other.id);
+    if (cmp != 0) {
+      return cmp;
+    }
+    return Integer.compare(tag, other.tag);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * id.hashCode() + tag;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (!(obj instanceof JoinKey)) {
+      return false;
+    }
+    final JoinKey other = (JoinKey) obj;
+    return id.equals(other.id) && tag == other.tag;
+  }
+
+  @Override
+  public String toString() {
+    return id + "/" + tag;
+  }
+
+  /**
+   * Sends every record with the same ID to the same reducer, whatever its tag.
+   */
+  public static class IdPartitioner extends Partitioner<JoinKey, Object> {
+    @Override
+    public int getPartition(final JoinKey key, final Object value, final int partitions) {
+      return (key.id.hashCode() & Integer.MAX_VALUE) % partitions;
+    }
+  }
+
+  /**
+   * Groups the records with the same ID into a single call to the reducer.
+   */
+  public static class IdGroupingComparator extends WritableComparator {
+    public IdGroupingComparator() {
+      super(JoinKey.class, true);
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public int compare(final WritableComparable a, final WritableComparable b) {
+      return ((JoinKey) a).id.compareTo(((JoinKey) b).id);
+    }
+  }
+}
@@ -3,7 +3,6 @@ package edu.harvard.data.identity;
 import java.io.IOException;
 import java.util.Map;
 
-import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Mapper;
 
@@ -15,9 +14,12 @@ import edu.harvard.data.TableFormat;
  * {@link IdentityMapper}; this class exists to satisfy the requirements of
  * Hadoop that mappers statically declare their key type in terms of
  * Hadoop-specific wrapper types.
+ * <p>
+ * The main identifier is written as the ID of a {@link JoinKey}, tagged so
+ * that it sorts after any existing identity map entry for the same user.
  */
 public abstract class LongIdentityMapper extends
-Mapper<Object, Text, LongWritable, HadoopIdentityKey> implements TableIdentityMapper<Long> {
+Mapper<Object, Text, JoinKey, HadoopIdentityKey> implements TableIdentityMapper<Long> {
 
   protected IdentityMapper<Long> mapper;
   protected TableFormat format;
@@ -51,7 +53,8 @@ Mapper<Object, Text, LongWritable, HadoopIdentityKey> implements TableIdentityMa
     final Map<Long, HadoopIdentityKey> map = mapper.map(value, this);
     for (final Long hadoopKey : map.keySet()) {
       final HadoopIdentityKey identityKey = map.get(hadoopKey);
-      context.write(new LongWritable(hadoopKey), identityKey);
+      context.write(new JoinKey(hadoopKey.toString(), IdentityMapHadoopJob.DISCOVERED),
+          identityKey);
     }
   }
 }
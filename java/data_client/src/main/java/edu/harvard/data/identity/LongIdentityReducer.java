@@ -2,7 +2,6 @@ package edu.harvard.data.identity;
 
 import java.io.IOException;
 
-import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer;
@@ -18,7 +17,7 @@ import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
  * Hadoop-specific wrapper types
  */
 public class LongIdentityReducer
-extends Reducer<LongWritable, HadoopIdentityKey, Text, NullWritable> {
+extends Reducer<JoinKey, HadoopIdentityKey, Text, NullWritable> {
 
   private final IdentityReducer<Long> identityReducer;
   private MultipleOutputs<Text, NullWritable> outputs;
@@ -29,24 +28,26 @@ extends Reducer<LongWritable, HadoopIdentityKey, Text, NullWritable> {
 
   /**
    * Perform initialization tasks for the job. See the definition of
-   * {@link IdentityReducer#setup} for details.
+   * {@link IdentityReducer#readConfiguration} for details.
    */
   @Override
   protected void setup(final Context context) throws IOException, InterruptedException {
     super.setup(context);
-    identityReducer.setup(context);
+    identityReducer.readConfiguration(context);
     outputs = new MultipleOutputs<Text, NullWritable>(context);
   }
 
   /**
    * Process the identity records associated with a single main identifier
-   * value. See the definition of {@link IdentityReducer#reduce} for details.
+   * value. See the definition of
+   * {@link IdentityReducer#reduce(Object, JoinKey, Iterable, MultipleOutputs)}
+   * for details.
    */
   @Override
-  public void reduce(final LongWritable key, final Iterable<HadoopIdentityKey> values,
+  public void reduce(final JoinKey key, final Iterable<HadoopIdentityKey> values,
       final Context context) throws IOException, InterruptedException {
-    final Long mainIdValue = key.get();
-    identityReducer.reduce(mainIdValue, values, outputs);
+    final Long mainIdValue = Long.valueOf(key.getId());
+    identityReducer.reduce(mainIdValue, key, values, outputs);
   }
 
   /**
@@ -0,0 +1,158 @@
+package edu.harvard.data.identity;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.MultipleInputs;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.harvard.data.NoInputDataException;
+import edu.harvard.data.VerificationException;
+import edu.harvard.data.Verifier;
+
+/**
+ * Common base class for the Hadoop jobs that verify the output of the identity
+ * jobs. Each job is a reduce-side join, keyed by {@link JoinKey}, so its memory
+ * use is bounded however large the identity map and the verified tables are.
+ * <P>
+ * Reducers count the records that they check in the {@link Counter} group, and
+ * describe each failure either in the job's output or in the task log. Once the
+ * job completes, {@link #verify} fails if any failures were counted.
+ */
+public abstract class PostVerifyJob implements Verifier {
+  private static final Logger log = LogManager.getLogger();
+
+  public enum Counter {
+    VERIFIED, MISMATCHED, MISSING_IDENTITY
+  }
+
+  protected final Configuration hadoopConfig;
+  protected final String name;
+  protected final String outputDir;
+
+  /**
+   * @param hadoopConfig
+   *          the Hadoop configuration for the job. This must set the
+   *          {@code format} parameter, and the {@code mainIdentifier} parameter
+   *          for jobs that read the identity map.
+   * @param name
+   *          the name of the Hadoop job.
+   * @param outputDir
+   *          the directory to which the job writes failures. Any existing
+   *          directory is replaced.
+   */
+  protected PostVerifyJob(final Configuration hadoopConfig, final String name,
+      final String outputDir) {
+    this.hadoopConfig = hadoopConfig;
+    this.name = name;
+    this.outputDir = outputDir;
+  }
+
+  /**
+   * Set up the job's inputs and reducer. The job returned by {@link #newJob}
+   * has everything else configured.
+   *
+   * @throws NoInputDataException
+   *           if an optional input directory does not exist, in which case
+   *           there is nothing to verify.
+   * @throws VerificationException
+   *           if a required input directory does not exist.
+   */
+  protected abstract Job getJob()
+      throws IOException, NoInputDataException, VerificationException;
+
+  @Override
+  public void verify() throws VerificationException, IOException {
+    final Job job;
+    try {
+      job = getJob();
+    } catch (final NoInputDataException e) {
+      log.info(e.getMessage());
+      return;
+    }
+    final boolean succeeded;
+    try {
+      succeeded = job.waitForCompletion(true);
+    } catch (final ClassNotFoundException e) {
+      throw new IOException(e);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for " + name, e);
+    }
+    if (!succeeded) {
+      throw new IOException("Job " + name + " failed");
+    }
+    final Counters counters = job.getCounters();
+    final long verified = counters.findCounter(Counter.VERIFIED).getValue();
+    final long mismatched = counters.findCounter(Counter.MISMATCHED).getValue();
+    final long missing = counters.findCounter(Counter.MISSING_IDENTITY).getValue();
+    log.info(name + " verified " + verified + " records");
+    if (mismatched > 0 || missing > 0) {
+      throw new VerificationException(name + " found " + mismatched + " mismatched and "
+          + missing + " missing identities. Details are in " + outputDir);
+    }
+  }
+
+  /**
+   * Create a job that joins its inputs on a {@link JoinKey}, with text values,
+   * and writes text output to the output directory.
+   */
+  protected Job newJob() throws IOException {
+    final Job job = Job.getInstance(hadoopConfig, name);
+    job.setJarByClass(PostVerifyJob.class);
+    JoinKey.configure(job);
+    job.setMapOutputValueClass(Text.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(Text.class);
+    job.setOutputFormatClass(TextOutputFormat.class);
+    final Path output = new Path(outputDir);
+    final FileSystem fs = output.getFileSystem(hadoopConfig);
+    if (fs.exists(output)) {
+      fs.delete(output, true);
+    }
+    FileOutputFormat.setOutputPath(job, output);
+    return job;
+  }
+
+  /**
+   * Read every file in a directory with the given mapper.
+   *
+   * @throws VerificationException
+   *           if the directory does not exist.
+   */
+  protected void addInput(final Job job, final String dir,
+      final Class<? extends Mapper<?, ?, ?, ?>> mapper) throws IOException, VerificationException {
+    final Path path = new Path(dir);
+    if (!path.getFileSystem(hadoopConfig).exists(path)) {
+      throw new VerificationException(name + " is missing input " + dir);
+    }
+    MultipleInputs.addInputPath(job, path, TextInputFormat.class, mapper);
+  }
+
+  /**
+   * Read every file in a directory with the given mapper, if the directory
+   * exists. This is for inputs such as the pre-verifier's samples, which are
+   * only written when there is something to verify.
+   *
+   * @throws NoInputDataException
+   *           if the directory does not exist.
+   */
+  protected void addOptionalInput(final Job job, final String dir,
+      final Class<? extends Mapper<?, ?, ?, ?>> mapper) throws IOException, NoInputDataException {
+    final Path path = new Path(dir);
+    if (!path.getFileSystem(hadoopConfig).exists(path)) {
+      throw new NoInputDataException(name, dir);
+    }
+    MultipleInputs.addInputPath(job, path, TextInputFormat.class, mapper);
+  }
+}
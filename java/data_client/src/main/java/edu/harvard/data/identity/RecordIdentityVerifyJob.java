@@ -0,0 +1,87 @@
+package edu.harvard.data.identity;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+
+import edu.harvard.data.NoInputDataException;
+import edu.harvard.data.VerificationException;
+
+/**
+ * Checks that the records of a scrubbed table hold the research UUIDs
+ * calculated by an {@link ExpectedIdentityJob}.
+ * <P>
+ * The table is read by a data set-specific mapper that outputs a
+ * {@link JoinKey} of the record ID, tagged {@link #ACTUAL}, and the research
+ * UUID found in the record. Records that weren't sampled are skipped by the
+ * reducer. The job is skipped if no records were sampled, but otherwise the
+ * table must exist.
+ */
+public class RecordIdentityVerifyJob extends PostVerifyJob {
+
+  public static final int EXPECTED = 0;
+  public static final int ACTUAL = 1;
+
+  private final String expectedDir;
+  private final String tableDir;
+  private final Class<? extends Mapper<?, ?, JoinKey, Text>> tableMapper;
+
+  public RecordIdentityVerifyJob(final Configuration hadoopConfig, final String name,
+      final String expectedDir, final String tableDir,
+      final Class<? extends Mapper<?, ?, JoinKey, Text>> tableMapper, final String outputDir) {
+    super(hadoopConfig, name, outputDir);
+    this.expectedDir = expectedDir;
+    this.tableDir = tableDir;
+    this.tableMapper = tableMapper;
+  }
+
+  @Override
+  protected Job getJob() throws IOException, NoInputDataException, VerificationException {
+    final Job job = newJob();
+    addOptionalInput(job, expectedDir, ExpectedIdentityMapper.class);
+    addInput(job, tableDir, tableMapper);
+    job.setReducerClass(RecordIdentityVerifyReducer.class);
+    return job;
+  }
+}
+
+class ExpectedIdentityMapper extends Mapper<Object, Text, JoinKey, Text> {
+
+  private final JoinKey outKey = new JoinKey();
+  private final Text outValue = new Text();
+
+  @Override
+  public void map(final Object key, final Text value, final Context context)
+      throws IOException, InterruptedException {
+    final String[] parts = value.toString().split("\t");
+    outKey.set(parts[0], RecordIdentityVerifyJob.EXPECTED);
+    outValue.set(parts[1]);
+    context.write(outKey, outValue);
+  }
+}
+
+class RecordIdentityVerifyReducer extends Reducer<JoinKey, Text, Text, Text> {
+
+  @Override
+  public void reduce(final JoinKey key, final Iterable<Text> values, final Context context)
+      throws IOException, InterruptedException {
+    String expected = null;
+    for (final Text value : values) {
+      if (key.getTag() == RecordIdentityVerifyJob.EXPECTED) {
+        expected = value.toString();
+      } else if (expected != null) {
+        if (expected.equals(value.toString())) {
+          context.getCounter(PostVerifyJob.Counter.VERIFIED).increment(1);
+        } else {
+          context.getCounter(PostVerifyJob.Counter.MISMATCHED).increment(1);
+          context.write(new Text(key.getId()),
+              new Text("expected research ID " + expected + " but found " + value));
+        }
+      }
+    }
+  }
+}
@@ -14,8 +14,11 @@ import edu.harvard.data.TableFormat;
  * by {@link IdentityMapper}; this class exists to satisfy the requirements of
  * Hadoop that mappers statically declare their key type in terms of
  * Hadoop-specific wrapper types.
+ * <p>
+ * The main identifier is written as the ID of a {@link JoinKey}, tagged so
+ * that it sorts after any existing identity map entry for the same user.
  */
-public abstract class StringIdentityMapper extends Mapper<Object, Text, Text, HadoopIdentityKey>
+public abstract class StringIdentityMapper extends Mapper<Object, Text, JoinKey, HadoopIdentityKey>
 implements TableIdentityMapper<String> {
 
   protected IdentityMapper<String> mapper;
@@ -50,7 +53,7 @@ implements TableIdentityMapper<String> {
     final Map<String, HadoopIdentityKey> map = mapper.map(value, this);
     for (final String hadoopKey : map.keySet()) {
       final HadoopIdentityKey identityKey = map.get(hadoopKey);
-      context.write(new Text(hadoopKey), identityKey);
+      context.write(new JoinKey(hadoopKey, IdentityMapHadoopJob.DISCOVERED), identityKey);
     }
   }
 }
\ No newline at end of file
@@ -16,7 +16,8 @@ import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
  * Hadoop that reducers statically declare their key type in terms of
  * Hadoop-specific wrapper types
  */
-public class StringIdentityReducer extends Reducer<Text, HadoopIdentityKey, Text, NullWritable> {
+public class StringIdentityReducer
+extends Reducer<JoinKey, HadoopIdentityKey, Text, NullWritable> {
 
   private final IdentityReducer<String> identityReducer;
   private MultipleOutputs<Text, NullWritable> outputs;
@@ -27,24 +28,26 @@ public class StringIdentityReducer extends Reducer<Text, HadoopIdentityKey, Text
 
   /**
    * Perform initialization tasks for the job. See the definition of
-   * {@link IdentityReducer#setup} for details.
+   * {@link IdentityReducer#readConfiguration} for details.
    */
   @Override
   protected void setup(final Context context) throws IOException, InterruptedException {
     super.setup(context);
-    identityReducer.setup(context);
+    identityReducer.readConfiguration(context);
     outputs = new MultipleOutputs<Text, NullWritable>(context);
   }
 
   /**
    * Process the identity records associated with a single main identifier
-   * value. See the definition of {@link IdentityReducer#reduce} for details.
+   * value. See the definition of
+   * {@link IdentityReducer#reduce(Object, JoinKey, Iterable, MultipleOutputs)}
+   * for details.
    */
   @Override
-  public void reduce(final Text key, final Iterable<HadoopIdentityKey> values,
+  public void reduce(final JoinKey key, final Iterable<HadoopIdentityKey> values,
       final Context context) throws IOException, InterruptedException {
-    final String mainIdValue = key.toString();
-    identityReducer.reduce(mainIdValue, values, outputs);
+    final String mainIdValue = key.getId();
+    identityReducer.reduce(mainIdValue, key, values, outputs);
   }
 
   /**
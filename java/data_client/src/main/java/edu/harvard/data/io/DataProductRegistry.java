@@ -0,0 +1,74 @@
+package edu.harvard.data.io;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import edu.harvard.data.DataTable;
+
+/**
+ * Mapping from the name of a data product to the generated {@link DataTable}
+ * binding that represents a record in that product. Data sources that deliver
+ * one product per input file (such as SIS, Canvas REST or Mediasites) use a
+ * registry to look up the binding class for the file being processed, rather
+ * than switching on the product name in every method that needs it.
+ * <P>
+ * Registries are expected to be populated once, during class initialization,
+ * and then only read. This class is not thread-safe for concurrent
+ * registration.
+ */
+public class DataProductRegistry {
+
+  private final Map<String, Class<? extends DataTable>> products;
+
+  public DataProductRegistry() {
+    this.products = new LinkedHashMap<String, Class<? extends DataTable>>();
+  }
+
+  /**
+   * Add a data product to the registry.
+   *
+   * @param product
+   *          the name of the data product. This is also the name of the table
+   *          key used in the maps returned by a {@link JsonDocumentParser}.
+   * @param tableClass
+   *          the {@link DataTable} binding used to represent records in the
+   *          data product.
+   *
+   * @return this registry, to allow calls to be chained.
+   */
+  public DataProductRegistry register(final String product,
+      final Class<? extends DataTable> tableClass) {
+    products.put(product, tableClass);
+    return this;
+  }
+
+  /**
+   * Look up the binding class for a data product.
+   *
+   * @param product
+   *          the name of the data product.
+   *
+   * @return the {@link DataTable} class registered for the product.
+   *
+   * @throws IllegalArgumentException
+   *           if no binding has been registered for the product.
+   */
+  public Class<? extends DataTable> getTableClass(final String product) {
+    final Class<? extends DataTable> tableClass = products.get(product);
+    if (tableClass == null) {
+      throw new IllegalArgumentException("Unknown data product: " + product);
+    }
+    return tableClass;
+  }
+
+  public boolean contains(final String product) {
+    return products.containsKey(product);
+  }
+
+  public Set<String> getProducts() {
+    return Collections.unmodifiableSet(products.keySet());
+  }
+
+}
@@ -0,0 +1,298 @@
+package edu.harvard.data.io;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.harvard.data.FormatLibrary;
+import edu.harvard.data.FormatLibrary.Format;
+import edu.harvard.data.schema.fulltext.FullTextTable;
+
+/**
+ * Writes the full text outputs for a table in a single pass over its rows.
+ * <P>
+ * The input is the tab-separated output of a Hive query (run with
+ * {@code hive -S}) that selects the table's key, each of its full text columns,
+ * the modification time of each column other than the key and the row's
+ * fingerprint, in that order.
+ * For each full text column, the extractor writes {@code <column>.gz}, which
+ * holds the key, the column, an MD5 checksum of the column and the column's
+ * modification time. It also writes {@code fulltable/<table>.gz}, a copy of
+ * the input. These are the files that were previously produced by running a
+ * separate Hive query per output and compressing each file afterwards.
+ * <P>
+ * Every output is compressed on its own thread as rows are read. Rows are
+ * handed to the writers in batches through bounded queues, so memory use does
+ * not depend on the size of the table.
+ * <P>
+ * The checksum matches Hive's {@code md5} function: the lower case hex digest
+ * of the UTF-8 bytes of the value, or {@code NULL} for a null value. If the
+ * full text format quotes its values, the quotes are removed (and doubled
+ * quotes unescaped) before the checksum is calculated.
+ */
+public class FullTextExtractor {
+  private static final Logger log = LogManager.getLogger();
+
+  static final String NULL = "NULL";
+  private static final int BATCH_LINES = 1000;
+  private static final int QUEUED_BATCHES = 4;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final List<String> END_OF_INPUT = Collections.emptyList();
+
+  private final String tableName;
+  private final FullTextTable table;
+  private final boolean quoted;
+  private final int fieldCount;
+
+  /**
+   * Usage: {@code FullTextExtractor <output dir> <table> <format> <key>
+   * <column>...}. The query output is read from standard input.
+   */
+  public static void main(final String[] args) throws IOException, InterruptedException {
+    final File outputDir = new File(args[0]);
+    final String tableName = args[1];
+    final Format format = Format.valueOf(args[2]);
+    final FullTextTable table = new FullTextTable(args[3],
+        Arrays.asList(args).subList(4, args.length));
+    new FullTextExtractor(tableName, table, format).extract(System.in, outputDir);
+  }
+
+  /**
+   * @param tableName
+   *          the name of the table, used for the name of the full table output.
+   * @param table
+   *          the key and full text columns of the table.
+   * @param format
+   *          the full text format. The format determines whether values are
+   *          quoted.
+   */
+  public FullTextExtractor(final String tableName, final FullTextTable table,
+      final Format format) {
+    this.tableName = tableName;
+    this.table = table;
+    this.quoted = new FormatLibrary().getFormat(format).getCsvFormat().isQuoteCharacterSet();
+    // The key and the fingerprint, plus the columns and their times.
+    int count = 2;
+    for (final String column : table.getColumns()) {
+      count += column.equals(table.getKey()) ? 1 : 2;
+    }
+    this.fieldCount = count;
+  }
+
+  /**
+   * Read the query output and write every output file to a directory named
+   * after the table.
+   *
+   * @param in
+   *          the query output. The stream is not closed.
+   * @param outputDir
+   *          the full text directory, in which the table's directory is
+   *          created.
+   *
+   * @throws IOException
+   *           if an input line does not have the expected number of fields, or
+   *           if an error occurs while reading the input or writing an output.
+   *           Outputs written before the error are left in place.
+   */
+  public void extract(final InputStream in, final File outputDir)
+      throws IOException, InterruptedException {
+    final File tableDir = new File(outputDir, tableName);
+    final File fullTableDir = new File(tableDir, "fulltable");
+    if (!fullTableDir.exists() && !fullTableDir.mkdirs()) {
+      throw new IOException("Failed to create directory " + fullTableDir);
+    }
+    final List<OutputWriter> writers = new ArrayList<OutputWriter>();
+    writers.add(new OutputWriter(new File(fullTableDir, tableName + ".gz"), -1, -1));
+    int timeIndex = 1 + table.getColumns().size();
+    for (int i = 0; i < table.getColumns().size(); i++) {
+      final String column = table.getColumns().get(i);
+      if (!column.equals(table.getKey())) {
+        writers.add(new OutputWriter(new File(tableDir, column + ".gz"), i + 1, timeIndex++));
+      }
+    }
+
+    final ExecutorService exec = Executors.newFixedThreadPool(writers.size());
+    final List<Future<Long>> results = new ArrayList<Future<Long>>();
+    try {
+      for (final OutputWriter writer : writers) {
+        results.add(exec.submit(writer));
+      }
+      try {
+        readBatches(in, writers);
+      } finally {
+        for (final OutputWriter writer : writers) {
+          writer.queue.put(END_OF_INPUT);
+        }
+      }
+      for (final Future<Long> result : results) {
+        result.get();
+      }
+      log.info("Extracted " + results.get(0).get() + " rows of " + tableName + " to "
+          + writers.size() + " files");
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    } finally {
+      exec.shutdownNow();
+    }
+  }
+
+  private void readBatches(final InputStream in, final List<OutputWriter> writers)
+      throws IOException, InterruptedException {
+    final BufferedReader reader = new BufferedReader(
+        new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+    List<String> batch = new ArrayList<String>(BATCH_LINES);
+    long lineNumber = 0;
+    String line = reader.readLine();
+    while (line != null) {
+      lineNumber++;
+      if (countFields(line) != fieldCount) {
+        throw new IOException("Line " + lineNumber + " of " + tableName + " has "
+            + countFields(line) + " fields. Expected " + fieldCount);
+      }
+      batch.add(line);
+      if (batch.size() == BATCH_LINES) {
+        send(batch, writers);
+        batch = new ArrayList<String>(BATCH_LINES);
+      }
+      line = reader.readLine();
+    }
+    if (!batch.isEmpty()) {
+      send(batch, writers);
+    }
+  }
+
+  private void send(final List<String> batch, final List<OutputWriter> writers)
+      throws InterruptedException {
+    // Batches are never modified once they have been read, so the writers can
+    // share them.
+    for (final OutputWriter writer : writers) {
+      writer.queue.put(batch);
+    }
+  }
+
+  private static int countFields(final String line) {
+    // Fields are separated by tabs, so a line with n tabs has n + 1 fields.
+    int count = 1;
+    for (int i = 0; i < line.length(); i++) {
+      if (line.charAt(i) == '\t') {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Calculate the checksum of a full text value in the same way as the Hive
+   * query that it replaces.
+   */
+  String checksum(final String value) {
+    if (value.equals(NULL)) {
+      return NULL;
+    }
+    String text = value;
+    if (quoted) {
+      text = text.replace("\"\"", "\"");
+      text = text.length() > 2 ? text.substring(1, text.length() - 1) : "";
+    }
+    final MessageDigest md5;
+    try {
+      md5 = MessageDigest.getInstance("MD5");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    final byte[] digest = md5.digest(text.getBytes(StandardCharsets.UTF_8));
+    final StringBuilder hex = new StringBuilder(digest.length * 2);
+    for (final byte b : digest) {
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+      hex.append(Character.forDigit(b & 0xf, 16));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * Writes a single output file. A writer with a negative column index copies
+   * input lines unchanged; otherwise it writes the key, column, checksum and
+   * time fields for one column.
+   */
+  private class OutputWriter implements Callable<Long> {
+    private final File file;
+    private final int column;
+    private final int time;
+    private final BlockingQueue<List<String>> queue;
+
+    OutputWriter(final File file, final int column, final int time) {
+      this.file = file;
+      this.column = column;
+      this.time = time;
+      this.queue = new ArrayBlockingQueue<List<String>>(QUEUED_BATCHES);
+    }
+
+    @Override
+    public Long call() throws IOException, InterruptedException {
+      long rows = 0;
+      try (Writer out = new OutputStreamWriter(new GZIPOutputStream(
+          new BufferedOutputStream(new FileOutputStream(file)), BUFFER_SIZE),
+          StandardCharsets.UTF_8)) {
+        List<String> batch = queue.take();
+        while (batch != END_OF_INPUT) {
+          for (final String line : batch) {
+            write(out, line);
+          }
+          rows += batch.size();
+          batch = queue.take();
+        }
+      } catch (final IOException | RuntimeException e) {
+        // Keep taking batches so that the reader is never blocked by a full
+        // queue.
+        while (queue.take() != END_OF_INPUT) {
+          continue;
+        }
+        throw e;
+      }
+      return rows;
+    }
+
+    private void write(final Writer out, final String line) throws IOException {
+      if (column < 0) {
+        out.write(line);
+      } else {
+        final String[] fields = line.split("\t", -1);
+        out.write(fields[0]);
+        out.write('\t');
+        out.write(fields[column]);
+        out.write('\t');
+        out.write(checksum(fields[column]));
+        out.write('\t');
+        out.write(fields[time]);
+      }
+      out.write('\n');
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package edu.harvard.data.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Splits a large gzipped file into a number of smaller gzipped parts. Gzip is
+ * not a splittable format, so Hadoop reads each gzipped input file in a single
+ * map task; a multi-gigabyte file becomes a straggler that the whole job waits
+ * for. Splitting the file before it is archived lets the work be shared between
+ * as many tasks as there are parts.
+ * <P>
+ * Files are split on line boundaries, and the bytes of each line are copied
+ * unchanged, so concatenating the decompressed parts in order reproduces the
+ * decompressed input exactly. Each part holds at most {@code maxPartBytes}
+ * uncompressed bytes; the only exception is a part made up of a single line
+ * that is longer than the limit by itself.
+ * <P>
+ * This class is not thread-safe.
+ */
+public class GzipFileSplitter {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  // Deflate can't compress data by more than about 1032:1.
+  private static final long MAX_DEFLATE_RATIO = 1032;
+
+  private final long maxPartBytes;
+  private List<File> parts;
+  private OutputStream out;
+  private long partBytes;
+
+  /**
+   * @param maxPartBytes
+   *          the largest number of uncompressed bytes to write to any part.
+   */
+  public GzipFileSplitter(final long maxPartBytes) {
+    if (maxPartBytes < 1) {
+      throw new IllegalArgumentException("maxPartBytes must be positive: " + maxPartBytes);
+    }
+    this.maxPartBytes = maxPartBytes;
+  }
+
+  /**
+   * Check whether a gzipped file is small enough that {@link #split} would
+   * write it as a single part. A file whose compressed size is too small to
+   * decompress to more than {@code maxPartBytes} is accepted without being
+   * read. Otherwise the file is decompressed, but not written, until either
+   * the end of the data or the limit is reached.
+   *
+   * @param input
+   *          a gzipped file.
+   *
+   * @return true if the decompressed file holds no more than
+   *         {@code maxPartBytes} bytes.
+   *
+   * @throws IOException
+   *           if an error occurs when reading the input.
+   */
+  public boolean fitsInOnePart(final File input) throws IOException {
+    if (input.length() <= maxPartBytes / MAX_DEFLATE_RATIO) {
+      return true;
+    }
+    long bytes = 0;
+    try (InputStream in = new GZIPInputStream(new FileInputStream(input), BUFFER_SIZE)) {
+      final byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        bytes += read;
+        if (bytes > maxPartBytes) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Split a gzipped file into parts. Part files are named
+   * {@code <prefix>-<nnnn>.gz}, numbered from zero.
+   *
+   * @param input
+   *          a gzipped file. Files with several concatenated gzip members are
+   *          read as a single stream.
+   * @param outputDir
+   *          the directory in which to create the parts. It is created if it
+   *          does not already exist.
+   * @param prefix
+   *          the name of each part file, without the part number or extension.
+   *
+   * @return the parts in order. If the input is empty, no parts are written
+   *         and the list is empty.
+   *
+   * @throws IOException
+   *           if an error occurs when reading the input or writing a part. Any
+   *           parts written before the error are left in the output directory.
+   */
+  public List<File> split(final File input, final File outputDir, final String prefix)
+      throws IOException {
+    if (!outputDir.exists() && !outputDir.mkdirs()) {
+      throw new IOException("Failed to create directory " + outputDir);
+    }
+    parts = new ArrayList<File>();
+    partBytes = 0;
+    try (InputStream in = new GZIPInputStream(new FileInputStream(input), BUFFER_SIZE)) {
+      final byte[] buffer = new byte[BUFFER_SIZE];
+      final ByteArrayOutputStream line = new ByteArrayOutputStream();
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        int start = 0;
+        for (int i = 0; i < read; i++) {
+          if (buffer[i] == '\n') {
+            line.write(buffer, start, i + 1 - start);
+            writeLine(line, outputDir, prefix);
+            start = i + 1;
+          }
+        }
+        line.write(buffer, start, read - start);
+      }
+      // The last line may not be terminated.
+      if (line.size() > 0) {
+        writeLine(line, outputDir, prefix);
+      }
+    } finally {
+      closePart();
+    }
+    return parts;
+  }
+
+  private void writeLine(final ByteArrayOutputStream line, final File outputDir,
+      final String prefix) throws IOException {
+    if (out != null && partBytes + line.size() > maxPartBytes) {
+      closePart();
+    }
+    if (out == null) {
+      final File part = new File(outputDir, String.format("%s-%04d.gz", prefix, parts.size()));
+      out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(part)),
+          BUFFER_SIZE);
+      parts.add(part);
+      partBytes = 0;
+    }
+    line.writeTo(out);
+    partBytes += line.size();
+    line.reset();
+  }
+
+  private void closePart() throws IOException {
+    if (out != null) {
+      out.close();
+      out = null;
+    }
+  }
+}
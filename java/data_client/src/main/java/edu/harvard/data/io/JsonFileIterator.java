@@ -1,7 +1,6 @@
 package edu.harvard.data.io;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
@@ -123,7 +122,7 @@ implements Iterator<Map<String, List<? extends DataTable>>>, Closeable {
     if (inStream == null) {
       inStream = format.getInputStream(file);
     }
-    in = new BufferedReader(new InputStreamReader(inStream));
+    in = new BufferedReader(new InputStreamReader(inStream, format.getEncoding()));
     nextLine = in.readLine();
   }
 
@@ -143,15 +142,12 @@ implements Iterator<Map<String, List<? extends DataTable>>>, Closeable {
       return null;
     }
 
-    // JSON mapper accepts a file or a stream; in this case we convert the
-    // String containing a single object into a ByteArrayInputStream.
-    final InputStream lineIn = new ByteArrayInputStream(nextLine.getBytes());
     final TypeReference<Map<String, Object>> typeRef = new TypeReference<Map<String, Object>>() {
     };
     try {
       // Parse the String containing a JSON object, and pass the result to the
       // JsonDocumentParser to split into DataTables.
-      final Map<String, Object> obj = format.getJsonMapper().readValue(lineIn, typeRef);
+      final Map<String, Object> obj = format.getJsonMapper().readValue(nextLine, typeRef);
       final Map<String, List<? extends DataTable>> documents = parser.getDocuments(obj);
 
       // Advance the iterator to the next line in the input file.
@@ -0,0 +1,119 @@
+package edu.harvard.data.io;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.harvard.data.DataTable;
+import edu.harvard.data.TableFormat;
+import edu.harvard.data.VerificationException;
+
+/**
+ * {@link JsonDocumentParser} implementation for data sources where each JSON
+ * document maps to exactly one record in a known table. The parser is
+ * constructed for a specific target table, and only materializes a record of
+ * that type for each document; it does not build records for any of the other
+ * tables that the data source may produce.
+ * <P>
+ * The target table's {@link DataTable} binding must declare a public
+ * constructor that takes a {@link TableFormat} and a {@code Map<String,
+ * Object>}; all generated Phase 0 bindings do so. The constructor is resolved
+ * once when the parser is created.
+ * <P>
+ * Subclasses implement {@link #verify} to check that the generated record is
+ * an accurate representation of the original JSON document. Verification is
+ * only performed if the parser was created with the verify flag set.
+ */
+public abstract class SingleTableJsonDocumentParser implements JsonDocumentParser {
+
+  protected final TableFormat format;
+  private final String tableName;
+  private final boolean verify;
+  private final Constructor<? extends DataTable> constructor;
+
+  /**
+   * Create a parser for a single table.
+   *
+   * @param format
+   *          the {@link TableFormat} passed to the table binding when parsing
+   *          each document.
+   * @param tableName
+   *          the name of the target table. This is used as the key in the map
+   *          returned by {@link #getDocuments}.
+   * @param tableClass
+   *          the {@link DataTable} binding for the target table.
+   * @param verify
+   *          whether each parsed record should be checked by {@link #verify}.
+   *
+   * @throws IllegalArgumentException
+   *           if the table binding does not have a constructor that accepts a
+   *           {@code TableFormat} and a {@code Map}.
+   */
+  protected SingleTableJsonDocumentParser(final TableFormat format, final String tableName,
+      final Class<? extends DataTable> tableClass, final boolean verify) {
+    this.format = format;
+    this.tableName = tableName;
+    this.verify = verify;
+    try {
+      this.constructor = tableClass.getConstructor(TableFormat.class, Map.class);
+    } catch (final NoSuchMethodException e) {
+      throw new IllegalArgumentException(
+          "Table class " + tableClass.getName() + " cannot be built from a JSON document", e);
+    }
+  }
+
+  public String getTableName() {
+    return tableName;
+  }
+
+  @Override
+  public Map<String, List<? extends DataTable>> getDocuments(final Map<String, Object> values)
+      throws ParseException, VerificationException {
+    final DataTable record = newRecord(values);
+    if (verify) {
+      verify(values, record);
+    }
+    final List<DataTable> records = new ArrayList<DataTable>(1);
+    records.add(record);
+    final Map<String, List<? extends DataTable>> tables = new HashMap<String, List<? extends DataTable>>();
+    tables.put(tableName, records);
+    return tables;
+  }
+
+  /**
+   * Check that a record generated by this parser matches the JSON document
+   * from which it was built.
+   *
+   * @param values
+   *          the data parsed from the input JSON string.
+   * @param record
+   *          the record of the target table that was built from the values.
+   *
+   * @throws VerificationException
+   *           if the record does not match the original values.
+   */
+  protected abstract void verify(Map<String, Object> values, DataTable record)
+      throws VerificationException;
+
+  private DataTable newRecord(final Map<String, Object> values) throws ParseException {
+    try {
+      return constructor.newInstance(format, values);
+    } catch (InstantiationException | IllegalAccessException | IllegalArgumentException e) {
+      throw new RuntimeException(e);
+    } catch (final InvocationTargetException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof ParseException) {
+        throw (ParseException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+}
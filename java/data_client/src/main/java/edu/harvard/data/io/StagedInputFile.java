@@ -0,0 +1,49 @@
+package edu.harvard.data.io;
+
+import java.util.List;
+
+import com.amazonaws.services.s3.model.S3ObjectId;
+
+import edu.harvard.data.TableFormat;
+
+/**
+ * Description of a single JSON input file that is to be parsed by a
+ * {@link StagedInputParser}. An implementation states where the file is stored,
+ * how to parse it and which tables are extracted from it.
+ * <P>
+ * The parser works on several parts of a file at once, and {@link TableFormat}
+ * instances are not thread-safe. The formats and document parsers are therefore
+ * requested through factory methods, and each call must return a new instance.
+ */
+public interface StagedInputFile {
+
+  /**
+   * @return the location of the input file on S3.
+   */
+  S3ObjectId getLocation();
+
+  /**
+   * @return the tables to write for this file. Records extracted for any other
+   *         table are ignored. An output file is written (and uploaded) for
+   *         every table in this list, even if it contains no records.
+   */
+  List<StagedOutputTable> getOutputs();
+
+  /**
+   * @return a new {@link TableFormat} that describes the input file.
+   */
+  TableFormat createInputFormat();
+
+  /**
+   * @param format
+   *          a format returned by {@link #createInputFormat}. The parser is only
+   *          ever used alongside this format, by one thread at a time.
+   * @return a new parser that extracts records from a document in the file.
+   */
+  JsonDocumentParser createParser(TableFormat format);
+
+  /**
+   * @return a new {@link TableFormat} in which the output tables are written.
+   */
+  TableFormat createOutputFormat();
+}
@@ -0,0 +1,567 @@
+package edu.harvard.data.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.amazonaws.services.s3.model.S3ObjectId;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import edu.harvard.data.AwsUtils;
+import edu.harvard.data.DataConfig;
+import edu.harvard.data.DataTable;
+import edu.harvard.data.TableFormat;
+import edu.harvard.data.VerificationException;
+import edu.harvard.data.pipeline.InputTableIndex;
+
+/**
+ * Parses a set of newline-delimited JSON files from S3 into tables, and uploads
+ * the tables back to S3. This class does the work of Phase 0 for data sets
+ * whose input is a set of JSON files, each of which is described by a
+ * {@link StagedInputFile}.
+ * <P>
+ * The work is split into stages, each with its own thread pool, so that
+ * network-bound transfers overlap with CPU-bound parsing:
+ * <ol>
+ * <li>Fetch: input files are downloaded to the scratch directory.
+ * <li>Decode: a downloaded file is decompressed and split into batches of
+ * lines.
+ * <li>Parse: each batch is parsed into {@link DataTable} records. Batches from
+ * the same file are parsed in parallel.
+ * <li>Encode: the parsed batches of a file are written to the output tables in
+ * input order, and the output is verified by comparing the writer's
+ * {@link TableDigest} with one computed over the parsed records. The output is
+ * not read back before it is uploaded.
+ * <li>Upload: the output tables are uploaded to S3.
+ * </ol>
+ * Every stage is bounded, so that a slow stage holds up the stages before it
+ * rather than letting work pile up in memory or on disk. At most
+ * {@code fetchThreads + filesInProgress} input files are on local disk at once,
+ * and each file being decoded holds at most {@code 2 * parseThreads + 2}
+ * batches of lines or records in memory.
+ * <P>
+ * The resulting {@link InputTableIndex} lists files in the same order as the
+ * input list, regardless of the order in which the stages complete.
+ */
+public class StagedInputParser {
+
+  private static final Logger log = LogManager.getLogger();
+
+  public static final int DEFAULT_FETCH_THREADS = 4;
+  public static final int DEFAULT_UPLOAD_THREADS = 4;
+  public static final int DEFAULT_FILES_IN_PROGRESS = 2;
+  public static final int DEFAULT_BATCH_LINES = 1000;
+
+  private static final TypeReference<Map<String, Object>> JSON_OBJECT =
+      new TypeReference<Map<String, Object>>() {
+  };
+
+  // Marks the end of a file in a queue of batches.
+  private static final Future<Batch> END_OF_FILE = completed(new Callable<Batch>() {
+    @Override
+    public Batch call() {
+      return null;
+    }
+  });
+
+  private final AwsUtils aws;
+  private final File scratchDir;
+  private final int fetchThreads;
+  private final int parseThreads;
+  private final int uploadThreads;
+  private final int filesInProgress;
+  private final int batchLines;
+  private final int bufferedBatches;
+  private final AtomicInteger batchesInMemory;
+  private final AtomicInteger maxBatchesInMemory;
+
+  /**
+   * Create a parser with stage sizes taken from the Phase 0 settings in a
+   * {@link DataConfig}.
+   */
+  public StagedInputParser(final AwsUtils aws, final DataConfig config) {
+    this(aws, new File(config.getScratchDir()), config.getPhase0FetchThreads(),
+        config.getPhase0ParseThreads(), config.getPhase0UploadThreads(),
+        config.getPhase0FilesInProgress(), DEFAULT_BATCH_LINES);
+  }
+
+  /**
+   * @param aws
+   *          the {@link AwsUtils} used to download input and upload output.
+   * @param scratchDir
+   *          a local directory for downloaded and generated files.
+   * @param fetchThreads
+   *          the number of files to download at once.
+   * @param parseThreads
+   *          the number of batches to parse at once, across all files.
+   * @param uploadThreads
+   *          the number of tables to upload at once.
+   * @param filesInProgress
+   *          the number of files to decode and encode at once.
+   * @param batchLines
+   *          the number of input lines in each batch passed to the parse stage.
+   */
+  public StagedInputParser(final AwsUtils aws, final File scratchDir, final int fetchThreads,
+      final int parseThreads, final int uploadThreads, final int filesInProgress,
+      final int batchLines) {
+    if (fetchThreads < 1 || parseThreads < 1 || uploadThreads < 1 || filesInProgress < 1
+        || batchLines < 1) {
+      throw new IllegalArgumentException("Stage sizes must be positive");
+    }
+    this.aws = aws;
+    this.scratchDir = scratchDir;
+    this.fetchThreads = fetchThreads;
+    this.parseThreads = parseThreads;
+    this.uploadThreads = uploadThreads;
+    this.filesInProgress = filesInProgress;
+    this.batchLines = batchLines;
+    // Enough queued batches to keep every parse thread busy while the encoder
+    // catches up.
+    this.bufferedBatches = 2 * parseThreads;
+    this.batchesInMemory = new AtomicInteger();
+    this.maxBatchesInMemory = new AtomicInteger();
+  }
+
+  /**
+   * Parse each file, upload the resulting tables and build an index of the
+   * uploaded tables. If any file cannot be parsed or verified, the remaining
+   * work is cancelled and the first error is thrown.
+   *
+   * @param files
+   *          the input files to parse.
+   * @return an index that lists every uploaded table file, along with its size.
+   *
+   * @throws IOException
+   *           if an error occurs when transferring or parsing a file.
+   * @throws VerificationException
+   *           if a document fails the parser's verification checks, or if an
+   *           output table does not match the records that were parsed.
+   * @throws InterruptedException
+   *           if the thread is interrupted while waiting for the stages to
+   *           complete.
+   */
+  public InputTableIndex parseFiles(final List<? extends StagedInputFile> files)
+      throws IOException, VerificationException, InterruptedException {
+    final Stages stages = new Stages();
+    try {
+      return stages.run(files);
+    } finally {
+      stages.shutdown();
+    }
+  }
+
+  // The largest number of batches that have been held in memory at once.
+  int getMaxBatchesInMemory() {
+    return maxBatchesInMemory.get();
+  }
+
+  // The upper bound on getMaxBatchesInMemory: for each file in progress, the
+  // batch being filled by the decoder, the full queue and the batch being
+  // written by the encoder.
+  int getBatchMemoryBound() {
+    return filesInProgress * (bufferedBatches + 2);
+  }
+
+  private void batchStarted() {
+    final int count = batchesInMemory.incrementAndGet();
+    int max = maxBatchesInMemory.get();
+    while (count > max && !maxBatchesInMemory.compareAndSet(max, count)) {
+      max = maxBatchesInMemory.get();
+    }
+  }
+
+  private void batchFinished() {
+    batchesInMemory.decrementAndGet();
+  }
+
+  // Output tables often share a file name, in different S3 directories.
+  private File scratchFile(final int index, final String label, final S3ObjectId location) {
+    final String key = location.getKey();
+    final String name = key.substring(key.lastIndexOf("/") + 1);
+    return new File(scratchDir, String.format("%05d-%s-%s", index, label, name));
+  }
+
+  // The thread pools and shared state for a single call to parseFiles.
+  private class Stages {
+    private final ExecutorService fetchPool;
+    private final ExecutorService filePool;
+    private final ExecutorService decodePool;
+    private final ExecutorService parsePool;
+    private final ExecutorService uploadPool;
+    private final Semaphore filesOnDisk;
+    private volatile boolean failed;
+
+    Stages() {
+      this.fetchPool = Executors.newFixedThreadPool(fetchThreads);
+      this.filePool = Executors.newFixedThreadPool(filesInProgress);
+      this.decodePool = Executors.newFixedThreadPool(filesInProgress);
+      this.parsePool = Executors.newFixedThreadPool(parseThreads);
+      // When every upload thread is busy the encoder uploads its own output,
+      // which stops it from starting on another file.
+      this.uploadPool = new ThreadPoolExecutor(uploadThreads, uploadThreads, 0L,
+          TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(uploadThreads),
+          new ThreadPoolExecutor.CallerRunsPolicy());
+      this.filesOnDisk = new Semaphore(fetchThreads + filesInProgress);
+    }
+
+    InputTableIndex run(final List<? extends StagedInputFile> files)
+        throws IOException, VerificationException, InterruptedException {
+      final List<Future<List<Future<Long>>>> results =
+          new ArrayList<Future<List<Future<Long>>>>();
+      for (int i = 0; i < files.size() && !failed; i++) {
+        filesOnDisk.acquire();
+        final StagedInputFile file = files.get(i);
+        final File localFile = scratchFile(i, "input", file.getLocation());
+        final Future<File> fetched = fetchPool.submit(new Fetch(file.getLocation(), localFile));
+        results.add(filePool.submit(new ParseFile(i, file, fetched)));
+      }
+      final InputTableIndex dataIndex = new InputTableIndex();
+      try {
+        for (int i = 0; i < results.size(); i++) {
+          final List<StagedOutputTable> outputs = files.get(i).getOutputs();
+          final List<Future<Long>> uploads = results.get(i).get();
+          for (int j = 0; j < outputs.size(); j++) {
+            final StagedOutputTable output = outputs.get(j);
+            dataIndex.addFile(output.getTableName(), output.getLocation(), uploads.get(j).get());
+          }
+        }
+      } catch (final ExecutionException e) {
+        rethrow(e);
+      }
+      return dataIndex;
+    }
+
+    void shutdown() {
+      fetchPool.shutdownNow();
+      filePool.shutdownNow();
+      decodePool.shutdownNow();
+      parsePool.shutdownNow();
+      uploadPool.shutdownNow();
+    }
+
+    private class Fetch implements Callable<File> {
+      private final S3ObjectId location;
+      private final File localFile;
+
+      Fetch(final S3ObjectId location, final File localFile) {
+        this.location = location;
+        this.localFile = localFile;
+      }
+
+      @Override
+      public File call() throws IOException {
+        log.info("Downloading " + location.getBucket() + "/" + location.getKey());
+        aws.getFile(location, localFile);
+        return localFile;
+      }
+    }
+
+    // Runs the encode stage for a single file, after starting a decoder for
+    // it. Returns the uploads of the file's output tables, in the same order as
+    // StagedInputFile.getOutputs.
+    private class ParseFile implements Callable<List<Future<Long>>> {
+      private final int index;
+      private final StagedInputFile file;
+      private final Future<File> fetched;
+
+      ParseFile(final int index, final StagedInputFile file, final Future<File> fetched) {
+        this.index = index;
+        this.file = file;
+        this.fetched = fetched;
+      }
+
+      @Override
+      public List<Future<Long>> call() throws Exception {
+        final List<OutputWriter<?>> writers = new ArrayList<OutputWriter<?>>();
+        final List<Future<Long>> uploads = new ArrayList<Future<Long>>();
+        Future<?> decoder = null;
+        File localFile = null;
+        try {
+          localFile = fetched.get();
+          log.info("Parsing " + localFile);
+          final BlockingQueue<Future<Batch>> batches = new ArrayBlockingQueue<Future<Batch>>(
+              bufferedBatches);
+          decoder = decodePool.submit(new Decode(file, localFile, batches));
+          final TableFormat outFormat = file.createOutputFormat();
+          for (final StagedOutputTable output : file.getOutputs()) {
+            final File outputFile = scratchFile(index, output.getTableName(),
+                output.getLocation());
+            writers.add(OutputWriter.open(output, outputFile, outFormat));
+          }
+          Batch batch = batches.take().get();
+          while (batch != null) {
+            for (final Map<String, List<? extends DataTable>> tables : batch.documents) {
+              for (final OutputWriter<?> writer : writers) {
+                writer.addAll(tables.get(writer.output.getTableName()));
+              }
+            }
+            batchFinished();
+            batch = batches.take().get();
+          }
+          for (final OutputWriter<?> writer : writers) {
+            writer.closeAndVerify();
+          }
+          log.info("Parsed and verified " + localFile);
+          for (final OutputWriter<?> writer : writers) {
+            uploads.add(uploadPool.submit(new Upload(writer.output.getLocation(), writer.file)));
+          }
+          return uploads;
+        } catch (final ExecutionException e) {
+          failed = true;
+          throw unwrap(e);
+        } catch (final Exception e) {
+          failed = true;
+          throw e;
+        } finally {
+          if (decoder != null) {
+            decoder.cancel(true);
+          }
+          if (localFile != null) {
+            localFile.delete();
+          }
+          filesOnDisk.release();
+          // Files that have been handed to the upload stage are deleted once
+          // they've been uploaded.
+          for (int i = uploads.size(); i < writers.size(); i++) {
+            writers.get(i).discard();
+          }
+        }
+      }
+    }
+
+    // Reads a local file and passes batches of lines to the parse stage. The
+    // queue of parsed batches is bounded, so the decoder stops reading while
+    // the encoder is behind.
+    private class Decode implements Callable<Void> {
+      private final StagedInputFile file;
+      private final File localFile;
+      private final BlockingQueue<Future<Batch>> batches;
+      private final Queue<ParserInstance> parsers;
+
+      Decode(final StagedInputFile file, final File localFile,
+          final BlockingQueue<Future<Batch>> batches) {
+        this.file = file;
+        this.localFile = localFile;
+        this.batches = batches;
+        this.parsers = new ConcurrentLinkedQueue<ParserInstance>();
+      }
+
+      @Override
+      public Void call() throws InterruptedException {
+        final TableFormat format = file.createInputFormat();
+        try (BufferedReader in = new BufferedReader(
+            new InputStreamReader(format.getInputStream(localFile), format.getEncoding()))) {
+          List<String> lines = null;
+          String line = in.readLine();
+          while (line != null) {
+            if (lines == null) {
+              lines = new ArrayList<String>(batchLines);
+              batchStarted();
+            }
+            lines.add(line);
+            if (lines.size() == batchLines) {
+              batches.put(parsePool.submit(new Parse(file, parsers, lines)));
+              lines = null;
+            }
+            line = in.readLine();
+          }
+          if (lines != null) {
+            batches.put(parsePool.submit(new Parse(file, parsers, lines)));
+          }
+          batches.put(END_OF_FILE);
+        } catch (final IOException | RuntimeException e) {
+          final Exception error = e;
+          batches.put(completed(new Callable<Batch>() {
+            @Override
+            public Batch call() throws Exception {
+              throw error;
+            }
+          }));
+        }
+        return null;
+      }
+    }
+
+    private class Upload implements Callable<Long> {
+      private final S3ObjectId location;
+      private final File localFile;
+
+      Upload(final S3ObjectId location, final File localFile) {
+        this.location = location;
+        this.localFile = localFile;
+      }
+
+      @Override
+      public Long call() throws IOException {
+        final long size = localFile.length();
+        try {
+          aws.putFile(location, localFile);
+        } finally {
+          localFile.delete();
+        }
+        return size;
+      }
+    }
+  }
+
+  private static class Parse implements Callable<Batch> {
+    private final StagedInputFile file;
+    private final Queue<ParserInstance> parsers;
+    private final List<String> lines;
+
+    Parse(final StagedInputFile file, final Queue<ParserInstance> parsers,
+        final List<String> lines) {
+      this.file = file;
+      this.parsers = parsers;
+      this.lines = lines;
+    }
+
+    @Override
+    public Batch call() throws Exception {
+      // Parsers are reused by later batches of the same file, so no more are
+      // created than there are parse threads.
+      ParserInstance parser = parsers.poll();
+      if (parser == null) {
+        parser = new ParserInstance(file);
+      }
+      try {
+        final List<Map<String, List<? extends DataTable>>> documents =
+            new ArrayList<Map<String, List<? extends DataTable>>>(lines.size());
+        for (final String line : lines) {
+          final Map<String, Object> values = parser.format.getJsonMapper().readValue(line,
+              JSON_OBJECT);
+          documents.add(parser.parser.getDocuments(values));
+        }
+        return new Batch(documents);
+      } finally {
+        parsers.add(parser);
+      }
+    }
+  }
+
+  private static class ParserInstance {
+    private final TableFormat format;
+    private final JsonDocumentParser parser;
+
+    ParserInstance(final StagedInputFile file) {
+      this.format = file.createInputFormat();
+      this.parser = file.createParser(format);
+    }
+  }
+
+  private static class Batch {
+    private final List<Map<String, List<? extends DataTable>>> documents;
+
+    Batch(final List<Map<String, List<? extends DataTable>>> documents) {
+      this.documents = documents;
+    }
+  }
+
+  // Writes one output table, keeping a digest of the parsed records to compare
+  // with the writer's digest once it is closed.
+  private static class OutputWriter<T extends DataTable> {
+    private final StagedOutputTable output;
+    private final File file;
+    private final Class<T> tableClass;
+    private final TableFormat format;
+    private final TableWriter<T> writer;
+    private final TableDigest digest;
+    private boolean closed;
+
+    private OutputWriter(final StagedOutputTable output, final File file,
+        final Class<T> tableClass, final TableFormat format) {
+      this.output = output;
+      this.file = file;
+      this.tableClass = tableClass;
+      this.format = format;
+      this.writer = new TableWriter<T>(tableClass, format, file);
+      this.digest = new TableDigest(output.getTableName());
+    }
+
+    static <T extends DataTable> OutputWriter<T> open(final StagedOutputTable output,
+        final File file, final TableFormat format) {
+      @SuppressWarnings("unchecked")
+      final Class<T> tableClass = (Class<T>) output.getTableClass();
+      return new OutputWriter<T>(output, file, tableClass, format);
+    }
+
+    void addAll(final List<? extends DataTable> records) throws IOException {
+      if (records != null) {
+        for (final DataTable record : records) {
+          writer.add(tableClass.cast(record));
+          digest.add(record, format);
+        }
+      }
+    }
+
+    void closeAndVerify() throws IOException, VerificationException {
+      closed = true;
+      writer.close();
+      digest.verify(writer.getDigest());
+    }
+
+    void discard() {
+      if (!closed) {
+        closed = true;
+        try {
+          writer.close();
+        } catch (final IOException e) {
+          log.warn("Failed to close " + file, e);
+        }
+      }
+      file.delete();
+    }
+  }
+
+  private static <T> Future<T> completed(final Callable<T> callable) {
+    final FutureTask<T> future = new FutureTask<T>(callable);
+    future.run();
+    return future;
+  }
+
+  private static Exception unwrap(final ExecutionException e) {
+    if (e.getCause() instanceof Exception) {
+      return (Exception) e.getCause();
+    }
+    return e;
+  }
+
+  private static void rethrow(final ExecutionException e)
+      throws IOException, VerificationException {
+    final Throwable cause = e.getCause();
+    if (cause instanceof IOException) {
+      throw (IOException) cause;
+    }
+    if (cause instanceof VerificationException) {
+      throw (VerificationException) cause;
+    }
+    if (cause instanceof RuntimeException) {
+      throw (RuntimeException) cause;
+    }
+    if (cause instanceof Error) {
+      throw (Error) cause;
+    }
+    throw new IOException(cause);
+  }
+}
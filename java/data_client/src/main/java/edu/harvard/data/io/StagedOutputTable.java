@@ -0,0 +1,49 @@
+package edu.harvard.data.io;
+
+import com.amazonaws.services.s3.model.S3ObjectId;
+
+import edu.harvard.data.DataTable;
+
+/**
+ * One of the tables that a {@link StagedInputParser} extracts from a
+ * {@link StagedInputFile}.
+ */
+public class StagedOutputTable {
+
+  private final String tableName;
+  private final Class<? extends DataTable> tableClass;
+  private final S3ObjectId location;
+
+  /**
+   * @param tableName
+   *          the key under which the {@link JsonDocumentParser} returns this
+   *          table's records. The same name is used in the input table index.
+   * @param tableClass
+   *          the type of the table's records.
+   * @param location
+   *          the S3 key to which the table is uploaded.
+   */
+  public StagedOutputTable(final String tableName, final Class<? extends DataTable> tableClass,
+      final S3ObjectId location) {
+    this.tableName = tableName;
+    this.tableClass = tableClass;
+    this.location = location;
+  }
+
+  public String getTableName() {
+    return tableName;
+  }
+
+  public Class<? extends DataTable> getTableClass() {
+    return tableClass;
+  }
+
+  public S3ObjectId getLocation() {
+    return location;
+  }
+
+  @Override
+  public String toString() {
+    return tableName + " (" + location.getBucket() + "/" + location.getKey() + ")";
+  }
+}
@@ -0,0 +1,137 @@
+package edu.harvard.data.io;
+
+import java.io.IOException;
+
+import org.apache.commons.csv.CSVPrinter;
+
+import edu.harvard.data.DataTable;
+import edu.harvard.data.TableFormat;
+import edu.harvard.data.VerificationException;
+
+/**
+ * Compact summary of the encoded form of a sequence of {@link DataTable}
+ * records, used to check that a table has been written correctly without
+ * having to parse the output back. The digest records the number of rows, the
+ * number of bytes and a 64-bit hash over those bytes in order.
+ * <P>
+ * A digest is typically computed twice for each table. The source digest is
+ * built while parsing the input data, by encoding each record with the table's
+ * {@link TableFormat} ({@link #add}). The {@link TableWriter} that writes the
+ * table hashes the bytes that its CSV printer actually passes to the output
+ * stream, below the character encoding and above any compression. Comparing
+ * the two with {@link #verify} catches records that are dropped, reordered or
+ * changed on their way to the writer, as well as differences in escaping or
+ * character encoding. Where compression or IO faults are a concern,
+ * {@link TableWriter#verify(TableDigest, boolean)} can also read back a written
+ * file.
+ * <P>
+ * This class is not thread-safe.
+ */
+public class TableDigest {
+
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final String tableName;
+  private long rows;
+  private long bytes;
+  private long hash;
+  private StringBuilder row;
+  private CSVPrinter printer;
+  private TableFormat printerFormat;
+
+  public TableDigest(final String tableName) {
+    this.tableName = tableName;
+    this.rows = 0;
+    this.bytes = 0;
+    this.hash = FNV_OFFSET;
+  }
+
+  /**
+   * Add a record to the digest, encoding it as it would be written to a file
+   * of the given format.
+   *
+   * @throws IOException
+   *           if the record cannot be encoded in the format's character set.
+   */
+  public void add(final DataTable record, final TableFormat format) throws IOException {
+    if (printer == null || printerFormat != format) {
+      row = new StringBuilder();
+      printer = new CSVPrinter(row, format.getCsvFormat());
+      printerFormat = format;
+    }
+    printer.printRecord(record.getFieldsAsList(format));
+    final byte[] encoded = row.toString().getBytes(format.getEncoding());
+    row.setLength(0);
+    update(encoded, 0, encoded.length);
+    rows++;
+  }
+
+  // Called by TableWriter for each record that it prints.
+  void addRow() {
+    rows++;
+  }
+
+  void update(final int b) {
+    hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+    bytes++;
+  }
+
+  void update(final byte[] b, final int off, final int len) {
+    long h = hash;
+    for (int i = off; i < off + len; i++) {
+      h = (h ^ (b[i] & 0xff)) * FNV_PRIME;
+    }
+    hash = h;
+    bytes += len;
+  }
+
+  public String getTableName() {
+    return tableName;
+  }
+
+  public long getRowCount() {
+    return rows;
+  }
+
+  public long getByteCount() {
+    return bytes;
+  }
+
+  public long getHash() {
+    return hash;
+  }
+
+  /**
+   * Check that another digest describes exactly the same encoded records as
+   * this one.
+   *
+   * @param written
+   *          the digest to compare against; typically the digest computed by
+   *          the {@link TableWriter} that produced the output.
+   *
+   * @throws VerificationException
+   *           if the row counts, byte counts or hashes differ.
+   */
+  public void verify(final TableDigest written) throws VerificationException {
+    if (rows != written.rows) {
+      throw new VerificationException("Table " + tableName + " expected " + rows
+          + " rows, but " + written.rows + " were written");
+    }
+    if (bytes != written.bytes) {
+      throw new VerificationException("Table " + tableName + " expected " + bytes
+          + " bytes, but " + written.bytes + " were written");
+    }
+    if (hash != written.hash) {
+      throw new VerificationException(
+          "Table " + tableName + " was written with different content");
+    }
+  }
+
+  @Override
+  public String toString() {
+    return tableName + ": " + rows + " rows, " + bytes + " bytes, hash "
+        + Long.toHexString(hash);
+  }
+
+}
@@ -1,17 +1,23 @@
 package edu.harvard.data.io;
 
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.ZipException;
 
 import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.io.IOUtils;
 
 import edu.harvard.data.DataTable;
 import edu.harvard.data.TableFormat;
+import edu.harvard.data.VerificationException;
 
 /**
  * Output stream that writes a series of {@link DataTable} records to an
@@ -33,6 +39,13 @@ import edu.harvard.data.TableFormat;
  * <P>
  * A single {@code TableWriter} instance outputs a single type of
  * {@link DataTable} records, determined by the type parameter {@code T}.
+ * <P>
+ * The writer keeps a {@link TableDigest} over the bytes that its CSV printer
+ * writes after any headers, taken below the character encoding and above any
+ * compression. Callers can compare this digest against one computed over the
+ * source records with {@link #verify}. Comparing the two digests is enough to
+ * catch records that were dropped or changed on their way to the writer, so the
+ * output is not read back unless the caller asks for it.
  */
 public class TableWriter<T extends DataTable> implements Closeable {
 
@@ -45,6 +58,8 @@ public class TableWriter<T extends DataTable> implements Closeable {
   private final Class<T> tableType;
   private OutputStream outStream;
   private CSVPrinter printer;
+  private DigestOutputStream digestStream;
+  private final TableDigest digest;
 
   /**
    * Common internal constructor that sets up standard fields regardless of the
@@ -55,6 +70,7 @@ public class TableWriter<T extends DataTable> implements Closeable {
     this.bufferSize = DEFAULT_BUFFER_SIZE;
     this.tableType = tableType;
     this.format = format;
+    this.digest = new TableDigest(tableType.getSimpleName());
   }
 
   /**
@@ -141,6 +157,80 @@ public class TableWriter<T extends DataTable> implements Closeable {
     }
   }
 
+  /**
+   * Get the digest of all records that have been written to the output stream
+   * or file. Records that are still held in the output buffer, and bytes that
+   * are still buffered by the character encoder, are not included, so this
+   * method should be called after {@link #close}.
+   *
+   * @return a {@link TableDigest} describing the written records.
+   */
+  public TableDigest getDigest() {
+    return digest;
+  }
+
+  /**
+   * Check that this writer wrote exactly the records described by a digest of
+   * the source data. This method only compares the two digests; it does not
+   * read back any output, and should be called after {@link #close}.
+   *
+   * @param expected
+   *          a digest built by adding each source record with the same
+   *          {@link TableFormat} as this writer.
+   *
+   * @throws VerificationException
+   *           if the written records differ from the expected ones.
+   */
+  public void verify(final TableDigest expected) throws VerificationException {
+    expected.verify(digest);
+  }
+
+  /**
+   * Check that this writer wrote exactly the records described by a digest of
+   * the source data, optionally reading back the local file that it wrote.
+   * Reading back decompresses (but does not parse) the whole file, so it is
+   * only worth doing where compression or disk faults are a concern. This
+   * method should be called after {@link #close}.
+   *
+   * @param expected
+   *          a digest built by adding each source record with the same
+   *          {@link TableFormat} as this writer.
+   * @param readBack
+   *          if true, and the writer was created with a local file, check that
+   *          the file holds the bytes that were written.
+   *
+   * @throws VerificationException
+   *           if the written records differ from the expected ones, or if the
+   *           file content differs from what was written or cannot be
+   *           decompressed.
+   * @throws IOException
+   *           if an error occurs when reading back the local file.
+   */
+  public void verify(final TableDigest expected, final boolean readBack)
+      throws IOException, VerificationException {
+    verify(expected);
+    if (!readBack || file == null) {
+      return;
+    }
+    final TableDigest stored = new TableDigest(digest.getTableName());
+    try (final InputStream in = format.getInputStream(file)) {
+      IOUtils.skipFully(in, digestStream.headerBytes);
+      final byte[] buf = new byte[8192];
+      int n;
+      while ((n = in.read(buf)) != -1) {
+        stored.update(buf, 0, n);
+      }
+    } catch (final ZipException | EOFException e) {
+      throw new VerificationException("File " + file + " for table " + digest.getTableName()
+          + " could not be read back: " + e.getMessage());
+    }
+    if (stored.getByteCount() != digest.getByteCount() || stored.getHash() != digest.getHash()) {
+      throw new VerificationException("File " + file + " for table " + digest.getTableName()
+          + " holds " + stored.getByteCount() + " bytes that differ from the "
+          + digest.getByteCount() + " bytes written");
+    }
+  }
+
   /**
    * Change the size of the output buffer. Records are stored in a local buffer
    * between writes as a performance optimization. The buffer is flushed when it
@@ -181,17 +271,21 @@ public class TableWriter<T extends DataTable> implements Closeable {
       getPrinter();
       if (format.includeHeaders()) {
         writeHeaders(printer);
+        printer.flush();
       }
+      digestStream.startDigest();
     }
     for (final T row : buffer) {
       printer.printRecord(row.getFieldsAsList(format));
+      digest.addRow();
     }
     buffer.clear();
   }
 
   /**
    * Create a {@link CSVPrinter} object on top of the output stream (either
-   * user-provided or newly-created from a local file).
+   * user-provided or newly-created from a local file), with a
+   * {@link DigestOutputStream} between the two.
    *
    * @throws IOException
    *           if an error occurs when creating an output stream or constructing
@@ -204,7 +298,9 @@ public class TableWriter<T extends DataTable> implements Closeable {
     } else {
       out = outStream;
     }
-    printer = new CSVPrinter(new OutputStreamWriter(out), format.getCsvFormat());
+    digestStream = new DigestOutputStream(out, digest);
+    printer = new CSVPrinter(new OutputStreamWriter(digestStream, format.getEncoding()),
+        format.getCsvFormat());
   }
 
   /**
@@ -239,4 +335,45 @@ public class TableWriter<T extends DataTable> implements Closeable {
       throw new RuntimeException(e);
     }
   }
+
+  /**
+   * Stream that adds every byte passed to the underlying stream to a
+   * {@link TableDigest}, once {@link #startDigest} has been called. Bytes
+   * written before then (the file headers) are counted so that they can be
+   * skipped when the file is read back.
+   */
+  private static class DigestOutputStream extends FilterOutputStream {
+    private final TableDigest digest;
+    private boolean digesting;
+    private long headerBytes;
+
+    DigestOutputStream(final OutputStream out, final TableDigest digest) {
+      super(out);
+      this.digest = digest;
+    }
+
+    void startDigest() {
+      digesting = true;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      out.write(b);
+      if (digesting) {
+        digest.update(b);
+      } else {
+        headerBytes++;
+      }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+      out.write(b, off, len);
+      if (digesting) {
+        digest.update(b, off, len);
+      } else {
+        headerBytes += len;
+      }
+    }
+  }
 }
@@ -27,6 +27,17 @@
  * {@link JsonDocumentParser} to convert those objects to {@code DataTable}
  * records. Clients of the code need to provide a custom
  * {@code JsonDocumentParser}, but do not have to handle the details of parsing
- * JSON.
+ * JSON. Data sources that deliver a single table per input file can extend
+ * {@link SingleTableJsonDocumentParser}, which builds only the target table's
+ * record, and look up the table binding in a {@link DataProductRegistry}.
+ *
+ * Phase 0 of a JSON data set can use a {@link StagedInputParser} to parse all
+ * of its input files. Each file is described by a {@link StagedInputFile}, and
+ * the parser downloads, parses, writes and uploads files in separate stages
+ * that run in parallel.
+ *
+ * The {@link FullTextExtractor} splits an export of a full text table into the
+ * per-column and full table files that are archived to S3, compressing every
+ * file in parallel in a single pass over the export.
  */
 package edu.harvard.data.io;
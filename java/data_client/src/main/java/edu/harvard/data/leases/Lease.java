@@ -1,13 +1,14 @@
 package edu.harvard.data.leases;
 
-import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Map;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAttribute;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 
 import edu.harvard.data.FormatLibrary;
 
@@ -15,52 +16,88 @@ import edu.harvard.data.FormatLibrary;
  * Mapping class that reads and writes the Lease table on DynamoDB. During setup
  * the table name will be provided from a DataConfig setting, so the name passed
  * in the DynamoDBTable annotation is never used.
+ * <P>
+ * The expiration time is stored twice: as a human-readable timestamp in the
+ * {@code expires} attribute, and as milliseconds since the epoch in the
+ * {@code expiration} attribute. The numeric form is the one that the
+ * {@link LeaseManager} compares against in its conditional updates.
  */
 @DynamoDBTable(tableName = "DummyTableName")
 public class Lease {
 
-  @DynamoDBHashKey(attributeName = "name")
+  static final String NAME = "name";
+  static final String OWNER = "owner";
+  static final String EXPIRES = "expires";
+  static final String EXPIRATION = "expiration";
+  static final String VERSION = "version";
+
+  @DynamoDBHashKey(attributeName = NAME)
   private String name;
 
-  @DynamoDBAttribute(attributeName = "owner")
+  @DynamoDBAttribute(attributeName = OWNER)
   private String owner;
 
-  @DynamoDBAttribute(attributeName = "expires")
+  @DynamoDBAttribute(attributeName = EXPIRES)
   private String expires;
 
-  @DynamoDBAttribute(attributeName = "version")
+  @DynamoDBAttribute(attributeName = EXPIRATION)
+  private Long expiration;
+
+  @DynamoDBAttribute(attributeName = VERSION)
   private Long version;
 
-  private static final DateFormat DATE_FORMAT = new SimpleDateFormat(
-      FormatLibrary.JSON_DATE_FORMAT_STRING);
+  public Lease() {
+  }
 
-  Lease(final String name, final String owner, final int seconds, final long version) {
-    this.name = name;
-    this.owner = owner;
-    this.version = version;
-    this.setTimeRemainingSeconds(seconds);
+  // Build a lease from the attributes returned by an UpdateItem request.
+  static Lease fromAttributes(final Map<String, AttributeValue> attributes) {
+    final Lease lease = new Lease();
+    lease.name = attributes.get(NAME).getS();
+    if (attributes.containsKey(OWNER)) {
+      lease.owner = attributes.get(OWNER).getS();
+    }
+    if (attributes.containsKey(EXPIRES)) {
+      lease.expires = attributes.get(EXPIRES).getS();
+    }
+    if (attributes.containsKey(EXPIRATION)) {
+      lease.expiration = Long.parseLong(attributes.get(EXPIRATION).getN());
+    }
+    if (attributes.containsKey(VERSION)) {
+      lease.version = Long.parseLong(attributes.get(VERSION).getN());
+    }
+    return lease;
   }
 
-  public Lease() {
+  static String formatExpires(final long expirationMillis) {
+    return new SimpleDateFormat(FormatLibrary.JSON_DATE_FORMAT_STRING)
+        .format(new Date(expirationMillis));
   }
 
   public int timeRemainingSeconds() {
-    if (expires == null) {
+    final Long millis = expirationMillis();
+    if (millis == null) {
       return 0;
     }
+    return (int) ((millis - System.currentTimeMillis()) / 1000L);
+  }
+
+  // Leases written by earlier versions of the LeaseManager only have the
+  // human-readable timestamp.
+  Long expirationMillis() {
+    if (expiration != null) {
+      return expiration;
+    }
+    if (expires == null) {
+      return null;
+    }
     try {
-      final long remaining = DATE_FORMAT.parse(expires).getTime() - new Date().getTime();
-      return (int) (remaining / 1000L);
+      return new SimpleDateFormat(FormatLibrary.JSON_DATE_FORMAT_STRING).parse(expires)
+          .getTime();
     } catch (final ParseException e) {
       throw new RuntimeException(e);
     }
   }
 
-  void setTimeRemainingSeconds(final int seconds) {
-    final long expiration = new Date().getTime() + (seconds * 1000);
-    this.expires = DATE_FORMAT.format(new Date(expiration));
-  }
-
   public void setName(final String name) {
     this.name = name;
   }
@@ -73,6 +110,10 @@ public class Lease {
     this.expires = expires;
   }
 
+  public void setExpiration(final Long expiration) {
+    this.expiration = expiration;
+  }
+
   public void setVersion(final Long version) {
     this.version = version;
   }
@@ -89,6 +130,10 @@ public class Lease {
     return expires;
   }
 
+  public Long getExpiration() {
+    return expiration;
+  }
+
   public Long getVersion() {
     return version;
   }
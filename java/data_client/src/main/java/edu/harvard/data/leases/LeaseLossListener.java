@@ -0,0 +1,24 @@
+package edu.harvard.data.leases;
+
+/**
+ * Callback interface used by a {@link LeaseRenewalThread} to report that its
+ * lease has been lost. Applications that do work under a lease register a
+ * listener so that they can stop that work as soon as the lease is lost,
+ * rather than finding out when they next call
+ * {@link LeaseRenewalThread#checkLease}.
+ */
+public interface LeaseLossListener {
+
+  /**
+   * Called once, on the thread that detected the loss, when the lease can no
+   * longer be renewed. Implementations should return promptly; typically they
+   * kill any running Hadoop jobs or interrupt the thread doing the work.
+   *
+   * @param leaseName
+   *          the name of the lost lease.
+   * @param cause
+   *          the exception describing why the lease could not be renewed.
+   */
+  void leaseLost(String leaseName, LeaseRenewalException cause);
+
+}
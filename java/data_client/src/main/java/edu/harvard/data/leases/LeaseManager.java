@@ -6,33 +6,65 @@ import java.util.Map;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.Builder;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.ConsistentReads;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.TableNameOverride;
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBSaveExpression;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
-import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
 
 /**
  * Main class in the lease package that performs all acquisition, renewal and
- * release operations on leases. The implementation uses DynamoDB's consistent
- * read mechanism, as well as it conditional field updates to provide the atomic
- * operations that allow us to ensure mutual exclusion.
+ * release operations on leases.
+ * <P>
+ * Each operation is a single conditional UpdateItem request. The condition
+ * encodes the rule for the operation (for example, a lease can only be renewed
+ * by its current owner), and DynamoDB evaluates the condition and applies the
+ * update atomically, so there is no window between checking the state of a
+ * lease and changing it. The request returns the updated lease, so no read is
+ * needed afterwards either. A lease operation therefore costs exactly one round
+ * trip to DynamoDB.
+ * <P>
+ * Earlier versions of this class only stored the human-readable {@code expires}
+ * timestamp. This version still writes it, and falls back to it when acquiring
+ * a lease that has no numeric expiration, so the two versions can share a lease
+ * table while a change is rolled out. The fallback compares the timestamps as
+ * strings, which relies on every process formatting them in the same time zone.
  */
 public class LeaseManager {
 
   private static final Logger log = LogManager.getLogger();
+
+  // A lease can be acquired if nobody holds it, if we already hold it, or if
+  // it has expired. A lease written by an earlier version of this class has no
+  // numeric expiration, so its expires timestamp is checked instead. AND binds
+  // more tightly than OR, so the last two terms form a single alternative.
+  private static final String ACQUIRE_CONDITION = "attribute_not_exists(#owner) OR #owner = :owner"
+      + " OR #expiration < :now"
+      + " OR attribute_not_exists(#expiration) AND #expires < :expiresNow";
+  private static final String RENEW_CONDITION = "#owner = :owner";
+  private static final String UPDATE_EXPRESSION = "SET #owner = :owner, #expires = :expires,"
+      + " #expiration = :expiration ADD #version :one";
+  private static final String RELEASE_EXPRESSION = "REMOVE #owner ADD #version :one";
+
+  private final AmazonDynamoDB client;
   private final DynamoDBMapper mapper;
   private final String tableName;
   private final DynamoDBMapperConfig mapperConfig;
 
   public LeaseManager(final String tableName) {
+    this(new AmazonDynamoDBClient(), tableName);
+  }
+
+  public LeaseManager(final AmazonDynamoDB client, final String tableName) {
+    this.client = client;
     this.tableName = tableName;
-    mapper = new DynamoDBMapper(new AmazonDynamoDBClient());
+    mapper = new DynamoDBMapper(client);
     final Builder builder = new DynamoDBMapperConfig.Builder();
     builder.setTableNameOverride(new TableNameOverride(tableName));
     builder.setConsistentReads(ConsistentReads.CONSISTENT);
@@ -51,46 +83,28 @@ public class LeaseManager {
    *          the same as the one supplied when the lease was first acquired.
    * @param seconds
    *          the length of time to renew the lease, in seconds.
-   * @return a new Lease instance that includes the updated expiration time. The
-   *         caller should check the expiration time on this lease, as it may
-   *         not match the number of seconds requested.
+   * @return a new Lease instance that includes the updated expiration time.
    * @throws LeaseRenewalException
    *           if the lease is not currently held by the expected owner.
    */
   public Lease renew(final String name, final String owner, final int seconds)
       throws LeaseRenewalException {
-    final Lease lease = find(name);
-    if (lease.getOwner() == null || !lease.getOwner().equals(owner)) {
-      // The owner doesn't currently hold the lease, so we can't renew.
+    try {
+      return update(name, owner, seconds, RENEW_CONDITION);
+    } catch (final ConditionalCheckFailedException e) {
+      // Somebody else acquired the lease after it expired, or it has been
+      // released.
       throw new LeaseRenewalException(
-          "Failed to renew " + lease + ". " + owner + " does not currently hold the lease");
+          "Failed to renew lease " + name + ". " + owner + " does not currently hold the lease");
     }
-
-    // We know that we own the lease as of when it was fetched from dynamo,
-    // although this may have changed since then. We re-acquire the lease, then
-    // check that there haven't been any updates between then and now.
-    final Lease newLease = acquire(lease.getName(), lease.getOwner(), seconds);
-
-    if (newLease == null) {
-      // We couldn't acquire the lease; somebody else must have grabbed it.
-      throw new LeaseRenewalException("Failed to renew " + lease);
-    }
-    if (newLease.getVersion() != lease.getVersion() + 1) {
-      // Every lease update increments the version number, and we have just
-      // updated the lease. If the version number has been updated by more than
-      // one then there must have been some change to the state of the table
-      // since we checked the lease (such as the lease expiring, and somebody
-      // else acquiring it).
-      throw new LeaseRenewalException("Failed to renew " + lease);
-    }
-    return newLease;
   }
 
   /**
    * Assign the named lease to a given owner. This call will succeed in one of
    * three ways:
    * <ol>
-   * <li>The lease is currently unassigned (i.e. its owner is null).
+   * <li>The lease is currently unassigned (i.e. its owner is null), or does not
+   * yet exist.
    * <li>The lease is currently assigned to the intended owner.
    * <li>The lease is currently assigned but its expiration timestamp is in the
    * past.
@@ -104,55 +118,14 @@ public class LeaseManager {
    *          the requested length of time for which the lease should be
    *          acquired.
    * @return a new Lease object if the lease is available, or null if some other
-   *         process currently holds the lease. The caller should check the
-   *         expiration time on any returned lease, as it may not match the
-   *         number of seconds requested.
+   *         process currently holds the lease.
    */
   public Lease acquire(final String name, final String owner, final int seconds) {
-    // Lookup the lease in the dynamo table.
-    final Lease lease = find(name);
-
-    if (lease == null) {
-      // The lease does not exist in the table. Create it now. It is possible
-      // that some other process will simultaneously create a lease with the
-      // same name, so we can't assume that because we called create we will
-      // automatically hold the newly-created lease; all this call ensures is
-      // that a lease exists.
-      create(name, owner, seconds);
-    } else if (lease.getOwner() == null || lease.getOwner().equals(owner)
-        || lease.timeRemainingSeconds() <= 0) {
-      // The lease exists in the dynamo table, and either we currently hold it,
-      // or nobody currently holds it (because it has expired). We will now try
-      // to claim the lease, understanding that if somebody else has updated the
-      // lease since we fetched it, our update operation will fail.
-      lease.setTimeRemainingSeconds(seconds);
-      lease.setOwner(owner);
-      update(lease);
-    } else {
-      // The lease exists in the dynamo table, but is owned by somebody else. We
-      // won't try to claim it.
-      log.info("Failed to acquire lease " + lease + ". Owned by " + lease.getOwner()
-      + " for another " + lease.timeRemainingSeconds() + " seconds");
-    }
-
-    // We now know that the lease exists in the dynamo table, and we have
-    // attempted to claim it if it was available. We now fetch the lease again
-    // to get the latest version
-    final Lease updatedLease = find(name);
-
-    // There are two possible cases here. Either we succeeded in claiming the
-    // lease (in which case we are the owner), or we did not (in which case
-    // somebody else is the owner). In the former case, we are guaranteed that
-    // nobody else will update the dynamo table until the lease time runs out
-    // (because of the conditional above), and that anybody who was racing with
-    // us to update an expired lease will fail (because of the atomic update
-    // operation).
-    if (updatedLease.getOwner().equals(owner)) {
-      // We successfully set the owner to be this process, and can return the
-      // lease object.
-      return updatedLease;
-    } else {
-      // Somebody else owns the lease.
+    try {
+      return update(name, owner, seconds, ACQUIRE_CONDITION);
+    } catch (final ConditionalCheckFailedException e) {
+      log.info("Failed to acquire lease " + name + " for " + owner
+          + ". Held by another owner");
       return null;
     }
   }
@@ -171,24 +144,29 @@ public class LeaseManager {
    *          string for this parameter.
    */
   public void release(final String name, final String owner) {
-    // Lookup the lease in the dynamo table.
-    final Lease lease = find(name);
-
-    // If the lease doesn't exist, or has expired we don't need to do anything
-    if (lease != null && lease.timeRemainingSeconds() > 0) {
-      // If we don't own the lease, we can't release it
-      if (owner.equals(lease.getOwner())) {
-        lease.setOwner(null);
-        update(lease);
-      }
+    final Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+    values.put(":owner", new AttributeValue(owner));
+    values.put(":one", new AttributeValue().withN("1"));
+    final UpdateItemRequest request = new UpdateItemRequest().withTableName(tableName)
+        .withKey(key(name)).withUpdateExpression(RELEASE_EXPRESSION)
+        .withConditionExpression(RENEW_CONDITION)
+        .withExpressionAttributeNames(names(Lease.OWNER, Lease.VERSION))
+        .withExpressionAttributeValues(values);
+    try {
+      client.updateItem(request);
+    } catch (final ConditionalCheckFailedException e) {
+      // Either the lease was already released, or it expired while we were
+      // working on it and somebody else acquired it. Both achieve the same
+      // goal.
+      log.info("Lease " + name + " not held by " + owner + ". Nothing to release");
     }
-    // We don't need to check the result; either we released the lease (which
-    // was our intention), or the lease expired while we were working on it and
-    // somebody else acquired it (which achieves the same goal).
   }
 
   public int getLeaseExpirationSeconds(final String name) {
     final Lease lease = find(name);
+    if (lease == null) {
+      return 0;
+    }
     return lease.timeRemainingSeconds();
   }
 
@@ -199,57 +177,51 @@ public class LeaseManager {
     return mapper.load(Lease.class, id, mapperConfig);
   }
 
-  private boolean create(final String name, final String owner, final int seconds) {
-    final Lease lease = new Lease(name, owner, seconds, 0L);
-    final DynamoDBSaveExpression saveExpression = new DynamoDBSaveExpression();
-    final Map<String, ExpectedAttributeValue> expectations = new HashMap<String, ExpectedAttributeValue>();
-    expectations.put("name", new ExpectedAttributeValue(false));
-    saveExpression.setExpected(expectations);
-    try {
-      log.info("Creating lease: " + lease);
-      mapper.save(lease, saveExpression, mapperConfig);
-    } catch (final ConditionalCheckFailedException e) {
-      // Somebody else created the row first. We'll detect this in acquire when
-      // we see that the updatedLease does not belong to the owner.
-      log.info("Failed to create lease " + lease + ". Key already exists in table");
-      return false;
+  // Set the owner and expiration time of a lease, provided that the condition
+  // holds. Every update increments the version number, so that it's possible
+  // to tell from the table how many times a lease has changed hands or been
+  // renewed. The item is created if it doesn't already exist.
+  private Lease update(final String name, final String owner, final int seconds,
+      final String condition) {
+    final long now = System.currentTimeMillis();
+    final long expiration = now + seconds * 1000L;
+    final Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+    values.put(":owner", new AttributeValue(owner));
+    values.put(":expires", new AttributeValue(Lease.formatExpires(expiration)));
+    values.put(":expiration", new AttributeValue().withN(Long.toString(expiration)));
+    values.put(":one", new AttributeValue().withN("1"));
+    // DynamoDB rejects requests that define values the expressions don't use.
+    if (condition.contains(":now")) {
+      values.put(":now", new AttributeValue().withN(Long.toString(now)));
+    }
+    if (condition.contains(":expiresNow")) {
+      values.put(":expiresNow", new AttributeValue(Lease.formatExpires(now)));
     }
-    return true;
+    final UpdateItemRequest request = new UpdateItemRequest().withTableName(tableName)
+        .withKey(key(name)).withUpdateExpression(UPDATE_EXPRESSION)
+        .withConditionExpression(condition)
+        .withExpressionAttributeNames(
+            names(Lease.OWNER, Lease.EXPIRES, Lease.EXPIRATION, Lease.VERSION))
+        .withExpressionAttributeValues(values).withReturnValues(ReturnValue.ALL_NEW);
+    final Lease lease = Lease.fromAttributes(client.updateItem(request).getAttributes());
+    log.info("Updated lease: " + lease);
+    return lease;
   }
 
-  // This method assumes that the caller has already guaranteed that the lease
-  // exists, and that the current process has the right to modify the lease.
-  //
-  // Every lease has a version number that is incremented on every update. We
-  // know what version number the lease previously had, so we can do the
-  // Dynamo version of an atomic CAS operation. If the lease still has the
-  // same version number we can safely update it. If not, the value of the
-  // lease has changed since we last looked, so the update should fail.
-  private void update(final Lease lease) {
-    log.info("Updating lease: " + lease);
-
-    // Store the previous value of the version number.
-    final String expectedVersion = Long.toString(lease.getVersion());
-    // Update the lease object to hold a new version number.
-    lease.setVersion(lease.getVersion() + 1);
-
-    // Setup an atomic operation that will succeed only if the version number
-    // currently in dynamo matches the one that we stored above.
-    final DynamoDBSaveExpression saveExpression = new DynamoDBSaveExpression();
-    final Map<String, ExpectedAttributeValue> expectations = new HashMap<String, ExpectedAttributeValue>();
-    expectations.put("version",
-        new ExpectedAttributeValue(new AttributeValue().withN(expectedVersion)).withExists(true));
-    saveExpression.setExpected(expectations);
+  private static Map<String, AttributeValue> key(final String name) {
+    final Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+    key.put(Lease.NAME, new AttributeValue(name));
+    return key;
+  }
 
-    try {
-      // Attempt to save the updated lease. This will throw an exception if the
-      // lease is not updated.
-      mapper.save(lease, saveExpression, mapperConfig);
-    } catch (final ConditionalCheckFailedException e) {
-      // Somebody else updated the row first. We'll detect this in acquire when
-      // we see that the updatedLease does not belong to the owner.
-      log.info("Failed to update " + lease + ". Expected version number " + expectedVersion);
+  // Attribute names are referred to through placeholders, since "owner" is a
+  // DynamoDB reserved word. As with values, every placeholder must be used.
+  private static Map<String, String> names(final String... attributes) {
+    final Map<String, String> names = new HashMap<String, String>();
+    for (final String attribute : attributes) {
+      names.put("#" + attribute, attribute);
     }
+    return names;
   }
 
 }
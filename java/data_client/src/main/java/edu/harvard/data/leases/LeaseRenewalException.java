@@ -12,4 +12,8 @@ public class LeaseRenewalException extends Exception {
     super(msg);
   }
 
+  public LeaseRenewalException(final String msg, final Throwable cause) {
+    super(msg, cause);
+  }
+
 }
@@ -1,5 +1,13 @@
 package edu.harvard.data.leases;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.amazonaws.AmazonClientException;
+
 /**
  * This class contains an optional background thread that an application may run
  * to periodically update a lease that is owned by the process.
@@ -8,14 +16,34 @@ package edu.harvard.data.leases;
  * any currently-held lease expiring before the first renewal check. The
  * checkLease method should be called at the end of application to ensure that
  * there was no point during the life of the thread at which the lease was
- * unavailable to refresh.
+ * unavailable to refresh. Applications that need to stop work as soon as the
+ * lease is lost can also register a {@link LeaseLossListener}.
+ *
+ * The thread renews the lease half way through its term, as long as writes to
+ * DynamoDB are fast. It keeps an estimate of the write latency, in the same way
+ * that TCP estimates round trip times, and if writes slow down it renews
+ * earlier, so that there is always time for several renewal attempts before the
+ * lease expires. A renewal that fails because of a transient error (such as
+ * throttling) is retried with exponential backoff until the lease expires. A
+ * renewal that fails because another process holds the lease is not retried.
  */
 public class LeaseRenewalThread extends Thread {
+  private static final Logger log = LogManager.getLogger();
+
+  // Leave time for this many renewal attempts before the lease expires.
+  static final int RENEWAL_ATTEMPTS = 3;
+  static final long INITIAL_RETRY_MILLIS = 100;
 
   private final LeaseManager manager;
-  private final Lease lease;
+  private final String leaseName;
+  private final String leaseOwner;
   private final int leaseLengthSeconds;
-  private Throwable error;
+  private final List<LeaseLossListener> listeners;
+  private volatile LeaseRenewalException error;
+  private volatile long expirationMillis;
+  private double smoothedLatencyMillis;
+  private double latencyVarianceMillis;
+  private boolean latencyMeasured;
 
   /**
    * Create and start a new LeaseRenewalThread with the provided settings.
@@ -35,26 +63,62 @@ public class LeaseRenewalThread extends Thread {
    *          point during the run of the application does the lease belong to
    *          any owner other than this one.
    * @param leaseSeconds
-   *          the frequency at which to refresh the lease, specified in seconds.
+   *          the length of the lease, specified in seconds. The lease is
+   *          renewed for this long each time.
    * @return a new LeaseRenewalThread object that has already been started.
    */
   public static LeaseRenewalThread setup(final String leaseTable, final String leaseName,
       final String leaseOwner, final int leaseSeconds) {
-    final LeaseManager manager = new LeaseManager(leaseTable);
+    return setup(new LeaseManager(leaseTable), leaseName, leaseOwner, leaseSeconds);
+  }
+
+  static LeaseRenewalThread setup(final LeaseManager manager, final String leaseName,
+      final String leaseOwner, final int leaseSeconds) {
+    final LeaseRenewalThread thread = new LeaseRenewalThread(manager, leaseName, leaseOwner,
+        leaseSeconds);
+    final long start = System.nanoTime();
     final Lease lease = manager.acquire(leaseName, leaseOwner, leaseSeconds);
-    final LeaseRenewalThread thread = new LeaseRenewalThread(manager, lease, leaseSeconds);
+    if (lease == null) {
+      thread.leaseLost(new LeaseRenewalException(
+          "Failed to acquire lease " + leaseName + " for " + leaseOwner));
+    } else {
+      thread.renewed(lease, start);
+    }
     thread.start();
     return thread;
   }
 
   public LeaseRenewalThread(final LeaseManager manager, final Lease lease,
       final int leaseLengthSeconds) {
-    this.lease = lease;
+    this(manager, lease.getName(), lease.getOwner(), leaseLengthSeconds);
+    final Long expiration = lease.expirationMillis();
+    this.expirationMillis = expiration == null ? 0 : expiration;
+  }
+
+  private LeaseRenewalThread(final LeaseManager manager, final String leaseName,
+      final String leaseOwner, final int leaseLengthSeconds) {
     this.manager = manager;
+    this.leaseName = leaseName;
+    this.leaseOwner = leaseOwner;
     this.leaseLengthSeconds = leaseLengthSeconds;
+    this.listeners = new ArrayList<LeaseLossListener>();
     this.setDaemon(true);
   }
 
+  /**
+   * Register a callback to be told when the lease is lost. If the lease has
+   * already been lost, the listener is called immediately.
+   */
+  public void addLeaseLossListener(final LeaseLossListener listener) {
+    synchronized (listeners) {
+      if (error == null) {
+        listeners.add(listener);
+        return;
+      }
+    }
+    listener.leaseLost(leaseName, error);
+  }
+
   /**
    * Manually check whether the lease is currently owned by the expected owner.
    * If the lease cannot be renewed, or if at some point in the past it could
@@ -68,19 +132,111 @@ public class LeaseRenewalThread extends Thread {
     if (error != null) {
       throw new LeaseRenewalException(error);
     }
-    manager.renew(lease.getName(), lease.getOwner(), leaseLengthSeconds);
+    try {
+      renew();
+    } catch (final LeaseRenewalException e) {
+      leaseLost(e);
+      throw e;
+    }
   }
 
   @Override
   public void run() {
-    while (true) {
+    long retryMillis = INITIAL_RETRY_MILLIS;
+    long sleepMillis = getRenewalDelayMillis();
+    while (error == null) {
       try {
-        checkLease();
-        Thread.sleep(leaseLengthSeconds * 500);
-      } catch (final LeaseRenewalException | InterruptedException e) {
-        error = e;
+        Thread.sleep(sleepMillis);
+      } catch (final InterruptedException e) {
+        // Nobody is renewing the lease any more, so checkLease must fail.
+        error = new LeaseRenewalException(e);
         return;
       }
+      try {
+        renew();
+        retryMillis = INITIAL_RETRY_MILLIS;
+        sleepMillis = getRenewalDelayMillis();
+      } catch (final LeaseRenewalException e) {
+        leaseLost(e);
+      } catch (final AmazonClientException e) {
+        final long remaining = expirationMillis - System.currentTimeMillis();
+        if (remaining <= 0) {
+          leaseLost(new LeaseRenewalException(
+              "Lease " + leaseName + " expired before it could be renewed", e));
+        } else {
+          sleepMillis = Math.min(retryMillis, remaining / 2);
+          retryMillis *= 2;
+          log.warn("Failed to renew lease " + leaseName + ". Retrying in " + sleepMillis + "ms",
+              e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Calculate how long to wait before the next renewal.
+   *
+   * @param remainingMillis
+   *          the time until the lease expires.
+   * @param leaseLengthMillis
+   *          the length of the lease.
+   * @param latencyMillis
+   *          an upper bound on the time taken by a renewal.
+   */
+  static long renewalDelayMillis(final long remainingMillis, final long leaseLengthMillis,
+      final long latencyMillis) {
+    final long margin = Math.max(leaseLengthMillis / 2, RENEWAL_ATTEMPTS * latencyMillis);
+    return Math.max(0, remainingMillis - margin);
+  }
+
+  // Jacobson's estimator: the smoothed latency plus four times the smoothed
+  // deviation. Slow writes raise the estimate immediately; it decays again as
+  // writes speed up.
+  synchronized long getLatencyBoundMillis() {
+    return (long) Math.ceil(smoothedLatencyMillis + 4 * latencyVarianceMillis);
+  }
+
+  private long getRenewalDelayMillis() {
+    return renewalDelayMillis(expirationMillis - System.currentTimeMillis(),
+        leaseLengthSeconds * 1000L, getLatencyBoundMillis());
+  }
+
+  private void renew() throws LeaseRenewalException {
+    final long start = System.nanoTime();
+    renewed(manager.renew(leaseName, leaseOwner, leaseLengthSeconds), start);
+  }
+
+  private synchronized void renewed(final Lease lease, final long startNanos) {
+    final double latency = (System.nanoTime() - startNanos) / 1000000.0;
+    if (!latencyMeasured) {
+      smoothedLatencyMillis = latency;
+      latencyVarianceMillis = latency / 2;
+      latencyMeasured = true;
+    } else {
+      latencyVarianceMillis = 0.75 * latencyVarianceMillis
+          + 0.25 * Math.abs(smoothedLatencyMillis - latency);
+      smoothedLatencyMillis = 0.875 * smoothedLatencyMillis + 0.125 * latency;
+    }
+    expirationMillis = lease.expirationMillis();
+  }
+
+  private void leaseLost(final LeaseRenewalException cause) {
+    final List<LeaseLossListener> toNotify;
+    synchronized (listeners) {
+      if (error != null) {
+        return;
+      }
+      error = cause;
+      toNotify = new ArrayList<LeaseLossListener>(listeners);
+      listeners.clear();
+    }
+    log.error("Lost lease " + leaseName + " held by " + leaseOwner, cause);
+    for (final LeaseLossListener listener : toNotify) {
+      try {
+        listener.leaseLost(leaseName, cause);
+      } catch (final RuntimeException e) {
+        log.error("Lease loss listener failed", e);
+      }
     }
   }
 
@@ -30,19 +30,22 @@
  * renew.
  * <p>
  * The leasing mechanism is implemented on top of DynamoDB, using a table that
- * we only ever access using consistent reads. This way we do not encounter
- * errors due to eventual consistency.
+ * we only ever read with consistent reads. This way we do not encounter errors
+ * due to eventual consistency.
  * <p>
  * A lease object (as implemented in the Lease class) contains three important
  * fields: a string identifying the lease owner (set to the globally-unique run
- * ID in our system), an expiration timestamp, and a version number. We use the
- * version number to eliminate races between reading the current state of a
- * lease and subsequently updating it; DynamoDB allows us to pass an expected
- * version number along with an update operation, giving a form of atomic
- * compare-and-exchange operation.
+ * ID in our system), an expiration timestamp, and a version number that is
+ * incremented on every change. Rather than reading the current state of a
+ * lease and then updating it, every operation is a single conditional update;
+ * DynamoDB checks the condition (for example, that the lease has expired) and
+ * applies the update atomically, and returns the new state of the lease.
  * <p>
  * The majority of the lease mangement logic is implemented in the LeaseManger
  * class. See the implementation of that class for a detailed discussion on the
- * algorithm by which leases are acquired and renewed.
+ * conditions under which leases are acquired and renewed. Long-running
+ * processes use a LeaseRenewalThread to renew their lease in the background,
+ * and can register a LeaseLossListener to stop work as soon as the lease is
+ * lost.
  */
 package edu.harvard.data.leases;
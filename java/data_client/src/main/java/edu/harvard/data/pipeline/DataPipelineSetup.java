@@ -31,6 +31,7 @@ public class DataPipelineSetup {
   private final CodeManager codeManager;
   private final String runId;
   private final InputTableIndex dataIndex;
+  private final S3ToHdfsCopyPlan copyPlan;
   private String pipelineId;
 
   public static void main(final String[] args) throws IOException, DataConfigurationException,
@@ -50,14 +51,21 @@ public class DataPipelineSetup {
     PipelineExecutionRecord.init(config.getPipelineDynamoTable());
     final InputTableIndex dataIndex = aws.readJson(config.getIndexFileS3Location(runId),
         InputTableIndex.class);
-    final DataPipelineSetup pipeline = new DataPipelineSetup(config, dataIndex, codeManager, runId);
+    // The copy plan is stored for the code generator, which writes the manifest
+    // for each of the copy activities once the EMR cluster has started.
+    final S3ToHdfsCopyPlan copyPlan = new S3ToHdfsCopyPlan(
+        new S3ToHdfsCopyPlanner(config.getS3ToHdfsCopyTasks()).plan(dataIndex));
+    aws.writeJson(config.getS3ToHdfsCopyPlanS3Location(runId), copyPlan);
+    final DataPipelineSetup pipeline = new DataPipelineSetup(config, dataIndex, copyPlan,
+        codeManager, runId);
     pipeline.generate();
   }
 
   public DataPipelineSetup(final DataConfig config, final InputTableIndex dataIndex,
-      final CodeManager codeManager, final String runId) {
+      final S3ToHdfsCopyPlan copyPlan, final CodeManager codeManager, final String runId) {
     this.config = config;
     this.dataIndex = dataIndex;
+    this.copyPlan = copyPlan;
     this.codeManager = codeManager;
     this.runId = runId;
   }
@@ -110,7 +118,20 @@ public class DataPipelineSetup {
     final PipelineFactory factory = new PipelineFactory(config, pipelineId, runId);
     final Pipeline pipeline = new Pipeline(runId, config, pipelineId, factory,
         dataIndex.getSchemaVersion(), runId);
-    final EmrStartupPipelineSetup setup = new EmrStartupPipelineSetup(pipeline, factory, runId);
+    final PipelineObjectBase lastStep = populateSteps(pipeline, factory, codeManager, runId,
+        dataIndex, copyPlan);
+    lastStep.setSuccess(getSuccessAction(factory));
+    return pipeline;
+  }
+
+  // Adds the startup and Phase 1 to 3 steps to the pipeline, returning the
+  // final step. Shared with the LocalPipelineExecutor so that local runs
+  // interpret the same object graph that is sent to Data Pipeline.
+  static PipelineObjectBase populateSteps(final Pipeline pipeline, final PipelineFactory factory,
+      final CodeManager codeManager, final String runId, final InputTableIndex dataIndex,
+      final S3ToHdfsCopyPlan copyPlan) {
+    final EmrStartupPipelineSetup setup = new EmrStartupPipelineSetup(pipeline, factory, runId,
+        copyPlan);
     final Phase1PipelineSetup phase1 = new Phase1PipelineSetup(pipeline, factory, codeManager,
         runId, dataIndex);
     final Phase2PipelineSetup phase2 = new Phase2PipelineSetup(pipeline, factory, codeManager);
@@ -122,8 +143,7 @@ public class DataPipelineSetup {
     previousStep = phase1.populate(previousStep);
     previousStep = phase2.populate(previousStep);
     previousStep = phase3.populate(previousStep);
-    previousStep.setSuccess(getSuccessAction(factory));
-    return pipeline;
+    return previousStep;
   }
 
   private PipelineObjectBase getSuccessAction(final PipelineFactory factory)
@@ -15,10 +15,12 @@ public class EmrStartupPipelineSetup {
   private final Pipeline pipeline;
   private final PipelineFactory factory;
   private final String runId;
+  private final S3ToHdfsCopyPlan copyPlan;
 
   public EmrStartupPipelineSetup(final Pipeline pipeline, final PipelineFactory factory,
-      final String runId) {
+      final String runId, final S3ToHdfsCopyPlan copyPlan) {
     this.factory = factory;
+    this.copyPlan = copyPlan;
     this.config = pipeline.getConfig();
     this.pipeline = pipeline;
     this.runId = runId;
@@ -30,10 +32,11 @@ public class EmrStartupPipelineSetup {
         pipeline.getEmr());
     final PipelineObjectBase startupLogging = startupLogging();
     final PipelineObjectBase copyGeneratedCode = copyGeneratedCode();
-    final PipelineObjectBase copyData = copyData();
     barrier.addDependency(startupLogging);
     barrier.addDependency(copyGeneratedCode);
-    barrier.addDependency(copyData);
+    for (final PipelineObjectBase copyData : copyData()) {
+      barrier.addDependency(copyData);
+    }
     return barrier;
   }
 
@@ -52,10 +55,17 @@ public class EmrStartupPipelineSetup {
     return factory.getS3CopyActivity("CopyGeneratedCode", src, dest, pipeline.getEmr());
   }
 
-  private PipelineObjectBase copyData() {
-    final String manifest = config.getEmrCodeDir() + "/" + config.getS3ToHdfsManifestFile();
-    return factory.getS3DistCpActivity("CopyDataToHdfs", manifest, workingDir, config.getHdfsDir(0),
-        pipeline.getEmr());
+  // One s3-dist-cp job per task in the copy plan, all running in parallel. The
+  // manifests are written by the S3ToHdfsManifestGenerator from the stored
+  // copy of the same plan.
+  private List<PipelineObjectBase> copyData() {
+    final List<PipelineObjectBase> copies = new ArrayList<PipelineObjectBase>();
+    for (int task = 0; task < copyPlan.getTaskCount(); task++) {
+      final String manifest = config.getEmrCodeDir() + "/" + config.getS3ToHdfsManifestFile(task);
+      copies.add(factory.getS3DistCpActivity("CopyDataToHdfs" + task, manifest, workingDir,
+          config.getHdfsDir(0), pipeline.getEmr()));
+    }
+    return copies;
   }
 
 }
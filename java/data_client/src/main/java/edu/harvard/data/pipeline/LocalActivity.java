@@ -0,0 +1,25 @@
+package edu.harvard.data.pipeline;
+
+import java.util.List;
+
+/**
+ * In-process stand-in for a pipeline activity, used by the
+ * {@link LocalPipelineExecutor} in place of steps that would otherwise need AWS
+ * services (DynamoDB, Data Pipeline) or tools that are only installed on the
+ * EMR cluster.
+ */
+public interface LocalActivity {
+
+  /**
+   * Run the activity.
+   *
+   * @param args
+   *          the arguments that would have been passed to the main class of the
+   *          step on EMR. Empty for shell and SQL steps.
+   * @throws Exception
+   *           if the activity fails. The executor records the step as failed
+   *           and skips any steps that have not yet run.
+   */
+  void run(List<String> args) throws Exception;
+
+}
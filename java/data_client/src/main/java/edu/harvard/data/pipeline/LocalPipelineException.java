@@ -0,0 +1,25 @@
+package edu.harvard.data.pipeline;
+
+/**
+ * Thrown when a step fails while running a pipeline locally through the
+ * {@link LocalPipelineExecutor}. The exception carries the timing report for
+ * the run, including the failed step and any steps that were skipped as a
+ * result.
+ */
+public class LocalPipelineException extends Exception {
+
+  private static final long serialVersionUID = 1L;
+
+  private final LocalPipelineReport report;
+
+  public LocalPipelineException(final String stepId, final LocalPipelineReport report,
+      final Throwable cause) {
+    super("Pipeline step " + stepId + " failed: " + cause.getMessage(), cause);
+    this.report = report;
+  }
+
+  public LocalPipelineReport getReport() {
+    return report;
+  }
+
+}
@@ -0,0 +1,538 @@
+package edu.harvard.data.pipeline;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.amazonaws.services.s3.model.S3ObjectId;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.harvard.data.AwsUtils;
+import edu.harvard.data.CodeManager;
+import edu.harvard.data.DataConfig;
+import edu.harvard.data.HadoopJob;
+import edu.harvard.data.HadoopJobFailureException;
+import edu.harvard.data.NoInputDataException;
+import edu.harvard.data.leases.AcquireLeaseTask;
+import edu.harvard.data.leases.LeaseRenewalException;
+import edu.harvard.data.leases.ReleaseLeaseTask;
+import edu.harvard.data.leases.RenewLeaseTask;
+import edu.harvard.data.pipeline.LocalPipelineReport.Status;
+import edu.harvard.data.pipeline.LocalPipelineReport.StepTiming;
+
+/**
+ * Runs the Phase 1 to 3 steps of a data pipeline in the current process,
+ * without EMR or Data Pipeline. The executor builds the same pipeline object
+ * graph that {@link DataPipelineSetup} sends to Data Pipeline, and interprets
+ * each activity locally:
+ * <ul>
+ * <li>S3 is replaced by a directory on the local file system, with each bucket
+ * stored as a subdirectory. HDFS paths are used as local paths directly, so the
+ * configuration should set {@code hdfs_root} to a local directory.
+ * <li>{@code EmrActivity} steps whose main class is a {@link HadoopJob} are
+ * created through {@link HadoopJob#prepareJob} and run on Hadoop's local job
+ * runner. Other main classes are invoked reflectively.
+ * <li>{@code aws s3 cp} and {@code s3-dist-cp} commands are performed as local
+ * file copies. Other shell commands are run through {@code bash}, with S3 and
+ * HDFS URIs rewritten to local paths.
+ * <li>{@code SqlActivity} scripts are run statement by statement against a JDBC
+ * connection that stands in for Redshift, typically an embedded database. S3
+ * URIs in the scripts are rewritten as for shell commands, so that the
+ * database's file functions can take the place of {@code UNLOAD} and
+ * {@code COPY}.
+ * <li>Lease activities are performed against an in-memory lease table.
+ * </ul>
+ * Steps that depend on services that have no local equivalent can be replaced
+ * using {@link #replaceStep} or {@link #replaceMainClass}.
+ * <P>
+ * Steps are run one at a time in dependency order, and the time taken by each
+ * step is recorded in a {@link LocalPipelineReport}. As in Data Pipeline, a
+ * failed step causes all remaining steps to be skipped.
+ */
+public class LocalPipelineExecutor {
+  private static final Logger log = LogManager.getLogger();
+
+  private static final Set<String> ACTIVITY_TYPES = new HashSet<String>(
+      Arrays.asList("ShellCommandActivity", "EmrActivity", "SqlActivity"));
+  private static final Pattern S3_URI = Pattern.compile("s3://[^\\s;'\"]+");
+
+  private final DataConfig config;
+  private final File s3Root;
+  private final Connection redshift;
+  private final PipelineFactory factory;
+  private final Map<String, LocalActivity> stepReplacements;
+  private final Map<String, LocalActivity> classReplacements;
+  private final Map<String, String> leases;
+
+  /**
+   * Create an executor for a pipeline run.
+   *
+   * @param config
+   *          the data configuration for the run.
+   * @param codeManager
+   *          the dataset-specific code manager, used to determine the Hadoop
+   *          and identity steps in the pipeline.
+   * @param dataIndex
+   *          the index of input tables, as produced by Phase 0.
+   * @param copyPlan
+   *          the S3 to HDFS copy plan for the run. The manifests for the plan's
+   *          tasks must already be in the code directory.
+   * @param runId
+   *          the identifier of the pipeline run.
+   * @param s3Root
+   *          local directory that stands in for S3.
+   * @param redshift
+   *          connection on which SQL steps will be run. May be null if the
+   *          pipeline contains no SQL steps, or all SQL steps are replaced.
+   */
+  public LocalPipelineExecutor(final DataConfig config, final CodeManager codeManager,
+      final InputTableIndex dataIndex, final S3ToHdfsCopyPlan copyPlan, final String runId,
+      final File s3Root, final Connection redshift) throws JsonProcessingException {
+    this.config = config;
+    this.s3Root = s3Root;
+    this.redshift = redshift;
+    this.stepReplacements = new HashMap<String, LocalActivity>();
+    this.classReplacements = new HashMap<String, LocalActivity>();
+    this.leases = new HashMap<String, String>();
+    this.factory = new PipelineFactory(config, runId, runId);
+    final Pipeline pipeline = new Pipeline(runId, config, runId, factory,
+        dataIndex.getSchemaVersion(), runId);
+    DataPipelineSetup.populateSteps(pipeline, factory, codeManager, runId, dataIndex,
+        copyPlan);
+    setupLocalActivities();
+  }
+
+  /**
+   * Run a local activity in place of the pipeline step with the given ID.
+   */
+  public void replaceStep(final String stepId, final LocalActivity activity) {
+    stepReplacements.put(stepId, activity);
+  }
+
+  /**
+   * Run a local activity in place of any Java or EMR step that would run the
+   * given main class.
+   */
+  public void replaceMainClass(final Class<?> cls, final LocalActivity activity) {
+    classReplacements.put(cls.getCanonicalName(), activity);
+  }
+
+  /**
+   * Get the local file that stands in for an S3, HDFS or local file location.
+   */
+  public File getLocalFile(final String location) {
+    if (location.toLowerCase().startsWith("s3://")) {
+      return getLocalFile(AwsUtils.key(location));
+    }
+    if (location.toLowerCase().startsWith("hdfs://")) {
+      return new File(location.substring("hdfs://".length()));
+    }
+    if (location.toLowerCase().startsWith("file://")) {
+      return new File(location.substring("file://".length()));
+    }
+    return new File(location);
+  }
+
+  public File getLocalFile(final S3ObjectId obj) {
+    return new File(new File(s3Root, obj.getBucket()), obj.getKey());
+  }
+
+  /**
+   * Get the IDs of all pipeline steps in the order in which they will be run.
+   */
+  public List<String> getStepIds() {
+    final List<String> ids = new ArrayList<String>();
+    for (final PipelineObjectBase step : getExecutionOrder()) {
+      ids.add(step.getId());
+    }
+    return ids;
+  }
+
+  /**
+   * Get the names of all leases currently held in the in-memory lease table.
+   */
+  public Set<String> getHeldLeases() {
+    return Collections.unmodifiableSet(leases.keySet());
+  }
+
+  /**
+   * Run every step in the pipeline.
+   *
+   * @return the timings for each step.
+   * @throws LocalPipelineException
+   *           if any step fails. The report attached to the exception records
+   *           the timings of the steps that ran before the failure.
+   */
+  public LocalPipelineReport run() throws LocalPipelineException {
+    final List<PipelineObjectBase> steps = getExecutionOrder();
+    final LocalPipelineReport report = new LocalPipelineReport();
+    for (int i = 0; i < steps.size(); i++) {
+      final PipelineObjectBase step = steps.get(i);
+      log.info("Running step " + step.getId());
+      final long start = System.nanoTime();
+      try {
+        runStep(step);
+      } catch (final Exception e) {
+        report.add(new StepTiming(step.getId(), step.getType(), Status.Failed, elapsed(start)));
+        for (final PipelineObjectBase skipped : steps.subList(i + 1, steps.size())) {
+          report.add(new StepTiming(skipped.getId(), skipped.getType(), Status.Skipped, 0));
+        }
+        log.error("Step " + step.getId() + " failed", e);
+        log.info("Local pipeline run failed:\n" + report);
+        throw new LocalPipelineException(step.getId(), report, e);
+      }
+      final long elapsed = elapsed(start);
+      report.add(new StepTiming(step.getId(), step.getType(), Status.Succeeded, elapsed));
+      log.info("Step " + step.getId() + " completed in " + elapsed + " ms");
+    }
+    log.info("Local pipeline run complete:\n" + report);
+    return report;
+  }
+
+  private long elapsed(final long start) {
+    return (System.nanoTime() - start) / 1000000;
+  }
+
+  // Orders activities so that each runs after everything it depends on. Ties
+  // are broken by the order in which the steps were created, so that runs are
+  // repeatable.
+  private List<PipelineObjectBase> getExecutionOrder() {
+    final List<PipelineObjectBase> pending = new ArrayList<PipelineObjectBase>();
+    final Set<String> activityIds = new HashSet<String>();
+    for (final PipelineObjectBase obj : factory.getObjects()) {
+      if (ACTIVITY_TYPES.contains(obj.getType()) && activityIds.add(obj.getId())) {
+        pending.add(obj);
+      }
+    }
+    final List<PipelineObjectBase> ordered = new ArrayList<PipelineObjectBase>();
+    final Set<String> done = new HashSet<String>();
+    while (!pending.isEmpty()) {
+      PipelineObjectBase next = null;
+      for (final PipelineObjectBase step : pending) {
+        if (isReady(step, done, activityIds)) {
+          next = step;
+          break;
+        }
+      }
+      if (next == null) {
+        throw new IllegalStateException(
+            "Circular dependency between pipeline steps " + ids(pending));
+      }
+      pending.remove(next);
+      ordered.add(next);
+      done.add(next.getId());
+    }
+    return ordered;
+  }
+
+  private boolean isReady(final PipelineObjectBase step, final Set<String> done,
+      final Set<String> activityIds) {
+    for (final String dependency : step.getRefs("dependsOn")) {
+      if (activityIds.contains(dependency) && !done.contains(dependency)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private List<String> ids(final List<PipelineObjectBase> steps) {
+    final List<String> ids = new ArrayList<String>();
+    for (final PipelineObjectBase step : steps) {
+      ids.add(step.getId());
+    }
+    return ids;
+  }
+
+  private void runStep(final PipelineObjectBase step) throws Exception {
+    final String type = step.getType();
+    String mainClass = null;
+    List<String> args = Collections.emptyList();
+    if (type.equals("EmrActivity")) {
+      // jar,class,arg1,arg2...
+      final List<String> parts = Arrays.asList(step.getString("step").split(","));
+      mainClass = parts.get(1);
+      args = parts.subList(2, parts.size());
+    } else if (type.equals("ShellCommandActivity")
+        && step.getString("command").startsWith("java -cp ")) {
+      // java -cp jar class arg1 arg2...
+      final List<String> parts = Arrays.asList(step.getString("command").split(" "));
+      mainClass = parts.get(3);
+      args = parts.subList(4, parts.size());
+    }
+
+    if (stepReplacements.containsKey(step.getId())) {
+      stepReplacements.get(step.getId()).run(args);
+    } else if (mainClass != null) {
+      runMainClass(mainClass, args);
+    } else if (type.equals("SqlActivity")) {
+      runSqlScript(step.getString("scriptUri"));
+    } else {
+      runShellCommand(step);
+    }
+  }
+
+  private void runMainClass(final String className, final List<String> args) throws Exception {
+    if (classReplacements.containsKey(className)) {
+      classReplacements.get(className).run(args);
+      return;
+    }
+    final Class<?> cls = Class.forName(className);
+    if (HadoopJob.class.isAssignableFrom(cls)) {
+      runHadoopJob(cls.asSubclass(HadoopJob.class), Integer.parseInt(args.get(1)));
+      return;
+    }
+    final Method main = cls.getMethod("main", String[].class);
+    try {
+      main.invoke(null, (Object) args.toArray(new String[] {}));
+    } catch (final InvocationTargetException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  private void runHadoopJob(final Class<? extends HadoopJob> cls, final int phase)
+      throws Exception {
+    final HadoopJob hadoopJob = cls.getConstructor(DataConfig.class, int.class)
+        .newInstance(config, phase);
+    final Job job;
+    try {
+      job = hadoopJob.prepareJob();
+    } catch (final NoInputDataException e) {
+      log.info(e.getMessage());
+      return;
+    }
+    job.getConfiguration().set("mapreduce.framework.name", "local");
+    job.getConfiguration().set("fs.defaultFS", "file:///");
+    if (!job.waitForCompletion(false)) {
+      throw new HadoopJobFailureException(Collections.singletonList(job.getJobName()));
+    }
+  }
+
+  private void runSqlScript(final String scriptUri) throws IOException, SQLException {
+    if (redshift == null) {
+      throw new IllegalStateException("No database connection for script " + scriptUri);
+    }
+    final String script = localizePaths(
+        FileUtils.readFileToString(getLocalFile(scriptUri), StandardCharsets.UTF_8));
+    try (Statement stmt = redshift.createStatement()) {
+      for (final String sql : splitStatements(script)) {
+        log.debug("Executing " + sql);
+        stmt.execute(sql);
+      }
+    }
+  }
+
+  // Splits a script on semicolons that are outside quoted strings and
+  // comments.
+  static List<String> splitStatements(final String script) {
+    final List<String> statements = new ArrayList<String>();
+    final StringBuilder current = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < script.length(); i++) {
+      final char c = script.charAt(i);
+      if (!quoted && c == '-' && i + 1 < script.length() && script.charAt(i + 1) == '-') {
+        while (i < script.length() && script.charAt(i) != '\n') {
+          i++;
+        }
+        current.append('\n');
+      } else if (!quoted && c == ';') {
+        addStatement(statements, current);
+      } else {
+        if (c == '\'') {
+          quoted = !quoted;
+        }
+        current.append(c);
+      }
+    }
+    addStatement(statements, current);
+    return statements;
+  }
+
+  private static void addStatement(final List<String> statements, final StringBuilder current) {
+    final String statement = current.toString().trim();
+    if (statement.length() > 0) {
+      statements.add(statement);
+    }
+    current.setLength(0);
+  }
+
+  private void runShellCommand(final PipelineObjectBase step)
+      throws IOException, InterruptedException {
+    final String command = step.getString("command");
+    final List<String> tokens = Arrays.asList(command.split("\\s+"));
+    if (command.startsWith("aws s3 cp ")) {
+      copyDirectory(getLocalFile(tokens.get(3)), getLocalFile(tokens.get(4)), null);
+    } else if (command.startsWith("s3-dist-cp ")) {
+      runDistCp(tokens.subList(1, tokens.size()));
+    } else {
+      runBash(step, command);
+    }
+  }
+
+  private void runDistCp(final List<String> options) throws IOException {
+    final Map<String, String> params = new HashMap<String, String>();
+    for (final String option : options) {
+      final int idx = option.indexOf('=');
+      if (idx == -1) {
+        params.put(option, null);
+      } else {
+        params.put(option.substring(0, idx), option.substring(idx + 1));
+      }
+    }
+    final File dest = getLocalFile(params.get("--dest"));
+    final String codec = params.get("--outputCodec");
+    if (params.containsKey("--copyFromManifest")) {
+      final ObjectMapper mapper = new ObjectMapper();
+      final File manifest = getLocalFile(params.get("--previousManifest"));
+      try (BufferedReader in = new BufferedReader(new InputStreamReader(
+          new GZIPInputStream(new FileInputStream(manifest)), StandardCharsets.UTF_8))) {
+        String line = in.readLine();
+        while (line != null) {
+          final Map<?, ?> entry = mapper.readValue(line, Map.class);
+          copyFile(getLocalFile((String) entry.get("path")),
+              new File(dest, (String) entry.get("baseName")), codec);
+          line = in.readLine();
+        }
+      }
+    } else {
+      copyDirectory(getLocalFile(params.get("--src")), dest, codec);
+    }
+  }
+
+  // A missing source is treated as an empty directory, matching the behavior
+  // of a recursive copy from an S3 prefix with no keys.
+  private void copyDirectory(final File src, final File dest, final String codec)
+      throws IOException {
+    if (!src.exists()) {
+      dest.mkdirs();
+      return;
+    }
+    if (src.isFile()) {
+      copyFile(src, new File(dest, src.getName()), codec);
+      return;
+    }
+    for (final File file : FileUtils.listFiles(src, null, true)) {
+      final String relative = src.toURI().relativize(file.toURI()).getPath();
+      copyFile(file, new File(dest, relative), codec);
+    }
+  }
+
+  private void copyFile(final File src, final File dest, final String codec) throws IOException {
+    dest.getParentFile().mkdirs();
+    final boolean compressed = src.getName().endsWith(".gz");
+    if ("gzip".equals(codec) && !compressed) {
+      try (InputStream in = new FileInputStream(src);
+          OutputStream out = new GZIPOutputStream(new FileOutputStream(dest + ".gz"))) {
+        IOUtils.copy(in, out);
+      }
+    } else if ("none".equals(codec) && compressed) {
+      final String path = dest.getPath();
+      try (InputStream in = new GZIPInputStream(new FileInputStream(src));
+          OutputStream out = new FileOutputStream(path.substring(0, path.length() - 3))) {
+        IOUtils.copy(in, out);
+      }
+    } else {
+      FileUtils.copyFile(src, dest);
+    }
+  }
+
+  private void runBash(final PipelineObjectBase step, final String command)
+      throws IOException, InterruptedException {
+    final String localCommand = localizePaths(command);
+    final File stdout = getLocalFile(step.getString("stdout"));
+    final File stderr = getLocalFile(step.getString("stderr"));
+    stdout.getParentFile().mkdirs();
+    stderr.getParentFile().mkdirs();
+    log.debug("Running " + localCommand);
+    final Process process = new ProcessBuilder("bash", "-c", localCommand)
+        .redirectOutput(stdout).redirectError(stderr).start();
+    final int status = process.waitFor();
+    if (status != 0) {
+      throw new IOException(
+          "Command exited with status " + status + ": " + localCommand + " (see " + stderr + ")");
+    }
+  }
+
+  // Rewrites S3 and HDFS URIs in a command or script to local paths.
+  String localizePaths(final String command) {
+    final Matcher matcher = S3_URI.matcher(command);
+    final StringBuffer localCommand = new StringBuffer();
+    while (matcher.find()) {
+      matcher.appendReplacement(localCommand,
+          Matcher.quoteReplacement(getLocalFile(matcher.group()).getPath()));
+    }
+    matcher.appendTail(localCommand);
+    return localCommand.toString().replace("hdfs://", "");
+  }
+
+  // Lease tasks and the startup task need DynamoDB and Data Pipeline. Local
+  // runs are single-process, so an in-memory lease table is sufficient.
+  private void setupLocalActivities() {
+    replaceMainClass(AcquireLeaseTask.class, new LocalActivity() {
+      @Override
+      public void run(final List<String> args) {
+        final String holder = leases.get(args.get(1));
+        if (holder != null && !holder.equals(args.get(2))) {
+          throw new IllegalStateException("Lease " + args.get(1) + " is held by " + holder);
+        }
+        leases.put(args.get(1), args.get(2));
+      }
+    });
+    replaceMainClass(RenewLeaseTask.class, new LocalActivity() {
+      @Override
+      public void run(final List<String> args) throws LeaseRenewalException {
+        if (!args.get(2).equals(leases.get(args.get(1)))) {
+          throw new LeaseRenewalException(
+              "Lease " + args.get(1) + " is not held by " + args.get(2));
+        }
+      }
+    });
+    replaceMainClass(ReleaseLeaseTask.class, new LocalActivity() {
+      @Override
+      public void run(final List<String> args) {
+        if (args.get(2).equals(leases.get(args.get(1)))) {
+          leases.remove(args.get(1));
+        }
+      }
+    });
+    replaceMainClass(PipelineStartup.class, new LocalActivity() {
+      @Override
+      public void run(final List<String> args) {
+        log.info("Starting local pipeline run " + args.get(0));
+      }
+    });
+  }
+
+}
@@ -0,0 +1,92 @@
+package edu.harvard.data.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Per-step timings for a pipeline run through the
+ * {@link LocalPipelineExecutor}. Steps are recorded in the order in which they
+ * ran; steps that were not run because an earlier step failed are recorded
+ * with a status of {@link Status#Skipped} and no elapsed time.
+ */
+public class LocalPipelineReport {
+
+  public enum Status {
+    Succeeded, Failed, Skipped
+  }
+
+  private final List<StepTiming> steps;
+
+  LocalPipelineReport() {
+    this.steps = new ArrayList<StepTiming>();
+  }
+
+  void add(final StepTiming step) {
+    steps.add(step);
+  }
+
+  public List<StepTiming> getSteps() {
+    return Collections.unmodifiableList(steps);
+  }
+
+  public StepTiming getStep(final String id) {
+    for (final StepTiming step : steps) {
+      if (step.getId().equals(id)) {
+        return step;
+      }
+    }
+    return null;
+  }
+
+  public long getTotalMillis() {
+    long total = 0;
+    for (final StepTiming step : steps) {
+      total += step.getElapsedMillis();
+    }
+    return total;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder s = new StringBuilder();
+    for (final StepTiming step : steps) {
+      s.append(String.format("%-40s %-20s %-10s %8d ms%n", step.getId(), step.getType(),
+          step.getStatus(), step.getElapsedMillis()));
+    }
+    s.append(String.format("%-72s %8d ms", "Total", getTotalMillis()));
+    return s.toString();
+  }
+
+  public static class StepTiming {
+    private final String id;
+    private final String type;
+    private final Status status;
+    private final long elapsedMillis;
+
+    StepTiming(final String id, final String type, final Status status,
+        final long elapsedMillis) {
+      this.id = id;
+      this.type = type;
+      this.status = status;
+      this.elapsedMillis = elapsedMillis;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public String getType() {
+      return type;
+    }
+
+    public Status getStatus() {
+      return status;
+    }
+
+    public long getElapsedMillis() {
+      return elapsedMillis;
+    }
+  }
+
+}
@@ -1,6 +1,7 @@
 package edu.harvard.data.pipeline;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import com.amazonaws.services.s3.model.S3ObjectId;
@@ -11,8 +12,29 @@ import edu.harvard.data.DataConfig;
 import edu.harvard.data.identity.IdentityMapHadoopJob;
 import edu.harvard.data.identity.IdentityScrubHadoopJob;
 
+/**
+ * Adds the Phase 1 (identity) steps to a pipeline. Each step declares the data
+ * that it reads and writes, and the step dependencies are derived from those
+ * declarations by a {@link PipelineGraph}, so that independent steps run in
+ * parallel. The identity lease is held from before the identity map is
+ * unloaded from Redshift until the updated map has been loaded back.
+ */
 public class Phase1PipelineSetup {
 
+  // Data read and written by the Phase 1 steps.
+  static final String PHASE_0_IDENTITY_TABLES = "phase_0 identity tables";
+  static final String PHASE_0_UNMODIFIED_TABLES = "phase_0 unmodified tables";
+  static final String IDENTITY_LEASE = "identity lease";
+  static final String UNLOADED_IDENTITY = "unloaded identity map";
+  static final String PHASE_0_IDENTITY = "phase_0 identity map";
+  static final String PHASE_1_IDENTITY = "phase_1 identity map";
+  static final String PHASE_1_VERIFICATION = "phase_1 verification data";
+  static final String PHASE_1_IDENTITY_TABLES = "phase_1 identity tables";
+  static final String VERIFIED_IDENTITY_TABLES = "verified phase_1 identity tables";
+  static final String STAGED_IDENTITY = "staged identity map";
+  static final String REDSHIFT_IDENTITY = "redshift identity map";
+  static final String PHASE_1_UNMODIFIED_TABLES = "phase_1 unmodified tables";
+
   private final S3ObjectId unloadIdentityS3;
   private final String phase0IdentityHdfs;
   private final String phase1IdentityHdfs;
@@ -42,52 +64,99 @@ public class Phase1PipelineSetup {
   }
 
   public PipelineObjectBase populate(final PipelineObjectBase previousPhase) {
-    PipelineObjectBase previousStep = previousPhase;
+    final PipelineGraph graph = new PipelineGraph(previousPhase, PHASE_0_IDENTITY_TABLES,
+        PHASE_0_UNMODIFIED_TABLES);
     if (identityPhaseRequired()) {
-      previousStep = acquireLease(previousStep, "IdentityLeaseAcquire");
+      final List<String> refreshes = new ArrayList<String>();
+      graph.add(acquireLease("IdentityLeaseAcquire"), inputs(), outputs(IDENTITY_LEASE));
 
-      previousStep = unloadIdentity(previousStep);
-      previousStep = refreshLease(previousStep, "AfterUnloadLeaseRefresh");
+      graph.add(unloadIdentity(), inputs(IDENTITY_LEASE), outputs(UNLOADED_IDENTITY));
+      refreshes.add(refreshLease(graph, "AfterUnloadLeaseRefresh", UNLOADED_IDENTITY));
 
-      previousStep = copyIdentityToHdfs(previousStep);
-      previousStep = refreshLease(previousStep, "AfterCopyToHDFSLeaseRefresh");
+      graph.add(copyIdentityToHdfs(), inputs(UNLOADED_IDENTITY), outputs(PHASE_0_IDENTITY));
+      refreshes.add(refreshLease(graph, "AfterCopyToHDFSLeaseRefresh", PHASE_0_IDENTITY));
 
-      previousStep = identityPreverify(previousStep);
-      previousStep = hadoopIdentityMap(previousStep);
-      previousStep = hadoopIdentityScrub(previousStep);
-      previousStep = identityPostverify(previousStep);
+      // The preverifier reads the Redshift identity map, so needs the lease,
+      // but not the unloaded copy; it can run alongside the unload and copy.
+      final PipelineObjectBase preverify = identityPreverify();
+      if (preverify != null) {
+        graph.add(preverify, inputs(IDENTITY_LEASE, PHASE_0_IDENTITY_TABLES),
+            outputs(PHASE_1_VERIFICATION));
+      }
+      graph.add(hadoopIdentityMap(), inputs(PHASE_0_IDENTITY, PHASE_0_IDENTITY_TABLES),
+          outputs(PHASE_1_IDENTITY));
+      graph.add(hadoopIdentityScrub(), inputs(PHASE_1_IDENTITY, PHASE_0_IDENTITY_TABLES),
+          outputs(PHASE_1_IDENTITY_TABLES));
+      final PipelineObjectBase postverify = identityPostverify();
+      if (postverify != null) {
+        final List<String> postverifyInputs = new ArrayList<String>(
+            inputs(PHASE_1_IDENTITY_TABLES, PHASE_0_IDENTITY_TABLES));
+        if (preverify != null) {
+          postverifyInputs.add(PHASE_1_VERIFICATION);
+        }
+        graph.add(postverify, postverifyInputs, outputs(VERIFIED_IDENTITY_TABLES));
+      }
 
-      previousStep = copyIdentityToS3(previousStep);
-      previousStep = refreshLease(previousStep, "AfterCopyToS3LeaseRefresh");
+      // Staging the new identity map doesn't have to wait for the scrub.
+      graph.add(copyIdentityToS3(), inputs(PHASE_1_IDENTITY), outputs(STAGED_IDENTITY));
+      refreshes.add(refreshLease(graph, "AfterCopyToS3LeaseRefresh", STAGED_IDENTITY));
+
+      // Only replace the Redshift identity map once the scrubbed tables have
+      // been produced and, if possible, verified; a failed run leaves the
+      // existing map in place.
+      final String scrubbed = graph.produces(VERIFIED_IDENTITY_TABLES) ? VERIFIED_IDENTITY_TABLES
+          : PHASE_1_IDENTITY_TABLES;
+      graph.add(loadIdentity(), inputs(IDENTITY_LEASE, STAGED_IDENTITY, scrubbed),
+          outputs(REDSHIFT_IDENTITY));
+
+      final List<String> releaseInputs = new ArrayList<String>(refreshes);
+      releaseInputs.add(REDSHIFT_IDENTITY);
+      graph.add(releaseLease("IdentityLeaseRelease"), releaseInputs, outputs());
+    }
+    graph.add(moveUnmodifiedTables(), inputs(PHASE_0_UNMODIFIED_TABLES),
+        outputs(PHASE_1_UNMODIFIED_TABLES));
 
-      previousStep = loadIdentity(previousStep);
-      previousStep = releaseLease(previousStep, "IdentityLeaseRelease");
+    final List<PipelineObjectBase> lastSteps = graph.connect();
+    if (lastSteps.size() == 1) {
+      return lastSteps.get(0);
     }
-    previousStep = moveUnmodifiedTables(previousStep);
-    return previousStep;
+    final PipelineObjectBase barrier = factory.getSynchronizationBarrier("Phase1CompleteBarrier",
+        pipeline.getEmr());
+    for (final PipelineObjectBase step : lastSteps) {
+      barrier.addDependency(step);
+    }
+    return barrier;
   }
 
-  private PipelineObjectBase releaseLease(final PipelineObjectBase previousStep, final String id) {
-    final PipelineObjectBase release = factory.getReleaseLeaseActivity(id,
-        config.getLeaseDynamoTable(), config.getIdentityLease(), runId, pipeline.getEmr());
-    release.addDependency(previousStep);
-    return release;
+  private static List<String> inputs(final String... resources) {
+    return Arrays.asList(resources);
   }
 
-  private PipelineObjectBase acquireLease(final PipelineObjectBase previousStep, final String id) {
-    final PipelineObjectBase acquire = factory.getAcquireLeaseActivity(id,
-        config.getLeaseDynamoTable(), config.getIdentityLease(), runId,
-        config.getIdentityLeaseLengthSeconds(), pipeline.getEmr());
-    acquire.addDependency(previousStep);
-    return acquire;
+  private static List<String> outputs(final String... resources) {
+    return Arrays.asList(resources);
   }
 
-  private PipelineObjectBase refreshLease(final PipelineObjectBase previousStep, final String id) {
+  private PipelineObjectBase releaseLease(final String id) {
+    return factory.getReleaseLeaseActivity(id, config.getLeaseDynamoTable(),
+        config.getIdentityLease(), runId, pipeline.getEmr());
+  }
+
+  private PipelineObjectBase acquireLease(final String id) {
+    return factory.getAcquireLeaseActivity(id, config.getLeaseDynamoTable(),
+        config.getIdentityLease(), runId, config.getIdentityLeaseLengthSeconds(),
+        pipeline.getEmr());
+  }
+
+  // Renew the lease once the input resource has been produced. Returns the
+  // resource that marks the renewal, so that the lease isn't released until
+  // every renewal has run.
+  private String refreshLease(final PipelineGraph graph, final String id, final String after) {
     final PipelineObjectBase renew = factory.getRenewLeaseActivity(id, config.getLeaseDynamoTable(),
         config.getIdentityLease(), runId, config.getIdentityLeaseLengthSeconds(),
         pipeline.getEmr());
-    renew.addDependency(previousStep);
-    return renew;
+    final String renewed = "lease renewed by " + id;
+    graph.add(renew, inputs(after), outputs(renewed));
+    return renewed;
   }
 
   private boolean identityPhaseRequired() {
@@ -99,47 +168,40 @@ public class Phase1PipelineSetup {
     return false;
   }
 
-  private PipelineObjectBase moveUnmodifiedTables(final PipelineObjectBase previousStep) {
+  private PipelineObjectBase moveUnmodifiedTables() {
     final String script = config.getEmrCodeDir() + "/" + config.getMoveUnmodifiedScript(1);
-    final PipelineObjectBase move = factory.getShellActivity("Phase1MoveUnmodifiedFiles", script,
-        pipeline.getEmr());
-    move.addDependency(previousStep);
-    return move;
+    return factory.getShellActivity("Phase1MoveUnmodifiedFiles", script, pipeline.getEmr());
   }
 
-  private PipelineObjectBase identityPreverify(final PipelineObjectBase previousStep) {
+  // Returns null if there is no preverification job for this data set.
+  private PipelineObjectBase identityPreverify() {
     if (!dataIndex.canvasMegadump()) {
       final Class<?> cls = codeManager.getIdentityPreverifyJob();
       if (cls != null) {
         final List<String> args = new ArrayList<String>();
         args.add(config.getPaths());
         args.add(runId);
-        final PipelineObjectBase verify = factory.getEmrActivity("IdentityPreverify",
-            pipeline.getEmr(), cls, args);
-        verify.addDependency(previousStep);
-        return verify;
+        return factory.getEmrActivity("IdentityPreverify", pipeline.getEmr(), cls, args);
       }
     }
-    return previousStep;
+    return null;
   }
 
-  private PipelineObjectBase identityPostverify(final PipelineObjectBase previousStep) {
+  // Returns null if there is no postverification job for this data set.
+  private PipelineObjectBase identityPostverify() {
     if (!dataIndex.canvasMegadump()) {
       final Class<?> cls = codeManager.getIdentityPostverifyJob();
       if (cls != null) {
         final List<String> args = new ArrayList<String>();
         args.add(config.getPaths());
         args.add(runId);
-        final PipelineObjectBase verify = factory.getEmrActivity("IdentityPostverify",
-            pipeline.getEmr(), cls, args);
-        verify.addDependency(previousStep);
-        return verify;
+        return factory.getEmrActivity("IdentityPostverify", pipeline.getEmr(), cls, args);
       }
     }
-    return previousStep;
+    return null;
   }
 
-  private PipelineObjectBase hadoopIdentityMap(final PipelineObjectBase previousStep) {
+  private PipelineObjectBase hadoopIdentityMap() {
     final Class<?> cls = IdentityMapHadoopJob.class;
     final List<String> args = new ArrayList<String>();
     args.add(config.getPaths());
@@ -147,11 +209,10 @@ public class Phase1PipelineSetup {
     args.add(codeManager.getClass().getCanonicalName());
     final PipelineObjectBase identity = factory.getEmrActivity("IdentityMapHadoop",
         pipeline.getEmr(), cls, args);
-    identity.addDependency(previousStep);
     return identity;
   }
 
-  private PipelineObjectBase hadoopIdentityScrub(final PipelineObjectBase previousStep) {
+  private PipelineObjectBase hadoopIdentityScrub() {
     final Class<?> cls = IdentityScrubHadoopJob.class;
     final List<String> args = new ArrayList<String>();
     args.add(config.getPaths());
@@ -159,38 +220,33 @@ public class Phase1PipelineSetup {
     args.add(codeManager.getClass().getCanonicalName());
     final PipelineObjectBase identity = factory.getEmrActivity("IdentityScrubHadoop",
         pipeline.getEmr(), cls, args);
-    identity.addDependency(previousStep);
     return identity;
   }
 
-  private PipelineObjectBase unloadIdentity(final PipelineObjectBase previousStep) {
+  private PipelineObjectBase unloadIdentity() {
     final S3ObjectId script = AwsUtils.key(workingDir, "code", config.getRedshiftUnloadScript());
     final PipelineObjectBase unloadId = factory.getUnloadActivity("UnloadIdentity", script,
         pipeline.getRedshift(), pipeline.getEmr());
-    unloadId.addDependency(previousStep);
     return unloadId;
   }
 
-  private PipelineObjectBase copyIdentityToHdfs(final PipelineObjectBase previousStep) {
+  private PipelineObjectBase copyIdentityToHdfs() {
     final PipelineObjectBase copy = factory.getS3DistCpActivity("CopyIdentityToHdfs",
         unloadIdentityS3, phase0IdentityHdfs, pipeline.getEmr());
-    copy.addDependency(previousStep);
     return copy;
   }
 
-  private PipelineObjectBase copyIdentityToS3(final PipelineObjectBase previousStep) {
+  private PipelineObjectBase copyIdentityToS3() {
     final PipelineObjectBase copy = factory.getS3DistCpActivity("CopyIdentityToS3",
         phase1IdentityHdfs, redshiftStagingS3, pipeline.getEmr());
-    copy.addDependency(previousStep);
     return copy;
   }
 
-  private PipelineObjectBase loadIdentity(final PipelineObjectBase previousStep) {
+  private PipelineObjectBase loadIdentity() {
     final S3ObjectId script = AwsUtils.key(workingDir, "code",
         config.getIdentityRedshiftLoadScript());
     final PipelineObjectBase load = factory.getSqlScriptActivity("LoadIdentityToRedshift", script,
         pipeline.getRedshift(), pipeline.getEmr());
-    load.addDependency(previousStep);
     return load;
   }
 }
@@ -307,6 +307,10 @@ public class PipelineFactory {
     return path;
   }
 
+  List<PipelineObjectBase> getObjects() {
+    return allObjects;
+  }
+
   public List<PipelineObject> getAllObjects() {
     final List<PipelineObject> objects = new ArrayList<PipelineObject>();
     for (final PipelineObjectBase obj : allObjects) {
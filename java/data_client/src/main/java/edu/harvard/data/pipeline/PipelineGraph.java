@@ -0,0 +1,175 @@
+package edu.harvard.data.pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds the dependencies between a set of pipeline steps from the data that
+ * each step reads and writes. Each step declares the named resources that it
+ * consumes and produces (an HDFS directory, an S3 prefix, a Redshift table or
+ * the identity lease, for example); a step then depends on the producer of
+ * each of its inputs, and on nothing else. Steps that don't share data are
+ * free to run at the same time.
+ * <P>
+ * Every resource must have exactly one producer, either a step in the graph or
+ * the step that precedes the graph. The graph must be acyclic; both properties
+ * are checked when the dependencies are connected.
+ */
+class PipelineGraph {
+
+  // Steps are identified by ID; PipelineObjectBase's hash code changes as
+  // fields are set, so the objects themselves can't be used as keys.
+  private final PipelineObjectBase start;
+  private final Set<String> startOutputs;
+  private final Map<String, PipelineObjectBase> steps;
+  private final Map<String, Set<String>> inputs;
+  private final Map<String, String> producers;
+
+  /**
+   * @param start
+   *          the step that the graph follows, such as the last step of the
+   *          previous phase.
+   * @param startOutputs
+   *          the resources that are available once {@code start} has
+   *          completed.
+   */
+  PipelineGraph(final PipelineObjectBase start, final String... startOutputs) {
+    this.start = start;
+    this.startOutputs = new HashSet<String>(Arrays.asList(startOutputs));
+    this.steps = new LinkedHashMap<String, PipelineObjectBase>();
+    this.inputs = new HashMap<String, Set<String>>();
+    this.producers = new HashMap<String, String>();
+  }
+
+  /**
+   * Add a step to the graph.
+   *
+   * @throws IllegalArgumentException
+   *           if the step has already been added, or if another step already
+   *           produces one of its outputs.
+   */
+  void add(final PipelineObjectBase step, final List<String> stepInputs,
+      final List<String> stepOutputs) {
+    final String id = step.getId();
+    if (steps.containsKey(id) || id.equals(start.getId())) {
+      throw new IllegalArgumentException("Step " + id + " added twice");
+    }
+    for (final String output : stepOutputs) {
+      if (produces(output)) {
+        throw new IllegalArgumentException(
+            "Resource " + output + " produced by both " + producerId(output) + " and " + id);
+      }
+    }
+    steps.put(id, step);
+    inputs.put(id, new LinkedHashSet<String>(stepInputs));
+    for (final String output : stepOutputs) {
+      producers.put(output, id);
+    }
+  }
+
+  /**
+   * @return true if some step in the graph, or the start step, produces the
+   *         resource.
+   */
+  boolean produces(final String resource) {
+    return startOutputs.contains(resource) || producers.containsKey(resource);
+  }
+
+  /**
+   * Add a dependency from each step to the producers of its inputs.
+   *
+   * @return the steps that no other step depends on, in the order that they
+   *         were added. The phase is complete once all of them have finished.
+   *         If the graph is empty, the start step is returned.
+   * @throws IllegalStateException
+   *           if an input has no producer, or if the dependencies contain a
+   *           cycle.
+   */
+  List<PipelineObjectBase> connect() {
+    final Map<String, Set<String>> dependencies = getDependencies();
+    checkForCycles(dependencies);
+    final Set<String> hasDependents = new HashSet<String>();
+    for (final String id : steps.keySet()) {
+      for (final String dependency : dependencies.get(id)) {
+        steps.get(id).addDependency(getStep(dependency));
+        hasDependents.add(dependency);
+      }
+    }
+    final List<PipelineObjectBase> sinks = new ArrayList<PipelineObjectBase>();
+    for (final String id : steps.keySet()) {
+      if (!hasDependents.contains(id)) {
+        sinks.add(steps.get(id));
+      }
+    }
+    if (sinks.isEmpty()) {
+      sinks.add(start);
+    }
+    return sinks;
+  }
+
+  private Map<String, Set<String>> getDependencies() {
+    final Map<String, Set<String>> dependencies = new HashMap<String, Set<String>>();
+    for (final String id : steps.keySet()) {
+      final Set<String> stepDependencies = new LinkedHashSet<String>();
+      for (final String input : inputs.get(id)) {
+        if (!produces(input)) {
+          throw new IllegalStateException(
+              "Step " + id + " reads " + input + ", which no step produces");
+        }
+        stepDependencies.add(producerId(input));
+      }
+      // A step with no inputs still has to wait for the previous phase.
+      if (stepDependencies.isEmpty()) {
+        stepDependencies.add(start.getId());
+      }
+      dependencies.put(id, stepDependencies);
+    }
+    return dependencies;
+  }
+
+  // Depth-first search, tracking the steps on the current path. Reaching a
+  // step that is already on the path means that there is a cycle.
+  private void checkForCycles(final Map<String, Set<String>> dependencies) {
+    final Set<String> finished = new HashSet<String>();
+    for (final String id : steps.keySet()) {
+      visit(id, dependencies, new ArrayList<String>(), finished);
+    }
+  }
+
+  private void visit(final String id, final Map<String, Set<String>> dependencies,
+      final List<String> path, final Set<String> finished) {
+    if (finished.contains(id) || !dependencies.containsKey(id)) {
+      return;
+    }
+    final int idx = path.indexOf(id);
+    if (idx >= 0) {
+      final List<String> cycle = new ArrayList<String>(path.subList(idx, path.size()));
+      cycle.add(id);
+      throw new IllegalStateException("Circular dependency between pipeline steps " + cycle);
+    }
+    path.add(id);
+    for (final String dependency : dependencies.get(id)) {
+      visit(dependency, dependencies, path, finished);
+    }
+    path.remove(path.size() - 1);
+    finished.add(id);
+  }
+
+  private PipelineObjectBase getStep(final String id) {
+    return id.equals(start.getId()) ? start : steps.get(id);
+  }
+
+  private String producerId(final String resource) {
+    if (startOutputs.contains(resource)) {
+      return start.getId();
+    }
+    return producers.get(resource);
+  }
+}
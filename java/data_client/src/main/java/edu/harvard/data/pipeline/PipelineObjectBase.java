@@ -67,6 +67,36 @@ public class PipelineObjectBase {
     set("dependsOn", step);
   }
 
+  String getId() {
+    return id;
+  }
+
+  String getType() {
+    return getString("type");
+  }
+
+  // Returns the first string value set for the key, or null if there is none.
+  String getString(final String key) {
+    for (final Field field : fields) {
+      if (field.getKey().equals(key) && field.getStringValue() != null) {
+        return field.getStringValue();
+      }
+    }
+    return null;
+  }
+
+  // Returns the IDs of all objects referenced by the key, in the order they
+  // were set.
+  List<String> getRefs(final String key) {
+    final List<String> refs = new ArrayList<String>();
+    for (final Field field : fields) {
+      if (field.getKey().equals(key) && field.getRefValue() != null) {
+        refs.add(field.getRefValue());
+      }
+    }
+    return refs;
+  }
+
   protected final PipelineObject getPipelineObject() {
     final PipelineObject obj = new PipelineObject();
     obj.setId(id);
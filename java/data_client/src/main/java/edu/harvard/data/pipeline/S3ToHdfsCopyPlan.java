@@ -0,0 +1,66 @@
+package edu.harvard.data.pipeline;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.amazonaws.services.s3.model.S3ObjectId;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import edu.harvard.data.AwsUtils;
+import edu.harvard.data.pipeline.S3ToHdfsCopyPlanner.CopyTask;
+
+/**
+ * The copy tasks produced by an {@link S3ToHdfsCopyPlanner}, in a form that can
+ * be stored as JSON alongside the data index.
+ * <P>
+ * The plan is computed once by {@link DataPipelineSetup}, which creates an
+ * s3-dist-cp activity for each task. The code generator that runs later on
+ * the EMR cluster reads the stored plan to write each task's manifest, so the
+ * manifests always match the activities that copy them.
+ */
+public class S3ToHdfsCopyPlan {
+
+  private final List<List<String>> tasks;
+
+  public S3ToHdfsCopyPlan() {
+    this.tasks = new ArrayList<List<String>>();
+  }
+
+  public S3ToHdfsCopyPlan(final List<CopyTask> copyTasks) {
+    this();
+    for (final CopyTask task : copyTasks) {
+      final List<String> files = new ArrayList<String>();
+      for (final S3ObjectId file : task.getFiles()) {
+        files.add(AwsUtils.uri(file));
+      }
+      tasks.add(files);
+    }
+  }
+
+  /**
+   * @return the S3 URIs of the files copied by each task, in task order.
+   */
+  public List<List<String>> getTasks() {
+    return tasks;
+  }
+
+  @JsonIgnore
+  public int getTaskCount() {
+    return tasks.size();
+  }
+
+  public List<S3ObjectId> getFiles(final int task) {
+    final List<S3ObjectId> files = new ArrayList<S3ObjectId>();
+    for (final String uri : tasks.get(task)) {
+      files.add(AwsUtils.key(uri));
+    }
+    return files;
+  }
+
+  public static S3ToHdfsCopyPlan read(final AwsUtils aws, final S3ObjectId location)
+      throws IOException {
+    return aws.readJson(location, S3ToHdfsCopyPlan.class);
+  }
+
+}
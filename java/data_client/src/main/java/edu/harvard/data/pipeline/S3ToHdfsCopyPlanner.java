@@ -0,0 +1,207 @@
+package edu.harvard.data.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.amazonaws.services.s3.model.S3ObjectId;
+
+import edu.harvard.data.AwsUtils;
+
+/**
+ * Splits the files in an {@link InputTableIndex} into a number of copy tasks
+ * of roughly equal size, so that the copy from S3 to HDFS can be run as
+ * several parallel jobs that all finish at about the same time.
+ * <P>
+ * Files smaller than the small file threshold are first gathered into groups,
+ * one or more per table, of up to {@code groupBytes} each; every file in a
+ * group is copied by the same task. Large files and groups are then assigned
+ * to tasks largest first, each going to the task with the fewest bytes so far.
+ * This greedy packing is guaranteed to produce a largest task no more than a
+ * third larger than the best possible split, and in practice is usually within
+ * a few percent. A single file that is larger than an even share of the data
+ * gets a task to itself.
+ * <P>
+ * The plan is computed once, when the pipeline is set up, and stored as an
+ * {@link S3ToHdfsCopyPlan} for the code generator to write the manifests from.
+ */
+public class S3ToHdfsCopyPlanner {
+
+  public static final int DEFAULT_COPY_TASKS = 4;
+  public static final long DEFAULT_SMALL_FILE_BYTES = 16L * 1024 * 1024;
+  public static final long DEFAULT_GROUP_BYTES = 128L * 1024 * 1024;
+
+  private final int maxTasks;
+  private final long smallFileBytes;
+  private final long groupBytes;
+
+  public S3ToHdfsCopyPlanner(final int maxTasks) {
+    this(maxTasks, DEFAULT_SMALL_FILE_BYTES, DEFAULT_GROUP_BYTES);
+  }
+
+  /**
+   * @param maxTasks
+   *          the number of copy tasks to produce. Fewer tasks are produced if
+   *          there are fewer files or groups than this.
+   * @param smallFileBytes
+   *          files below this size are grouped with other small files from
+   *          the same table.
+   * @param groupBytes
+   *          the largest total size of a group of small files.
+   */
+  public S3ToHdfsCopyPlanner(final int maxTasks, final long smallFileBytes,
+      final long groupBytes) {
+    if (maxTasks < 1) {
+      throw new IllegalArgumentException("maxTasks must be positive: " + maxTasks);
+    }
+    this.maxTasks = maxTasks;
+    this.smallFileBytes = smallFileBytes;
+    this.groupBytes = groupBytes;
+  }
+
+  /**
+   * @return the copy tasks, each with at least one file. The list is empty if
+   *         the index contains no files.
+   */
+  public List<CopyTask> plan(final InputTableIndex dataIndex) {
+    final List<CopyGroup> groups = getGroups(dataIndex);
+    // Largest first; ties broken by name so that the plan is repeatable.
+    Collections.sort(groups, new Comparator<CopyGroup>() {
+      @Override
+      public int compare(final CopyGroup g1, final CopyGroup g2) {
+        if (g1.getBytes() != g2.getBytes()) {
+          return g1.getBytes() > g2.getBytes() ? -1 : 1;
+        }
+        return g1.getName().compareTo(g2.getName());
+      }
+    });
+
+    final int taskCount = Math.min(maxTasks, groups.size());
+    final PriorityQueue<CopyTask> byBytes = new PriorityQueue<CopyTask>(Math.max(taskCount, 1),
+        new Comparator<CopyTask>() {
+      @Override
+      public int compare(final CopyTask t1, final CopyTask t2) {
+        if (t1.getBytes() != t2.getBytes()) {
+          return t1.getBytes() < t2.getBytes() ? -1 : 1;
+        }
+        return t1.getIndex() - t2.getIndex();
+      }
+    });
+    final List<CopyTask> tasks = new ArrayList<CopyTask>();
+    for (int i = 0; i < taskCount; i++) {
+      final CopyTask task = new CopyTask(i);
+      tasks.add(task);
+      byBytes.add(task);
+    }
+    for (final CopyGroup group : groups) {
+      final CopyTask smallest = byBytes.poll();
+      smallest.add(group);
+      byBytes.add(smallest);
+    }
+    return tasks;
+  }
+
+  private List<CopyGroup> getGroups(final InputTableIndex dataIndex) {
+    final List<CopyGroup> groups = new ArrayList<CopyGroup>();
+    for (final String table : dataIndex.getTableNames()) {
+      CopyGroup smallFiles = null;
+      int smallGroups = 0;
+      for (final S3ObjectId file : dataIndex.getFiles(table)) {
+        final Long size = dataIndex.getFileSize(file);
+        final long bytes = size == null ? 0 : size;
+        if (bytes >= smallFileBytes) {
+          final CopyGroup group = new CopyGroup(table, AwsUtils.uri(file));
+          group.add(file, bytes);
+          groups.add(group);
+        } else {
+          if (smallFiles == null || smallFiles.getBytes() + bytes > groupBytes) {
+            smallFiles = new CopyGroup(table, table + " small files " + smallGroups++);
+            groups.add(smallFiles);
+          }
+          smallFiles.add(file, bytes);
+        }
+      }
+    }
+    return groups;
+  }
+
+  /**
+   * A set of files from a single table that are copied by the same task.
+   */
+  public static class CopyGroup {
+    private final String table;
+    private final String name;
+    private final List<S3ObjectId> files;
+    private long bytes;
+
+    CopyGroup(final String table, final String name) {
+      this.table = table;
+      this.name = name;
+      this.files = new ArrayList<S3ObjectId>();
+      this.bytes = 0;
+    }
+
+    void add(final S3ObjectId file, final long size) {
+      files.add(file);
+      bytes += size;
+    }
+
+    public String getTable() {
+      return table;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public List<S3ObjectId> getFiles() {
+      return files;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+  }
+
+  /**
+   * The files to be copied by a single copy job.
+   */
+  public static class CopyTask {
+    private final int index;
+    private final List<CopyGroup> groups;
+    private long bytes;
+
+    CopyTask(final int index) {
+      this.index = index;
+      this.groups = new ArrayList<CopyGroup>();
+      this.bytes = 0;
+    }
+
+    void add(final CopyGroup group) {
+      groups.add(group);
+      bytes += group.getBytes();
+    }
+
+    public int getIndex() {
+      return index;
+    }
+
+    public List<CopyGroup> getGroups() {
+      return groups;
+    }
+
+    public List<S3ObjectId> getFiles() {
+      final List<S3ObjectId> files = new ArrayList<S3ObjectId>();
+      for (final CopyGroup group : groups) {
+        files.addAll(group.getFiles());
+      }
+      return files;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+  }
+}
@@ -86,20 +86,20 @@ public class SchemaComparison {
 
   @Override
   public String toString() {
-    String s = "";
+    final StringBuilder s = new StringBuilder();
     if (!additions.isEmpty()) {
-      s += "\nAdditions\n=========";
+      s.append("\nAdditions\n=========");
       for (final String n : additions.keySet()) {
-        s += "\n" + additions.get(n);
+        s.append("\n").append(additions.get(n));
       }
     }
     if (!deletions.isEmpty()) {
-      s += "\nDeletions\n=========";
+      s.append("\nDeletions\n=========");
       for (final String n : deletions.keySet()) {
-        s += "\n" + deletions.get(n);
+        s.append("\n").append(deletions.get(n));
       }
     }
-    return s;
+    return s.toString();
   }
 
 }
@@ -0,0 +1,189 @@
+package edu.harvard.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.s3.model.S3ObjectId;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+// Listings are paged ten keys at a time so that every query crosses page
+// boundaries.
+public class AwsUtilsTests {
+
+  private static final String BUCKET = "archive";
+  private static final int TABLES = 30;
+  private static final int FILES = 3;
+  private static final int EMPTY_TABLES = 5;
+
+  private InMemoryS3 s3;
+  private AwsUtils aws;
+  private S3ObjectId dumpDir;
+
+  @Before
+  public void setup() {
+    s3 = new InMemoryS3(10);
+    aws = new AwsUtils(s3);
+    dumpDir = AwsUtils.key(BUCKET, "dumps", "00042");
+    for (int t = 0; t < TABLES; t++) {
+      final String table = String.format("table_%02d", t);
+      if (t < EMPTY_TABLES) {
+        s3.add(BUCKET, "dumps/00042/" + table + "/empty_file", new byte[0]);
+      } else {
+        for (int f = 0; f < FILES; f++) {
+          s3.add(BUCKET, "dumps/00042/" + table + "/part-" + f + ".gz", new byte[t + f]);
+        }
+      }
+    }
+    s3.add(BUCKET, "dumps/00042/schema.json", new byte[10]);
+    s3.add(BUCKET, "dumps/00043/table_00/part-0.gz", new byte[1]);
+  }
+
+  @Test
+  public void uncachedListDirectoriesReadsEveryPage() {
+    final Set<S3ObjectId> dirs = aws.listDirectories(dumpDir);
+    final Set<String> keys = new HashSet<String>();
+    for (final S3ObjectId dir : dirs) {
+      keys.add(dir.getKey());
+    }
+    assertEquals(TABLES, keys.size());
+    assertTrue(keys.contains("dumps/00042/table_29"));
+    // Thirty common prefixes plus schema.json, ten to a page.
+    assertEquals(4, s3.getListRequests());
+  }
+
+  @Test
+  public void uncachedListKeysReadsEveryPage() {
+    final List<S3ObjectSummary> keys = aws.listKeys(dumpDir);
+    assertEquals(EMPTY_TABLES + (TABLES - EMPTY_TABLES) * FILES + 1, keys.size());
+    final Set<String> unique = new HashSet<String>();
+    for (final S3ObjectSummary key : keys) {
+      unique.add(key.getKey());
+    }
+    assertEquals(keys.size(), unique.size());
+  }
+
+  @Test
+  public void cachedDumpIndexMatchesUncached() {
+    final Map<String, Long> uncached = dumpIndex();
+    final int uncachedRequests = s3.getListRequests();
+    s3.resetCounts();
+
+    aws.cacheListing(dumpDir);
+    final Map<String, Long> cached = dumpIndex();
+    assertEquals(uncached, cached);
+    assertEquals((TABLES - EMPTY_TABLES) * FILES, cached.size());
+
+    // One paged listing of the 81 keys in the dump.
+    assertEquals(9, s3.getListRequests());
+    assertTrue(uncachedRequests > 5 * s3.getListRequests());
+  }
+
+  @Test
+  public void cachedQueriesDontCallS3() {
+    aws.cacheListing(dumpDir);
+    s3.resetCounts();
+    assertTrue(aws.keyExists(AwsUtils.key(dumpDir, "table_10")));
+    assertFalse(aws.keyExists(AwsUtils.key(dumpDir, "table_99")));
+    assertTrue(aws.isFile(AwsUtils.key(dumpDir, "table_00", "empty_file")));
+    assertFalse(aws.isFile(AwsUtils.key(dumpDir, "table_10")));
+    assertEquals(Long.valueOf(12), aws.getSize(AwsUtils.key(dumpDir, "table_10", "part-2.gz")));
+    assertNull(aws.getSize(AwsUtils.key(dumpDir, "table_10")));
+    assertEquals(FILES, aws.listKeys(AwsUtils.key(dumpDir, "table_10")).size());
+    assertEquals(TABLES, aws.listDirectories(dumpDir).size());
+    assertEquals(0, s3.getRequestCount());
+
+    // Keys outside the snapshot still go to S3.
+    assertTrue(aws.keyExists(AwsUtils.key(BUCKET, "dumps", "00043", "table_00")));
+    assertEquals(1, s3.getListRequests());
+  }
+
+  // A directory whose only key is an empty marker is listed the same way with
+  // and without a snapshot.
+  @Test
+  public void cachedDirectoriesMatchUncached() {
+    s3.add(BUCKET, "dumps/00042/table_30/", new byte[0]);
+    s3.add(BUCKET, "dumps/00042/table_31", new byte[1]);
+    final Set<String> uncached = dirNames(aws.listDirectories(dumpDir));
+    aws.cacheListing(dumpDir);
+    final Set<String> cached = dirNames(aws.listDirectories(dumpDir));
+    assertEquals(uncached, cached);
+    assertEquals(TABLES + 1, cached.size());
+    assertTrue(cached.contains("dumps/00042/table_30"));
+  }
+
+  @Test
+  public void cacheListingIsIdempotent() {
+    aws.cacheListing(dumpDir);
+    final int requests = s3.getListRequests();
+    aws.cacheListing(dumpDir);
+    aws.cacheListing(AwsUtils.key(dumpDir, "table_10"));
+    assertEquals(requests, s3.getListRequests());
+  }
+
+  @Test
+  public void writeInvalidatesListing() throws IOException {
+    aws.cacheListing(dumpDir);
+    final S3ObjectId newFile = AwsUtils.key(dumpDir, "table_00", "part-0.gz");
+    assertFalse(aws.keyExists(newFile));
+    aws.writeEmptyFile(newFile);
+    assertTrue(aws.keyExists(newFile));
+    assertFalse(aws.isFile(AwsUtils.key(dumpDir, "table_00")));
+
+    aws.cacheListing(dumpDir);
+    aws.deleteKey(newFile);
+    assertFalse(aws.keyExists(newFile));
+
+    aws.cacheListing(dumpDir);
+    aws.writeJson(AwsUtils.key(dumpDir, "table_30", "info.json"),
+        Collections.singletonMap("a", "b"));
+    assertEquals(TABLES + 1, aws.listDirectories(dumpDir).size());
+  }
+
+  @Test
+  public void writeElsewhereKeepsListing() throws IOException {
+    aws.cacheListing(dumpDir);
+    aws.writeEmptyFile(AwsUtils.key(BUCKET, "dumps", "00043", "empty_file"));
+    s3.resetCounts();
+    assertTrue(aws.keyExists(AwsUtils.key(dumpDir, "table_10")));
+    assertEquals(0, s3.getListRequests());
+  }
+
+  // Same access pattern as the Canvas DumpManager.getDumpIndex method.
+  private Map<String, Long> dumpIndex() {
+    final Map<String, Long> index = new HashMap<String, Long>();
+    final List<S3ObjectId> dirs = new ArrayList<S3ObjectId>(aws.listDirectories(dumpDir));
+    for (final S3ObjectId tableDir : dirs) {
+      if (!aws.isFile(AwsUtils.key(tableDir, "empty_file"))) {
+        for (final S3ObjectSummary tableFile : aws.listKeys(tableDir)) {
+          if (tableFile.getKey().endsWith(".gz")) {
+            index.put(tableFile.getKey(), tableFile.getSize());
+          }
+        }
+      }
+    }
+    return index;
+  }
+
+  private Set<String> dirNames(final Set<S3ObjectId> dirs) {
+    final Set<String> names = new HashSet<String>();
+    for (final S3ObjectId dir : dirs) {
+      names.add(dir.getKey());
+    }
+    return names;
+  }
+
+}
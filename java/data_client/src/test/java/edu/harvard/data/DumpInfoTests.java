@@ -0,0 +1,167 @@
+package edu.harvard.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.TableNameOverride;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+
+public class DumpInfoTests {
+
+  private static final String TABLE = "dump-status";
+  private static final int DUMPS = 500;
+
+  private InMemoryDynamoDB dynamo;
+
+  @Before
+  public void setup() throws DataConfigurationException {
+    dynamo = new InMemoryDynamoDB();
+    // Same index definition as the CloudFormation template.
+    final CreateTableRequest create = new DynamoDBMapper(dynamo)
+        .generateCreateTableRequest(DumpInfo.class).withTableName(TABLE);
+    create.getGlobalSecondaryIndexes().get(0).setProjection(
+        new Projection().withProjectionType(ProjectionType.INCLUDE).withNonKeyAttributes(
+            "s3Bucket", "s3Key", "schemaVersion", "downloaded", "verified"));
+    dynamo.createTable(create);
+    DumpInfo.init(dynamo, TABLE);
+    DumpInfo.addMissingSequenceIndexKeys();
+    dynamo.resetCounts();
+  }
+
+  @Test
+  public void dumpsSinceSequence() {
+    saveDumps(DUMPS);
+    final List<Long> sequences = new ArrayList<Long>();
+    for (final DumpInfo info : DumpInfo.getAllDumpsSince(DUMPS - 3)) {
+      sequences.add(info.getSequence());
+      assertEquals("bucket", info.getBucket());
+      assertEquals("archive/" + info.getSequence(), info.getKey());
+      assertTrue(info.getDownloaded());
+    }
+    assertEquals(Arrays.asList((long) DUMPS - 3, (long) DUMPS - 2, (long) DUMPS - 1,
+        (long) DUMPS), sequences);
+    assertEquals(0, dynamo.getScanCount());
+  }
+
+  @Test
+  public void noDumpsSinceSequence() {
+    saveDumps(10);
+    assertTrue(DumpInfo.getAllDumpsSince(11).isEmpty());
+  }
+
+  @Test
+  public void queryProjectsIndexAttributes() {
+    saveDumps(1);
+    final DumpInfo info = DumpInfo.getAllDumpsSince(0).get(0);
+    assertEquals("1.16.2", info.getSchemaVersion());
+    assertNull(info.getDownloadStart());
+    assertTrue(DumpInfo.find(info.getId()).getDownloadStart() != null);
+  }
+
+  // The query reads only the index entries for the dumps it returns, where the
+  // scan that it replaces read every dump in the table.
+  @Test
+  public void queryReadsLessThanScan() {
+    saveDumps(DUMPS);
+    dynamo.resetCounts();
+    final DynamoDBScanExpression scan = new DynamoDBScanExpression();
+    scan.setFilterExpression("#sequence >= :start");
+    scan.setExpressionAttributeNames(Collections.singletonMap("#sequence", "sequence"));
+    scan.setExpressionAttributeValues(
+        Collections.singletonMap(":start", new AttributeValue().withN("" + (DUMPS - 3))));
+    new DynamoDBMapper(dynamo).scan(DumpInfo.class, scan,
+        new DynamoDBMapperConfig(new TableNameOverride(TABLE))).loadAllResults();
+    final double scanCapacity = dynamo.getConsumedReadCapacity();
+
+    dynamo.resetCounts();
+    assertEquals(4, DumpInfo.getAllDumpsSince(DUMPS - 3).size());
+    final double queryCapacity = dynamo.getConsumedReadCapacity();
+    assertEquals(1, dynamo.getQueryCount());
+    assertEquals(0.5, queryCapacity, 0.0);
+    assertTrue("Scan used " + scanCapacity + " units", scanCapacity > 20 * queryCapacity);
+  }
+
+  @Test
+  public void saveSetsIndexKey() {
+    saveDumps(1);
+    assertEquals(DumpInfo.SEQUENCE_PARTITION, DumpInfo.find("dump-1").getSequencePartition());
+  }
+
+  @Test
+  public void addMissingIndexKeys() throws DataConfigurationException {
+    legacyTable();
+    assertEquals(3, DumpInfo.addMissingSequenceIndexKeys());
+    assertEquals(3, DumpInfo.getAllDumpsSince(4).size());
+    assertEquals(1, dynamo.getScanCount());
+    assertEquals(0, DumpInfo.addMissingSequenceIndexKeys());
+  }
+
+  // Until the backfill has run, dumps without the index key are found by
+  // scanning the table, which also runs the backfill.
+  @Test
+  public void legacyDumpsFoundBeforeBackfill() throws DataConfigurationException {
+    legacyTable();
+    final List<Long> sequences = new ArrayList<Long>();
+    for (final DumpInfo info : DumpInfo.getAllDumpsSince(2)) {
+      sequences.add(info.getSequence());
+    }
+    assertEquals(Arrays.asList(2L, 3L, 4L, 5L, 6L), sequences);
+    assertEquals(1, dynamo.getScanCount());
+
+    DumpInfo.init(dynamo, TABLE);
+    dynamo.resetCounts();
+    assertEquals(5, DumpInfo.getAllDumpsSince(2).size());
+    assertEquals(0, dynamo.getScanCount());
+    assertEquals(1, dynamo.getQueryCount());
+  }
+
+  // A table created before the index: three dumps were saved without the
+  // index key, and the backfill has never run.
+  private void legacyTable() throws DataConfigurationException {
+    dynamo = new InMemoryDynamoDB();
+    final CreateTableRequest create = new DynamoDBMapper(dynamo)
+        .generateCreateTableRequest(DumpInfo.class).withTableName(TABLE);
+    dynamo.createTable(create);
+    DumpInfo.init(dynamo, TABLE);
+    saveDumps(3);
+    for (int i = 4; i <= 6; i++) {
+      final Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+      item.put("id", new AttributeValue("dump-" + i));
+      item.put("sequence", new AttributeValue().withN("" + i));
+      dynamo.putItem(new PutItemRequest(TABLE, item));
+    }
+    dynamo.resetCounts();
+  }
+
+  private void saveDumps(final int count) {
+    for (int i = 1; i <= count; i++) {
+      final DumpInfo info = new DumpInfo("dump-" + i, i, "1.16.2");
+      info.setBucket("bucket");
+      info.setKey("archive/" + i);
+      info.setDownloadStart(new Date());
+      info.setDownloadEnd(new Date());
+      info.setDownloaded(true);
+      info.save();
+    }
+  }
+
+}
@@ -0,0 +1,280 @@
+package edu.harvard.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobStatus;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.harvard.data.FormatLibrary.Format;
+import edu.harvard.data.identity.IdentifierType;
+import edu.harvard.data.identity.IdentityMap;
+import edu.harvard.data.identity.IdentityScrubber;
+import edu.harvard.data.io.TableWriter;
+
+// Runs small map-only jobs through Hadoop's local job runner.
+public class HadoopJobRunnerTests {
+
+  private static final int TABLES = 4;
+  private static final int ROWS = 20;
+  private static final int USERS = 5;
+  private static final String CONFIG = "hadoop_job_runner/config.properties";
+
+  static final AtomicInteger running = new AtomicInteger();
+  static final AtomicInteger maxRunning = new AtomicInteger();
+
+  private File baseDir;
+
+  @Before
+  public void setup() throws IOException {
+    running.set(0);
+    maxRunning.set(0);
+    baseDir = Files.createTempDirectory("hadoop_job_runner").toFile();
+    for (int t = 0; t < TABLES; t++) {
+      final File dir = new File(baseDir, "input/table" + t);
+      dir.mkdirs();
+      try (PrintWriter out = new PrintWriter(new File(dir, "data.txt"), "UTF-8")) {
+        for (int i = 0; i < ROWS; i++) {
+          out.println("table" + t + "\t" + i + "\tuser" + (i % USERS));
+        }
+      }
+    }
+    final TableFormat format = new FormatLibrary().getFormat(Format.DecompressedInternal);
+    try (TableWriter<IdentityMap> out = new TableWriter<IdentityMap>(IdentityMap.class, format,
+        new File(baseDir, "identity/identity_map.txt"))) {
+      for (int u = 0; u < USERS; u++) {
+        final IdentityMap id = new IdentityMap();
+        id.set(IdentifierType.XID, "user" + u);
+        id.set(IdentifierType.ResearchUUID, "research" + u);
+        out.add(id);
+      }
+    }
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(baseDir);
+  }
+
+  // Jobs are set up as in IdentityScrubHadoopJob, with the identity map in the
+  // distributed cache.
+  private Job getJob(final String table, final String outputDir,
+      final Class<? extends Mapper<?, Text, Text, NullWritable>> mapper) throws IOException {
+    final Configuration conf = new Configuration();
+    conf.set("mapreduce.framework.name", "local");
+    conf.set("fs.defaultFS", "file:///");
+    conf.set("format", Format.DecompressedInternal.toString());
+    try {
+      conf.set("config", new File(getClass().getClassLoader().getResource(CONFIG).toURI())
+          .getPath());
+    } catch (final URISyntaxException e) {
+      throw new IOException(e);
+    }
+    final Job job = Job.getInstance(conf, table + "-scrubber");
+    job.setMapperClass(mapper);
+    job.setMapOutputKeyClass(Text.class);
+    job.setMapOutputValueClass(NullWritable.class);
+    job.setNumReduceTasks(0);
+    job.setInputFormatClass(TextInputFormat.class);
+    job.setOutputFormatClass(TextOutputFormat.class);
+    job.addCacheFile(new File(baseDir, "identity/identity_map.txt").toURI());
+    FileInputFormat.addInputPath(job, new Path(new File(baseDir, "input/" + table).toURI()));
+    FileOutputFormat.setOutputPath(job,
+        new Path(new File(baseDir, outputDir + "/" + table).toURI()));
+    return job;
+  }
+
+  private List<Job> getJobs(final String outputDir,
+      final Class<? extends Mapper<?, Text, Text, NullWritable>> mapper) throws IOException {
+    final List<Job> jobs = new ArrayList<Job>();
+    for (int t = 0; t < TABLES; t++) {
+      jobs.add(getJob("table" + t, outputDir, mapper));
+    }
+    return jobs;
+  }
+
+  private String readOutput(final String outputDir, final String table) throws IOException {
+    return FileUtils.readFileToString(
+        new File(baseDir, outputDir + "/" + table + "/part-m-00000"), StandardCharsets.UTF_8);
+  }
+
+  // The real scrubber, run concurrently, writes the same output as when its
+  // jobs run one after another.
+  @Test
+  public void outputMatchesSerialExecution() throws Exception {
+    for (final Job job : getJobs("serial", TableScrubber.class)) {
+      assertTrue(job.waitForCompletion(false));
+    }
+    new HadoopJobRunner(HadoopJobRunner.DEFAULT_MAX_RUNNING_JOBS, 50)
+    .run(getJobs("concurrent", TableScrubber.class));
+    for (int t = 0; t < TABLES; t++) {
+      final String serial = readOutput("serial", "table" + t);
+      final String[] rows = serial.split("\n");
+      assertEquals(ROWS, rows.length);
+      assertEquals("table" + t + "\t7\tresearch2", rows[7]);
+      assertEquals(serial, readOutput("concurrent", "table" + t));
+    }
+  }
+
+  @Test
+  public void jobsRunConcurrently() throws Exception {
+    new HadoopJobRunner(TABLES, 50).run(getJobs("concurrent", ScrubMapper.class));
+    assertTrue("Expected concurrent jobs, saw " + maxRunning.get(), maxRunning.get() > 1);
+  }
+
+  @Test
+  public void runningJobsBounded() throws Exception {
+    new HadoopJobRunner(2, 50).run(getJobs("bounded", ScrubMapper.class));
+    assertTrue("Expected at most 2 jobs, saw " + maxRunning.get(), maxRunning.get() <= 2);
+    for (int t = 0; t < TABLES; t++) {
+      assertEquals(ROWS, readOutput("bounded", "table" + t).split("\n").length);
+    }
+  }
+
+  // All jobs should run, and all failures reported together.
+  @Test
+  public void failuresAggregated() throws Exception {
+    final List<Job> jobs = new ArrayList<Job>();
+    jobs.add(getJob("table0", "failures", FailingMapper.class));
+    jobs.add(getJob("table1", "failures", ScrubMapper.class));
+    jobs.add(getJob("table2", "failures", FailingMapper.class));
+    try {
+      new HadoopJobRunner(1, 50).run(jobs);
+      fail("Expected HadoopJobFailureException");
+    } catch (final HadoopJobFailureException e) {
+      assertTrue(e.getMessage().contains("table0-scrubber"));
+      assertTrue(e.getMessage().contains("table2-scrubber"));
+      assertTrue(!e.getMessage().contains("table1-scrubber"));
+    }
+    assertEquals(ROWS, readOutput("failures", "table1").split("\n").length);
+  }
+
+  // Jobs that are already running are killed if a later job cannot be
+  // submitted.
+  @Test
+  public void runningJobsKilledOnSubmitFailure() throws Exception {
+    final List<Job> jobs = new ArrayList<Job>();
+    jobs.add(getJob("table0", "submit", ScrubMapper.class));
+    jobs.add(getJob("missing", "submit", ScrubMapper.class));
+    try {
+      new HadoopJobRunner(2, 50).run(jobs);
+      fail("Expected IOException");
+    } catch (final IOException e) {
+      assertTrue(e.getMessage().contains("missing"));
+    }
+    final Job submitted = jobs.get(0);
+    assertTrue(!submitted.waitForCompletion(false));
+    assertEquals(JobStatus.State.KILLED, submitted.getStatus().getState());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidBound() {
+    new HadoopJobRunner(0);
+  }
+
+  // Replaces the user column without an identity map. Holds each task open
+  // briefly so that overlapping jobs can be observed.
+  public static class ScrubMapper extends Mapper<LongWritable, Text, Text, NullWritable> {
+    @Override
+    protected void setup(final Context context) throws InterruptedException {
+      final int now = running.incrementAndGet();
+      int max = maxRunning.get();
+      while (now > max && !maxRunning.compareAndSet(max, now)) {
+        max = maxRunning.get();
+      }
+      Thread.sleep(500);
+    }
+
+    @Override
+    protected void map(final LongWritable key, final Text value, final Context context)
+        throws IOException, InterruptedException {
+      final String[] parts = value.toString().split("\t");
+      context.write(new Text(parts[0] + "\t" + parts[1] + "\t" + parts[2].hashCode()),
+          NullWritable.get());
+    }
+
+    @Override
+    protected void cleanup(final Context context) {
+      running.decrementAndGet();
+    }
+  }
+
+  // An identity scrubber like the generated ones, replacing the user column
+  // with the research ID from the identity map.
+  public static class TableScrubber extends IdentityScrubber<String> {
+    @Override
+    protected DataTable populateRecord(final CSVRecord csvRecord) {
+      final IdentityMap id = identities.get(csvRecord.get(2));
+      return new ScrubbedRow(csvRecord.get(0), Integer.parseInt(csvRecord.get(1)),
+          (String) id.get(IdentifierType.ResearchUUID));
+    }
+  }
+
+  static class ScrubbedRow implements DataTable {
+    private final String table;
+    private final int row;
+    private final String researchId;
+
+    ScrubbedRow(final String table, final int row, final String researchId) {
+      this.table = table;
+      this.row = row;
+      this.researchId = researchId;
+    }
+
+    @Override
+    public List<Object> getFieldsAsList(final TableFormat format) {
+      return Arrays.<Object> asList(table, row, researchId);
+    }
+
+    @Override
+    public List<String> getFieldNames() {
+      return Arrays.asList("table", "row", "research_id");
+    }
+
+    @Override
+    public Map<String, Object> getFieldsAsMap() {
+      final Map<String, Object> fields = new HashMap<String, Object>();
+      fields.put("table", table);
+      fields.put("row", row);
+      fields.put("research_id", researchId);
+      return fields;
+    }
+  }
+
+  public static class FailingMapper extends Mapper<LongWritable, Text, Text, NullWritable> {
+    @Override
+    protected void map(final LongWritable key, final Text value, final Context context)
+        throws IOException {
+      throw new IOException("Failed to scrub " + value);
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package edu.harvard.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class HiveDdlRunnerTests {
+
+  private FakeMetastore hive;
+  private HiveDdlRunner runner;
+
+  @Before
+  public void setup() {
+    hive = new FakeMetastore();
+    runner = new HiveDdlRunner(hive);
+  }
+
+  @Test
+  public void newTablesAreCreatedInOneSession() throws Exception {
+    final String ddl = ddl(table("in_pages", "id bigint"), table("in_users", "id bigint"));
+    assertEquals(Arrays.asList("in_pages", "in_users"), runner.run(ddl));
+    assertEquals(1, hive.scripts.size());
+    assertEquals(2, hive.tables.size());
+    assertEquals(HiveDdlRunner.schemaHash(definition("in_pages", "id bigint")),
+        hive.tables.get("in_pages"));
+  }
+
+  @Test
+  public void unchangedTablesAreSkipped() throws Exception {
+    final String ddl = ddl(table("in_pages", "id bigint"), table("in_users", "id bigint"));
+    runner.run(ddl);
+    assertTrue(runner.run(ddl).isEmpty());
+    assertEquals(1, hive.scripts.size());
+    assertEquals(2, hive.propertyLookups);
+  }
+
+  @Test
+  public void changedTableIsRecreated() throws Exception {
+    runner.run(ddl(table("in_pages", "id bigint"), table("in_users", "id bigint")));
+    final List<String> changed = runner.run(
+        ddl(table("in_pages", "id bigint, title string"), table("in_users", "id bigint")));
+    assertEquals(Collections.singletonList("in_pages"), changed);
+    final String script = hive.scripts.get(1);
+    assertTrue(script.contains("DROP TABLE IF EXISTS in_pages PURGE;"));
+    assertFalse(script.contains("in_users"));
+    assertEquals(HiveDdlRunner.schemaHash(definition("in_pages", "id bigint, title string")),
+        hive.tables.get("in_pages"));
+  }
+
+  @Test
+  public void tableWithoutHashIsRecreated() throws Exception {
+    hive.tables.put("in_pages", null);
+    assertEquals(Collections.singletonList("in_pages"),
+        runner.run(ddl(table("in_pages", "id bigint"))));
+  }
+
+  @Test
+  public void dropOnlyBlocksAlwaysRun() throws Exception {
+    final String ddl = ddl(table("in_pages", "id bigint"),
+        HiveDdlRunner.TABLE_MARKER + "in_expired\nDROP TABLE IF EXISTS in_expired PURGE;\n");
+    runner.run(ddl);
+    assertEquals(Collections.singletonList("in_expired"), runner.run(ddl));
+    assertEquals("DROP TABLE IF EXISTS in_expired PURGE;\n", hive.scripts.get(1));
+    // Only tables with a hash are looked up.
+    assertEquals(Collections.singletonList("in_pages"), hive.lastLookup);
+  }
+
+  @Test
+  public void preambleIsAlwaysRun() throws Exception {
+    final String ddl = "SET hive.exec.dynamic.partition=true;\n"
+        + ddl(table("in_pages", "id bigint"));
+    runner.run(ddl);
+    assertTrue(hive.scripts.get(0).startsWith("SET hive.exec.dynamic.partition=true;\n"));
+  }
+
+  @Test
+  public void cliOutputIsParsed() {
+    final List<String> output = Arrays.asList(
+        HiveCliClient.TABLE_MARKER + "in_pages",
+        "0cc175b9c0f1b6a831c399e269772661",
+        HiveCliClient.TABLE_MARKER + "in_users",
+        "Table default.in_users does not have property: schema_hash",
+        HiveCliClient.TABLE_MARKER + "in_missing",
+        HiveCliClient.TABLE_MARKER + "out_pages",
+        "  92eb5ffee6ae2fec3ad71c777531578f  ");
+    final Map<String, String> values = HiveCliClient.parseTableProperties(output);
+    assertEquals(2, values.size());
+    assertEquals("0cc175b9c0f1b6a831c399e269772661", values.get("in_pages"));
+    assertEquals("92eb5ffee6ae2fec3ad71c777531578f", values.get("out_pages"));
+  }
+
+  private static String definition(final String name, final String columns) {
+    return "CREATE EXTERNAL TABLE " + name + " (" + columns + ")\n"
+        + "    STORED AS TEXTFILE\n    LOCATION '/phase_1/" + name + "/'";
+  }
+
+  // A block in the form written by CreateHiveTableGenerator.
+  private static String table(final String name, final String columns) {
+    final String definition = definition(name, columns);
+    final String hash = HiveDdlRunner.schemaHash(definition);
+    return HiveDdlRunner.TABLE_MARKER + name + " " + hash + "\n"
+        + "DROP TABLE IF EXISTS " + name + " PURGE;\n" + definition + "\n"
+        + "    TBLPROPERTIES ('" + HiveDdlRunner.SCHEMA_HASH_PROPERTY + "'='" + hash + "');\n";
+  }
+
+  private static String ddl(final String... blocks) {
+    final StringBuilder ddl = new StringBuilder();
+    for (final String block : blocks) {
+      ddl.append(block).append("\n");
+    }
+    return ddl.toString();
+  }
+
+  // Keeps the schema hash of each table, applying drops and creates as the
+  // statements are run.
+  private static class FakeMetastore implements HiveClient {
+    private static final Pattern DROP = Pattern.compile("DROP TABLE IF EXISTS (\\w+)");
+    private static final Pattern CREATE = Pattern.compile(
+        "CREATE EXTERNAL TABLE (\\w+)[^;]*'schema_hash'='(\\w+)'");
+
+    private final Map<String, String> tables = new HashMap<String, String>();
+    private final List<String> scripts = new ArrayList<String>();
+    private List<String> lastLookup;
+    private int propertyLookups;
+
+    @Override
+    public Map<String, String> getTableProperty(final List<String> names, final String property) {
+      assertEquals(HiveDdlRunner.SCHEMA_HASH_PROPERTY, property);
+      propertyLookups++;
+      lastLookup = names;
+      final Map<String, String> values = new HashMap<String, String>();
+      for (final String name : names) {
+        if (tables.get(name) != null) {
+          values.put(name, tables.get(name));
+        }
+      }
+      return values;
+    }
+
+    @Override
+    public void execute(final String script) {
+      scripts.add(script);
+      for (final String statement : script.split(";")) {
+        final Matcher drop = DROP.matcher(statement);
+        if (drop.find()) {
+          tables.remove(drop.group(1));
+        }
+        final Matcher create = CREATE.matcher(statement + ";");
+        if (create.find()) {
+          tables.put(create.group(1), create.group(2));
+        }
+      }
+    }
+  }
+}
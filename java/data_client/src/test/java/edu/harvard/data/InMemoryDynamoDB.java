@@ -0,0 +1,511 @@
+package edu.harvard.data;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeAction;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.AttributeValueUpdate;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.CreateTableResult;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+
+// Minimal, thread-safe in-memory DynamoDB that supports the requests made by
+// DynamoDBMapper for tables with a hash key and no range key. Scans return the
+// whole table in a single page. Queries are supported against global secondary
+// indexes with a hash and range key, using the legacy KeyConditions parameter.
+//
+// Read capacity is charged the way DynamoDB does: one unit per 4KB read per
+// request (rounded up), halved for eventually consistent reads. A scan is
+// charged for every item in the table, a query for the index entries it
+// returns.
+//
+// UpdateItem also accepts the simple update and condition expressions used by
+// the lease manager: SET, ADD and REMOVE clauses, and conditions made of
+// comparisons and attribute_exists/attribute_not_exists joined by AND and OR
+// (without parentheses). Tests can add a fixed latency to every request, and
+// make the next few writes fail with a given exception.
+public class InMemoryDynamoDB extends AbstractAmazonDynamoDB {
+
+  private static final int READ_UNIT_BYTES = 4096;
+  private static final Pattern COMPARISON = Pattern
+      .compile("^(\\S+)\\s*(=|<>|<=|>=|<|>)\\s*(\\S+)$");
+  private static final Pattern FUNCTION = Pattern
+      .compile("^(attribute_exists|attribute_not_exists)\\(\\s*(\\S+)\\s*\\)$");
+
+  private final Map<String, String> hashKeys;
+  private final Map<String, Map<AttributeValue, Map<String, AttributeValue>>> tables;
+  private final Map<String, GlobalSecondaryIndex> indexes;
+  private int scanCount;
+  private int queryCount;
+  private double consumedReadCapacity;
+  private int requestCount;
+  private volatile long latencyMillis;
+  private int failingWrites;
+  private AmazonServiceException writeFailure;
+
+  public InMemoryDynamoDB() {
+    this.hashKeys = new HashMap<String, String>();
+    this.tables = new HashMap<String, Map<AttributeValue, Map<String, AttributeValue>>>();
+    this.indexes = new HashMap<String, GlobalSecondaryIndex>();
+  }
+
+  public int getScanCount() {
+    return scanCount;
+  }
+
+  public int getQueryCount() {
+    return queryCount;
+  }
+
+  public double getConsumedReadCapacity() {
+    return consumedReadCapacity;
+  }
+
+  public synchronized int getRequestCount() {
+    return requestCount;
+  }
+
+  public void resetCounts() {
+    scanCount = 0;
+    queryCount = 0;
+    consumedReadCapacity = 0;
+    requestCount = 0;
+  }
+
+  // Delay every subsequent request by the given time.
+  public void setLatency(final long millis) {
+    this.latencyMillis = millis;
+  }
+
+  // Fail the next count PutItem or UpdateItem requests with the exception.
+  public synchronized void failWrites(final int count, final AmazonServiceException e) {
+    this.failingWrites = count;
+    this.writeFailure = e;
+  }
+
+  public int getItemCount(final String tableName) {
+    return getTable(tableName).size();
+  }
+
+  @Override
+  public synchronized CreateTableResult createTable(final CreateTableRequest request) {
+    for (final KeySchemaElement key : request.getKeySchema()) {
+      if (key.getKeyType().equals("HASH")) {
+        hashKeys.put(request.getTableName(), key.getAttributeName());
+      }
+    }
+    if (request.getGlobalSecondaryIndexes() != null) {
+      for (final GlobalSecondaryIndex index : request.getGlobalSecondaryIndexes()) {
+        indexes.put(request.getTableName() + "/" + index.getIndexName(), index);
+      }
+    }
+    tables.put(request.getTableName(),
+        new LinkedHashMap<AttributeValue, Map<String, AttributeValue>>());
+    return new CreateTableResult()
+        .withTableDescription(new TableDescription().withTableName(request.getTableName()));
+  }
+
+  @Override
+  public PutItemResult putItem(final PutItemRequest request) {
+    delay();
+    return doPutItem(request);
+  }
+
+  private synchronized PutItemResult doPutItem(final PutItemRequest request) {
+    requestCount++;
+    checkInjectedFailure();
+    final Map<String, AttributeValue> item = new HashMap<String, AttributeValue>(
+        request.getItem());
+    getTable(request.getTableName()).put(item.get(hashKeys.get(request.getTableName())), item);
+    return new PutItemResult();
+  }
+
+  @Override
+  public GetItemResult getItem(final GetItemRequest request) {
+    delay();
+    return doGetItem(request);
+  }
+
+  private synchronized GetItemResult doGetItem(final GetItemRequest request) {
+    requestCount++;
+    final Map<String, AttributeValue> item = getTable(request.getTableName())
+        .get(request.getKey().get(hashKeys.get(request.getTableName())));
+    consumeReads(item == null ? 0 : itemSize(item), request.getConsistentRead());
+    return new GetItemResult()
+        .withItem(item == null ? null : new HashMap<String, AttributeValue>(item));
+  }
+
+  @Override
+  public UpdateItemResult updateItem(final UpdateItemRequest request) {
+    delay();
+    return doUpdateItem(request);
+  }
+
+  private synchronized UpdateItemResult doUpdateItem(final UpdateItemRequest request) {
+    requestCount++;
+    checkInjectedFailure();
+    final Map<AttributeValue, Map<String, AttributeValue>> table = getTable(
+        request.getTableName());
+    final AttributeValue key = request.getKey().get(hashKeys.get(request.getTableName()));
+    final Map<String, AttributeValue> existing = table.get(key);
+    final Map<String, AttributeValue> item = new HashMap<String, AttributeValue>(
+        existing == null ? request.getKey() : existing);
+    if (request.getConditionExpression() != null && !evaluateCondition(
+        request.getConditionExpression(), existing == null ? new HashMap<String, AttributeValue>()
+            : existing, request.getExpressionAttributeNames(),
+            request.getExpressionAttributeValues())) {
+      throw new ConditionalCheckFailedException("The conditional request failed");
+    }
+    if (request.getAttributeUpdates() != null) {
+      for (final Map.Entry<String, AttributeValueUpdate> update : request.getAttributeUpdates()
+          .entrySet()) {
+        if (AttributeAction.DELETE.toString().equals(update.getValue().getAction())) {
+          item.remove(update.getKey());
+        } else {
+          item.put(update.getKey(), update.getValue().getValue());
+        }
+      }
+    }
+    if (request.getUpdateExpression() != null) {
+      applyUpdateExpression(request.getUpdateExpression(), item,
+          request.getExpressionAttributeNames(), request.getExpressionAttributeValues());
+    }
+    table.put(key, item);
+    final UpdateItemResult result = new UpdateItemResult();
+    if (ReturnValue.ALL_NEW.toString().equals(request.getReturnValues())) {
+      result.setAttributes(new HashMap<String, AttributeValue>(item));
+    }
+    return result;
+  }
+
+  @Override
+  public synchronized DeleteItemResult deleteItem(final DeleteItemRequest request) {
+    getTable(request.getTableName())
+        .remove(request.getKey().get(hashKeys.get(request.getTableName())));
+    return new DeleteItemResult();
+  }
+
+  @Override
+  public synchronized ScanResult scan(final ScanRequest request) {
+    scanCount++;
+    final List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+    long bytes = 0;
+    for (final Map<String, AttributeValue> item : getTable(request.getTableName()).values()) {
+      items.add(new HashMap<String, AttributeValue>(item));
+      bytes += itemSize(item);
+    }
+    consumeReads(bytes, request.getConsistentRead());
+    return new ScanResult().withItems(items).withCount(items.size())
+        .withScannedCount(items.size());
+  }
+
+  @Override
+  public synchronized QueryResult query(final QueryRequest request) {
+    queryCount++;
+    final GlobalSecondaryIndex index = indexes
+        .get(request.getTableName() + "/" + request.getIndexName());
+    if (index == null) {
+      throw new UnsupportedOperationException(
+          "Only global secondary index queries are supported");
+    }
+    String hashKey = null;
+    String rangeKey = null;
+    for (final KeySchemaElement key : index.getKeySchema()) {
+      if (key.getKeyType().equals("HASH")) {
+        hashKey = key.getAttributeName();
+      } else {
+        rangeKey = key.getAttributeName();
+      }
+    }
+    final Map<String, Condition> conditions = request.getKeyConditions();
+    final List<Map<String, AttributeValue>> matches = new ArrayList<Map<String, AttributeValue>>();
+    for (final Map<String, AttributeValue> item : getTable(request.getTableName()).values()) {
+      if (item.containsKey(hashKey) && item.containsKey(rangeKey)
+          && matches(item.get(hashKey), conditions.get(hashKey))
+          && matches(item.get(rangeKey), conditions.get(rangeKey))) {
+        matches.add(project(item, index, request.getTableName()));
+      }
+    }
+    final String sortKey = rangeKey;
+    Collections.sort(matches, new Comparator<Map<String, AttributeValue>>() {
+      @Override
+      public int compare(final Map<String, AttributeValue> i1, final Map<String, AttributeValue> i2) {
+        return compareValues(i1.get(sortKey), i2.get(sortKey));
+      }
+    });
+    if (Boolean.FALSE.equals(request.getScanIndexForward())) {
+      Collections.reverse(matches);
+    }
+
+    int start = 0;
+    if (request.getExclusiveStartKey() != null) {
+      final String tableKey = hashKeys.get(request.getTableName());
+      final AttributeValue last = request.getExclusiveStartKey().get(tableKey);
+      while (start < matches.size() && !matches.get(start).get(tableKey).equals(last)) {
+        start++;
+      }
+      start++;
+    }
+    int end = matches.size();
+    if (request.getLimit() != null) {
+      end = Math.min(end, start + request.getLimit());
+    }
+    final List<Map<String, AttributeValue>> page = new ArrayList<Map<String, AttributeValue>>();
+    long bytes = 0;
+    for (int i = start; i < end; i++) {
+      page.add(matches.get(i));
+      bytes += itemSize(matches.get(i));
+    }
+    consumeReads(bytes, request.getConsistentRead());
+    final QueryResult result = new QueryResult().withItems(page).withCount(page.size())
+        .withScannedCount(page.size());
+    if (end < matches.size()) {
+      final Map<String, AttributeValue> lastKey = new HashMap<String, AttributeValue>();
+      final Map<String, AttributeValue> lastItem = page.get(page.size() - 1);
+      lastKey.put(hashKeys.get(request.getTableName()),
+          lastItem.get(hashKeys.get(request.getTableName())));
+      lastKey.put(hashKey, lastItem.get(hashKey));
+      lastKey.put(rangeKey, lastItem.get(rangeKey));
+      result.setLastEvaluatedKey(lastKey);
+    }
+    if (request.getReturnConsumedCapacity() != null
+        && !request.getReturnConsumedCapacity().equals("NONE")) {
+      result.setConsumedCapacity(new ConsumedCapacity().withTableName(request.getTableName())
+          .withCapacityUnits(readUnits(bytes, request.getConsistentRead())));
+    }
+    return result;
+  }
+
+  // Sections start with SET, ADD or REMOVE; the clauses in each section are
+  // separated by commas.
+  private static void applyUpdateExpression(final String expression,
+      final Map<String, AttributeValue> item, final Map<String, String> names,
+      final Map<String, AttributeValue> values) {
+    for (final String section : expression.trim().split("\\s+(?=(SET|ADD|REMOVE)\\s)")) {
+      final String action = section.substring(0, section.indexOf(' '));
+      for (final String clause : section.substring(action.length()).split(",")) {
+        final String[] parts = clause.trim().split("\\s*=\\s*|\\s+");
+        final String attribute = resolve(parts[0], names);
+        if (action.equals("SET")) {
+          item.put(attribute, values.get(parts[1]));
+        } else if (action.equals("ADD")) {
+          BigDecimal sum = new BigDecimal(values.get(parts[1]).getN());
+          if (item.containsKey(attribute)) {
+            sum = sum.add(new BigDecimal(item.get(attribute).getN()));
+          }
+          item.put(attribute, new AttributeValue().withN(sum.toPlainString()));
+        } else {
+          item.remove(attribute);
+        }
+      }
+    }
+  }
+
+  // AND binds more tightly than OR.
+  private static boolean evaluateCondition(final String condition,
+      final Map<String, AttributeValue> item, final Map<String, String> names,
+      final Map<String, AttributeValue> values) {
+    for (final String disjunct : condition.trim().split("\\s+OR\\s+")) {
+      boolean all = true;
+      for (final String term : disjunct.trim().split("\\s+AND\\s+")) {
+        all &= evaluateTerm(term.trim(), item, names, values);
+      }
+      if (all) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean evaluateTerm(final String term, final Map<String, AttributeValue> item,
+      final Map<String, String> names, final Map<String, AttributeValue> values) {
+    final Matcher function = FUNCTION.matcher(term);
+    if (function.matches()) {
+      final boolean exists = item.containsKey(resolve(function.group(2), names));
+      return function.group(1).equals("attribute_exists") ? exists : !exists;
+    }
+    final Matcher comparison = COMPARISON.matcher(term);
+    if (!comparison.matches()) {
+      throw new UnsupportedOperationException("Unsupported condition " + term);
+    }
+    final AttributeValue value = item.get(resolve(comparison.group(1), names));
+    if (value == null) {
+      return false;
+    }
+    final int cmp = compareValues(value, values.get(comparison.group(3)));
+    switch (comparison.group(2)) {
+    case "=":
+      return cmp == 0;
+    case "<>":
+      return cmp != 0;
+    case "<":
+      return cmp < 0;
+    case "<=":
+      return cmp <= 0;
+    case ">":
+      return cmp > 0;
+    default:
+      return cmp >= 0;
+    }
+  }
+
+  private static String resolve(final String attribute, final Map<String, String> names) {
+    if (attribute.startsWith("#")) {
+      return names.get(attribute);
+    }
+    return attribute;
+  }
+
+  private void delay() {
+    if (latencyMillis > 0) {
+      try {
+        Thread.sleep(latencyMillis);
+      } catch (final InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  private void checkInjectedFailure() {
+    if (failingWrites > 0) {
+      failingWrites--;
+      throw writeFailure;
+    }
+  }
+
+  private Map<String, AttributeValue> project(final Map<String, AttributeValue> item,
+      final GlobalSecondaryIndex index, final String tableName) {
+    final Projection projection = index.getProjection();
+    if (projection == null || ProjectionType.ALL.toString().equals(projection.getProjectionType())) {
+      return new HashMap<String, AttributeValue>(item);
+    }
+    final List<String> attributes = new ArrayList<String>();
+    attributes.add(hashKeys.get(tableName));
+    for (final KeySchemaElement key : index.getKeySchema()) {
+      attributes.add(key.getAttributeName());
+    }
+    if (projection.getNonKeyAttributes() != null) {
+      attributes.addAll(projection.getNonKeyAttributes());
+    }
+    final Map<String, AttributeValue> projected = new HashMap<String, AttributeValue>();
+    for (final String attribute : attributes) {
+      if (item.containsKey(attribute)) {
+        projected.put(attribute, item.get(attribute));
+      }
+    }
+    return projected;
+  }
+
+  private static boolean matches(final AttributeValue value, final Condition condition) {
+    if (condition == null) {
+      return true;
+    }
+    final List<AttributeValue> args = condition.getAttributeValueList();
+    final int cmp = compareValues(value, args.get(0));
+    switch (ComparisonOperator.fromValue(condition.getComparisonOperator())) {
+    case EQ:
+      return cmp == 0;
+    case GE:
+      return cmp >= 0;
+    case GT:
+      return cmp > 0;
+    case LE:
+      return cmp <= 0;
+    case LT:
+      return cmp < 0;
+    case BETWEEN:
+      return cmp >= 0 && compareValues(value, args.get(1)) <= 0;
+    default:
+      throw new UnsupportedOperationException(condition.getComparisonOperator());
+    }
+  }
+
+  private static int compareValues(final AttributeValue v1, final AttributeValue v2) {
+    if (v1.getN() != null) {
+      return new BigDecimal(v1.getN()).compareTo(new BigDecimal(v2.getN()));
+    }
+    return v1.getS().compareTo(v2.getS());
+  }
+
+  private void consumeReads(final long bytes, final Boolean consistent) {
+    consumedReadCapacity += readUnits(bytes, consistent);
+  }
+
+  private static double readUnits(final long bytes, final Boolean consistent) {
+    final long units = Math.max(1, (bytes + READ_UNIT_BYTES - 1) / READ_UNIT_BYTES);
+    return Boolean.TRUE.equals(consistent) ? units : units / 2.0;
+  }
+
+  // Approximate DynamoDB's item size: attribute names plus the size of each
+  // value.
+  private static long itemSize(final Map<String, AttributeValue> item) {
+    long size = 0;
+    for (final Map.Entry<String, AttributeValue> entry : item.entrySet()) {
+      size += entry.getKey().getBytes(StandardCharsets.UTF_8).length
+          + valueSize(entry.getValue());
+    }
+    return size;
+  }
+
+  private static long valueSize(final AttributeValue value) {
+    if (value.getS() != null) {
+      return value.getS().getBytes(StandardCharsets.UTF_8).length;
+    }
+    if (value.getN() != null) {
+      return value.getN().length() / 2 + 1;
+    }
+    if (value.getM() != null) {
+      return 3 + itemSize(value.getM());
+    }
+    if (value.getL() != null) {
+      long size = 3;
+      for (final AttributeValue element : value.getL()) {
+        size += 1 + valueSize(element);
+      }
+      return size;
+    }
+    return 1;
+  }
+
+  private Map<AttributeValue, Map<String, AttributeValue>> getTable(final String tableName) {
+    if (!tables.containsKey(tableName)) {
+      throw new ResourceNotFoundException("No table " + tableName);
+    }
+    return tables.get(tableName);
+  }
+
+}
@@ -0,0 +1,215 @@
+package edu.harvard.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.IOUtils;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.CopyObjectResult;
+import com.amazonaws.services.s3.model.DeleteObjectRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+// In-memory S3 client that counts the requests made to it. Listings are paged
+// in the same way as S3, using the request's max keys (or the default page
+// size) and continuing from the marker of the previous page. The client is
+// thread-safe, so that it can stand in for S3 in multi-threaded code.
+public class InMemoryS3 extends AbstractAmazonS3 {
+
+  private final Map<String, TreeMap<String, byte[]>> buckets;
+  private final int pageSize;
+  private int listRequests;
+  private int getRequests;
+  private int putRequests;
+
+  public InMemoryS3() {
+    this(1000);
+  }
+
+  public InMemoryS3(final int pageSize) {
+    this.buckets = new HashMap<String, TreeMap<String, byte[]>>();
+    this.pageSize = pageSize;
+  }
+
+  public synchronized int getListRequests() {
+    return listRequests;
+  }
+
+  public synchronized int getGetRequests() {
+    return getRequests;
+  }
+
+  public synchronized int getPutRequests() {
+    return putRequests;
+  }
+
+  public synchronized int getRequestCount() {
+    return listRequests + getRequests + putRequests;
+  }
+
+  public synchronized void resetCounts() {
+    listRequests = 0;
+    getRequests = 0;
+    putRequests = 0;
+  }
+
+  // Add an object without counting a request.
+  public synchronized void add(final String bucket, final String key, final byte[] bytes) {
+    getBucket(bucket).put(key, bytes);
+  }
+
+  @Override
+  public ObjectListing listObjects(final String bucketName) {
+    return listObjects(new ListObjectsRequest().withBucketName(bucketName));
+  }
+
+  @Override
+  public ObjectListing listObjects(final String bucketName, final String prefix) {
+    return listObjects(new ListObjectsRequest().withBucketName(bucketName).withPrefix(prefix));
+  }
+
+  @Override
+  public synchronized ObjectListing listObjects(final ListObjectsRequest request) {
+    listRequests++;
+    final String prefix = request.getPrefix() == null ? "" : request.getPrefix();
+    final String delimiter = request.getDelimiter();
+    final int maxKeys = request.getMaxKeys() == null ? pageSize
+        : Math.min(pageSize, request.getMaxKeys());
+    final ObjectListing listing = new ObjectListing();
+    listing.setBucketName(request.getBucketName());
+    listing.setPrefix(request.getPrefix());
+    listing.setDelimiter(delimiter);
+    listing.setMaxKeys(maxKeys);
+    int count = 0;
+    String lastKey = null;
+    for (final String key : getBucket(request.getBucketName()).keySet()) {
+      if (!key.startsWith(prefix)
+          || (request.getMarker() != null && key.compareTo(request.getMarker()) <= 0)) {
+        continue;
+      }
+      String commonPrefix = null;
+      if (delimiter != null) {
+        final int idx = key.indexOf(delimiter, prefix.length());
+        if (idx >= 0) {
+          commonPrefix = key.substring(0, idx + delimiter.length());
+        }
+      }
+      if (commonPrefix != null && listing.getCommonPrefixes().contains(commonPrefix)) {
+        continue;
+      }
+      if (count == maxKeys) {
+        listing.setTruncated(true);
+        listing.setNextMarker(lastKey);
+        return listing;
+      }
+      if (commonPrefix != null) {
+        listing.getCommonPrefixes().add(commonPrefix);
+        // S3 resumes after every key under the common prefix.
+        lastKey = commonPrefix + Character.MAX_VALUE;
+      } else {
+        final S3ObjectSummary summary = new S3ObjectSummary();
+        summary.setBucketName(request.getBucketName());
+        summary.setKey(key);
+        summary.setSize(getBucket(request.getBucketName()).get(key).length);
+        listing.getObjectSummaries().add(summary);
+        lastKey = key;
+      }
+      count++;
+    }
+    return listing;
+  }
+
+  @Override
+  public ObjectListing listNextBatchOfObjects(final ObjectListing previous) {
+    if (!previous.isTruncated()) {
+      final ObjectListing empty = new ObjectListing();
+      empty.setBucketName(previous.getBucketName());
+      return empty;
+    }
+    return listObjects(new ListObjectsRequest(previous.getBucketName(), previous.getPrefix(),
+        previous.getNextMarker(), previous.getDelimiter(), previous.getMaxKeys()));
+  }
+
+  @Override
+  public S3Object getObject(final String bucketName, final String key) {
+    return getObject(new GetObjectRequest(bucketName, key));
+  }
+
+  @Override
+  public synchronized S3Object getObject(final GetObjectRequest request) {
+    getRequests++;
+    final byte[] bytes = getBucket(request.getBucketName()).get(request.getKey());
+    if (bytes == null) {
+      throw new AmazonClientException("No such key " + request.getKey());
+    }
+    final S3Object obj = new S3Object();
+    obj.setBucketName(request.getBucketName());
+    obj.setKey(request.getKey());
+    obj.setObjectContent(new ByteArrayInputStream(bytes));
+    return obj;
+  }
+
+  @Override
+  public synchronized PutObjectResult putObject(final String bucketName, final String key,
+      final InputStream input, final ObjectMetadata metadata) {
+    putRequests++;
+    try {
+      getBucket(bucketName).put(key, IOUtils.toByteArray(input));
+    } catch (final IOException e) {
+      throw new AmazonClientException(e.getMessage(), e);
+    }
+    return new PutObjectResult();
+  }
+
+  @Override
+  public synchronized PutObjectResult putObject(final String bucketName, final String key, final File file) {
+    putRequests++;
+    try {
+      getBucket(bucketName).put(key, Files.readAllBytes(file.toPath()));
+    } catch (final IOException e) {
+      throw new AmazonClientException(e.getMessage(), e);
+    }
+    return new PutObjectResult();
+  }
+
+  @Override
+  public synchronized CopyObjectResult copyObject(final CopyObjectRequest request) {
+    putRequests++;
+    getBucket(request.getDestinationBucketName()).put(request.getDestinationKey(),
+        getBucket(request.getSourceBucketName()).get(request.getSourceKey()));
+    return new CopyObjectResult();
+  }
+
+  @Override
+  public void deleteObject(final String bucketName, final String key) {
+    deleteObject(new DeleteObjectRequest(bucketName, key));
+  }
+
+  @Override
+  public synchronized void deleteObject(final DeleteObjectRequest request) {
+    putRequests++;
+    getBucket(request.getBucketName()).remove(request.getKey());
+  }
+
+  private TreeMap<String, byte[]> getBucket(final String bucket) {
+    if (!buckets.containsKey(bucket)) {
+      buckets.put(bucket, new TreeMap<String, byte[]>());
+    }
+    return buckets.get(bucket);
+  }
+
+}
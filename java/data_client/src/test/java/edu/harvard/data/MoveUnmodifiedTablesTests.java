@@ -0,0 +1,147 @@
+package edu.harvard.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MoveUnmodifiedTablesTests {
+
+  private File baseDir;
+  private File inputDir;
+  private File outputDir;
+  private FileSystem fs;
+  private MoveUnmodifiedTables mover;
+
+  @Before
+  public void setup() throws IOException {
+    baseDir = Files.createTempDirectory("move_unmodified").toFile();
+    inputDir = new File(baseDir, "phase_1");
+    outputDir = new File(baseDir, "phase_2");
+    fs = FileSystem.getLocal(new Configuration());
+    mover = new MoveUnmodifiedTables(fs, 4);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(baseDir);
+  }
+
+  @Test
+  public void existingTablesAreMoved() throws Exception {
+    final List<String> tables = new ArrayList<String>();
+    for (int i = 0; i < 20; i++) {
+      addTable("table_" + i);
+      tables.add("table_" + i);
+    }
+    addTable("modified");
+    mover.move(mover.plan(path(inputDir), path(outputDir), tables));
+
+    for (final String table : tables) {
+      assertFalse(new File(inputDir, table).exists());
+      final File data = new File(outputDir, table + "/part-0");
+      assertEquals(table + "\n", FileUtils.readFileToString(data, "UTF-8"));
+    }
+    assertTrue(new File(inputDir, "modified").exists());
+    assertFalse(new File(outputDir, "modified").exists());
+  }
+
+  @Test
+  public void missingTablesAreSkipped() throws Exception {
+    addTable("present");
+    final MoveUnmodifiedTables.Plan plan = mover.plan(path(inputDir), path(outputDir),
+        Arrays.asList("absent", "present"));
+    assertEquals(Arrays.asList("present"), plan.getMovedTables());
+    assertEquals(Arrays.asList("absent"), plan.getMissingTables());
+    mover.move(plan);
+    assertTrue(new File(outputDir, "present").isDirectory());
+    assertFalse(new File(outputDir, "absent").exists());
+  }
+
+  @Test
+  public void dryRunDoesNotMove() throws Exception {
+    addTable("table");
+    final MoveUnmodifiedTables.Plan plan = mover.plan(path(inputDir), path(outputDir),
+        Arrays.asList("table", "other"));
+    final List<String> report = plan.report();
+    assertEquals(2, report.size());
+    assertEquals("mv " + path(inputDir) + "/table " + path(outputDir) + "/table", report.get(0));
+    assertEquals("skip other (no input directory)", report.get(1));
+    assertTrue(new File(inputDir, "table").exists());
+    assertFalse(outputDir.exists());
+  }
+
+  @Test
+  public void missingInputDirectoryMovesNothing() throws Exception {
+    final MoveUnmodifiedTables.Plan plan = mover.plan(path(inputDir), path(outputDir),
+        Arrays.asList("table"));
+    assertTrue(plan.getMovedTables().isEmpty());
+    mover.move(plan);
+    assertTrue(outputDir.isDirectory());
+  }
+
+  @Test
+  public void plainFilesAreNotTables() throws Exception {
+    inputDir.mkdirs();
+    new File(inputDir, "table").createNewFile();
+    final MoveUnmodifiedTables.Plan plan = mover.plan(path(inputDir), path(outputDir),
+        Arrays.asList("table"));
+    assertEquals(Arrays.asList("table"), plan.getMissingTables());
+  }
+
+  @Test
+  public void failedMovesAreReported() throws Exception {
+    addTable("table_a");
+    addTable("table_b");
+    final MoveUnmodifiedTables.Plan plan = mover.plan(path(inputDir), path(outputDir),
+        Arrays.asList("table_a", "table_b"));
+    // Moving a directory away after planning makes its rename fail.
+    FileUtils.deleteDirectory(new File(inputDir, "table_a"));
+    try {
+      mover.move(plan);
+      fail("Expected an IOException");
+    } catch (final IOException e) {
+      assertTrue(e.getMessage().contains("[table_a]"));
+    }
+    assertTrue(new File(outputDir, "table_b").isDirectory());
+  }
+
+  @Test
+  public void mainMovesTables() throws Exception {
+    addTable("table");
+    MoveUnmodifiedTables.main(new String[] { "--dry-run", inputDir.getPath(),
+        outputDir.getPath(), "table" });
+    assertTrue(new File(inputDir, "table").exists());
+    MoveUnmodifiedTables.main(new String[] { inputDir.getPath(), outputDir.getPath(), "table" });
+    assertTrue(new File(outputDir, "table").exists());
+    assertFalse(new File(inputDir, "table").exists());
+  }
+
+  private Path path(final File file) {
+    return fs.makeQualified(new Path(file.getPath()));
+  }
+
+  private void addTable(final String name) throws IOException {
+    final File dir = new File(inputDir, name);
+    dir.mkdirs();
+    try (PrintWriter out = new PrintWriter(new File(dir, "part-0"), "UTF-8")) {
+      out.println(name);
+    }
+  }
+}
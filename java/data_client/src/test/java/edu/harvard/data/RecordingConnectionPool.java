@@ -0,0 +1,159 @@
+package edu.harvard.data;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Connection pool backed by an in-memory H2 database that records the
+// statements run through it. Statements containing the text passed to failOn
+// throw an SQLException instead of running. Statements starting with a prefix
+// passed to intercept (for Redshift-only commands such as UNLOAD) are recorded
+// but not run; each takes statementDelay milliseconds, so that tests can
+// observe how many statements run at once.
+public class RecordingConnectionPool extends RedshiftConnectionPool {
+
+  private final String url;
+  private final List<String> executed;
+  private final List<List<String>> batches;
+  private final List<String> failOn;
+  private final List<String> intercepted;
+  private final AtomicInteger running;
+  private final AtomicInteger maxRunning;
+  private long statementDelay;
+
+  public RecordingConnectionPool(final String name, final int maxConnections) {
+    super("jdbc:h2:mem:" + name, "", "", maxConnections);
+    this.url = "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1";
+    this.executed = Collections.synchronizedList(new ArrayList<String>());
+    this.batches = Collections.synchronizedList(new ArrayList<List<String>>());
+    this.failOn = Collections.synchronizedList(new ArrayList<String>());
+    this.intercepted = Collections.synchronizedList(new ArrayList<String>());
+    this.running = new AtomicInteger();
+    this.maxRunning = new AtomicInteger();
+  }
+
+  public List<String> getExecuted() {
+    return executed;
+  }
+
+  public List<List<String>> getBatches() {
+    return batches;
+  }
+
+  public void failOn(final String text) {
+    failOn.add(text);
+  }
+
+  public void intercept(final String prefix, final long statementDelay) {
+    intercepted.add(prefix);
+    this.statementDelay = statementDelay;
+  }
+
+  // The largest number of intercepted statements that were running at once.
+  public int getMaxConcurrentStatements() {
+    return maxRunning.get();
+  }
+
+  // Run a statement directly against the database, bypassing the pool.
+  public void setup(final String sql) throws SQLException {
+    try (Connection connection = DriverManager.getConnection(url);
+        Statement st = connection.createStatement()) {
+      st.execute(sql);
+    }
+  }
+
+  @Override
+  protected Connection openConnection() throws SQLException {
+    final Connection connection = DriverManager.getConnection(url);
+    return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+        new Class<?>[] { Connection.class }, new InvocationHandler() {
+      @Override
+      public Object invoke(final Object proxy, final Method method, final Object[] args)
+          throws Throwable {
+        final Object result = invokeOn(connection, method, args);
+        if (method.getName().equals("createStatement")) {
+          return recordStatement((Statement) result);
+        }
+        return result;
+      }
+    });
+  }
+
+  private Statement recordStatement(final Statement statement) {
+    final List<String> batch = new ArrayList<String>();
+    return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(),
+        new Class<?>[] { Statement.class }, new InvocationHandler() {
+      @Override
+      public Object invoke(final Object proxy, final Method method, final Object[] args)
+          throws Throwable {
+        if (method.getName().equals("addBatch")) {
+          checkFailure((String) args[0]);
+          batch.add((String) args[0]);
+        } else if (method.getName().equals("executeBatch")) {
+          batches.add(new ArrayList<String>(batch));
+          batch.clear();
+        } else if (method.getName().startsWith("execute") && args != null
+            && args[0] instanceof String) {
+          if (isIntercepted((String) args[0])) {
+            return runIntercepted((String) args[0]);
+          }
+          checkFailure((String) args[0]);
+          executed.add((String) args[0]);
+        }
+        return invokeOn(statement, method, args);
+      }
+    });
+  }
+
+  private boolean isIntercepted(final String sql) {
+    for (final String prefix : intercepted) {
+      if (sql.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean runIntercepted(final String sql) throws SQLException, InterruptedException {
+    final int now = running.incrementAndGet();
+    try {
+      int max = maxRunning.get();
+      while (now > max && !maxRunning.compareAndSet(max, now)) {
+        max = maxRunning.get();
+      }
+      Thread.sleep(statementDelay);
+      checkFailure(sql);
+      executed.add(sql);
+      return false;
+    } finally {
+      running.decrementAndGet();
+    }
+  }
+
+  private void checkFailure(final String sql) throws SQLException {
+    for (final String text : failOn) {
+      if (sql.contains(text)) {
+        throw new SQLException("Simulated failure for " + text);
+      }
+    }
+  }
+
+  private static Object invokeOn(final Object target, final Method method, final Object[] args)
+      throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (final InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+}
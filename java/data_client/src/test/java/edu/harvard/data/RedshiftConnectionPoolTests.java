@@ -0,0 +1,142 @@
+package edu.harvard.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RedshiftConnectionPoolTests {
+
+  private static int databases = 0;
+
+  private RecordingConnectionPool pool;
+
+  @Before
+  public void setup() throws SQLException {
+    pool = new RecordingConnectionPool("pool_tests_" + databases++, 2);
+    pool.setup("CREATE TABLE counts (id INTEGER)");
+  }
+
+  @After
+  public void tearDown() {
+    pool.close();
+  }
+
+  @Test
+  public void reusesConnection() throws SQLException {
+    for (int i = 0; i < 10; i++) {
+      pool.execute("INSERT INTO counts VALUES (" + i + ")");
+    }
+    assertEquals(10, count());
+    assertEquals(1, pool.getOpenedConnections());
+    assertEquals(1, pool.getIdleConnections());
+  }
+
+  @Test
+  public void limitsConnectionsInUse() throws Exception {
+    final AtomicInteger inUse = new AtomicInteger();
+    final AtomicInteger maxInUse = new AtomicInteger();
+    final ExecutorService exec = Executors.newFixedThreadPool(6);
+    try {
+      final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int i = 0; i < 12; i++) {
+        futures.add(exec.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            try (Connection connection = pool.getConnection()) {
+              final int current = inUse.incrementAndGet();
+              synchronized (maxInUse) {
+                maxInUse.set(Math.max(maxInUse.get(), current));
+              }
+              Thread.sleep(20);
+              inUse.decrementAndGet();
+            }
+            return null;
+          }
+        }));
+      }
+      for (final Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      exec.shutdown();
+    }
+    assertEquals(2, maxInUse.get());
+    assertEquals(2, pool.getOpenedConnections());
+  }
+
+  @Test
+  public void transactionIsBatched() throws SQLException {
+    pool.executeInTransaction(Arrays.asList("INSERT INTO counts VALUES (1)",
+        "INSERT INTO counts VALUES (2)", "INSERT INTO counts VALUES (3)"));
+    assertEquals(3, count());
+    assertEquals(1, pool.getBatches().size());
+    assertEquals(3, pool.getBatches().get(0).size());
+  }
+
+  @Test
+  public void failedTransactionRollsBack() throws SQLException {
+    pool.failOn("VALUES (3)");
+    try {
+      pool.executeInTransaction(Arrays.asList("INSERT INTO counts VALUES (1)",
+          "INSERT INTO counts VALUES (2)", "INSERT INTO counts VALUES (3)"));
+      fail();
+    } catch (final SQLException e) {
+      // Expected
+    }
+    assertEquals(0, count());
+    // The connection goes back to the pool in auto-commit mode.
+    pool.execute("INSERT INTO counts VALUES (4)");
+    try (Connection connection = pool.getConnection()) {
+      assertTrue(connection.getAutoCommit());
+    }
+    assertEquals(1, count());
+    assertEquals(1, pool.getOpenedConnections());
+  }
+
+  @Test
+  public void replacesClosedConnection() throws SQLException {
+    final Connection physical;
+    try (Connection connection = pool.getConnection()) {
+      physical = connection.unwrap(Connection.class);
+    }
+    physical.close();
+    pool.execute("INSERT INTO counts VALUES (1)");
+    assertEquals(1, count());
+    assertEquals(2, pool.getOpenedConnections());
+  }
+
+  @Test(expected = SQLException.class)
+  public void returnedConnectionCantBeUsed() throws SQLException {
+    final Connection connection = pool.getConnection();
+    connection.close();
+    assertTrue(connection.isClosed());
+    connection.createStatement();
+  }
+
+  private int count() throws SQLException {
+    try (Connection connection = pool.getConnection();
+        Statement st = connection.createStatement();
+        ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM counts")) {
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
+
+}
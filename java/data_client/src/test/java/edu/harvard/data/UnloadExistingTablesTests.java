@@ -0,0 +1,184 @@
+package edu.harvard.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+
+import edu.harvard.data.schema.DataSchemaColumn;
+import edu.harvard.data.schema.existing.ExistingSchema;
+import edu.harvard.data.schema.existing.ExistingSchemaTable;
+import edu.harvard.data.schema.extension.ExtensionSchema;
+import edu.harvard.data.schema.extension.ExtensionSchemaColumn;
+import edu.harvard.data.schema.extension.ExtensionSchemaTable;
+
+// UNLOAD statements are intercepted by the connection pool, and each takes
+// 50ms, long enough for the concurrent statements to overlap.
+public class UnloadExistingTablesTests {
+
+  private static final String TABLE = "unload-progress";
+  private static final String RUN_ID = "run_1";
+  private static final String S3_LOCATION = "s3://working/unloaded";
+  private static final int TABLES = 10;
+
+  private RecordingConnectionPool pool;
+  private InMemoryDynamoDB dynamo;
+  private UnloadExistingTables unloader;
+  private final Date beginDate = new Date();
+
+  @Before
+  public void setup() throws DataConfigurationException {
+    pool = new RecordingConnectionPool("unload_existing_tables_tests", 8);
+    pool.intercept("UNLOAD", 50);
+    dynamo = new InMemoryDynamoDB();
+    dynamo.createTable(new DynamoDBMapper(dynamo).generateCreateTableRequest(UnloadProgress.class)
+        .withTableName(TABLE));
+    UnloadProgress.init(dynamo, TABLE);
+
+    final Map<String, ExistingSchemaTable> existing = new HashMap<String, ExistingSchemaTable>();
+    final Map<String, ExtensionSchemaTable> tables = new HashMap<String, ExtensionSchemaTable>();
+    for (int i = 0; i < TABLES; i++) {
+      final String name = "table_" + i;
+      final ExistingSchemaTable table = new ExistingSchemaTable("source_" + i, "", i % 2 == 0 ? 30
+          : null, "timestamp", null, null);
+      table.setTableName(name);
+      existing.put(name, table);
+      final List<DataSchemaColumn> columns = new ArrayList<DataSchemaColumn>();
+      columns.add(new ExtensionSchemaColumn("id", "", "bigint", null));
+      columns.add(new ExtensionSchemaColumn("timestamp", "", "timestamp", null));
+      tables.put(name, new ExtensionSchemaTable(name, columns));
+    }
+    unloader = new UnloadExistingTables(new ExistingSchema(existing), new ExtensionSchema(tables));
+  }
+
+  @After
+  public void tearDown() {
+    pool.close();
+  }
+
+  @Test
+  public void unloadsRunConcurrently() throws Exception {
+    unloader.unload(pool, getConfig(3, true), RUN_ID, S3_LOCATION, beginDate);
+    assertEquals(TABLES, pool.getExecuted().size());
+    assertEquals(3, pool.getMaxConcurrentStatements());
+    assertTrue(pool.getOpenedConnections() <= 3);
+    for (int i = 0; i < TABLES; i++) {
+      final UnloadProgress progress = UnloadProgress.find(destination(i));
+      assertEquals(UnloadProgress.Status.Complete.toString(), progress.getStatus());
+      assertNotNull(progress.getEnd());
+    }
+  }
+
+  @Test
+  public void parallelismOfOneRunsSerially() throws Exception {
+    unloader.unload(pool, getConfig(1, true), RUN_ID, S3_LOCATION, beginDate);
+    assertEquals(TABLES, pool.getExecuted().size());
+    assertEquals(1, pool.getMaxConcurrentStatements());
+  }
+
+  @Test
+  public void failureDoesNotStopOtherTables() throws Exception {
+    pool.failOn("source_3'");
+    pool.failOn("source_7'");
+    try {
+      unloader.unload(pool, getConfig(4, true), RUN_ID, S3_LOCATION, beginDate);
+      fail("Expected SQLException");
+    } catch (final SQLException e) {
+      assertTrue(e.getMessage().contains("table_3"));
+      assertTrue(e.getMessage().contains("table_7"));
+    }
+    assertEquals(TABLES - 2, pool.getExecuted().size());
+    final UnloadProgress failed = UnloadProgress.find(destination(3));
+    assertEquals(UnloadProgress.Status.Failed.toString(), failed.getStatus());
+    assertTrue(failed.getError().contains("source_3"));
+    assertEquals(UnloadProgress.Status.Complete.toString(),
+        UnloadProgress.find(destination(4)).getStatus());
+  }
+
+  @Test
+  public void restartSkipsCompletedTables() throws Exception {
+    pool.failOn("source_3'");
+    try {
+      unloader.unload(pool, getConfig(4, true), RUN_ID, S3_LOCATION, beginDate);
+      fail("Expected SQLException");
+    } catch (final SQLException e) {
+      // Expected
+    }
+    final RecordingConnectionPool retryPool = new RecordingConnectionPool(
+        "unload_existing_tables_retry", 8);
+    retryPool.intercept("UNLOAD", 0);
+    unloader.unload(retryPool, getConfig(4, true), RUN_ID, S3_LOCATION, beginDate);
+    assertEquals(1, retryPool.getExecuted().size());
+    assertTrue(retryPool.getExecuted().get(0).contains("source_3'"));
+    retryPool.close();
+  }
+
+  @Test
+  public void changedQueryIsUnloadedAgain() throws Exception {
+    unloader.unload(pool, getConfig(4, true), RUN_ID, S3_LOCATION, beginDate);
+    pool.getExecuted().clear();
+    // Tables with a day limit select a different date range.
+    final Date later = new Date(beginDate.getTime() + 3L * 24 * 60 * 60 * 1000);
+    unloader.unload(pool, getConfig(4, true), RUN_ID, S3_LOCATION, later);
+    assertEquals(TABLES / 2, pool.getExecuted().size());
+  }
+
+  // A later run may reuse the location, but the data in Redshift may have
+  // changed, so every table is unloaded again.
+  @Test
+  public void laterRunUnloadsAgain() throws Exception {
+    unloader.unload(pool, getConfig(4, true), RUN_ID, S3_LOCATION, beginDate);
+    pool.getExecuted().clear();
+    unloader.unload(pool, getConfig(4, true), "run_2", S3_LOCATION, beginDate);
+    assertEquals(TABLES, pool.getExecuted().size());
+    assertEquals("run_2", UnloadProgress.find(destination(0)).getRunId());
+  }
+
+  @Test
+  public void untrackedUnloadRepeatsEveryTable() throws Exception {
+    unloader.unload(pool, getConfig(4, false), RUN_ID, S3_LOCATION, beginDate);
+    unloader.unload(pool, getConfig(4, false), RUN_ID, S3_LOCATION, beginDate);
+    assertEquals(2 * TABLES, pool.getExecuted().size());
+    assertEquals(0, dynamo.getItemCount(TABLE));
+  }
+
+  private String destination(final int table) {
+    return S3_LOCATION + "/canvas.table_" + table + "/";
+  }
+
+  private DataConfig getConfig(final int parallelism, final boolean trackProgress)
+      throws IOException, DataConfigurationException {
+    final StringBuilder props = new StringBuilder();
+    props.append("dataset_name=canvas\n");
+    props.append("main_identifier=HUID\n");
+    props.append("pipeline_format=decompressed_internal\n");
+    props.append("fulltext_format=decompressed_internal\n");
+    props.append("aws_key_id=key\n");
+    props.append("aws_secret_key=secret\n");
+    props.append("redshift_unload_parallelism=" + parallelism + "\n");
+    if (trackProgress) {
+      props.append("unload_progress_dynamo_table=" + TABLE + "\n");
+    }
+    final List<InputStream> streams = new ArrayList<InputStream>();
+    streams.add(new ByteArrayInputStream(props.toString().getBytes(StandardCharsets.UTF_8)));
+    return new DataConfig(streams, false);
+  }
+
+}
@@ -0,0 +1,85 @@
+package edu.harvard.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.harvard.data.schema.DataSchemaColumn;
+import edu.harvard.data.schema.DataSchemaTable;
+import edu.harvard.data.schema.extension.ExtensionSchemaColumn;
+import edu.harvard.data.schema.extension.ExtensionSchemaTable;
+
+public class UpdateRedshiftTests {
+
+  private RecordingConnectionPool pool;
+
+  @Before
+  public void setup() throws SQLException {
+    pool = new RecordingConnectionPool("update_redshift_tests", 4);
+    pool.setup("CREATE SCHEMA IF NOT EXISTS canvas");
+    pool.setup("DROP TABLE IF EXISTS canvas.requests");
+    pool.setup("DROP TABLE IF EXISTS canvas.new_table");
+    pool.setup("CREATE TABLE canvas.requests (id BIGINT)");
+  }
+
+  @After
+  public void tearDown() {
+    pool.close();
+  }
+
+  @Test
+  public void columnsAddedInOneBatchPerTable() throws SQLException {
+    final Map<String, DataSchemaTable> additions = new LinkedHashMap<String, DataSchemaTable>();
+    final List<DataSchemaColumn> columns = new ArrayList<DataSchemaColumn>();
+    columns.add(new ExtensionSchemaColumn("user_agent", "", "varchar", 256));
+    columns.add(new ExtensionSchemaColumn("course_id", "", "bigint", null));
+    columns.add(new ExtensionSchemaColumn("timestamp_day", "", "integer", null));
+    additions.put("requests", new ExtensionSchemaTable("requests", columns));
+
+    final List<DataSchemaColumn> newColumns = new ArrayList<DataSchemaColumn>();
+    newColumns.add(new ExtensionSchemaColumn("id", "", "bigint", null));
+    final ExtensionSchemaTable newTable = new ExtensionSchemaTable("new_table", newColumns);
+    newTable.setNewlyGenerated(true);
+    additions.put("new_table", newTable);
+
+    UpdateRedshift.applyAdditions(additions, pool, "canvas");
+
+    assertEquals(1, pool.getBatches().size());
+    assertEquals(3, pool.getBatches().get(0).size());
+    assertTrue(pool.getBatches().get(0).get(0).startsWith("ALTER TABLE canvas.requests"));
+    assertEquals(1, pool.getExecuted().size());
+    assertTrue(pool.getExecuted().get(0).startsWith("CREATE TABLE canvas.new_table"));
+    assertEquals(4, columnCount("REQUESTS"));
+    assertEquals(1, columnCount("NEW_TABLE"));
+    assertEquals(1, pool.getOpenedConnections());
+  }
+
+  @Test
+  public void noChanges() throws SQLException {
+    UpdateRedshift.applyAdditions(new LinkedHashMap<String, DataSchemaTable>(), pool, "canvas");
+    assertEquals(0, pool.getOpenedConnections());
+  }
+
+  private int columnCount(final String table) throws SQLException {
+    try (Connection connection = pool.getConnection();
+        Statement st = connection.createStatement();
+        ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS "
+            + "WHERE TABLE_SCHEMA = 'CANVAS' AND TABLE_NAME = '" + table + "'")) {
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
+
+}
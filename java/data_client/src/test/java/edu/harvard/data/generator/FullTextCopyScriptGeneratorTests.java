@@ -0,0 +1,140 @@
+package edu.harvard.data.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.harvard.data.AwsUtils;
+import edu.harvard.data.DataConfig;
+import edu.harvard.data.DataConfigurationException;
+import edu.harvard.data.pipeline.InputTableIndex;
+import edu.harvard.data.schema.fulltext.FullTextSchema;
+import edu.harvard.data.schema.fulltext.FullTextTable;
+
+public class FullTextCopyScriptGeneratorTests {
+
+  private static final String FINGERPRINT = "concat_ws(',', coalesce(md5(title), '-'), "
+      + "coalesce(md5(body), '-'))";
+
+  private File dir;
+  private DataConfig config;
+  private FullTextSchema textSchema;
+  private InputTableIndex dataIndex;
+
+  @Before
+  public void setup() throws IOException, DataConfigurationException {
+    dir = Files.createTempDirectory("full_text_generator").toFile();
+    config = getConfig();
+    final Map<String, FullTextTable> tables = new HashMap<String, FullTextTable>();
+    tables.put("pages", new FullTextTable("page_id", Arrays.asList("title", "body")));
+    tables.put("comments", new FullTextTable("comment_id", Arrays.asList("comment")));
+    textSchema = new FullTextSchema(tables);
+    dataIndex = new InputTableIndex();
+    dataIndex.addFile("pages", AwsUtils.key("bucket", "pages", "part-0.gz"), 100);
+    dataIndex.setPartial("pages", false);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(dir);
+  }
+
+  @Test
+  public void mergeComparesFingerprints() throws Exception {
+    final String script = generate();
+    assertTrue(script.contains("USING (SELECT page_id, title, body, " + FINGERPRINT
+        + " AS fingerprint FROM in_pages) in_pages ON merged_pages.page_id = in_pages.page_id"));
+    assertTrue(script.contains(
+        "WHEN MATCHED AND merged_pages.fingerprint != in_pages.fingerprint THEN UPDATE SET"));
+    assertTrue(script.contains("body=( CASE  WHEN ( split(merged_pages.fingerprint, ',')[1] != "
+        + "split(in_pages.fingerprint, ',')[1] )  THEN in_pages.body ELSE merged_pages.body END )"));
+    assertTrue(script.contains("time_body=( CASE  WHEN ( split(merged_pages.fingerprint, ',')[1] "
+        + "!= split(in_pages.fingerprint, ',')[1] )  THEN current_timestamp "
+        + "ELSE merged_pages.time_body END )"));
+    assertTrue(script.contains("fingerprint=in_pages.fingerprint"));
+    assertTrue(script.contains("in_pages.body, current_timestamp, current_timestamp, "
+        + "in_pages.fingerprint"));
+  }
+
+  @Test
+  public void mergedTextIsNeverHashed() throws Exception {
+    dataIndex.setPartial("pages", true);
+    final String script = generate();
+    assertFalse(script.contains("md5( merged_"));
+    assertFalse(script.contains("md5(merged_"));
+    assertEquals(2, count(script, "MERGE INTO merged_pages"));
+  }
+
+  @Test
+  public void archivedFingerprintIsReused() throws Exception {
+    dataIndex.setPartial("pages", true);
+    final String script = generate();
+    assertTrue(script.contains("USING (SELECT page_id, title, body, time_title, time_body, "
+        + "coalesce(fingerprint, " + FINGERPRINT + ") AS fingerprint FROM cur_pages) cur_pages"));
+    assertTrue(script.contains("THEN cur_pages.time_title ELSE merged_pages.time_title END"));
+  }
+
+  @Test
+  public void tableIsExtractedInOnePass() throws Exception {
+    final String script = generate();
+    assertEquals(1, count(script, "sudo hive -S"));
+    assertTrue(script.contains("page_id,\ntitle,\nbody,\ntime_title,\ntime_body,\nfingerprint\n"
+        + " FROM merged_pages;\" | java -cp /home/hadoop/code/data_tools.jar "
+        + "edu.harvard.data.io.FullTextExtractor /tmp/full_text pages DecompressedInternal "
+        + "page_id title body\n"));
+    assertFalse(script.contains("gzip"));
+  }
+
+  @Test
+  public void tablesWithoutDataAreSkipped() throws Exception {
+    final String script = generate();
+    assertFalse(script.contains("comments"));
+    dataIndex = new InputTableIndex();
+    assertEquals("", generate());
+  }
+
+  private String generate() throws IOException {
+    new FullTextCopyScriptGenerator(dir, config, textSchema, dataIndex).generate();
+    return FileUtils.readFileToString(new File(dir, config.getFullTextScriptFile()),
+        StandardCharsets.UTF_8);
+  }
+
+  private static int count(final String text, final String pattern) {
+    int count = 0;
+    int index = text.indexOf(pattern);
+    while (index != -1) {
+      count++;
+      index = text.indexOf(pattern, index + 1);
+    }
+    return count;
+  }
+
+  private DataConfig getConfig() throws IOException, DataConfigurationException {
+    final StringBuilder props = new StringBuilder();
+    props.append("dataset_name=canvas\n");
+    props.append("main_identifier=CanvasDataID\n");
+    props.append("pipeline_format=decompressed_internal\n");
+    props.append("fulltext_format=decompressed_internal\n");
+    props.append("full_text_bucket=full-text\n");
+    final List<InputStream> streams = new ArrayList<InputStream>();
+    streams.add(new ByteArrayInputStream(props.toString().getBytes(StandardCharsets.UTF_8)));
+    return new DataConfig(streams, false);
+  }
+}
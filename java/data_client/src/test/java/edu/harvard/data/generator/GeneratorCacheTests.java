@@ -0,0 +1,151 @@
+package edu.harvard.data.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.harvard.data.AwsUtils;
+import edu.harvard.data.InMemoryS3;
+import edu.harvard.data.VerificationException;
+import edu.harvard.data.schema.DataSchema;
+import edu.harvard.data.schema.extension.ExtensionSchema;
+
+public class GeneratorCacheTests {
+
+  private static final String RESOURCES = "code_generator_integration_tests/";
+  private static final String INITIAL_SCHEMA = RESOURCES + "initial_schema.json";
+  private static final String PHASE_2_ADDITIONS = RESOURCES
+      + "phase_2_additional_resources.json";
+
+  private File codeDir;
+  private Map<String, String> settings;
+
+  @Before
+  public void setup() throws IOException {
+    codeDir = Files.createTempDirectory("generator_cache").toFile();
+    settings = new TreeMap<String, String>();
+    settings.put("dataset_name", "canvas");
+    settings.put("main_identifier", "CanvasDataID");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(codeDir);
+  }
+
+  @Test
+  public void hashIsStable() throws Exception {
+    assertEquals(hash("1.0", settings, schemas(), resources()),
+        hash("1.0", settings, schemas(), resources()));
+  }
+
+  @Test
+  public void hashDoesNotDependOnMapOrder() throws Exception {
+    final Map<String, String> reversed = new LinkedHashMap<String, String>();
+    reversed.put("main_identifier", "CanvasDataID");
+    reversed.put("dataset_name", "canvas");
+    final Map<String, byte[]> resources = resources();
+    final Map<String, byte[]> reversedResources = new LinkedHashMap<String, byte[]>();
+    reversedResources.put(PHASE_2_ADDITIONS, resources.get(PHASE_2_ADDITIONS));
+    reversedResources.put(INITIAL_SCHEMA, resources.get(INITIAL_SCHEMA));
+    assertEquals(hash("1.0", settings, schemas(), resources),
+        hash("1.0", reversed, schemas(), reversedResources));
+  }
+
+  @Test
+  public void schemaEditChangesHash() throws Exception {
+    final String original = hash("1.0", settings, schemas(), resources());
+
+    final List<DataSchema> removedColumn = schemas();
+    removedColumn.get(1).getTableByName("simple_table").removeColumn("string_column");
+    assertNotEquals(original, hash("1.0", settings, removedColumn, resources()));
+
+    final List<DataSchema> expiredTable = schemas();
+    expiredTable.get(1).getTableByName("simple_table").setExpirationPhase(2);
+    assertNotEquals(original, hash("1.0", settings, expiredTable, resources()));
+  }
+
+  @Test
+  public void resourceEditChangesHash() throws Exception {
+    final Map<String, byte[]> resources = resources();
+    resources.put(PHASE_2_ADDITIONS, "{ \"tables\": {} }".getBytes(StandardCharsets.UTF_8));
+    assertNotEquals(hash("1.0", settings, schemas(), resources()),
+        hash("1.0", settings, schemas(), resources));
+  }
+
+  @Test
+  public void versionAndSettingsChangeHash() throws Exception {
+    final String original = hash("1.0", settings, schemas(), resources());
+    assertNotEquals(original, hash("1.1", settings, schemas(), resources()));
+    settings.put("pipeline_format", "decompressed_internal");
+    assertNotEquals(original, hash("1.0", settings, schemas(), resources()));
+  }
+
+  @Test
+  public void missingResourcesAreSkipped() throws Exception {
+    final Map<String, byte[]> resources = GeneratorCache
+        .readResources(Arrays.asList(INITIAL_SCHEMA, null, RESOURCES + "missing.json"));
+    assertEquals(1, resources.size());
+    assertTrue(resources.containsKey(INITIAL_SCHEMA));
+  }
+
+  @Test
+  public void cachedJarIsRestored() throws Exception {
+    final InMemoryS3 s3 = new InMemoryS3();
+    s3.add("code", "generator_cache/canvas/abc123/data_tools.jar",
+        "jar".getBytes(StandardCharsets.UTF_8));
+    final GeneratorCache cache = new GeneratorCache(new AwsUtils(s3),
+        AwsUtils.key("code", "generator_cache", "canvas"), codeDir, "data_tools.jar");
+
+    assertTrue(cache.restore("abc123"));
+    assertEquals("jar", FileUtils.readFileToString(new File(codeDir, "data_tools.jar"),
+        StandardCharsets.UTF_8));
+    assertFalse(new File(codeDir, GeneratorCache.LOCATION_FILE).exists());
+  }
+
+  @Test
+  public void missRecordsCacheLocation() throws Exception {
+    final GeneratorCache cache = new GeneratorCache(new AwsUtils(new InMemoryS3()),
+        AwsUtils.key("code", "generator_cache", "canvas"), codeDir, "data_tools.jar");
+
+    assertFalse(cache.restore("abc123"));
+    assertFalse(new File(codeDir, "data_tools.jar").exists());
+    assertEquals("s3://code/generator_cache/canvas/abc123/data_tools.jar\n",
+        FileUtils.readFileToString(new File(codeDir, GeneratorCache.LOCATION_FILE),
+            StandardCharsets.UTF_8));
+  }
+
+  private static String hash(final String version, final Map<String, String> settings,
+      final List<DataSchema> schemas, final Map<String, byte[]> resources) {
+    return GeneratorCache.hash(version, settings, schemas, resources);
+  }
+
+  // Read afresh each time, so that equal hashes don't come from shared objects.
+  private static List<DataSchema> schemas() throws IOException, VerificationException {
+    final List<DataSchema> schemas = new ArrayList<DataSchema>();
+    schemas.add(ExtensionSchema.readExtensionSchema(INITIAL_SCHEMA));
+    schemas.add(ExtensionSchema.readExtensionSchema(PHASE_2_ADDITIONS));
+    return schemas;
+  }
+
+  private static Map<String, byte[]> resources() throws IOException {
+    return GeneratorCache.readResources(Arrays.asList(INITIAL_SCHEMA, PHASE_2_ADDITIONS));
+  }
+}
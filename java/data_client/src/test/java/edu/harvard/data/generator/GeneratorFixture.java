@@ -0,0 +1,167 @@
+package edu.harvard.data.generator;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+
+import edu.harvard.data.AwsUtils;
+import edu.harvard.data.DataConfig;
+import edu.harvard.data.DataConfigurationException;
+import edu.harvard.data.InMemoryS3;
+import edu.harvard.data.VerificationException;
+import edu.harvard.data.identity.IdentifierType;
+import edu.harvard.data.pipeline.InputTableIndex;
+import edu.harvard.data.pipeline.S3ToHdfsCopyPlan;
+import edu.harvard.data.pipeline.S3ToHdfsCopyPlanner;
+import edu.harvard.data.schema.DataSchema;
+import edu.harvard.data.schema.UnexpectedApiResponseException;
+import edu.harvard.data.schema.extension.ExtensionSchema;
+
+// Runs the full code generator against the integration test schemas, with a
+// data index and full text location held in an in-memory S3.
+class GeneratorFixture {
+
+  static final String RUN_ID = "run";
+  static final String TABLE = "all_possible_column_types";
+
+  private final File tempDir;
+  private final File hiveDir;
+  private final InMemoryS3 s3;
+
+  GeneratorFixture(final File tempDir) throws IOException {
+    this.tempDir = tempDir;
+    this.hiveDir = new File(tempDir, "hive");
+    new File(hiveDir, "phase_2").mkdirs();
+    new File(hiveDir, "phase_3").mkdirs();
+    new File(hiveDir, "phase_2/phase_2_query.q").createNewFile();
+    new File(hiveDir, "phase_3/phase_3_query.q").createNewFile();
+
+    s3 = new InMemoryS3();
+    final InputTableIndex index = new InputTableIndex();
+    index.addFile(TABLE, AwsUtils.key("working", "dataset", RUN_ID, TABLE, "part-0.gz"), 100);
+    index.setPartial(TABLE, false);
+    final AwsUtils aws = new AwsUtils(s3);
+    aws.writeJson(AwsUtils.key("working", "dataset", RUN_ID, "directoryList.json"), index);
+    aws.writeJson(AwsUtils.key("working", "dataset", RUN_ID, "s3ToHdfsCopyPlan.json"),
+        new S3ToHdfsCopyPlan(new S3ToHdfsCopyPlanner(1).plan(index)));
+    s3.add("full-text", "canvas/" + TABLE + "/fulltable/part-0.gz", new byte[0]);
+  }
+
+  InMemoryS3 getS3() {
+    return s3;
+  }
+
+  /**
+   * @return the contents of every generated file, keyed by its path relative
+   *         to the code directory.
+   */
+  Map<String, byte[]> generate(final int threads) throws Exception {
+    final File codeDir = new File(tempDir, "code_" + threads);
+    s3.resetCounts();
+    new FixtureCodeGenerator(config(threads), codeDir, hiveDir, new AwsUtils(s3)).generate();
+    final Map<String, byte[]> files = new TreeMap<String, byte[]>();
+    final Collection<File> generated = FileUtils.listFiles(codeDir, null, true);
+    for (final File file : generated) {
+      final String path = codeDir.toURI().relativize(file.toURI()).getPath();
+      files.put(path, FileUtils.readFileToByteArray(file));
+    }
+    return files;
+  }
+
+  private static DataConfig config(final int threads)
+      throws IOException, DataConfigurationException {
+    final StringBuilder props = new StringBuilder();
+    props.append("dataset_name=canvas\n");
+    props.append("data_source=dataset\n");
+    props.append("main_identifier=XID\n");
+    props.append("pipeline_format=decompressed_internal\n");
+    props.append("fulltext_format=decompressed_internal\n");
+    props.append("working_bucket=working\n");
+    props.append("code_bucket=code\n");
+    props.append("full_text_bucket=full-text\n");
+    props.append("generator_threads=" + threads + "\n");
+    final List<InputStream> streams = new ArrayList<InputStream>();
+    streams.add(new ByteArrayInputStream(props.toString().getBytes(StandardCharsets.UTF_8)));
+    return new DataConfig(streams, false);
+  }
+
+  private static class FixtureCodeGenerator extends CodeGenerator {
+    private static final String RESOURCES = "code_generator_integration_tests/";
+
+    private final DataConfig config;
+    private final File hiveDir;
+
+    FixtureCodeGenerator(final DataConfig config, final File codeDir, final File hiveDir,
+        final AwsUtils aws) {
+      super(config, codeDir, RUN_ID, aws);
+      this.config = config;
+      this.hiveDir = hiveDir;
+    }
+
+    @Override
+    protected GenerationSpec createGenerationSpec() throws IOException,
+    DataConfigurationException, VerificationException, UnexpectedApiResponseException {
+      final GenerationSpec spec = new GenerationSpec(2, "schema_version");
+      spec.setJavaProjectName("parallel_test_generated_code");
+      spec.setJavaTableEnumName("ParallelTestTable");
+      spec.setPrefixes("Phase0", "Phase1", "Phase2", "Phase3");
+      spec.setHdfsDirectories("hdfs_0", "hdfs_1", "hdfs_2", "hdfs_3");
+      spec.setJavaBindingPackages(TestCodeGenerator.PHASE_ZERO_PACKAGE,
+          TestCodeGenerator.PHASE_ONE_PACKAGE, TestCodeGenerator.PHASE_TWO_PACKAGE,
+          TestCodeGenerator.PHASE_THREE_PACKAGE);
+      spec.setJavaHadoopPackage(TestCodeGenerator.IDENTITY_HADOOP_PACKAGE);
+      spec.setHadoopIdentityManagerClass("ParallelTestIdentityHadoopManager");
+      spec.setHiveScriptDir(hiveDir);
+      spec.setConfig(config);
+      final DataSchema schema0 = ExtensionSchema
+          .readExtensionSchema(RESOURCES + "initial_schema.json");
+      final List<DataSchema> schemas = transformSchema(schema0);
+      spec.setSchemas(schemas.get(0), schemas.get(1), schemas.get(2), schemas.get(3));
+      return spec;
+    }
+
+    @Override
+    protected String getExistingTableResource() {
+      return RESOURCES + "existing_tables.json";
+    }
+
+    @Override
+    protected IdentifierType getMainIdentifier() {
+      return IdentifierType.XID;
+    }
+
+    @Override
+    protected String getIdentifierResource() {
+      return RESOURCES + "identifiers.json";
+    }
+
+    @Override
+    protected String getPhaseTwoAdditionsResource() {
+      return RESOURCES + "phase_2_additional_resources.json";
+    }
+
+    @Override
+    protected String getPhaseThreeAdditionsResource() {
+      return RESOURCES + "phase_3_additional_resources.json";
+    }
+
+    @Override
+    protected String getFullTextResource() {
+      return "parallel_generation/full_text_tables.json";
+    }
+
+    @Override
+    protected String getPhaseZeroModificationResource() {
+      return null;
+    }
+  }
+}
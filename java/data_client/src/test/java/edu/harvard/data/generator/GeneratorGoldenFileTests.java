@@ -0,0 +1,152 @@
+package edu.harvard.data.generator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+// Compares every file written by the code generator with its copy under
+// generator_golden. After an intended change to the generated output, rerun
+// with -DupdateGoldenFiles=<path to src/test/resources/generator_golden> to
+// rewrite the copies, and review the differences.
+//
+// The generated Java classes follow a few templates, so only one example of
+// each is kept in full. The rest are checked against the SHA-256 hashes listed
+// in java_hashes.sha256; to see how one of them changed, generate it with the
+// previous version of the code.
+public class GeneratorGoldenFileTests {
+
+  private static final String GOLDEN = "generator_golden";
+  private static final String HASHES = "java_hashes.sha256";
+  private static final String JAVA_SRC = "java/src/main/java/edu/harvard/data/integration/";
+  private static final Set<String> JAVA_EXAMPLES = new HashSet<String>(Arrays.asList(
+      JAVA_SRC + "bindings/phase0/Phase0AllPossibleColumnTypes.java",
+      JAVA_SRC + "bindings/phase1/Phase1TableWithMultiplexedIdentifier.java",
+      JAVA_SRC + "bindings/phase2/Phase2ParallelTestTableFactory.java",
+      JAVA_SRC + "identity/ParallelTestIdentityHadoopManager.java"));
+
+  private File tempDir;
+  private GeneratorFixture fixture;
+
+  @Before
+  public void setup() throws IOException {
+    tempDir = Files.createTempDirectory("generator_golden").toFile();
+    fixture = new GeneratorFixture(tempDir);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(tempDir);
+  }
+
+  @Test
+  public void outputMatchesGoldenFiles() throws Exception {
+    final Map<String, byte[]> generated = new TreeMap<String, byte[]>(fixture.generate(1));
+    final String update = System.getProperty("updateGoldenFiles");
+    if (update != null) {
+      final File dir = new File(update);
+      FileUtils.deleteDirectory(dir);
+      final List<String> hashes = new ArrayList<String>();
+      for (final Map.Entry<String, byte[]> file : generated.entrySet()) {
+        if (isHashed(file.getKey())) {
+          hashes.add(sha256(file.getValue()) + "  " + file.getKey());
+        } else {
+          FileUtils.writeByteArrayToFile(new File(dir, file.getKey()), file.getValue());
+        }
+      }
+      FileUtils.writeLines(new File(dir, HASHES), "UTF-8", hashes, "\n");
+      return;
+    }
+    final File dir = new File(getClass().getClassLoader().getResource(GOLDEN).toURI());
+    final Map<String, byte[]> golden = readGoldenFiles(dir);
+    final Map<String, String> goldenHashes = readHashes(dir);
+    final Map<String, String> generatedHashes = new TreeMap<String, String>();
+    final Set<String> paths = new HashSet<String>(golden.keySet());
+    for (final Map.Entry<String, byte[]> file : generated.entrySet()) {
+      if (isHashed(file.getKey())) {
+        generatedHashes.put(file.getKey(), sha256(file.getValue()));
+      } else {
+        paths.remove(file.getKey());
+        assertEquals(file.getKey(), text(golden.get(file.getKey()), file.getKey()),
+            text(file.getValue(), file.getKey()));
+      }
+    }
+    assertEquals("Missing generated files", new HashSet<String>(), paths);
+    assertEquals(goldenHashes.keySet(), generatedHashes.keySet());
+    for (final String path : goldenHashes.keySet()) {
+      assertEquals(path, goldenHashes.get(path), generatedHashes.get(path));
+    }
+  }
+
+  private static boolean isHashed(final String path) {
+    return path.startsWith(JAVA_SRC) && !JAVA_EXAMPLES.contains(path);
+  }
+
+  // Files are compared as strings, so that a failure shows the difference.
+  // Compressed files are decompressed first, since the gzip header depends on
+  // the platform.
+  private static String text(final byte[] content, final String path) throws IOException {
+    if (content == null) {
+      return null;
+    }
+    if (path.endsWith(".gz")) {
+      try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(content))) {
+        return IOUtils.toString(in, StandardCharsets.UTF_8);
+      }
+    }
+    return new String(content, StandardCharsets.UTF_8);
+  }
+
+  private static String sha256(final byte[] content) throws NoSuchAlgorithmException {
+    final StringBuilder hex = new StringBuilder();
+    for (final byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+  private Map<String, byte[]> readGoldenFiles(final File dir) throws IOException {
+    final Map<String, byte[]> files = new TreeMap<String, byte[]>();
+    final Collection<File> golden = FileUtils.listFiles(dir, null, true);
+    for (final File file : golden) {
+      final String path = dir.toURI().relativize(file.toURI()).getPath();
+      if (!path.equals(HASHES)) {
+        files.put(path, FileUtils.readFileToByteArray(file));
+      }
+    }
+    return files;
+  }
+
+  private Map<String, String> readHashes(final File dir) throws IOException {
+    final Map<String, String> hashes = new TreeMap<String, String>();
+    for (final String line : FileUtils.readLines(new File(dir, HASHES), StandardCharsets.UTF_8)) {
+      if (!line.isEmpty()) {
+        final String[] parts = line.split("  ", 2);
+        hashes.put(parts[1], parts[0]);
+      }
+    }
+    return hashes;
+  }
+}
@@ -0,0 +1,58 @@
+package edu.harvard.data.generator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelCodeGeneratorTests {
+
+  private File tempDir;
+  private GeneratorFixture fixture;
+
+  @Before
+  public void setup() throws IOException {
+    tempDir = Files.createTempDirectory("parallel_generator").toFile();
+    fixture = new GeneratorFixture(tempDir);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(tempDir);
+  }
+
+  @Test
+  public void parallelOutputMatchesSerialOutput() throws Exception {
+    final Map<String, byte[]> serial = fixture.generate(1);
+    final Map<String, byte[]> parallel = fixture.generate(8);
+
+    assertEquals(serial.keySet(), parallel.keySet());
+    for (final String path : serial.keySet()) {
+      assertArrayEquals(path, serial.get(path), parallel.get(path));
+    }
+    // Every generator wrote something.
+    assertTrue(serial.containsKey("java/pom.xml"));
+    assertTrue(serial.containsKey("create_redshift_tables.sql"));
+    assertTrue(serial.containsKey("phase_2_create_tables.q"));
+    assertTrue(serial.containsKey("phase_3_hive.sh"));
+    assertTrue(serial.containsKey("phase_1_move_unmodified_files.sh"));
+    assertTrue(serial.containsKey("full_text_copy.sh"));
+  }
+
+  @Test
+  public void remoteLookupsAreMadeUpFront() throws Exception {
+    fixture.generate(8);
+    // One request each to find the data index and the copy plan, and one to
+    // list the full text location, rather than a request per full text table.
+    assertEquals(3, fixture.getS3().getListRequests());
+  }
+}
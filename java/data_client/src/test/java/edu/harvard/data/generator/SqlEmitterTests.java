@@ -0,0 +1,61 @@
+package edu.harvard.data.generator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class SqlEmitterTests {
+
+  @Test
+  public void plainIdentifierIsUnchanged() {
+    assertEquals("user_dim", SqlEmitter.plain("user_dim"));
+    assertEquals("_Column1", SqlEmitter.plain("_Column1"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void identifierWithSpaceIsRejected() {
+    SqlEmitter.plain("user dim");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void identifierWithQuoteIsRejected() {
+    SqlEmitter.plain("name\"; DROP TABLE x; --");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void identifierWithShellExpansionIsRejected() {
+    SqlEmitter.plain("col$(id)");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void identifierStartingWithDigitIsRejected() {
+    SqlEmitter.plain("1column");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void emptyIdentifierIsRejected() {
+    SqlEmitter.plain("");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void qualifiedNameChecksSchema() {
+    SqlEmitter.qualified("bad.schema", "table");
+  }
+
+  @Test
+  public void quotesAreDoubled() {
+    assertEquals("\"a\"\"b\"", SqlEmitter.redshiftQuoted(new StringBuilder(), "a\"b").toString());
+    assertEquals("`a``b`", SqlEmitter.hiveQuoted(new StringBuilder(), "a`b").toString());
+  }
+
+  @Test
+  public void joinSeparatesItems() {
+    assertEquals("(a,b,c", SqlEmitter.join(new StringBuilder("("), Arrays.asList("a", "b", "c"),
+        ",").toString());
+    assertEquals("", SqlEmitter.join(new StringBuilder(), Collections.<String> emptyList(), ",")
+        .toString());
+  }
+}
@@ -0,0 +1,70 @@
+package edu.harvard.data.identity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Compares {@link IdentifierType#matches} with matching against
+ * {@link IdentifierType#getPattern}, over the mix of values found in a
+ * multiplexed identifier column. This is not run as part of the test suite;
+ * run its main method with the test classpath. Later rounds give the more
+ * reliable figures, once the JIT has compiled both paths.
+ */
+public class IdentifierTypeBenchmark {
+
+  private static final int VALUES = 100000;
+  private static final int ROUNDS = 20;
+
+  public static void main(final String[] args) {
+    final List<String> values = new ArrayList<String>();
+    for (int i = 0; i < VALUES; i++) {
+      switch (i % 4) {
+      case 0:
+        values.add(String.format("%08d", i));
+        break;
+      case 1:
+        values.add("x" + String.format("%07d", i));
+        break;
+      case 2:
+        values.add(UUID.randomUUID().toString());
+        break;
+      default:
+        values.add("user" + i + "@example.edu");
+      }
+    }
+    final IdentifierType[] types = { IdentifierType.ResearchUUID, IdentifierType.HUID,
+        IdentifierType.XID };
+    for (int round = 0; round < ROUNDS; round++) {
+      long start = System.nanoTime();
+      int regexMatches = 0;
+      for (final String value : values) {
+        for (final IdentifierType type : types) {
+          if (type.getPattern().matcher(value).matches()) {
+            regexMatches++;
+          }
+        }
+      }
+      final long regexNanos = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      int fastMatches = 0;
+      for (final String value : values) {
+        for (final IdentifierType type : types) {
+          if (type.matches(value)) {
+            fastMatches++;
+          }
+        }
+      }
+      final long fastNanos = System.nanoTime() - start;
+
+      if (regexMatches != fastMatches) {
+        throw new IllegalStateException(regexMatches + " regex matches but " + fastMatches
+            + " fast matches");
+      }
+      final long checks = (long) values.size() * types.length;
+      System.out.println(String.format("round %2d: pattern %6.1f ns/check, matches %6.1f ns/check",
+          round, (double) regexNanos / checks, (double) fastNanos / checks));
+    }
+  }
+}
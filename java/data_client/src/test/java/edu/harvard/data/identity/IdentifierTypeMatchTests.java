@@ -0,0 +1,109 @@
+package edu.harvard.data.identity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.UUID;
+
+import org.junit.Test;
+
+// IdentifierType.matches checks ResearchUUID, HUID and XID without a regex.
+// These tests compare it with the type's pattern for every character in every
+// position of a valid identifier, and for every length around the valid one.
+public class IdentifierTypeMatchTests {
+
+  private static final String UUID_TEMPLATE = "0123abcd-ef45-4678-9abc-def012345678";
+  private static final String HUID_TEMPLATE = "01234567";
+  private static final String XID_TEMPLATE = "aZ09_|zA";
+
+  @Test
+  public void researchUuidMatchesPatternForEveryCharacter() {
+    assertTrue(IdentifierType.ResearchUUID.matches(UUID_TEMPLATE));
+    checkEveryCharacter(IdentifierType.ResearchUUID, UUID_TEMPLATE);
+  }
+
+  @Test
+  public void huidMatchesPatternForEveryCharacter() {
+    assertTrue(IdentifierType.HUID.matches(HUID_TEMPLATE));
+    checkEveryCharacter(IdentifierType.HUID, HUID_TEMPLATE);
+  }
+
+  @Test
+  public void xidMatchesPatternForEveryCharacter() {
+    assertTrue(IdentifierType.XID.matches(XID_TEMPLATE));
+    checkEveryCharacter(IdentifierType.XID, XID_TEMPLATE);
+  }
+
+  @Test
+  public void fixedShapeTypesMatchPatternForEveryLength() {
+    checkEveryLength(IdentifierType.ResearchUUID, UUID_TEMPLATE);
+    checkEveryLength(IdentifierType.HUID, HUID_TEMPLATE);
+    checkEveryLength(IdentifierType.XID, XID_TEMPLATE);
+  }
+
+  @Test
+  public void randomUuidsAreResearchUuids() {
+    for (int i = 0; i < 1000; i++) {
+      final String uuid = UUID.randomUUID().toString();
+      assertTrue(uuid, IdentifierType.ResearchUUID.matches(uuid));
+      assertTrue(uuid, IdentifierType.ResearchUUID.matches(uuid.toUpperCase()));
+    }
+  }
+
+  @Test
+  public void multiplexedColumnValuesAreDistinguished() {
+    final String[] values = { "12345678", "ab12cd34", UUID.randomUUID().toString(),
+        "someone@harvard.edu", "1234567", "123456789", "1bcdefgh", "" };
+    for (final String value : values) {
+      for (final IdentifierType type : IdentifierType.values()) {
+        if (type.getType().equals(String.class)) {
+          assertEquals(type + " " + value, type.getPattern().matcher(value).matches(),
+              type.matches(value));
+        }
+      }
+    }
+    assertTrue(IdentifierType.HUID.matches("12345678"));
+    assertFalse(IdentifierType.XID.matches("12345678"));
+    assertTrue(IdentifierType.XID.matches("ab12cd34"));
+    assertFalse(IdentifierType.HUID.matches("ab12cd34"));
+    assertTrue(IdentifierType.EmailAddress.matches("someone@harvard.edu"));
+  }
+
+  @Test(expected = IdentityImplementationException.class)
+  public void longTypedIdentifierCannotMatch() {
+    IdentifierType.CanvasID.matches("12345");
+  }
+
+  @Test(expected = IdentityImplementationException.class)
+  public void otherCannotMatch() {
+    IdentifierType.Other.matches("anything");
+  }
+
+  private static void checkEveryCharacter(final IdentifierType type, final String template) {
+    final char[] chars = template.toCharArray();
+    for (int i = 0; i < chars.length; i++) {
+      final char original = chars[i];
+      for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+        chars[i] = (char) c;
+        check(type, new String(chars));
+      }
+      chars[i] = original;
+    }
+  }
+
+  private static void checkEveryLength(final IdentifierType type, final String template) {
+    final StringBuilder value = new StringBuilder();
+    for (int i = 0; i <= template.length() * 2; i++) {
+      check(type, value.toString());
+      value.append(template.charAt(i % template.length()));
+    }
+  }
+
+  private static void check(final IdentifierType type, final String value) {
+    final boolean expected = type.getPattern().matcher(value).matches();
+    if (type.matches(value) != expected) {
+      assertEquals(type + " \"" + value + "\"", expected, type.matches(value));
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package edu.harvard.data.identity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates the heap used by a typical {@link IdentityMap}, and by the same
+ * identifiers held in a {@code HashMap} (the map's previous representation).
+ * This is not run as part of the test suite; run its main method with the test
+ * classpath, ideally with a fixed heap size such as {@code -Xms2g -Xmx2g}.
+ */
+public class IdentityMapFootprint {
+
+  private static final int INSTANCES = 1000000;
+
+  public static void main(final String[] args) {
+    // Warm up, so that class loading isn't counted.
+    measure(false, 1000);
+    measure(true, 1000);
+    System.out.println(String.format("IdentityMap: %.1f bytes per instance",
+        measure(false, INSTANCES)));
+    System.out.println(String.format("HashMap:     %.1f bytes per instance",
+        measure(true, INSTANCES)));
+  }
+
+  private static double measure(final boolean hashMap, final int count) {
+    final List<Object> maps = new ArrayList<Object>(count);
+    final long before = usedMemory();
+    for (int i = 0; i < count; i++) {
+      maps.add(hashMap ? createHashMap(i) : createIdentityMap(i));
+    }
+    final long after = usedMemory();
+    if (maps.size() != count) {
+      throw new IllegalStateException();
+    }
+    // The list's backing array was allocated before the first measurement.
+    return (double) (after - before) / count;
+  }
+
+  // The identifiers held for a typical Canvas user: a research ID, two Long
+  // IDs and one String ID. The String values themselves are shared, so that
+  // only the cost of the container is measured.
+  private static IdentityMap createIdentityMap(final int i) {
+    final IdentityMap id = new IdentityMap();
+    id.set(IdentifierType.ResearchUUID, "research");
+    id.set(IdentifierType.CanvasID, 100000L + i);
+    id.set(IdentifierType.CanvasDataID, 200000L + i);
+    id.set(IdentifierType.HUID, "huid");
+    return id;
+  }
+
+  private static Map<IdentifierType, Object> createHashMap(final int i) {
+    final Map<IdentifierType, Object> id = new HashMap<IdentifierType, Object>();
+    id.put(IdentifierType.ResearchUUID, "research");
+    id.put(IdentifierType.CanvasID, 100000L + i);
+    id.put(IdentifierType.CanvasDataID, 200000L + i);
+    id.put(IdentifierType.HUID, "huid");
+    return id;
+  }
+
+  private static long usedMemory() {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,239 @@
+package edu.harvard.data.identity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.mapreduce.lib.input.MultipleInputs;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.harvard.data.FormatLibrary;
+import edu.harvard.data.FormatLibrary.Format;
+import edu.harvard.data.HadoopUtilities;
+import edu.harvard.data.TableFormat;
+
+// Runs the identity map job on the local runner. User 0 is a shared account
+// that appears in most of the records.
+public class IdentityMapJobTests {
+
+  private static final int HOT_RECORDS = 30000;
+  private static final String[] HOT_EMAILS = { "shared@harvard.edu", "system@harvard.edu",
+      "admin@harvard.edu" };
+  private static final String KNOWN_ID_0 = "00000000-0000-4000-8000-000000000000";
+  private static final String KNOWN_ID_1 = "11111111-1111-4111-8111-111111111111";
+  private static final String KNOWN_ID_3 = "33333333-3333-4333-8333-333333333333";
+
+  private File baseDir;
+  private Configuration conf;
+  private TableFormat format;
+
+  @Before
+  public void setup() throws IOException {
+    baseDir = Files.createTempDirectory("identity_map_job").toFile();
+    format = new FormatLibrary().getFormat(Format.DecompressedInternal);
+    conf = new Configuration();
+    conf.set("mapreduce.framework.name", "local");
+    conf.set("fs.defaultFS", "file:///");
+    conf.set("format", format.getFormat().toString());
+    conf.set("mainIdentifier", IdentifierType.CanvasDataID.toString());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(baseDir);
+  }
+
+  @Test(timeout = 120000)
+  public void skewedKeyIsMergedFromFewRecords() throws Exception {
+    writeKnownIdentities();
+    writeTable();
+    final Job job = runJob();
+
+    final Map<Long, IdentityMap> identities = readIdentities();
+    assertEquals(3, identities.size());
+
+    final IdentityMap hot = identities.get(0L);
+    assertEquals(KNOWN_ID_0, hot.get(IdentifierType.ResearchUUID));
+    assertEquals(1000L, hot.get(IdentifierType.CanvasID));
+    assertEquals("huid0000", hot.get(IdentifierType.HUID));
+
+    // The known entry's values win over newly-discovered ones.
+    final IdentityMap known = identities.get(1L);
+    assertEquals(KNOWN_ID_1, known.get(IdentifierType.ResearchUUID));
+    assertEquals(1111L, known.get(IdentifierType.CanvasID));
+
+    final IdentityMap unknown = identities.get(2L);
+    final String newId = (String) unknown.get(IdentifierType.ResearchUUID);
+    assertTrue(IdentifierType.ResearchUUID.matches(newId));
+    assertNotEquals(KNOWN_ID_3, newId);
+    assertEquals(1002L, unknown.get(IdentifierType.CanvasID));
+
+    final Set<String> emails = new HashSet<String>(readLines("email"));
+    final Set<String> expected = new HashSet<String>();
+    for (final String email : HOT_EMAILS) {
+      expected.add(KNOWN_ID_0 + "\t" + email);
+    }
+    expected.add(newId + "\tuser2@harvard.edu");
+    assertEquals(expected, emails);
+    assertEquals(Collections.singletonList(KNOWN_ID_0 + "\tShared Account"), readLines("name"));
+
+    // The combiner reduced the hot key's records to its distinct identities.
+    final long mapOutput = job.getCounters().findCounter(TaskCounter.MAP_OUTPUT_RECORDS)
+        .getValue();
+    final long reduceInput = job.getCounters().findCounter(TaskCounter.REDUCE_INPUT_RECORDS)
+        .getValue();
+    assertTrue(mapOutput > HOT_RECORDS);
+    assertTrue("Reducer read " + reduceInput + " records", reduceInput < 20);
+  }
+
+  @Test(timeout = 120000)
+  public void usersMissingFromDataAreNotWritten() throws Exception {
+    writeKnownIdentities();
+    writeLines("table", "data", Collections.singletonList("2\t1002\tuser2@harvard.edu\t\\N"));
+    runJob();
+    final Map<Long, IdentityMap> identities = readIdentities();
+    assertEquals(Collections.singleton(2L), identities.keySet());
+  }
+
+  private Job runJob() throws Exception {
+    final Job job = Job.getInstance(conf, "identity-map-test");
+    IdentityMapHadoopJob.configure(job, IdentifierType.CanvasDataID, "tempidentitymap",
+        IdentifierType.EmailAddress.getFieldName(), IdentifierType.Name.getFieldName());
+    MultipleInputs.addInputPath(job, new Path(path("table")), TextInputFormat.class,
+        TableMapper.class);
+    MultipleInputs.addInputPath(job, new Path(path("identity_map")), TextInputFormat.class,
+        KnownIdentityMapper.class);
+    FileOutputFormat.setOutputPath(job, new Path(path("output")));
+    assertTrue(job.waitForCompletion(false));
+    return job;
+  }
+
+  // Users 0, 1 and 3 are already in the identity map. User 3 does not appear
+  // in the data.
+  private void writeKnownIdentities() throws IOException, InterruptedException {
+    final HadoopUtilities hadoopUtils = new HadoopUtilities();
+    final List<String> lines = new ArrayList<String>();
+    lines.add(knownLine(hadoopUtils, 0, KNOWN_ID_0, null));
+    lines.add(knownLine(hadoopUtils, 1, KNOWN_ID_1, 1111L));
+    lines.add(knownLine(hadoopUtils, 3, KNOWN_ID_3, null));
+    writeLines("identity_map", "part-0", lines);
+  }
+
+  private String knownLine(final HadoopUtilities hadoopUtils, final long canvasDataId,
+      final String researchId, final Long canvasId) throws IOException, InterruptedException {
+    final IdentityMap id = new IdentityMap();
+    id.set(IdentifierType.ResearchUUID, researchId);
+    id.set(IdentifierType.CanvasDataID, canvasDataId);
+    id.set(IdentifierType.CanvasID, canvasId);
+    if (canvasDataId == 0) {
+      id.set(IdentifierType.HUID, "huid0000");
+    }
+    return hadoopUtils.recordToText(id, format).toString();
+  }
+
+  // Records are canvas_data_id, canvas_id, email and name.
+  private void writeTable() throws IOException {
+    final List<String> lines = new ArrayList<String>();
+    for (int i = 0; i < HOT_RECORDS; i++) {
+      lines.add("0\t1000\t" + HOT_EMAILS[i % HOT_EMAILS.length] + "\tShared Account");
+    }
+    for (int i = 0; i < 10; i++) {
+      lines.add("1\t1001\t\\N\t\\N");
+      lines.add("2\t1002\tuser2@harvard.edu\t\\N");
+    }
+    Collections.shuffle(lines);
+    writeLines("table", "data", lines);
+  }
+
+  private Map<Long, IdentityMap> readIdentities() throws IOException {
+    final Map<Long, IdentityMap> identities = new HashMap<Long, IdentityMap>();
+    for (final String line : readLines("tempidentitymap")) {
+      final String[] fields = line.split("\t", -1);
+      final IdentityMap id = new IdentityMap();
+      id.set(IdentifierType.ResearchUUID, fields[0]);
+      id.set(IdentifierType.HUID, nullable(fields[1]));
+      id.set(IdentifierType.CanvasID, fields[3].equals("\\N") ? null : Long.valueOf(fields[3]));
+      id.set(IdentifierType.CanvasDataID, Long.valueOf(fields[4]));
+      identities.put(Long.valueOf(fields[4]), id);
+    }
+    return identities;
+  }
+
+  private static String nullable(final String field) {
+    return field.equals("\\N") ? null : field;
+  }
+
+  private String path(final String dir) {
+    return new File(baseDir, dir).toURI().toString();
+  }
+
+  private void writeLines(final String dir, final String file, final List<String> lines)
+      throws IOException {
+    final File parent = new File(baseDir, dir);
+    parent.mkdirs();
+    try (PrintWriter out = new PrintWriter(new File(parent, file), "UTF-8")) {
+      for (final String line : lines) {
+        out.println(line);
+      }
+    }
+  }
+
+  private List<String> readLines(final String output) throws IOException {
+    final List<String> lines = new ArrayList<String>();
+    final File dir = new File(new File(baseDir, "output"), output);
+    if (dir.exists()) {
+      for (final File file : dir.listFiles()) {
+        if (file.getName().startsWith(output + "-")) {
+          lines.addAll(FileUtils.readLines(file, StandardCharsets.UTF_8));
+        }
+      }
+    }
+    return lines;
+  }
+
+  static class TableMapper extends LongIdentityMapper {
+    private CSVRecord record;
+
+    @Override
+    public void readRecord(final CSVRecord csvRecord) {
+      this.record = csvRecord;
+    }
+
+    @Override
+    public Map<String, Long> getMainIdentifiers() {
+      return Collections.singletonMap("canvas_data_id", Long.valueOf(record.get(0)));
+    }
+
+    @Override
+    public boolean populateIdentityMap(final IdentityMap id) {
+      id.set(IdentifierType.CanvasDataID, Long.valueOf(record.get(0)));
+      id.set(IdentifierType.CanvasID, Long.valueOf(record.get(1)));
+      id.set(IdentifierType.EmailAddress, record.get(2));
+      id.set(IdentifierType.Name, record.get(3));
+      return true;
+    }
+  }
+}
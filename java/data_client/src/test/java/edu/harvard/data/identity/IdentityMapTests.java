@@ -0,0 +1,194 @@
+package edu.harvard.data.identity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.harvard.data.FormatLibrary;
+import edu.harvard.data.FormatLibrary.Format;
+import edu.harvard.data.TableFormat;
+
+public class IdentityMapTests {
+
+  private static final String RESEARCH_ID = "0123abcd-ef45-4678-9abc-def012345678";
+
+  private TableFormat format;
+
+  @Before
+  public void setup() {
+    format = new FormatLibrary().getFormat(Format.DecompressedInternal);
+  }
+
+  @Test
+  public void newMapIsEmpty() {
+    final IdentityMap id = new IdentityMap();
+    for (final IdentifierType type : IdentifierType.values()) {
+      assertNull(id.get(type));
+    }
+    assertTrue(id.getFieldsAsMap().isEmpty());
+    assertEquals("research_id: null huid: null xid: null canvas_id: null canvas_data_id: null "
+        + "eppn: null active_directory_id: null email: null name: null", id.toString());
+  }
+
+  @Test
+  public void everyIdentifierCanBeSetAndCleared() {
+    final IdentityMap id = new IdentityMap();
+    for (final IdentifierType type : IdentifierType.values()) {
+      final Object value = type.getType().equals(Long.class) ? (Object) 42L : type + " value";
+      id.set(type, value);
+      assertEquals(value, id.get(type));
+    }
+    for (final IdentifierType type : IdentifierType.values()) {
+      id.set(type, null);
+      assertNull(id.get(type));
+    }
+    assertEquals(new IdentityMap(), id);
+  }
+
+  @Test
+  public void longIdentifiersAcceptAnyNumber() {
+    final IdentityMap id = new IdentityMap();
+    id.set(IdentifierType.CanvasID, 7);
+    id.set(IdentifierType.CanvasDataID, Long.MAX_VALUE);
+    assertEquals(7L, id.get(IdentifierType.CanvasID));
+    assertEquals(Long.MAX_VALUE, id.get(IdentifierType.CanvasDataID));
+  }
+
+  @Test
+  public void zeroIsNotAMissingLong() {
+    final IdentityMap id = new IdentityMap();
+    id.set(IdentifierType.CanvasID, 0L);
+    assertEquals(0L, id.get(IdentifierType.CanvasID));
+    assertNotEquals(new IdentityMap(), id);
+  }
+
+  @Test
+  public void fieldsAsListUseNullString() {
+    final IdentityMap id = new IdentityMap();
+    id.set(IdentifierType.ResearchUUID, RESEARCH_ID);
+    id.set(IdentifierType.CanvasID, 12L);
+    final String nullString = format.getCsvFormat().getNullString();
+    assertEquals(Arrays.<Object> asList(RESEARCH_ID, nullString, nullString, 12L, nullString,
+        nullString, nullString), id.getFieldsAsList(format));
+  }
+
+  @Test
+  public void fieldsAsMapHoldSetIdentifiers() {
+    final IdentityMap id = fullMap();
+    final Map<String, Object> expected = new HashMap<String, Object>();
+    expected.put("research_id", RESEARCH_ID);
+    expected.put("huid", "12345678");
+    expected.put("xid", "ab12cd34");
+    expected.put("canvas_id", 1234L);
+    expected.put("canvas_data_id", 98765432101234L);
+    expected.put("eppn", "eppn@harvard.edu");
+    expected.put("active_directory_id", "ad");
+    assertEquals(expected, id.getFieldsAsMap());
+
+    final IdentityMap copy = new IdentityMap();
+    copy.set(IdentifierType.Name, "to be cleared");
+    copy.setFieldsAsMap(expected);
+    assertEquals(id, copy);
+  }
+
+  @Test
+  public void csvRecordRoundTrip() throws IOException {
+    final IdentityMap id = fullMap();
+    final StringWriter writer = new StringWriter();
+    try (CSVPrinter printer = new CSVPrinter(writer, format.getCsvFormat())) {
+      printer.printRecord(id.getFieldsAsList(format));
+    }
+    final CSVRecord record = CSVParser.parse(writer.toString(), format.getCsvFormat())
+        .getRecords().get(0);
+    assertEquals(id, new IdentityMap(format, record));
+  }
+
+  @Test
+  public void hadoopKeyRoundTrip() throws IOException {
+    final IdentityMap id = fullMap();
+    id.set(IdentifierType.EmailAddress, "someone@harvard.edu");
+    id.set(IdentifierType.CanvasID, 3L);
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new HadoopIdentityKey(id).write(new DataOutputStream(bytes));
+    final HadoopIdentityKey key = new HadoopIdentityKey();
+    key.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(id, key.getIdentityMap());
+    assertEquals(3L, key.getIdentityMap().get(IdentifierType.CanvasID));
+  }
+
+  @Test
+  public void equalMapsHaveEqualHashCodes() {
+    assertEquals(fullMap(), fullMap());
+    assertEquals(fullMap().hashCode(), fullMap().hashCode());
+    assertEquals(new IdentityMap().hashCode(), new IdentityMap().hashCode());
+    final IdentityMap other = fullMap();
+    other.set(IdentifierType.XID, "zz99zz99");
+    assertNotEquals(fullMap(), other);
+    assertFalse(fullMap().equals(null));
+    assertFalse(fullMap().equals(RESEARCH_ID));
+  }
+
+  @Test
+  public void compareToIsConsistentWithEquals() {
+    assertEquals(0, fullMap().compareTo(fullMap()));
+    for (final IdentifierType type : IdentifierType.values()) {
+      final IdentityMap changed = fullMap();
+      changed.set(type, null);
+      if (fullMap().get(type) != null) {
+        assertTrue(type.toString(), changed.compareTo(fullMap()) < 0);
+        assertTrue(type.toString(), fullMap().compareTo(changed) > 0);
+      } else {
+        assertEquals(type.toString(), 0, changed.compareTo(fullMap()));
+      }
+    }
+  }
+
+  @Test
+  public void compareToOrdersByIdentifierInTurn() {
+    final IdentityMap a = new IdentityMap();
+    a.set(IdentifierType.ResearchUUID, "a");
+    a.set(IdentifierType.HUID, "2");
+    final IdentityMap b = new IdentityMap();
+    b.set(IdentifierType.ResearchUUID, "b");
+    b.set(IdentifierType.HUID, "1");
+    assertTrue(a.compareTo(b) < 0);
+
+    // Long identifiers compare numerically.
+    final IdentityMap two = new IdentityMap();
+    two.set(IdentifierType.CanvasID, 2L);
+    final IdentityMap ten = new IdentityMap();
+    ten.set(IdentifierType.CanvasID, 10L);
+    assertTrue(two.compareTo(ten) < 0);
+    assertTrue(ten.compareTo(two) > 0);
+  }
+
+  private static IdentityMap fullMap() {
+    final IdentityMap id = new IdentityMap();
+    id.set(IdentifierType.ResearchUUID, RESEARCH_ID);
+    id.set(IdentifierType.HUID, "12345678");
+    id.set(IdentifierType.XID, "ab12cd34");
+    id.set(IdentifierType.CanvasID, 1234L);
+    id.set(IdentifierType.CanvasDataID, 98765432101234L);
+    id.set(IdentifierType.EPPN, "eppn@harvard.edu");
+    id.set(IdentifierType.ActiveDirectoryID, "ad");
+    return id;
+  }
+}
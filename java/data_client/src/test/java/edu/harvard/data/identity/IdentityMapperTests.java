@@ -18,7 +18,6 @@ import java.util.Map;
 
 import org.apache.commons.csv.CSVRecord;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.junit.Before;
@@ -32,7 +31,7 @@ import edu.harvard.data.HadoopConfigurationException;
 public class IdentityMapperTests {
 
   private Configuration config;
-  private Mapper<Object, Text, LongWritable, HadoopIdentityKey>.Context context;
+  private Mapper<Object, Text, JoinKey, HadoopIdentityKey>.Context context;
 
   @Before
   @SuppressWarnings("unchecked")
@@ -44,7 +43,7 @@ public class IdentityMapperTests {
   }
 
   private List<IdentityMap> getWrittenMaps() throws IOException, InterruptedException {
-    final ArgumentCaptor<LongWritable> key = ArgumentCaptor.forClass(LongWritable.class);
+    final ArgumentCaptor<JoinKey> key = ArgumentCaptor.forClass(JoinKey.class);
     final ArgumentCaptor<HadoopIdentityKey> value = ArgumentCaptor
         .forClass(HadoopIdentityKey.class);
     verify(context).write(key.capture(), value.capture());
@@ -56,13 +55,14 @@ public class IdentityMapperTests {
   }
 
   private List<Long> getWrittenKeys(final int times) throws IOException, InterruptedException {
-    final ArgumentCaptor<LongWritable> key = ArgumentCaptor.forClass(LongWritable.class);
+    final ArgumentCaptor<JoinKey> key = ArgumentCaptor.forClass(JoinKey.class);
     final ArgumentCaptor<HadoopIdentityKey> value = ArgumentCaptor
         .forClass(HadoopIdentityKey.class);
     verify(context, times(times)).write(key.capture(), value.capture());
     final List<Long> keys = new ArrayList<Long>();
-    for (final LongWritable longWritable : key.getAllValues()) {
-      keys.add(longWritable.get());
+    for (final JoinKey joinKey : key.getAllValues()) {
+      assertEquals(IdentityMapHadoopJob.DISCOVERED, joinKey.getTag());
+      keys.add(Long.valueOf(joinKey.getId()));
     }
     return keys;
   }
@@ -122,7 +122,7 @@ public class IdentityMapperTests {
     mapper.populated = false;
     mapper.map(null, new Text("value"), context);
     assertEquals(1, mapper.passedIds.size());
-    verify(context, never()).write((LongWritable) any(), (HadoopIdentityKey) any());
+    verify(context, never()).write((JoinKey) any(), (HadoopIdentityKey) any());
   }
 
   @Test
@@ -133,7 +133,7 @@ public class IdentityMapperTests {
     mapper.addKey("Key2", (Long) null);
     mapper.populated = false;
     mapper.map(null, new Text("value"), context);
-    verify(context, never()).write((LongWritable) any(), (HadoopIdentityKey) any());
+    verify(context, never()).write((JoinKey) any(), (HadoopIdentityKey) any());
   }
 
   @Test
@@ -1,20 +1,21 @@
 package edu.harvard.data.identity;
 
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 
-import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
 import org.junit.Before;
 import org.junit.Test;
@@ -28,30 +29,59 @@ public class IdentityReducerReduceTests {
   private static final IdentifierType MAIN_IDENTIFIER = IdentifierType.XID;
   private static final String XID = "known_xid";
 
-  private Configuration config;
-  private Reducer<Text, HadoopIdentityKey, Text, NullWritable>.Context context;
   private IdentityReducer<String> identityReducer;
   private MultipleOutputs<Text, NullWritable> outputs;
+  private JoinKey key;
 
   @Before
   @SuppressWarnings("unchecked")
-  public void beforeTest() throws IOException {
-    config = mock(Configuration.class);
-    context = mock(Reducer.Context.class);
-    when(context.getConfiguration()).thenReturn(config);
+  public void beforeTest() {
     outputs = mock(MultipleOutputs.class);
     identityReducer = new IdentityReducer<String>();
     identityReducer.format = new FormatLibrary().getFormat(Format.DecompressedInternal);
     identityReducer.mainIdentifier = MAIN_IDENTIFIER;
-    identityReducer.identities = new HashMap<String, IdentityMap>();
+    key = new JoinKey(XID, IdentityMapHadoopJob.KNOWN);
   }
 
-  private Iterable<HadoopIdentityKey> getIterable(final IdentityMap... identityMap) {
-    final List<HadoopIdentityKey> lst = new ArrayList<HadoopIdentityKey>();
-    for (final IdentityMap key : identityMap) {
-      lst.add(new HadoopIdentityKey(key));
+  // The reducer's values, as Hadoop would supply them: the existing identity
+  // map entry, if any, followed by the discovered identities. As in Hadoop,
+  // the key's tag is updated as each value is read.
+  private Iterable<HadoopIdentityKey> getIterable(final IdentityMap known,
+      final IdentityMap... discovered) {
+    final List<HadoopIdentityKey> values = new ArrayList<HadoopIdentityKey>();
+    final List<Integer> tags = new ArrayList<Integer>();
+    if (known != null) {
+      values.add(new HadoopIdentityKey(known));
+      tags.add(IdentityMapHadoopJob.KNOWN);
     }
-    return lst;
+    for (final IdentityMap id : discovered) {
+      values.add(new HadoopIdentityKey(id));
+      tags.add(IdentityMapHadoopJob.DISCOVERED);
+    }
+    return new Iterable<HadoopIdentityKey>() {
+      @Override
+      public Iterator<HadoopIdentityKey> iterator() {
+        return new Iterator<HadoopIdentityKey>() {
+          private int i = 0;
+
+          @Override
+          public boolean hasNext() {
+            return i < values.size();
+          }
+
+          @Override
+          public HadoopIdentityKey next() {
+            key.set(XID, tags.get(i));
+            return values.get(i++);
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
   }
 
   private IdentityMap makeId() {
@@ -72,8 +102,8 @@ public class IdentityReducerReduceTests {
 
   private IdentityMap getWrittenMap() throws IOException, InterruptedException {
     final ArgumentCaptor<Text> key = ArgumentCaptor.forClass(Text.class);
-    final ArgumentCaptor<NullWritable> value = ArgumentCaptor.forClass(NullWritable.class);
-    verify(context).write(key.capture(), value.capture());
+    verify(outputs).write(eq("tempidentitymap"), key.capture(), any(NullWritable.class),
+        anyString());
     final String[] values = key.getValue().toString().split("\t");
     final IdentityMap id = new IdentityMap();
     id.set(IdentifierType.ResearchUUID, values[0]);
@@ -88,8 +118,7 @@ public class IdentityReducerReduceTests {
   // Check that a user's existing research ID is re-used
   public void existingUUID() throws IOException, InterruptedException {
     final IdentityMap id = makeId();
-    identityReducer.identities.put(XID, id);
-    identityReducer.reduce(XID, getIterable(makeId(XID)), outputs);
+    identityReducer.reduce(XID, key, getIterable(id, makeId(XID)), outputs);
     final IdentityMap written = getWrittenMap();
     assertEquals(id.get(IdentifierType.ResearchUUID), written.get(IdentifierType.ResearchUUID));
   }
@@ -97,19 +126,33 @@ public class IdentityReducerReduceTests {
   @Test
   // Check that a new research UUID is generated if there's no matching ID
   public void newUUID() throws IOException, InterruptedException {
-    final IdentityMap id = makeId();
-    id.set(IdentifierType.XID, "some_other_xid");
-    identityReducer.identities.put((String) id.get(IdentifierType.XID), id);
-    identityReducer.reduce(XID, getIterable(makeId(XID)), outputs);
+    identityReducer.reduce(XID, key, getIterable(null, makeId(XID)), outputs);
+    final IdentityMap written = getWrittenMap();
+    final String researchId = (String) written.get(IdentifierType.ResearchUUID);
+    assertTrue(researchId, IdentifierType.ResearchUUID.matches(researchId));
+  }
+
+  @Test
+  // Check that the existing identity's values are kept, and new identity data
+  // only fills in values that it doesn't have
+  public void existingIdentityKept() throws IOException, InterruptedException {
+    final IdentityMap known = makeId();
+    known.set(IdentifierType.CanvasDataID, null);
+    final IdentityMap discovered = makeId(XID);
+    discovered.set(IdentifierType.HUID, "other_huid");
+    discovered.set(IdentifierType.CanvasDataID, 456L);
+    identityReducer.reduce(XID, key, getIterable(known, discovered), outputs);
     final IdentityMap written = getWrittenMap();
-    assertNotEquals(id.get(IdentifierType.ResearchUUID), written.get(IdentifierType.ResearchUUID));
+    assertEquals("HUID", written.get(IdentifierType.HUID));
+    assertEquals(12345L, written.get(IdentifierType.CanvasID));
+    assertEquals(456L, written.get(IdentifierType.CanvasDataID));
   }
 
   @Test
   // Check that new identity data is properly added
   public void identityPopulation() throws IOException, InterruptedException {
     final IdentityMap original = makeId();
-    identityReducer.reduce(XID, getIterable(original), outputs);
+    identityReducer.reduce(XID, key, getIterable(null, original), outputs);
     final IdentityMap written = getWrittenMap();
     assertEquals(original.get(IdentifierType.HUID), written.get(IdentifierType.HUID));
     assertEquals(original.get(IdentifierType.XID), written.get(IdentifierType.XID));
@@ -125,11 +168,19 @@ public class IdentityReducerReduceTests {
     id1.set(IdentifierType.HUID, "huid");
     id1.set(IdentifierType.CanvasID, 123L);
     id2.set(IdentifierType.CanvasDataID, 456L);
-    identityReducer.reduce(XID, getIterable(id1, id2), outputs);
+    identityReducer.reduce(XID, key, getIterable(null, id1, id2), outputs);
     final IdentityMap written = getWrittenMap();
     assertEquals("huid", written.get(IdentifierType.HUID));
     assertEquals(XID, written.get(IdentifierType.XID));
     assertEquals(123L, written.get(IdentifierType.CanvasID));
     assertEquals(456L, written.get(IdentifierType.CanvasDataID));
   }
+
+  @Test
+  // A user who is only in the existing identity map isn't written
+  public void existingIdentityOnlyNotWritten() throws IOException, InterruptedException {
+    identityReducer.reduce(XID, key, getIterable(makeId()), outputs);
+    verify(outputs, never()).write(anyString(), any(Text.class), any(NullWritable.class),
+        anyString());
+  }
 }
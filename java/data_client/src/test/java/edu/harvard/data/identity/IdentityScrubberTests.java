@@ -34,13 +34,13 @@ import edu.harvard.data.HadoopConfigurationException;
 public class IdentityScrubberTests {
 
   private static final IdentifierType MAIN_IDENTIFIER = IdentifierType.XID;
-  static final URI URI1 = IdentityReducerSetupTests.URI1;
-  static final URI URI2 = IdentityReducerSetupTests.URI2;
-  static final URI URI3 = IdentityReducerSetupTests.URI3;
-  static final String ID_MAP_FILE1 = IdentityReducerSetupTests.ID_MAP_FILE1;
-  static final String ID_MAP_FILE2 = IdentityReducerSetupTests.ID_MAP_FILE2;
-  static final String ID_MAP_FILE3 = IdentityReducerSetupTests.ID_MAP_FILE3;
-  static final String EMPTY_ID_MAP_FILE = IdentityReducerSetupTests.EMPTY_ID_MAP_FILE;
+  static final URI URI1 = URI.create("mock://cache_file_1");
+  static final URI URI2 = URI.create("mock://cache_file_2");
+  static final URI URI3 = URI.create("mock://cache_file_3");
+  static final String ID_MAP_FILE1 = "identity_map_data/identity_map_1.txt";
+  static final String ID_MAP_FILE2 = "identity_map_data/identity_map_2.txt";
+  static final String ID_MAP_FILE3 = "identity_map_data/identity_map_3.txt";
+  static final String EMPTY_ID_MAP_FILE = "identity_map_data/empty_identity_map.txt";
 
   private Configuration config;
   private Mapper<Object, Text, Text, NullWritable>.Context context;
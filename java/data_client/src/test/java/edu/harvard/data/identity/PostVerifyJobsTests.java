@@ -0,0 +1,241 @@
+package edu.harvard.data.identity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.harvard.data.FormatLibrary;
+import edu.harvard.data.FormatLibrary.Format;
+import edu.harvard.data.HadoopUtilities;
+import edu.harvard.data.TableFormat;
+import edu.harvard.data.VerificationException;
+
+public class PostVerifyJobsTests {
+
+  private static final int USERS = 50;
+  private static final int RECORDS_PER_USER = 40;
+
+  private File baseDir;
+  private Configuration conf;
+  private TableFormat format;
+  private List<String> researchIds;
+
+  @Before
+  public void setup() throws IOException {
+    baseDir = Files.createTempDirectory("post_verify").toFile();
+    format = new FormatLibrary().getFormat(Format.DecompressedInternal);
+    conf = new Configuration();
+    conf.set("mapreduce.framework.name", "local");
+    conf.set("fs.defaultFS", "file:///");
+    conf.set("format", format.getFormat().toString());
+    conf.set("mainIdentifier", IdentifierType.CanvasDataID.toString());
+    researchIds = new ArrayList<String>();
+    for (int i = 0; i < USERS; i++) {
+      researchIds.add(UUID.randomUUID().toString());
+    }
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(baseDir);
+  }
+
+  @Test
+  public void unchangedIdentityMapVerifies() throws Exception {
+    writeIdentityMap("original", researchIds, 0, USERS / 2);
+    writeIdentityMap("updated", researchIds, 0, USERS);
+    new IdentityMapVerifyJob(conf, path("original"), path("updated"), path("failures")).verify();
+    assertTrue(readLines("failures").isEmpty());
+  }
+
+  @Test
+  public void changedResearchIdFailsVerification() throws Exception {
+    writeIdentityMap("original", researchIds, 0, USERS);
+    final List<String> updated = new ArrayList<String>(researchIds);
+    updated.set(7, UUID.randomUUID().toString());
+    writeIdentityMap("updated", updated, 0, USERS);
+    try {
+      new IdentityMapVerifyJob(conf, path("original"), path("updated"), path("failures")).verify();
+      fail("Expected a VerificationException");
+    } catch (final VerificationException e) {
+      final List<String> failures = readLines("failures");
+      assertEquals(1, failures.size());
+      assertTrue(failures.get(0).startsWith("7\t"));
+    }
+  }
+
+  @Test
+  public void sampledRecordsAreVerified() throws Exception {
+    writeIdentityMap("identity_map", researchIds, 0, USERS);
+    writeSamples();
+    writeTable(researchIds);
+    new ExpectedIdentityJob(conf, path("identity_map"), path("samples"), path("expected"))
+    .verify();
+    final List<String> expected = readLines("expected");
+    assertEquals(USERS * RECORDS_PER_USER / 2, expected.size());
+    for (final String line : expected) {
+      final String[] parts = line.split("\t");
+      final int user = Integer.parseInt(parts[0].split("-")[0]);
+      assertEquals(researchIds.get(user), parts[1]);
+    }
+    new RecordIdentityVerifyJob(conf, "verify-table", path("expected"), path("table"),
+        TableMapper.class, path("failures")).verify();
+    assertTrue(readLines("failures").isEmpty());
+  }
+
+  @Test
+  public void wrongRecordIdentityFailsVerification() throws Exception {
+    writeIdentityMap("identity_map", researchIds, 0, USERS);
+    writeSamples();
+    final List<String> scrubbed = new ArrayList<String>(researchIds);
+    scrubbed.set(12, UUID.randomUUID().toString());
+    writeTable(scrubbed);
+    new ExpectedIdentityJob(conf, path("identity_map"), path("samples"), path("expected"))
+    .verify();
+    try {
+      new RecordIdentityVerifyJob(conf, "verify-table", path("expected"), path("table"),
+          TableMapper.class, path("failures")).verify();
+      fail("Expected a VerificationException");
+    } catch (final VerificationException e) {
+      final List<String> failures = readLines("failures");
+      assertEquals(RECORDS_PER_USER / 2, failures.size());
+      for (final String failure : failures) {
+        assertTrue(failure.startsWith("12-"));
+      }
+    }
+  }
+
+  @Test(expected = VerificationException.class)
+  public void sampleMissingFromIdentityMapFailsVerification() throws Exception {
+    writeIdentityMap("identity_map", researchIds, 1, USERS);
+    writeSamples();
+    new ExpectedIdentityJob(conf, path("identity_map"), path("samples"), path("expected"))
+    .verify();
+  }
+
+  @Test
+  public void missingSamplesAreSkipped() throws Exception {
+    writeIdentityMap("identity_map", researchIds, 0, USERS);
+    new ExpectedIdentityJob(conf, path("identity_map"), path("samples"), path("expected"))
+    .verify();
+    assertFalse(new File(baseDir, "expected").exists());
+    new RecordIdentityVerifyJob(conf, "verify-table", path("expected"), path("table"),
+        TableMapper.class, path("failures")).verify();
+  }
+
+  @Test(expected = VerificationException.class)
+  public void missingIdentityMapFailsVerification() throws Exception {
+    writeSamples();
+    new ExpectedIdentityJob(conf, path("identity_map"), path("samples"), path("expected"))
+    .verify();
+  }
+
+  @Test(expected = VerificationException.class)
+  public void missingUpdatedIdentityMapFailsVerification() throws Exception {
+    writeIdentityMap("original", researchIds, 0, USERS);
+    new IdentityMapVerifyJob(conf, path("original"), path("updated"), path("failures")).verify();
+  }
+
+  @Test(expected = VerificationException.class)
+  public void missingTableFailsVerification() throws Exception {
+    writeIdentityMap("identity_map", researchIds, 0, USERS);
+    writeSamples();
+    new ExpectedIdentityJob(conf, path("identity_map"), path("samples"), path("expected"))
+    .verify();
+    new RecordIdentityVerifyJob(conf, "verify-table", path("expected"), path("table"),
+        TableMapper.class, path("failures")).verify();
+  }
+
+  private String path(final String dir) {
+    return new File(baseDir, dir).toURI().toString();
+  }
+
+  // Users are identified by their index in the research ID list, which is
+  // also their Canvas Data ID.
+  private void writeIdentityMap(final String dir, final List<String> ids, final int first,
+      final int last) throws IOException, InterruptedException {
+    final HadoopUtilities hadoopUtils = new HadoopUtilities();
+    final List<String> lines = new ArrayList<String>();
+    for (int i = first; i < last; i++) {
+      final IdentityMap id = new IdentityMap();
+      id.set(IdentifierType.ResearchUUID, ids.get(i));
+      id.set(IdentifierType.CanvasDataID, (long) i);
+      lines.add(hadoopUtils.recordToText(id, format).toString());
+    }
+    // Split the map across files so that the jobs run several mappers.
+    Collections.shuffle(lines);
+    writeLines(dir, "part-0", lines.subList(0, lines.size() / 2));
+    writeLines(dir, "part-1", lines.subList(lines.size() / 2, lines.size()));
+  }
+
+  // Every other record for each user is sampled.
+  private void writeSamples() throws IOException {
+    final List<String> lines = new ArrayList<String>();
+    for (int i = 0; i < USERS; i++) {
+      for (int r = 0; r < RECORDS_PER_USER; r += 2) {
+        lines.add(i + "-" + r + "\t" + i);
+      }
+    }
+    writeLines("samples", "samples", lines);
+  }
+
+  private void writeTable(final List<String> ids) throws IOException {
+    final List<String> lines = new ArrayList<String>();
+    for (int i = 0; i < USERS; i++) {
+      for (int r = 0; r < RECORDS_PER_USER; r++) {
+        lines.add(i + "-" + r + "\t" + ids.get(i));
+      }
+    }
+    writeLines("table", "data", lines);
+  }
+
+  private void writeLines(final String dir, final String file, final List<String> lines)
+      throws IOException {
+    final File parent = new File(baseDir, dir);
+    parent.mkdirs();
+    try (PrintWriter out = new PrintWriter(new File(parent, file), "UTF-8")) {
+      for (final String line : lines) {
+        out.println(line);
+      }
+    }
+  }
+
+  private List<String> readLines(final String dir) throws IOException {
+    final List<String> lines = new ArrayList<String>();
+    for (final File file : new File(baseDir, dir).listFiles()) {
+      if (file.getName().startsWith("part-")) {
+        lines.addAll(FileUtils.readLines(file, StandardCharsets.UTF_8));
+      }
+    }
+    return lines;
+  }
+
+  // Reads a scrubbed table of record IDs and research UUIDs.
+  static class TableMapper extends Mapper<Object, Text, JoinKey, Text> {
+    @Override
+    public void map(final Object key, final Text value, final Context context)
+        throws IOException, InterruptedException {
+      final String[] parts = value.toString().split("\t");
+      context.write(new JoinKey(parts[0], RecordIdentityVerifyJob.ACTUAL), new Text(parts[1]));
+    }
+  }
+}
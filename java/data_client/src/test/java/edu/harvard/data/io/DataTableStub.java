@@ -65,6 +65,18 @@ class DataTableStub implements DataTable {
   }
 
 
+  public DataTableStub(final TableFormat format, final Map<String, Object> map)
+      throws ParseException {
+    this.format = format;
+    this.int1 = (Integer) map.get("int_1");
+    this.string1 = (String) map.get("string_1");
+    this.string2 = (String) map.get("string_2");
+    final String date = (String) map.get("date");
+    if (date != null && date.length() > 0) {
+      this.date = format.getDateFormat().parse(date);
+    }
+  }
+
   public DataTableStub(final TableFormat format) {
     this.format = format;
     int1 = 42;
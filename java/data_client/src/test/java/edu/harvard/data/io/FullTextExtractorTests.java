@@ -0,0 +1,123 @@
+package edu.harvard.data.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.harvard.data.FormatLibrary.Format;
+import edu.harvard.data.schema.fulltext.FullTextTable;
+
+// The expected outputs under full_text_extractor are the results of the
+// per-column Hive queries that the full text copy script used to run against
+// pages.tsv.
+public class FullTextExtractorTests {
+
+  private static final String RESOURCES = "full_text_extractor/";
+
+  private File outputDir;
+  private FullTextTable table;
+
+  @Before
+  public void setup() throws IOException {
+    outputDir = Files.createTempDirectory("full_text_extractor").toFile();
+    table = new FullTextTable("page_id", Arrays.asList("title", "body"));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(outputDir);
+  }
+
+  @Test
+  public void quotedOutputsMatchHiveQueries() throws Exception {
+    extract(Format.DecompressedSis, resource("pages.tsv"));
+    assertEquals(resource("quoted/title"), readOutput("pages/title.gz"));
+    assertEquals(resource("quoted/body"), readOutput("pages/body.gz"));
+    assertEquals(resource("pages.tsv"), readOutput("pages/fulltable/pages.gz"));
+  }
+
+  @Test
+  public void unquotedOutputsMatchHiveQueries() throws Exception {
+    extract(Format.DecompressedInternal, resource("pages.tsv"));
+    assertEquals(resource("unquoted/title"), readOutput("pages/title.gz"));
+    assertEquals(resource("unquoted/body"), readOutput("pages/body.gz"));
+    assertEquals(resource("pages.tsv"), readOutput("pages/fulltable/pages.gz"));
+  }
+
+  @Test
+  public void largeTableKeepsRowOrder() throws Exception {
+    final StringBuilder input = new StringBuilder();
+    for (int i = 0; i < 12345; i++) {
+      input.append(i + "\ttitle " + i + "\tbody " + i + "\tt" + i + "\tb" + i + "\tf" + i);
+      input.append("\n");
+    }
+    extract(Format.DecompressedInternal, input.toString());
+    final String[] bodies = readOutput("pages/body.gz").split("\n");
+    assertEquals(12345, bodies.length);
+    for (int i = 0; i < bodies.length; i++) {
+      assertTrue(bodies[i].startsWith(i + "\tbody " + i + "\t"));
+      assertTrue(bodies[i].endsWith("\tb" + i));
+    }
+    assertEquals(input.toString(), readOutput("pages/fulltable/pages.gz"));
+  }
+
+  @Test
+  public void emptyTableHasEmptyOutputs() throws Exception {
+    extract(Format.DecompressedInternal, "");
+    assertEquals("", readOutput("pages/title.gz"));
+    assertEquals("", readOutput("pages/body.gz"));
+    assertEquals("", readOutput("pages/fulltable/pages.gz"));
+  }
+
+  @Test(timeout = 30000, expected = IOException.class)
+  public void malformedLineIsReported() throws Exception {
+    final StringBuilder input = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      input.append(i + "\ttitle\tbody\tt\tb\tf\n");
+    }
+    input.append("5000\ttitle\tbody\tf\n");
+    extract(Format.DecompressedInternal, input.toString());
+  }
+
+  @Test
+  public void keyColumnHasNoSeparateOutput() throws Exception {
+    table = new FullTextTable("page_id", Arrays.asList("page_id", "body"));
+    extract(Format.DecompressedInternal, "1\t1\tbody\tb\tf\n");
+    assertEquals("1\tbody\t841a2d689ad86bd1611447453c22c6fc\tb\n", readOutput("pages/body.gz"));
+    assertEquals(2, new File(outputDir, "pages").list().length);
+  }
+
+  private void extract(final Format format, final String input)
+      throws IOException, InterruptedException {
+    new FullTextExtractor("pages", table, format).extract(
+        new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), outputDir);
+  }
+
+  private String resource(final String name) throws IOException {
+    try (InputStream in = getClass().getClassLoader().getResourceAsStream(RESOURCES + name)) {
+      return IOUtils.toString(in, StandardCharsets.UTF_8);
+    }
+  }
+
+  private String readOutput(final String name) throws IOException {
+    try (InputStream in = new GZIPInputStream(
+        new FileInputStream(new File(outputDir, name)))) {
+      return IOUtils.toString(in, StandardCharsets.UTF_8);
+    }
+  }
+}
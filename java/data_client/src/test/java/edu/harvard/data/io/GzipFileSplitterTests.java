@@ -0,0 +1,221 @@
+package edu.harvard.data.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GzipFileSplitterTests {
+
+  private static final long MAX_PART_BYTES = 4096;
+
+  private File baseDir;
+  private File input;
+  private File outputDir;
+
+  @Before
+  public void setup() throws IOException {
+    baseDir = Files.createTempDirectory("gzip_file_splitter").toFile();
+    input = new File(baseDir, "requests-dump-00000.gz");
+    outputDir = new File(baseDir, "parts");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(baseDir);
+  }
+
+  @Test
+  public void rowsArePreserved() throws IOException {
+    final List<String> rows = randomRows(5000, 200);
+    write(input, join(rows).getBytes(StandardCharsets.UTF_8));
+    final List<File> parts = split(MAX_PART_BYTES);
+    assertTrue(parts.size() > 1);
+
+    final List<String> splitRows = new ArrayList<String>();
+    for (final File part : parts) {
+      final String content = new String(read(part), StandardCharsets.UTF_8);
+      assertTrue(content.endsWith("\n"));
+      for (final String row : content.split("\n")) {
+        splitRows.add(row);
+      }
+    }
+    Collections.sort(rows);
+    Collections.sort(splitRows);
+    assertEquals(rows, splitRows);
+  }
+
+  @Test
+  public void partsAreWithinBounds() throws IOException {
+    final List<String> rows = randomRows(5000, 200);
+    write(input, join(rows).getBytes(StandardCharsets.UTF_8));
+    final List<File> parts = split(MAX_PART_BYTES);
+    for (int i = 0; i < parts.size(); i++) {
+      final byte[] content = read(parts.get(i));
+      assertTrue(content.length <= MAX_PART_BYTES);
+      // A part is only closed when the next row won't fit, so every part but
+      // the last is at least the limit less the longest row.
+      if (i < parts.size() - 1) {
+        assertTrue(content.length > MAX_PART_BYTES - 200);
+      }
+    }
+  }
+
+  @Test
+  public void concatenatedPartsMatchInput() throws IOException {
+    // No trailing newline, and a carriage return that must pass through.
+    final byte[] data = "a\tb\r\nc\td\ne\tf".getBytes(StandardCharsets.UTF_8);
+    write(input, data);
+    final List<File> parts = split(6);
+    assertEquals(3, parts.size());
+    final ByteArrayOutputStream combined = new ByteArrayOutputStream();
+    for (final File part : parts) {
+      combined.write(read(part));
+    }
+    assertArrayEquals(data, combined.toByteArray());
+  }
+
+  @Test
+  public void partNamesAreNumbered() throws IOException {
+    write(input, "1\n2\n3\n".getBytes(StandardCharsets.UTF_8));
+    final List<File> parts = split(2);
+    assertEquals(3, parts.size());
+    assertEquals("requests-dump-00000-0000.gz", parts.get(0).getName());
+    assertEquals("requests-dump-00000-0002.gz", parts.get(2).getName());
+    assertEquals(outputDir, parts.get(0).getParentFile());
+  }
+
+  @Test
+  public void longRowGetsItsOwnPart() throws IOException {
+    final String longRow = repeat('x', 100);
+    write(input, ("a\n" + longRow + "\nb\n").getBytes(StandardCharsets.UTF_8));
+    final List<File> parts = split(10);
+    assertEquals(3, parts.size());
+    assertEquals(longRow + "\n", new String(read(parts.get(1)), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void smallFileHasOnePart() throws IOException {
+    write(input, "a\nb\n".getBytes(StandardCharsets.UTF_8));
+    assertEquals(1, split(MAX_PART_BYTES).size());
+  }
+
+  @Test
+  public void fileWithinLimitFitsInOnePart() throws IOException {
+    write(input, join(randomRows(10, 200)).getBytes(StandardCharsets.UTF_8));
+    final long length = read(input).length;
+    assertTrue(new GzipFileSplitter(length).fitsInOnePart(input));
+    assertFalse(new GzipFileSplitter(length - 1).fitsInOnePart(input));
+  }
+
+  // Small compressed files are accepted on their size alone; this one isn't
+  // even a valid gzip file.
+  @Test
+  public void smallCompressedFileIsNotRead() throws IOException {
+    FileUtils.writeByteArrayToFile(input, new byte[] { 1, 2, 3 });
+    assertTrue(new GzipFileSplitter(1024 * 1024).fitsInOnePart(input));
+  }
+
+  @Test
+  public void emptyFileHasNoParts() throws IOException {
+    write(input, new byte[0]);
+    assertTrue(split(MAX_PART_BYTES).isEmpty());
+  }
+
+  @Test
+  public void concatenatedGzipMembersAreRead() throws IOException {
+    try (OutputStream out = new FileOutputStream(input)) {
+      out.write(gzip("a\nb\n"));
+      out.write(gzip("c\nd\n"));
+    }
+    final List<File> parts = split(4);
+    assertEquals(2, parts.size());
+    assertEquals("c\nd\n", new String(read(parts.get(1)), StandardCharsets.UTF_8));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void limitMustBePositive() {
+    new GzipFileSplitter(0);
+  }
+
+  private List<File> split(final long maxPartBytes) throws IOException {
+    return new GzipFileSplitter(maxPartBytes).split(input, outputDir, "requests-dump-00000");
+  }
+
+  private List<String> randomRows(final int count, final int maxLength) {
+    final Random random = new Random(37);
+    final List<String> rows = new ArrayList<String>();
+    for (int i = 0; i < count; i++) {
+      // Duplicate some rows so that the test checks a multiset, not a set.
+      if (i > 0 && random.nextInt(10) == 0) {
+        rows.add(rows.get(random.nextInt(i)));
+      } else {
+        final int length = 1 + random.nextInt(maxLength - 1);
+        final StringBuilder row = new StringBuilder();
+        for (int j = 0; j < length; j++) {
+          row.append(j % 8 == 7 ? '\t' : (char) ('a' + random.nextInt(26)));
+        }
+        rows.add(row.toString());
+      }
+    }
+    return rows;
+  }
+
+  private static String join(final List<String> rows) {
+    final StringBuilder builder = new StringBuilder();
+    for (final String row : rows) {
+      builder.append(row).append("\n");
+    }
+    return builder.toString();
+  }
+
+  private static String repeat(final char c, final int count) {
+    final StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      builder.append(c);
+    }
+    return builder.toString();
+  }
+
+  private static byte[] gzip(final String content) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OutputStream out = new GZIPOutputStream(bytes)) {
+      out.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void write(final File file, final byte[] content) throws IOException {
+    try (OutputStream out = new GZIPOutputStream(new FileOutputStream(file))) {
+      out.write(content);
+    }
+  }
+
+  private static byte[] read(final File file) throws IOException {
+    try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+      return IOUtils.toByteArray(in);
+    }
+  }
+}
@@ -0,0 +1,179 @@
+package edu.harvard.data.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.harvard.data.DataTable;
+import edu.harvard.data.FormatLibrary;
+import edu.harvard.data.FormatLibrary.Format;
+import edu.harvard.data.TableFormat;
+import edu.harvard.data.VerificationException;
+
+public class SingleTableJsonDocumentParserTests {
+
+  private static final String TABLE = "Stub";
+  private static final String OTHER_TABLE = "Other";
+
+  private TableFormat format;
+  private DataProductRegistry registry;
+
+  @Before
+  public void setup() {
+    format = new FormatLibrary().getFormat(Format.DecompressedInternal);
+    OtherTableStub.constructed = 0;
+    registry = new DataProductRegistry().register(TABLE, DataTableStub.class)
+        .register(OTHER_TABLE, OtherTableStub.class);
+  }
+
+  private Map<String, Object> document(final int i) {
+    final Map<String, Object> values = new HashMap<String, Object>();
+    values.put("int_1", i);
+    values.put("string_1", "" + i);
+    values.put("string_2", "123");
+    return values;
+  }
+
+  // Only the target table should appear in the parsed documents.
+  @Test
+  public void onlyTargetTableMaterialized() throws Exception {
+    final StubParser parser = new StubParser(format, TABLE, registry, false);
+    final Map<String, List<? extends DataTable>> tables = parser.getDocuments(document(3));
+    assertEquals(1, tables.size());
+    assertEquals(1, tables.get(TABLE).size());
+    assertEquals(0, OtherTableStub.constructed);
+    final DataTableStub record = (DataTableStub) tables.get(TABLE).get(0);
+    assertEquals(new DataTableStub(format, document(3)).getFieldsAsMap(),
+        record.getFieldsAsMap());
+  }
+
+  // Each registered product gets a parser that builds only that product.
+  @Test
+  public void eachProductParsedIndependently() throws Exception {
+    for (final String product : registry.getProducts()) {
+      final StubParser parser = new StubParser(format, product, registry, false);
+      final Map<String, List<? extends DataTable>> tables = parser.getDocuments(document(1));
+      assertEquals(1, tables.size());
+      assertEquals(registry.getTableClass(product), tables.get(product).get(0).getClass());
+    }
+    assertEquals(1, OtherTableStub.constructed);
+  }
+
+  @Test
+  public void verifyCalledWhenEnabled() throws Exception {
+    final StubParser parser = new StubParser(format, TABLE, registry, true);
+    parser.getDocuments(document(1));
+    parser.getDocuments(document(2));
+    assertEquals(2, parser.verified.size());
+    assertEquals(2, ((DataTableStub) parser.verified.get(1)).int1.intValue());
+  }
+
+  @Test
+  public void verifyNotCalledWhenDisabled() throws Exception {
+    final StubParser parser = new StubParser(format, TABLE, registry, false);
+    parser.getDocuments(document(1));
+    assertTrue(parser.verified.isEmpty());
+  }
+
+  @Test(expected = VerificationException.class)
+  public void verificationFailurePropagates() throws Exception {
+    final StubParser parser = new StubParser(format, TABLE, registry, true);
+    parser.failVerification = true;
+    parser.getDocuments(document(1));
+  }
+
+  // A ParseException thrown by the table constructor should not be wrapped.
+  @Test(expected = ParseException.class)
+  public void parseExceptionPropagates() throws Exception {
+    final StubParser parser = new StubParser(format, TABLE, registry, false);
+    final Map<String, Object> values = document(1);
+    values.put("date", "not a date");
+    parser.getDocuments(values);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unknownProduct() {
+    new StubParser(format, "Missing", registry, false);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void tableWithoutMapConstructor() {
+    registry.register("NoMap", NoMapConstructorStub.class);
+    new StubParser(format, "NoMap", registry, false);
+  }
+
+  @Test
+  public void registryPreservesOrder() {
+    final Iterator<String> products = registry.getProducts().iterator();
+    assertEquals(TABLE, products.next());
+    assertEquals(OTHER_TABLE, products.next());
+    assertFalse(products.hasNext());
+    assertTrue(registry.contains(TABLE));
+    assertFalse(registry.contains("Missing"));
+  }
+
+  // Parsing a file through the JsonFileReader should give the same records as
+  // building each table directly from the JSON documents.
+  @Test
+  public void readThroughJsonFileReader() throws Exception {
+    final StringBuilder json = new StringBuilder();
+    final List<DataTableStub> expected = new ArrayList<DataTableStub>();
+    for (int i = 0; i < 5; i++) {
+      json.append(format.getJsonMapper().writeValueAsString(document(i))).append("\n");
+      expected.add(new DataTableStub(format, document(i)));
+    }
+    final List<DataTable> parsed = new ArrayList<DataTable>();
+    try (JsonFileReader in = new JsonFileReader(format,
+        new ByteArrayInputStream(json.toString().getBytes()),
+        new StubParser(format, TABLE, registry, true))) {
+      for (final Map<String, List<? extends DataTable>> tables : in) {
+        assertEquals(1, tables.size());
+        parsed.add(tables.get(TABLE).get(0));
+      }
+    }
+    assertEquals(expected, parsed);
+  }
+
+  static class StubParser extends SingleTableJsonDocumentParser {
+    final List<DataTable> verified = new ArrayList<DataTable>();
+    boolean failVerification;
+
+    StubParser(final TableFormat format, final String table, final DataProductRegistry registry,
+        final boolean verify) {
+      super(format, table, registry.getTableClass(table), verify);
+    }
+
+    @Override
+    protected void verify(final Map<String, Object> values, final DataTable record)
+        throws VerificationException {
+      if (failVerification) {
+        throw new VerificationException("Failed");
+      }
+      verified.add(record);
+    }
+  }
+
+  public static class OtherTableStub extends DataTableStub {
+    static int constructed;
+
+    public OtherTableStub(final TableFormat format, final Map<String, Object> map)
+        throws ParseException {
+      super(format, map);
+      constructed++;
+    }
+  }
+
+  public static class NoMapConstructorStub extends DataTableStub {
+  }
+}
@@ -0,0 +1,334 @@
+package edu.harvard.data.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.model.S3ObjectId;
+
+import edu.harvard.data.AwsUtils;
+import edu.harvard.data.DataTable;
+import edu.harvard.data.FormatLibrary;
+import edu.harvard.data.FormatLibrary.Format;
+import edu.harvard.data.InMemoryS3;
+import edu.harvard.data.TableFormat;
+import edu.harvard.data.VerificationException;
+import edu.harvard.data.pipeline.InputTableIndex;
+
+public class StagedInputParserTests {
+
+  private static final String BUCKET = "bucket";
+
+  private File scratchDir;
+  private InMemoryS3 s3;
+  private AwsUtils aws;
+
+  @Before
+  public void setup() throws IOException {
+    scratchDir = Files.createTempDirectory("staged_input_parser").toFile();
+    s3 = new InMemoryS3();
+    aws = new AwsUtils(s3);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(scratchDir);
+  }
+
+  @Test(timeout = 30000)
+  public void rowsAreWrittenInInputOrder() throws Exception {
+    final List<TestFile> files = new ArrayList<TestFile>();
+    for (int i = 0; i < 4; i++) {
+      files.add(addFile("input-" + i, i * 1000, 1000));
+    }
+    // Small batches, and parsers that take a random time, so that batches
+    // finish parsing out of order.
+    for (final TestFile file : files) {
+      file.randomDelay = true;
+    }
+    new StagedInputParser(aws, scratchDir, 2, 4, 2, 2, 7).parseFiles(files);
+
+    for (int i = 0; i < files.size(); i++) {
+      final List<Integer> numbers = readColumn(files.get(i).numbers);
+      final List<Integer> evens = readColumn(files.get(i).evens);
+      assertEquals(1000, numbers.size());
+      assertEquals(500, evens.size());
+      for (int j = 0; j < numbers.size(); j++) {
+        assertEquals(i * 1000 + j, (int) numbers.get(j));
+      }
+      for (int j = 0; j < evens.size(); j++) {
+        assertEquals(i * 1000 + 2 * j, (int) evens.get(j));
+      }
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void indexListsFilesInInputOrder() throws Exception {
+    final List<TestFile> files = new ArrayList<TestFile>();
+    for (int i = 0; i < 6; i++) {
+      // Later files are smaller, so they tend to finish first.
+      files.add(addFile("input-" + i, 0, 600 - i * 100));
+    }
+    final InputTableIndex index = new StagedInputParser(aws, scratchDir, 3, 2, 3, 3, 10)
+        .parseFiles(files);
+
+    final List<S3ObjectId> numbers = index.getFiles("numbers");
+    final List<S3ObjectId> evens = index.getFiles("evens");
+    assertEquals(files.size(), numbers.size());
+    assertEquals(files.size(), evens.size());
+    for (int i = 0; i < files.size(); i++) {
+      assertEquals(files.get(i).numbers.getKey(), numbers.get(i).getKey());
+      assertEquals(files.get(i).evens.getKey(), evens.get(i).getKey());
+      final long size = s3.getObject(BUCKET, numbers.get(i).getKey()).getObjectContent()
+          .available();
+      assertEquals(size, (long) index.getFileSize(numbers.get(i)));
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void batchesInMemoryAreBounded() throws Exception {
+    final List<TestFile> files = new ArrayList<TestFile>();
+    for (int i = 0; i < 3; i++) {
+      files.add(addFile("input-" + i, 0, 400));
+    }
+    // Writing is slower than parsing, so the decoders have to wait.
+    for (final TestFile file : files) {
+      file.slowRecords = true;
+    }
+    final StagedInputParser parser = new StagedInputParser(aws, scratchDir, 1, 2, 1, 2, 5);
+    parser.parseFiles(files);
+
+    assertEquals(12, parser.getBatchMemoryBound());
+    assertTrue(parser.getMaxBatchesInMemory() <= parser.getBatchMemoryBound());
+    // The queue filled up at least once.
+    assertTrue(parser.getMaxBatchesInMemory() > 4);
+    assertEquals(400, readColumn(files.get(2).numbers).size());
+  }
+
+  @Test(timeout = 30000)
+  public void scratchFilesAreDeleted() throws Exception {
+    final List<TestFile> files = new ArrayList<TestFile>();
+    for (int i = 0; i < 5; i++) {
+      files.add(addFile("input-" + i, 0, 100));
+    }
+    new StagedInputParser(aws, scratchDir, 2, 2, 2, 2, 10).parseFiles(files);
+    assertEquals(0, scratchDir.list().length);
+  }
+
+  @Test(timeout = 30000)
+  public void emptyFileHasEmptyOutputs() throws Exception {
+    final List<TestFile> files = new ArrayList<TestFile>();
+    files.add(addFile("input-0", 0, 0));
+    final InputTableIndex index = new StagedInputParser(aws, scratchDir, 1, 1, 1, 1, 10)
+        .parseFiles(files);
+    assertEquals(1, index.getFiles("numbers").size());
+    assertEquals(1, index.getFiles("evens").size());
+    assertTrue(readColumn(files.get(0).numbers).isEmpty());
+  }
+
+  @Test(timeout = 30000, expected = IOException.class)
+  public void malformedDocumentIsReported() throws Exception {
+    final List<TestFile> files = new ArrayList<TestFile>();
+    for (int i = 0; i < 4; i++) {
+      files.add(addFile("input-" + i, 0, 500));
+    }
+    final List<String> lines = jsonLines(0, 500);
+    lines.set(250, "{\"int_1\": ");
+    s3.add(BUCKET, files.get(1).location.getKey(), gzip(lines));
+    new StagedInputParser(aws, scratchDir, 2, 2, 2, 2, 10).parseFiles(files);
+  }
+
+  @Test(timeout = 30000, expected = VerificationException.class)
+  public void verificationFailureIsReported() throws Exception {
+    final List<TestFile> files = new ArrayList<TestFile>();
+    for (int i = 0; i < 4; i++) {
+      files.add(addFile("input-" + i, 0, 500));
+    }
+    files.get(2).failOn = 321;
+    new StagedInputParser(aws, scratchDir, 2, 2, 2, 2, 10).parseFiles(files);
+  }
+
+  @Test(timeout = 30000, expected = AmazonClientException.class)
+  public void missingInputIsReported() throws Exception {
+    final List<TestFile> files = new ArrayList<TestFile>();
+    files.add(addFile("input-0", 0, 100));
+    files.add(new TestFile(AwsUtils.key(BUCKET, "input", "missing.gz")));
+    new StagedInputParser(aws, scratchDir, 2, 2, 2, 2, 10).parseFiles(files);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void stageSizesMustBePositive() {
+    new StagedInputParser(aws, scratchDir, 1, 0, 1, 1, 10);
+  }
+
+  private TestFile addFile(final String name, final int first, final int count)
+      throws IOException {
+    final TestFile file = new TestFile(AwsUtils.key(BUCKET, "input", name + ".gz"));
+    s3.add(BUCKET, file.location.getKey(), gzip(jsonLines(first, count)));
+    return file;
+  }
+
+  private static List<String> jsonLines(final int first, final int count) {
+    final List<String> lines = new ArrayList<String>();
+    for (int i = first; i < first + count; i++) {
+      lines.add("{\"int_1\": " + i + ", \"string_1\": \"row " + i + "\", \"string_2\": null}");
+    }
+    return lines;
+  }
+
+  private static byte[] gzip(final List<String> lines) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (PrintWriter out = new PrintWriter(new GZIPOutputStream(bytes))) {
+      for (final String line : lines) {
+        out.println(line);
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  // Read the first column of an uploaded table.
+  private List<Integer> readColumn(final S3ObjectId location) throws IOException {
+    final List<Integer> values = new ArrayList<Integer>();
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(
+        new GZIPInputStream(aws.getInputStream(location, false)), StandardCharsets.UTF_8))) {
+      String line = in.readLine();
+      while (line != null) {
+        values.add(Integer.parseInt(line.substring(0, line.indexOf('\t'))));
+        line = in.readLine();
+      }
+    }
+    return values;
+  }
+
+  private static class TestFile implements StagedInputFile {
+    private final S3ObjectId location;
+    private final S3ObjectId numbers;
+    private final S3ObjectId evens;
+    private boolean randomDelay;
+    private boolean slowRecords;
+    private int failOn = -1;
+
+    TestFile(final S3ObjectId location) {
+      this.location = location;
+      final String name = location.getKey().substring(location.getKey().lastIndexOf("/") + 1);
+      this.numbers = AwsUtils.key(BUCKET, "output", "numbers", name);
+      this.evens = AwsUtils.key(BUCKET, "output", "evens", name);
+    }
+
+    @Override
+    public S3ObjectId getLocation() {
+      return location;
+    }
+
+    @Override
+    public List<StagedOutputTable> getOutputs() {
+      final Class<? extends DataTable> tableClass = slowRecords ? SlowDataTableStub.class
+          : DataTableStub.class;
+      final List<StagedOutputTable> outputs = new ArrayList<StagedOutputTable>();
+      outputs.add(new StagedOutputTable("numbers", tableClass, numbers));
+      outputs.add(new StagedOutputTable("evens", tableClass, evens));
+      return outputs;
+    }
+
+    @Override
+    public TableFormat createInputFormat() {
+      return new FormatLibrary().getFormat(Format.CompressedInternal);
+    }
+
+    @Override
+    public JsonDocumentParser createParser(final TableFormat format) {
+      return new NumberParser(format, randomDelay, slowRecords, failOn);
+    }
+
+    @Override
+    public TableFormat createOutputFormat() {
+      return new FormatLibrary().getFormat(Format.CompressedInternal);
+    }
+  }
+
+  private static class NumberParser implements JsonDocumentParser {
+    private final TableFormat format;
+    private final Random random;
+    private final boolean randomDelay;
+    private final boolean slowRecords;
+    private final int failOn;
+
+    NumberParser(final TableFormat format, final boolean randomDelay, final boolean slowRecords,
+        final int failOn) {
+      this.format = format;
+      this.random = new Random();
+      this.randomDelay = randomDelay;
+      this.slowRecords = slowRecords;
+      this.failOn = failOn;
+    }
+
+    @Override
+    public Map<String, List<? extends DataTable>> getDocuments(final Map<String, Object> values)
+        throws ParseException, VerificationException {
+      if (randomDelay && random.nextInt(20) == 0) {
+        try {
+          Thread.sleep(random.nextInt(5));
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      final DataTableStub record = slowRecords ? new SlowDataTableStub(format, values)
+          : new DataTableStub(format, values);
+      if (record.int1 == failOn) {
+        throw new VerificationException("Bad record " + failOn);
+      }
+      final Map<String, List<? extends DataTable>> tables =
+          new HashMap<String, List<? extends DataTable>>();
+      tables.put("numbers", Collections.singletonList(record));
+      if (record.int1 % 2 == 0) {
+        tables.put("evens", Collections.singletonList(record));
+      }
+      return tables;
+    }
+  }
+
+  // A record that takes a while to write.
+  static class SlowDataTableStub extends DataTableStub {
+
+    public SlowDataTableStub() {
+    }
+
+    SlowDataTableStub(final TableFormat format, final Map<String, Object> values)
+        throws ParseException {
+      super(format, values);
+    }
+
+    @Override
+    public List<Object> getFieldsAsList(final TableFormat format) {
+      try {
+        Thread.sleep(1);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return super.getFieldsAsList(format);
+    }
+  }
+}
@@ -0,0 +1,234 @@
+package edu.harvard.data.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.harvard.data.FormatLibrary;
+import edu.harvard.data.FormatLibrary.Format;
+import edu.harvard.data.TableFormat;
+import edu.harvard.data.VerificationException;
+
+public class TableDigestTests {
+
+  private TableFormat format;
+  private List<DataTableStub> records;
+  private TableDigest expected;
+  private File dir;
+
+  @Before
+  public void setup() throws IOException {
+    format = new FormatLibrary().getFormat(Format.DecompressedInternal);
+    records = DataTableStub.generateRecords(10, format);
+    expected = digest(format);
+    dir = Files.createTempDirectory("table_digest").toFile();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(dir);
+  }
+
+  @Test
+  public void emptyDigest() throws VerificationException {
+    final TableDigest digest = new TableDigest("stub");
+    assertEquals(0, digest.getRowCount());
+    assertEquals(0, digest.getByteCount());
+    digest.verify(new TableDigest("stub"));
+  }
+
+  @Test
+  public void countsRowsAndBytes() throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    write(new TableWriter<DataTableStub>(DataTableStub.class, format, out));
+    assertEquals(10, expected.getRowCount());
+    assertEquals(out.size(), expected.getByteCount());
+  }
+
+  @Test
+  public void sameRecordsSameDigest() throws IOException, VerificationException {
+    final TableDigest other = new TableDigest("stub");
+    for (final DataTableStub record : DataTableStub.generateRecords(10, format)) {
+      other.add(record, format);
+    }
+    expected.verify(other);
+  }
+
+  @Test
+  public void nullAndEmptyValuesDiffer() throws IOException {
+    final TableDigest withNull = new TableDigest("stub");
+    withNull.add(new DataTableStub(format, 1, null, "", null, null), format);
+    final TableDigest withEmpty = new TableDigest("stub");
+    withEmpty.add(new DataTableStub(format, 1, "", "", null, null), format);
+    assertNotEquals(withNull.getHash(), withEmpty.getHash());
+  }
+
+  @Test
+  public void rowOrderMatters() throws IOException {
+    final TableDigest reversed = new TableDigest("stub");
+    for (int i = records.size() - 1; i >= 0; i--) {
+      reversed.add(records.get(i), format);
+    }
+    assertEquals(expected.getByteCount(), reversed.getByteCount());
+    assertNotEquals(expected.getHash(), reversed.getHash());
+  }
+
+  @Test
+  public void writerDigestMatchesSource() throws IOException, VerificationException {
+    final TableWriter<DataTableStub> writer = new TableWriter<DataTableStub>(DataTableStub.class,
+        format, new ByteArrayOutputStream());
+    for (final DataTableStub record : records) {
+      writer.add(record);
+    }
+    writer.close();
+    expected.verify(writer.getDigest());
+  }
+
+  // A writer that silently drops a record must be detected.
+  @Test(expected = VerificationException.class)
+  public void droppedRecordDetected() throws IOException, VerificationException {
+    final TableWriter<DataTableStub> writer = new TableWriter<DataTableStub>(DataTableStub.class,
+        format, new ByteArrayOutputStream()) {
+      private int count = 0;
+
+      @Override
+      public void add(final DataTableStub record) throws IOException {
+        if (count++ != 3) {
+          super.add(record);
+        }
+      }
+    };
+    for (final DataTableStub record : records) {
+      writer.add(record);
+    }
+    writer.close();
+    expected.verify(writer.getDigest());
+  }
+
+  // A record that is modified between parsing and writing must be detected.
+  @Test(expected = VerificationException.class)
+  public void corruptedRecordDetected() throws IOException, VerificationException {
+    final TableWriter<DataTableStub> writer = new TableWriter<DataTableStub>(DataTableStub.class,
+        format, new ByteArrayOutputStream());
+    for (final DataTableStub record : records) {
+      writer.add(record);
+    }
+    records.get(5).string1 = "corrupt";
+    writer.close();
+    expected.verify(writer.getDigest());
+  }
+
+  // Records left in the writer's buffer have not been written.
+  @Test(expected = VerificationException.class)
+  public void unflushedWriterDetected() throws IOException, VerificationException {
+    final TableWriter<DataTableStub> writer = new TableWriter<DataTableStub>(DataTableStub.class,
+        format, new ByteArrayOutputStream());
+    writer.resizeBuffer(4);
+    for (final DataTableStub record : records) {
+      writer.add(record);
+    }
+    expected.verify(writer.getDigest());
+  }
+
+  // The file is read back, skipping the headers and decompressing it.
+  @Test
+  public void writtenFileVerified() throws IOException, VerificationException {
+    final TableFormat excel = new FormatLibrary().getFormat(Format.Excel);
+    final TableWriter<DataTableStub> writer = new TableWriter<DataTableStub>(DataTableStub.class,
+        excel, new File(dir, "stub.gz"));
+    write(writer);
+    writer.verify(digest(excel), true);
+  }
+
+  // A byte changed in the file after it was written must be detected.
+  @Test(expected = VerificationException.class)
+  public void corruptedFileDetected() throws IOException, VerificationException {
+    final File file = new File(dir, "stub");
+    final TableWriter<DataTableStub> writer = new TableWriter<DataTableStub>(DataTableStub.class,
+        format, file);
+    write(writer);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.seek(raf.length() / 2);
+      final int b = raf.read();
+      raf.seek(raf.length() / 2);
+      raf.write(b ^ 1);
+    }
+    writer.verify(expected, true);
+  }
+
+  // A compressed file that was cut short must be detected.
+  @Test(expected = VerificationException.class)
+  public void truncatedCompressedFileDetected() throws IOException, VerificationException {
+    final TableFormat compressed = new FormatLibrary().getFormat(Format.CompressedInternal);
+    final File file = new File(dir, "stub.gz");
+    final TableWriter<DataTableStub> writer = new TableWriter<DataTableStub>(DataTableStub.class,
+        compressed, file);
+    write(writer);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(raf.length() - 12);
+    }
+    writer.verify(digest(compressed), true);
+  }
+
+  // Without a read-back, a corrupted file is not detected; only the digests
+  // are compared.
+  @Test
+  public void fileNotReadBackByDefault() throws IOException, VerificationException {
+    final File file = new File(dir, "stub");
+    final TableWriter<DataTableStub> writer = new TableWriter<DataTableStub>(DataTableStub.class,
+        format, file);
+    write(writer);
+    FileUtils.writeStringToFile(file, "corrupt", format.getEncoding());
+    writer.verify(expected);
+  }
+
+  // Non-ASCII values are written in the format's character set, whatever the
+  // JVM's default, so they match the source digest. UTF-16 is never a default
+  // charset, so this fails if the writer uses the default.
+  @Test
+  public void nonAsciiRowsVerified() throws IOException, VerificationException {
+    for (final String encoding : new String[] { "UTF-8", "UTF-16" }) {
+      final TableFormat encoded = new FormatLibrary().getFormat(Format.DecompressedInternal);
+      encoded.setEncoding(encoding);
+      final DataTableStub record = new DataTableStub(encoded, 1, "caf\u00e9", "\u4e2d\u6587", null,
+          null);
+      final TableDigest source = new TableDigest("stub");
+      source.add(record, encoded);
+      final File file = new File(dir, encoding);
+      final TableWriter<DataTableStub> writer = new TableWriter<DataTableStub>(DataTableStub.class,
+          encoded, file);
+      writer.add(record);
+      writer.close();
+      writer.verify(source, true);
+      assertTrue(FileUtils.readFileToString(file, encoding).contains("caf\u00e9"));
+    }
+  }
+
+  private TableDigest digest(final TableFormat tableFormat) throws IOException {
+    final TableDigest digest = new TableDigest("stub");
+    for (final DataTableStub record : records) {
+      digest.add(record, tableFormat);
+    }
+    return digest;
+  }
+
+  private void write(final TableWriter<DataTableStub> writer) throws IOException {
+    for (final DataTableStub record : records) {
+      writer.add(record);
+    }
+    writer.close();
+  }
+
+}
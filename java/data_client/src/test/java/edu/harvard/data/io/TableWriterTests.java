@@ -46,6 +46,7 @@ public class TableWriterTests {
     when(mockFormat.getOutputStream(file)).thenReturn(out);
     when(mockFormat.includeHeaders()).thenReturn(false);
     when(mockFormat.getCsvFormat()).thenReturn(format.getCsvFormat());
+    when(mockFormat.getEncoding()).thenReturn(format.getEncoding());
   }
 
   @After
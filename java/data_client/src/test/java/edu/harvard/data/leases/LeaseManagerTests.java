@@ -0,0 +1,164 @@
+package edu.harvard.data.leases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.TableNameOverride;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+
+import edu.harvard.data.InMemoryDynamoDB;
+
+public class LeaseManagerTests {
+
+  private static final String TABLE = "leases";
+  private static final String LEASE = "identity";
+
+  private InMemoryDynamoDB dynamo;
+  private LeaseManager manager;
+
+  @Before
+  public void setup() {
+    dynamo = new InMemoryDynamoDB();
+    dynamo.createTable(new DynamoDBMapper(dynamo).generateCreateTableRequest(Lease.class)
+        .withTableName(TABLE));
+    manager = new LeaseManager(dynamo, TABLE);
+  }
+
+  @Test
+  public void acquireNewLeaseInOneRequest() {
+    final Lease lease = manager.acquire(LEASE, "run1", 60);
+    assertNotNull(lease);
+    assertEquals("run1", lease.getOwner());
+    assertEquals(Long.valueOf(1), lease.getVersion());
+    assertTrue(lease.timeRemainingSeconds() >= 59);
+    assertNotNull(lease.getExpires());
+    assertEquals(1, dynamo.getRequestCount());
+  }
+
+  @Test
+  public void leaseHeldByAnotherOwnerIsNotAcquired() {
+    manager.acquire(LEASE, "run1", 60);
+    assertNull(manager.acquire(LEASE, "run2", 60));
+    assertEquals("run1", storedOwner());
+  }
+
+  @Test
+  public void ownerCanReacquire() {
+    manager.acquire(LEASE, "run1", 60);
+    final Lease lease = manager.acquire(LEASE, "run1", 60);
+    assertEquals(Long.valueOf(2), lease.getVersion());
+  }
+
+  @Test
+  public void expiredLeaseIsAcquired() {
+    manager.acquire(LEASE, "run1", -1);
+    final Lease lease = manager.acquire(LEASE, "run2", 60);
+    assertNotNull(lease);
+    assertEquals("run2", lease.getOwner());
+    assertEquals(Long.valueOf(2), lease.getVersion());
+  }
+
+  @Test
+  public void expiredLeaseFromEarlierVersionIsAcquired() {
+    putEarlierVersionLease(Lease.formatExpires(System.currentTimeMillis() - 1000L));
+    final Lease lease = manager.acquire(LEASE, "run1", 60);
+    assertNotNull(lease);
+    assertEquals("run1", lease.getOwner());
+    assertEquals(Long.valueOf(8), lease.getVersion());
+  }
+
+  // A lease held by a process running an earlier version of this class must
+  // not be taken over until its expires timestamp has passed.
+  @Test
+  public void heldLeaseFromEarlierVersionIsNotAcquired() {
+    putEarlierVersionLease(Lease.formatExpires(System.currentTimeMillis() + 60000L));
+    assertNull(manager.acquire(LEASE, "run1", 60));
+    assertEquals("old_run", storedOwner());
+  }
+
+  @Test
+  public void earlierVersionCanReacquire() {
+    putEarlierVersionLease(Lease.formatExpires(System.currentTimeMillis() + 60000L));
+    assertEquals("old_run", manager.acquire(LEASE, "old_run", 60).getOwner());
+  }
+
+  @Test
+  public void renewInOneRequest() throws LeaseRenewalException {
+    manager.acquire(LEASE, "run1", 1);
+    dynamo.resetCounts();
+    final Lease lease = manager.renew(LEASE, "run1", 60);
+    assertTrue(lease.timeRemainingSeconds() >= 59);
+    assertEquals(Long.valueOf(2), lease.getVersion());
+    assertEquals(1, dynamo.getRequestCount());
+  }
+
+  @Test
+  public void renewByAnotherOwnerFails() {
+    manager.acquire(LEASE, "run1", 60);
+    try {
+      manager.renew(LEASE, "run2", 60);
+      fail("Expected LeaseRenewalException");
+    } catch (final LeaseRenewalException e) {
+      assertTrue(e.getMessage().contains("run2"));
+    }
+    assertEquals("run1", storedOwner());
+  }
+
+  @Test(expected = LeaseRenewalException.class)
+  public void renewMissingLeaseFails() throws LeaseRenewalException {
+    manager.renew(LEASE, "run1", 60);
+  }
+
+  @Test
+  public void releasedLeaseCanBeAcquired() {
+    manager.acquire(LEASE, "run1", 60);
+    dynamo.resetCounts();
+    manager.release(LEASE, "run1");
+    assertEquals(1, dynamo.getRequestCount());
+    assertNull(storedOwner());
+    assertEquals("run2", manager.acquire(LEASE, "run2", 60).getOwner());
+  }
+
+  @Test
+  public void releaseByAnotherOwnerIsIgnored() {
+    manager.acquire(LEASE, "run1", 60);
+    manager.release(LEASE, "run2");
+    assertEquals("run1", storedOwner());
+  }
+
+  @Test
+  public void expirationSeconds() {
+    assertEquals(0, manager.getLeaseExpirationSeconds(LEASE));
+    manager.acquire(LEASE, "run1", 60);
+    assertTrue(manager.getLeaseExpirationSeconds(LEASE) >= 59);
+  }
+
+  // Store a lease as written by an earlier version of the LeaseManager, which
+  // had no numeric expiration attribute.
+  private void putEarlierVersionLease(final String expires) {
+    final Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+    item.put("name", new AttributeValue(LEASE));
+    item.put("owner", new AttributeValue("old_run"));
+    item.put("expires", new AttributeValue(expires));
+    item.put("version", new AttributeValue().withN("7"));
+    dynamo.putItem(new PutItemRequest().withTableName(TABLE).withItem(item));
+  }
+
+  private String storedOwner() {
+    final Lease lease = new DynamoDBMapper(dynamo).load(Lease.class, LEASE,
+        new DynamoDBMapperConfig(new TableNameOverride(TABLE)));
+    return lease.getOwner();
+  }
+}
@@ -0,0 +1,151 @@
+package edu.harvard.data.leases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+
+import edu.harvard.data.InMemoryDynamoDB;
+
+// Timing-based tests use leases of a second or two, so that renewals happen
+// within the test run.
+public class LeaseRenewalThreadTests {
+
+  private static final String TABLE = "leases";
+  private static final String LEASE = "identity";
+  private static final String OWNER = "run1";
+
+  private InMemoryDynamoDB dynamo;
+  private LeaseManager manager;
+  private LeaseRenewalThread thread;
+  private List<LeaseRenewalException> losses;
+  private CountDownLatch lost;
+
+  @Before
+  public void setup() {
+    dynamo = new InMemoryDynamoDB();
+    dynamo.createTable(new DynamoDBMapper(dynamo).generateCreateTableRequest(Lease.class)
+        .withTableName(TABLE));
+    manager = new LeaseManager(dynamo, TABLE);
+    losses = Collections.synchronizedList(new ArrayList<LeaseRenewalException>());
+    lost = new CountDownLatch(1);
+  }
+
+  @After
+  public void tearDown() {
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+  @Test
+  public void renewAtHalfLifeWhenWritesAreFast() {
+    assertEquals(30000, LeaseRenewalThread.renewalDelayMillis(60000, 60000, 20));
+    assertEquals(10000, LeaseRenewalThread.renewalDelayMillis(40000, 60000, 20));
+  }
+
+  @Test
+  public void renewEarlierWhenWritesAreSlow() {
+    // Leave time for three attempts at the observed latency.
+    assertEquals(15000, LeaseRenewalThread.renewalDelayMillis(60000, 60000, 15000));
+    assertEquals(0, LeaseRenewalThread.renewalDelayMillis(60000, 60000, 30000));
+  }
+
+  @Test
+  public void latencyEstimateFollowsObservedWrites() throws LeaseRenewalException {
+    dynamo.setLatency(100);
+    thread = start(60);
+    assertTrue(thread.getLatencyBoundMillis() >= 300);
+    dynamo.setLatency(0);
+    for (int i = 0; i < 20; i++) {
+      thread.checkLease();
+    }
+    assertTrue(thread.getLatencyBoundMillis() < 100);
+  }
+
+  @Test
+  public void leaseIsHeldDespiteSlowWrites() throws Exception {
+    dynamo.setLatency(150);
+    thread = start(1);
+    // Another process polls for the lease; it must never become available.
+    final long end = System.currentTimeMillis() + 2500;
+    while (System.currentTimeMillis() < end) {
+      assertNull(manager.acquire(LEASE, "run2", 1));
+    }
+    assertTrue(losses.isEmpty());
+    thread.checkLease();
+  }
+
+  @Test
+  public void conditionalFailureNotifiesListenersPromptly() throws Exception {
+    thread = start(1);
+    dynamo.failWrites(1, new ConditionalCheckFailedException("The conditional request failed"));
+    assertTrue(lost.await(2, TimeUnit.SECONDS));
+    assertEquals(1, losses.size());
+    assertTrue(losses.get(0).getMessage().contains(OWNER));
+    try {
+      thread.checkLease();
+      fail("Expected LeaseRenewalException");
+    } catch (final LeaseRenewalException e) {
+      // Expected
+    }
+    assertEquals(1, losses.size());
+  }
+
+  @Test
+  public void throttledRenewalIsRetried() throws Exception {
+    thread = start(2);
+    dynamo.failWrites(3, new ProvisionedThroughputExceededException("Slow down"));
+    assertFalse(lost.await(3, TimeUnit.SECONDS));
+    thread.checkLease();
+  }
+
+  @Test
+  public void leaseIsLostIfRenewalsFailUntilExpiry() throws Exception {
+    thread = start(1);
+    dynamo.failWrites(1000, new ProvisionedThroughputExceededException("Slow down"));
+    assertTrue(lost.await(3, TimeUnit.SECONDS));
+    assertTrue(losses.get(0).getMessage().contains("expired"));
+  }
+
+  @Test
+  public void failureToAcquireIsReportedImmediately() {
+    manager.acquire(LEASE, "run2", 60);
+    thread = start(60);
+    assertEquals(0, lost.getCount());
+    try {
+      thread.checkLease();
+      fail("Expected LeaseRenewalException");
+    } catch (final LeaseRenewalException e) {
+      // Expected
+    }
+  }
+
+  private LeaseRenewalThread start(final int seconds) {
+    final LeaseRenewalThread renewalThread = LeaseRenewalThread.setup(manager, LEASE, OWNER,
+        seconds);
+    renewalThread.addLeaseLossListener(new LeaseLossListener() {
+      @Override
+      public void leaseLost(final String leaseName, final LeaseRenewalException cause) {
+        losses.add(cause);
+        lost.countDown();
+      }
+    });
+    return renewalThread;
+  }
+}
@@ -0,0 +1,375 @@
+package edu.harvard.data.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.s3.model.S3ObjectId;
+
+import edu.harvard.data.AwsUtils;
+import edu.harvard.data.CodeManager;
+import edu.harvard.data.DataConfig;
+import edu.harvard.data.DataConfigurationException;
+import edu.harvard.data.HadoopJob;
+import edu.harvard.data.NoInputDataException;
+import edu.harvard.data.Phase0;
+import edu.harvard.data.generator.S3ToHdfsManifestGenerator;
+import edu.harvard.data.identity.HadoopIdentityKey;
+import edu.harvard.data.identity.IdentityMapHadoopJob;
+import edu.harvard.data.identity.IdentityScrubHadoopJob;
+import edu.harvard.data.identity.IdentityScrubber;
+import edu.harvard.data.pipeline.LocalPipelineReport.Status;
+import edu.harvard.data.pipeline.LocalPipelineReport.StepTiming;
+
+// Runs a pipeline for a small synthetic Canvas dump with a requests table and
+// an identity table. Hive and the identity Hadoop jobs are stubbed out.
+public class LocalPipelineExecutorTests {
+
+  private static final String RUN_ID = "local_run";
+  private static final int ROWS = 50;
+
+  private File baseDir;
+  private File codeDir;
+  private File s3Root;
+  private File hdfsRoot;
+  private DataConfig config;
+  private InputTableIndex dataIndex;
+  private S3ToHdfsCopyPlan copyPlan;
+  private Connection redshift;
+  private S3ObjectId workingDir;
+
+  @Before
+  public void setup() throws IOException, DataConfigurationException, SQLException {
+    baseDir = Files.createTempDirectory("local_pipeline").toFile();
+    codeDir = new File(baseDir, "code");
+    s3Root = new File(baseDir, "s3");
+    hdfsRoot = new File(baseDir, "hdfs");
+    codeDir.mkdirs();
+    config = getConfig();
+    workingDir = config.getS3WorkingLocation(RUN_ID);
+    redshift = DriverManager.getConnection("jdbc:h2:mem:" + baseDir.getName());
+    dataIndex = new InputTableIndex();
+    dataIndex.setSchemaVersion("1.0.0");
+    writeDump("requests", "part-0.gz", 0, ROWS / 2);
+    writeDump("requests", "part-1.gz", ROWS / 2, ROWS);
+    writeDump("pseudonym_dim", "part-0.gz", 0, 5);
+    dataIndex.setPartial("requests", true);
+    dataIndex.setPartial("pseudonym_dim", false);
+    copyPlan = new S3ToHdfsCopyPlan(
+        new S3ToHdfsCopyPlanner(config.getS3ToHdfsCopyTasks()).plan(dataIndex));
+    new S3ToHdfsManifestGenerator(codeDir, config, dataIndex, copyPlan).generate();
+    writeCode();
+  }
+
+  @After
+  public void tearDown() throws IOException, SQLException {
+    redshift.close();
+    FileUtils.deleteDirectory(baseDir);
+  }
+
+  private DataConfig getConfig() throws IOException, DataConfigurationException {
+    final StringBuilder props = new StringBuilder();
+    props.append("data_source=Canvas\n");
+    props.append("pipeline_format=decompressed_internal\n");
+    props.append("fulltext_format=decompressed_internal\n");
+    props.append("main_identifier=HUID\n");
+    props.append("working_bucket=working\n");
+    props.append("log_bucket=logs\n");
+    props.append("code_bucket=code\n");
+    props.append("git_tag_or_branch=master\n");
+    props.append("lease_dynamo_table=leases\n");
+    props.append("identity_lease=identity\n");
+    props.append("identity_lease_length_seconds=60\n");
+    props.append("emr_core_instance_count=0\n");
+    props.append("emr_task_instance_count=0\n");
+    props.append("emr_code_dir=" + codeDir.getAbsolutePath() + "\n");
+    props.append("hdfs_root=" + hdfsRoot.getAbsolutePath() + "\n");
+    final List<InputStream> streams = new ArrayList<InputStream>();
+    streams.add(new ByteArrayInputStream(props.toString().getBytes(StandardCharsets.UTF_8)));
+    final DataConfig dataConfig = new DataConfig(streams, false);
+    dataConfig.setPaths(new File(baseDir, "config.properties").getAbsolutePath());
+    return dataConfig;
+  }
+
+  private void writeDump(final String table, final String fileName, final int start,
+      final int end) throws IOException {
+    final S3ObjectId key = AwsUtils.key(workingDir, "dump", table, fileName);
+    final File file = new File(new File(s3Root, key.getBucket()), key.getKey());
+    file.getParentFile().mkdirs();
+    try (PrintStream out = new PrintStream(new GZIPOutputStream(new FileOutputStream(file)))) {
+      for (int i = start; i < end; i++) {
+        out.println(table + "\t" + i + "\tuser" + (i % 7));
+      }
+    }
+    dataIndex.addFile(table, key, file.length());
+  }
+
+  // Generated code that would normally come from the code generator.
+  private void writeCode() throws IOException {
+    final String hdfs = hdfsRoot.getAbsolutePath();
+    final String unloaded = AwsUtils.uri(AwsUtils.key(workingDir, "unloaded_tables",
+        "identity_map", "identity_map.csv"));
+    writeScript(config.getMoveUnmodifiedScript(1), "mkdir -p " + hdfs + "/phase_1\n"
+        + "mv " + hdfs + "/phase_0/requests " + hdfs + "/phase_1/requests\n");
+    writeScript(config.getCreateHiveTables(2), "mkdir -p " + hdfs + "/phase_2\n");
+    writeScript(config.getFullTextScriptFile(), "exit 0\n");
+    writeScript(config.getMoveUnmodifiedScript(2), "exit 0\n");
+    writeScript(config.getRedshiftUnloadScript(),
+        "CREATE SCHEMA pii;\n"
+            + "CREATE TABLE pii.identity_map (research_id VARCHAR(36), huid VARCHAR(8));\n"
+            + "INSERT INTO pii.identity_map VALUES ('r1', '12345678'), ('r2', '87654321');\n"
+            + "-- Stands in for an UNLOAD statement; the path is rewritten locally.\n"
+            + "CALL CSVWRITE('" + unloaded + "', 'SELECT * FROM pii.identity_map');\n");
+    writeScript(config.getIdentityRedshiftLoadScript(),
+        "CREATE TABLE loaded (name VARCHAR(20));\n"
+            + "INSERT INTO loaded VALUES ('identity; map');\n");
+    writeScript(config.getRedshiftLoadScript(), "INSERT INTO loaded VALUES ('requests');\n");
+  }
+
+  private void writeScript(final String name, final String contents) throws IOException {
+    final File file = new File(codeDir, name);
+    FileUtils.writeStringToFile(file, contents, StandardCharsets.UTF_8);
+    file.setExecutable(true);
+  }
+
+  private LocalPipelineExecutor getExecutor() throws IOException {
+    final LocalPipelineExecutor executor = new LocalPipelineExecutor(config,
+        new TestCodeManager(), dataIndex, copyPlan, RUN_ID, s3Root, redshift);
+    // Identity map stand-in: pass the unloaded identity map through to phase 1.
+    executor.replaceMainClass(IdentityMapHadoopJob.class, new LocalActivity() {
+      @Override
+      public void run(final List<String> args) throws IOException {
+        FileUtils.copyDirectory(new File(config.getPhase0IdMapPath()),
+            new File(config.getPhase1IdMapPath()));
+      }
+    });
+    executor.replaceMainClass(IdentityScrubHadoopJob.class, new LocalActivity() {
+      @Override
+      public void run(final List<String> args) {
+      }
+    });
+    return executor;
+  }
+
+  private List<String> readGzip(final File file) throws IOException {
+    try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+      return IOUtils.readLines(in, StandardCharsets.UTF_8);
+    }
+  }
+
+  private List<String> query(final String sql) throws SQLException {
+    final List<String> values = new ArrayList<String>();
+    try (Statement stmt = redshift.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+      while (rs.next()) {
+        values.add(rs.getString(1));
+      }
+    }
+    return values;
+  }
+
+  @Test
+  public void runsAllPhases() throws Exception {
+    final LocalPipelineExecutor executor = getExecutor();
+    final LocalPipelineReport report = executor.run();
+
+    assertEquals(executor.getStepIds().size(), report.getSteps().size());
+    for (final StepTiming step : report.getSteps()) {
+      assertEquals(step.getId(), Status.Succeeded, step.getStatus());
+      assertTrue(step.getElapsedMillis() >= 0);
+    }
+    assertTrue(report.getStep("Phase2HadoopTestRequestJob").getElapsedMillis() > 0);
+    assertTrue(executor.getHeldLeases().isEmpty());
+
+    // Requests were transformed by the phase 2 job and staged for Redshift.
+    final File staged = executor.getLocalFile(
+        AwsUtils.key(workingDir, config.getRedshiftStagingDir(), "requests"));
+    final List<String> rows = new ArrayList<String>();
+    for (final File part : staged.listFiles()) {
+      if (part.getName().startsWith("part-m-")) {
+        rows.addAll(readGzip(part));
+      }
+    }
+    assertEquals(ROWS, rows.size());
+    for (final String row : rows) {
+      assertTrue(row, row.startsWith("REQUESTS\t"));
+    }
+
+    // The identity map went from the database to HDFS and back to S3.
+    final File identity = executor.getLocalFile(AwsUtils.key(workingDir,
+        config.getRedshiftStagingDir(), "identity_map", "identity_map.csv.gz"));
+    assertEquals(3, readGzip(identity).size());
+    assertEquals(Arrays.asList("identity; map", "requests"),
+        query("SELECT name FROM loaded ORDER BY name"));
+  }
+
+  // Steps are run in an order consistent with the pipeline's dependencies.
+  @Test
+  public void stepsRunInDependencyOrder() throws Exception {
+    final List<String> steps = getExecutor().getStepIds();
+    assertEquals("PipelineStartup", steps.get(0));
+    // One copy task for each table's small files.
+    assertTrue(steps.contains("CopyDataToHdfs0") && steps.contains("CopyDataToHdfs1"));
+    assertTrue(steps.indexOf("CopyDataToHdfs0") < steps.indexOf("SetupCompleteBarrier"));
+    assertTrue(steps.indexOf("CopyDataToHdfs1") < steps.indexOf("SetupCompleteBarrier"));
+    assertTrue(steps.indexOf("SetupCompleteBarrier") < steps.indexOf("IdentityLeaseAcquire"));
+    assertTrue(steps.indexOf("IdentityLeaseAcquire") < steps.indexOf("UnloadIdentity"));
+    assertTrue(steps.indexOf("IdentityScrubHadoop") < steps.indexOf("IdentityLeaseRelease"));
+    assertTrue(
+        steps.indexOf("Phase2HadoopTestRequestJob") < steps.indexOf("Phase2MoveUnmodifiedFiles"));
+    assertEquals("LoadAllTablesToRedshift", steps.get(steps.size() - 1));
+  }
+
+  // A failed step stops the run, and later steps are reported as skipped.
+  @Test
+  public void failureSkipsRemainingSteps() throws Exception {
+    final LocalPipelineExecutor executor = getExecutor();
+    executor.replaceStep("IdentityScrubHadoop", new LocalActivity() {
+      @Override
+      public void run(final List<String> args) throws IOException {
+        throw new IOException("Scrub failed");
+      }
+    });
+    try {
+      executor.run();
+      fail("Expected LocalPipelineException");
+    } catch (final LocalPipelineException e) {
+      final LocalPipelineReport report = e.getReport();
+      assertEquals(Status.Succeeded, report.getStep("UnloadIdentity").getStatus());
+      assertEquals(Status.Failed, report.getStep("IdentityScrubHadoop").getStatus());
+      assertEquals(Status.Skipped, report.getStep("IdentityLeaseRelease").getStatus());
+      assertEquals(Status.Skipped, report.getStep("LoadAllTablesToRedshift").getStatus());
+      assertEquals(executor.getStepIds().size(), report.getSteps().size());
+    }
+    assertTrue(executor.getHeldLeases().contains("identity"));
+  }
+
+  @Test
+  public void splitStatements() {
+    final List<String> statements = LocalPipelineExecutor
+        .splitStatements("SELECT 'a;b' FROM x;\n-- comment; here\nSELECT 2;;\n");
+    assertEquals(Arrays.asList("SELECT 'a;b' FROM x", "SELECT 2"), statements);
+  }
+
+  @Test
+  public void localizePaths() throws IOException {
+    final LocalPipelineExecutor executor = getExecutor();
+    final String cmd = executor.localizePaths("hadoop fs -mv hdfs:///phase_1/* s3://bucket/a/b");
+    assertEquals(
+        "hadoop fs -mv /phase_1/* " + new File(s3Root, "bucket/a/b").getPath(), cmd);
+  }
+}
+
+class TestCodeManager extends CodeManager {
+
+  TestCodeManager() {
+    addJob(TestRequestJob.class, 2);
+  }
+
+  @Override
+  public Map<String, Class<? extends Mapper<Object, Text, ?, HadoopIdentityKey>>> getIdentityMapperClasses() {
+    final Map<String, Class<? extends Mapper<Object, Text, ?, HadoopIdentityKey>>> classes = new HashMap<String, Class<? extends Mapper<Object, Text, ?, HadoopIdentityKey>>>();
+    classes.put("pseudonym_dim", null);
+    return classes;
+  }
+
+  @Override
+  public Map<String, Class<? extends IdentityScrubber<?>>> getIdentityScrubberClasses() {
+    return new HashMap<String, Class<? extends IdentityScrubber<?>>>();
+  }
+
+  @Override
+  public List<String> getIdentityTableNames() {
+    return Arrays.asList("pseudonym_dim");
+  }
+
+  @Override
+  public Class<?> getIdentityPreverifyJob() {
+    return null;
+  }
+
+  @Override
+  public Class<?> getIdentityPostverifyJob() {
+    return null;
+  }
+
+  @Override
+  public Map<Integer, List<Class<? extends HadoopJob>>> getHadoopProcessingJobs() {
+    return jobs;
+  }
+
+  @Override
+  public DataConfig getDataConfig(final String configPathString, final boolean verify) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Phase0 getPhase0(final String configPathString, final String datasetId,
+      final String runId, final ExecutorService exec) {
+    throw new UnsupportedOperationException();
+  }
+}
+
+class TestRequestJob extends HadoopJob {
+
+  public TestRequestJob(final DataConfig config, final int phase)
+      throws DataConfigurationException {
+    super(config, phase);
+  }
+
+  @Override
+  public Job getJob() throws IOException, NoInputDataException {
+    final Job job = Job.getInstance(hadoopConf, "requests-hadoop");
+    job.setMapperClass(TestRequestMapper.class);
+    job.setMapOutputKeyClass(Text.class);
+    job.setMapOutputValueClass(NullWritable.class);
+    job.setNumReduceTasks(0);
+    job.setInputFormatClass(TextInputFormat.class);
+    job.setOutputFormatClass(TextOutputFormat.class);
+    hadoopUtils.setPaths(job, hdfsService, config.getHdfsDir(phase - 1) + "/requests",
+        config.getHdfsDir(phase) + "/requests");
+    return job;
+  }
+}
+
+class TestRequestMapper extends Mapper<Object, Text, Text, NullWritable> {
+  @Override
+  public void map(final Object key, final Text value, final Context context)
+      throws IOException, InterruptedException {
+    context.write(new Text(value.toString().toUpperCase()), NullWritable.get());
+  }
+}
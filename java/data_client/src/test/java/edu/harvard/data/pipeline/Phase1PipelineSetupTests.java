@@ -0,0 +1,187 @@
+package edu.harvard.data.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.harvard.data.AwsUtils;
+import edu.harvard.data.CodeManager;
+import edu.harvard.data.DataConfig;
+import edu.harvard.data.DataConfigurationException;
+
+// Checks the shape of the Phase 1 graph: which steps each step waits for, and
+// which steps can run at the same time.
+public class Phase1PipelineSetupTests {
+
+  private static final String RUN_ID = "graph_run";
+
+  private DataConfig config;
+  private PipelineFactory factory;
+  private Pipeline pipeline;
+  private PipelineObjectBase start;
+  private InputTableIndex dataIndex;
+
+  @Before
+  public void setup() throws IOException, DataConfigurationException {
+    config = getConfig();
+    factory = new PipelineFactory(config, RUN_ID, RUN_ID);
+    pipeline = new Pipeline(RUN_ID, config, RUN_ID, factory, "1.0.0", RUN_ID);
+    start = factory.getSynchronizationBarrier("SetupCompleteBarrier", pipeline.getEmr());
+    dataIndex = new InputTableIndex();
+    dataIndex.addFile("pseudonym_dim", AwsUtils.key("bucket", "pseudonym_dim", "part-0.gz"), 1);
+  }
+
+  @Test
+  public void identityStepsRunInParallel() {
+    final PipelineObjectBase last = populate(true);
+    final Map<String, Set<String>> deps = dependencies();
+
+    assertEquals(set("SetupCompleteBarrier"), deps.get("IdentityLeaseAcquire"));
+    assertEquals(set("IdentityLeaseAcquire"), deps.get("UnloadIdentity"));
+    assertEquals(set("UnloadIdentity"), deps.get("CopyIdentityToHdfs"));
+    assertEquals(set("IdentityLeaseAcquire", "SetupCompleteBarrier"),
+        deps.get("IdentityPreverify"));
+    assertEquals(set("CopyIdentityToHdfs", "SetupCompleteBarrier"),
+        deps.get("IdentityMapHadoop"));
+    assertEquals(set("IdentityMapHadoop", "SetupCompleteBarrier"),
+        deps.get("IdentityScrubHadoop"));
+    assertEquals(set("IdentityScrubHadoop", "SetupCompleteBarrier", "IdentityPreverify"),
+        deps.get("IdentityPostverify"));
+    assertEquals(set("IdentityMapHadoop"), deps.get("CopyIdentityToS3"));
+    assertEquals(set("IdentityLeaseAcquire", "CopyIdentityToS3", "IdentityPostverify"),
+        deps.get("LoadIdentityToRedshift"));
+    assertEquals(set("LoadIdentityToRedshift", "AfterUnloadLeaseRefresh",
+        "AfterCopyToHDFSLeaseRefresh", "AfterCopyToS3LeaseRefresh"),
+        deps.get("IdentityLeaseRelease"));
+    assertEquals(set("SetupCompleteBarrier"), deps.get("Phase1MoveUnmodifiedFiles"));
+
+    assertEquals("Phase1CompleteBarrier", last.getId());
+    assertEquals(set("IdentityLeaseRelease", "Phase1MoveUnmodifiedFiles"),
+        deps.get("Phase1CompleteBarrier"));
+
+    // Pairs of steps that the linear chain used to serialize.
+    assertFalse(dependsOn(deps, "IdentityPreverify", "CopyIdentityToHdfs"));
+    assertFalse(dependsOn(deps, "CopyIdentityToHdfs", "IdentityPreverify"));
+    assertFalse(dependsOn(deps, "CopyIdentityToS3", "IdentityScrubHadoop"));
+    assertFalse(dependsOn(deps, "Phase1MoveUnmodifiedFiles", "IdentityLeaseAcquire"));
+    // The lease is held for every step that touches the Redshift identity map.
+    assertTrue(dependsOn(deps, "IdentityLeaseRelease", "IdentityPreverify"));
+    assertTrue(dependsOn(deps, "IdentityLeaseRelease", "IdentityScrubHadoop"));
+    assertAcyclic(deps);
+  }
+
+  @Test
+  public void loadWaitsForScrubWithoutVerifiers() {
+    populate(false);
+    final Map<String, Set<String>> deps = dependencies();
+    assertNull(deps.get("IdentityPreverify"));
+    assertNull(deps.get("IdentityPostverify"));
+    assertEquals(set("IdentityLeaseAcquire", "CopyIdentityToS3", "IdentityScrubHadoop"),
+        deps.get("LoadIdentityToRedshift"));
+    assertAcyclic(deps);
+  }
+
+  @Test
+  public void noIdentityTables() {
+    dataIndex = new InputTableIndex();
+    final PipelineObjectBase last = populate(true);
+    assertEquals("Phase1MoveUnmodifiedFiles", last.getId());
+    assertEquals(set("SetupCompleteBarrier"), dependencies().get("Phase1MoveUnmodifiedFiles"));
+    assertNull(dependencies().get("IdentityLeaseAcquire"));
+  }
+
+  private PipelineObjectBase populate(final boolean verifiers) {
+    final CodeManager codeManager = verifiers ? new VerifyingCodeManager()
+        : new TestCodeManager();
+    return new Phase1PipelineSetup(pipeline, factory, codeManager, RUN_ID, dataIndex)
+        .populate(start);
+  }
+
+  private Map<String, Set<String>> dependencies() {
+    final Map<String, Set<String>> deps = new HashMap<String, Set<String>>();
+    for (final PipelineObjectBase obj : factory.getObjects()) {
+      deps.put(obj.getId(), new HashSet<String>(obj.getRefs("dependsOn")));
+    }
+    return deps;
+  }
+
+  // True if step transitively depends on other.
+  private boolean dependsOn(final Map<String, Set<String>> deps, final String step,
+      final String other) {
+    final List<String> pending = new ArrayList<String>(deps.get(step));
+    final Set<String> seen = new HashSet<String>();
+    while (!pending.isEmpty()) {
+      final String next = pending.remove(0);
+      if (next.equals(other)) {
+        return true;
+      }
+      if (seen.add(next) && deps.containsKey(next)) {
+        pending.addAll(deps.get(next));
+      }
+    }
+    return false;
+  }
+
+  private void assertAcyclic(final Map<String, Set<String>> deps) {
+    for (final String step : deps.keySet()) {
+      assertFalse(step, dependsOn(deps, step, step));
+    }
+  }
+
+  private static Set<String> set(final String... values) {
+    return new HashSet<String>(Arrays.asList(values));
+  }
+
+  private DataConfig getConfig() throws IOException, DataConfigurationException {
+    final StringBuilder props = new StringBuilder();
+    props.append("data_source=Canvas\n");
+    props.append("pipeline_format=decompressed_internal\n");
+    props.append("fulltext_format=decompressed_internal\n");
+    props.append("main_identifier=HUID\n");
+    props.append("working_bucket=working\n");
+    props.append("log_bucket=logs\n");
+    props.append("code_bucket=code\n");
+    props.append("git_tag_or_branch=master\n");
+    props.append("lease_dynamo_table=leases\n");
+    props.append("identity_lease=identity\n");
+    props.append("identity_lease_length_seconds=60\n");
+    props.append("emr_core_instance_count=0\n");
+    props.append("emr_task_instance_count=0\n");
+    props.append("emr_code_dir=/home/hadoop/code\n");
+    props.append("hdfs_root=/\n");
+    final List<InputStream> streams = new ArrayList<InputStream>();
+    streams.add(new ByteArrayInputStream(props.toString().getBytes(StandardCharsets.UTF_8)));
+    final DataConfig dataConfig = new DataConfig(streams, false);
+    dataConfig.setPaths("s3://code/config.properties");
+    return dataConfig;
+  }
+}
+
+class VerifyingCodeManager extends TestCodeManager {
+
+  @Override
+  public Class<?> getIdentityPreverifyJob() {
+    return String.class;
+  }
+
+  @Override
+  public Class<?> getIdentityPostverifyJob() {
+    return Integer.class;
+  }
+}
@@ -0,0 +1,130 @@
+package edu.harvard.data.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PipelineGraphTests {
+
+  private PipelineObjectBase start;
+  private PipelineGraph graph;
+
+  @Before
+  public void setup() {
+    start = step("Start");
+    graph = new PipelineGraph(start, "input");
+  }
+
+  @Test
+  public void dependenciesFollowData() {
+    final PipelineObjectBase a = step("A");
+    final PipelineObjectBase b = step("B");
+    final PipelineObjectBase c = step("C");
+    final PipelineObjectBase d = step("D");
+    graph.add(a, list("input"), list("a"));
+    graph.add(b, list("input"), list("b"));
+    graph.add(c, list("a", "b"), list("c"));
+    graph.add(d, list("a"), list("d"));
+    final List<PipelineObjectBase> sinks = graph.connect();
+
+    assertEquals(list("Start"), a.getRefs("dependsOn"));
+    assertEquals(list("Start"), b.getRefs("dependsOn"));
+    assertEquals(list("A", "B"), c.getRefs("dependsOn"));
+    assertEquals(list("A"), d.getRefs("dependsOn"));
+    assertEquals(Arrays.asList(c, d), sinks);
+  }
+
+  @Test
+  public void stepsCanBeAddedBeforeTheirInputs() {
+    final PipelineObjectBase a = step("A");
+    final PipelineObjectBase b = step("B");
+    graph.add(b, list("a"), list("b"));
+    graph.add(a, list("input"), list("a"));
+    assertEquals(Collections.singletonList(b), graph.connect());
+    assertEquals(list("A"), b.getRefs("dependsOn"));
+  }
+
+  @Test
+  public void repeatedInputsGiveOneDependency() {
+    final PipelineObjectBase a = step("A");
+    final PipelineObjectBase b = step("B");
+    graph.add(a, list("input"), list("a1", "a2"));
+    graph.add(b, list("a1", "a2", "a1"), list());
+    graph.connect();
+    assertEquals(list("A"), b.getRefs("dependsOn"));
+  }
+
+  @Test
+  public void stepWithoutInputsFollowsStart() {
+    final PipelineObjectBase a = step("A");
+    graph.add(a, list(), list());
+    graph.connect();
+    assertEquals(list("Start"), a.getRefs("dependsOn"));
+  }
+
+  @Test
+  public void emptyGraphEndsAtStart() {
+    assertEquals(Collections.singletonList(start), graph.connect());
+  }
+
+  @Test
+  public void cycleIsRejected() {
+    graph.add(step("A"), list("input", "c"), list("a"));
+    graph.add(step("B"), list("a"), list("b"));
+    graph.add(step("C"), list("b"), list("c"));
+    try {
+      graph.connect();
+      fail("Expected IllegalStateException");
+    } catch (final IllegalStateException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("[A, C, B, A]"));
+    }
+  }
+
+  @Test
+  public void selfDependencyIsRejected() {
+    graph.add(step("A"), list("a"), list("a"));
+    try {
+      graph.connect();
+      fail("Expected IllegalStateException");
+    } catch (final IllegalStateException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("[A, A]"));
+    }
+  }
+
+  @Test
+  public void missingProducerIsRejected() {
+    graph.add(step("A"), list("missing"), list("a"));
+    try {
+      graph.connect();
+      fail("Expected IllegalStateException");
+    } catch (final IllegalStateException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("missing"));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void secondProducerIsRejected() {
+    graph.add(step("A"), list("input"), list("a"));
+    graph.add(step("B"), list("input"), list("a"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void startOutputCantBeProducedAgain() {
+    graph.add(step("A"), list(), list("input"));
+  }
+
+  private static PipelineObjectBase step(final String id) {
+    return new PipelineObjectBase(null, id, "ShellCommandActivity");
+  }
+
+  private static List<String> list(final String... values) {
+    return Arrays.asList(values);
+  }
+}
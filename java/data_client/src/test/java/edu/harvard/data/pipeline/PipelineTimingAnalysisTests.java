@@ -0,0 +1,209 @@
+package edu.harvard.data.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.datapipeline.model.Field;
+import com.amazonaws.services.datapipeline.model.PipelineObject;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+
+import edu.harvard.data.InMemoryDynamoDB;
+import edu.harvard.data.pipeline.PipelineExecutionRecord.Status;
+
+// Runs the timing analysis over a four-step pipeline:
+// Setup -> (Phase1, Unload) -> Phase2. Phase1 has a failed first attempt.
+public class PipelineTimingAnalysisTests {
+
+  private static final long MINUTE = 60 * 1000L;
+
+  private List<PipelineObject> instances;
+  private Map<String, PipelineObject> components;
+  private Map<String, PipelineObject> attempts;
+
+  @Before
+  public void setup() {
+    instances = new ArrayList<PipelineObject>();
+    components = new HashMap<String, PipelineObject>();
+    attempts = new HashMap<String, PipelineObject>();
+    addActivity("Setup", "ShellCommandActivity", "2016-09-01T02:00:00", "2016-09-01T02:00:00",
+        "2016-09-01T02:10:00");
+    addActivity("Phase1", "EmrActivity", "2016-09-01T02:12:00", "2016-09-01T02:20:00",
+        "2016-09-01T02:30:00", "Setup");
+    addActivity("Unload", "SqlActivity", "2016-09-01T02:11:00", "2016-09-01T02:11:00",
+        "2016-09-01T02:15:00", "Setup");
+    addActivity("Phase2", "EmrActivity", "2016-09-01T02:31:00", "2016-09-01T02:31:00",
+        "2016-09-01T02:40:00", "Phase1", "Unload");
+    final PipelineObject schedule = new PipelineObject().withId("@Schedule_1").withName("Schedule")
+        .withFields(new Field().withKey("type").withStringValue("Schedule"));
+    instances.add(schedule);
+  }
+
+  @Test
+  public void queuedRetryAndRunningTimes() {
+    final PipelineTimingAnalysis timing = new PipelineTimingAnalysis(instances, components,
+        attempts);
+    assertEquals(4, timing.getSteps().size());
+    final PipelineStepTiming phase1 = timing.getStep("Phase1");
+    assertEquals(2 * MINUTE, phase1.getQueuedMillis());
+    assertEquals(8 * MINUTE, phase1.getRetryMillis());
+    assertEquals(10 * MINUTE, phase1.getRunningMillis());
+    assertEquals(18 * MINUTE, phase1.getTotalMillis());
+    assertEquals(Arrays.asList("Setup"), phase1.getDependencies());
+
+    final PipelineStepTiming unload = timing.getStep("Unload");
+    assertEquals(MINUTE, unload.getQueuedMillis());
+    assertEquals(0, unload.getRetryMillis());
+    assertEquals(4 * MINUTE, unload.getRunningMillis());
+
+    // Phase2 is ready when the later of its dependencies finishes.
+    assertEquals(MINUTE, timing.getStep("Phase2").getQueuedMillis());
+  }
+
+  @Test
+  public void stepsOrderedByStartTime() {
+    final PipelineTimingAnalysis timing = new PipelineTimingAnalysis(instances, components,
+        attempts);
+    final List<String> ids = new ArrayList<String>();
+    for (final PipelineStepTiming step : timing.getSteps()) {
+      ids.add(step.getId());
+    }
+    assertEquals(Arrays.asList("Setup", "Unload", "Phase1", "Phase2"), ids);
+  }
+
+  @Test
+  public void criticalPath() {
+    final PipelineTimingAnalysis timing = new PipelineTimingAnalysis(instances, components,
+        attempts);
+    assertEquals(Arrays.asList("Setup", "Phase1", "Phase2"), timing.getCriticalPath());
+    assertTrue(timing.getStep("Phase1").isCriticalPath());
+    assertFalse(timing.getStep("Unload").isCriticalPath());
+    assertEquals(40 * MINUTE, timing.getCriticalPathMillis());
+  }
+
+  @Test
+  public void incompleteStepsExcluded() {
+    instances.clear();
+    components.clear();
+    attempts.clear();
+    addActivity("Setup", "ShellCommandActivity", "2016-09-01T02:00:00", "2016-09-01T02:00:00",
+        "2016-09-01T02:10:00");
+    addActivity("Phase1", "EmrActivity", null, null, null, "Setup");
+    final PipelineTimingAnalysis timing = new PipelineTimingAnalysis(instances, components,
+        attempts);
+    assertFalse(timing.getStep("Phase1").isComplete());
+    assertEquals(0, timing.getStep("Phase1").getTotalMillis());
+    assertEquals(Arrays.asList("Setup"), timing.getCriticalPath());
+    assertEquals(1, timing.getStepDurations().size());
+  }
+
+  @Test
+  public void slowStepsComparedToBaseline() {
+    final PipelineTimingAnalysis timing = new PipelineTimingAnalysis(instances, components,
+        attempts);
+    final List<PipelineExecutionRecord> previous = new ArrayList<PipelineExecutionRecord>();
+    previous.add(previousRun(8 * MINUTE, 4 * MINUTE, 9 * MINUTE));
+    previous.add(previousRun(9 * MINUTE, 3 * MINUTE, 10 * MINUTE));
+    previous.add(previousRun(30 * MINUTE, 3 * MINUTE, 8 * MINUTE));
+    timing.compareToBaseline(previous);
+
+    assertEquals(Long.valueOf(9 * MINUTE), timing.getStep("Phase1").getBaselineMillis());
+    assertEquals(Long.valueOf(3 * MINUTE), timing.getStep("Unload").getBaselineMillis());
+    assertNull(timing.getStep("Setup").getBaselineMillis());
+    // Unload is more than 1.5 times its baseline, but only by one minute.
+    assertEquals(Arrays.asList("Phase1"), timing.getSlowSteps());
+  }
+
+  @Test
+  public void previousRunsFromExecutionTable() {
+    final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+    final String table = "pipeline_execution";
+    final CreateTableRequest create = new DynamoDBMapper(dynamo)
+        .generateCreateTableRequest(PipelineExecutionRecord.class);
+    create.getGlobalSecondaryIndexes().get(0).setProjection(new Projection()
+        .withProjectionType(ProjectionType.INCLUDE).withNonKeyAttributes("status", "step_durations"));
+    dynamo.createTable(create.withTableName(table));
+    PipelineExecutionRecord.init(dynamo, table);
+
+    saveRun("canvas_2016-08-29-0200", Status.Success);
+    saveRun("canvas_2016-08-30-0200", Status.Failed);
+    saveRun("canvas_2016-08-31-0200", Status.Success);
+    saveRun("canvas_2016-09-01-0200", Status.PipelineRunning);
+    saveRun("matterhorn_2016-08-31-0200", Status.Success);
+    saveRun("canvas_2016-08-28-0200", Status.Success);
+
+    dynamo.resetCounts();
+    final List<PipelineExecutionRecord> runs = PipelineExecutionRecord
+        .findPreviousRuns("canvas_2016-09-01-0200", 2);
+    assertEquals(0, dynamo.getScanCount());
+    assertEquals(2, runs.size());
+    assertEquals("canvas_2016-08-31-0200", runs.get(0).getRunId());
+    assertEquals("canvas_2016-08-29-0200", runs.get(1).getRunId());
+    assertEquals(Long.valueOf(18 * MINUTE), runs.get(0).getStepDurations().get("Phase1"));
+  }
+
+  private void saveRun(final String runId, final Status status) {
+    final PipelineExecutionRecord record = new PipelineExecutionRecord(runId);
+    record.setStatus(status.toString());
+    final Map<String, Long> durations = new HashMap<String, Long>();
+    durations.put("Phase1", 18 * MINUTE);
+    record.setStepDurations(durations);
+    record.save();
+  }
+
+  private PipelineExecutionRecord previousRun(final long phase1, final long unload,
+      final long phase2) {
+    final PipelineExecutionRecord record = new PipelineExecutionRecord();
+    final Map<String, Long> durations = new HashMap<String, Long>();
+    durations.put("Phase1", phase1);
+    durations.put("Unload", unload);
+    durations.put("Phase2", phase2);
+    record.setStepDurations(durations);
+    return record;
+  }
+
+  // Add the component, instance and head attempt objects for an activity, in
+  // the form returned by DescribeObjects.
+  private void addActivity(final String id, final String type, final String start,
+      final String headAttemptStart, final String end, final String... dependencies) {
+    final PipelineObject component = new PipelineObject().withId(id).withName(id)
+        .withFields(new Field().withKey("type").withStringValue(type));
+    for (final String dependency : dependencies) {
+      component.withFields(new Field().withKey("dependsOn").withRefValue(dependency));
+    }
+    components.put(id, component);
+
+    final String instanceId = "@" + id + "_2016-09-01T02:00:00";
+    final String attemptId = instanceId + "_Attempt=1";
+    final PipelineObject instance = new PipelineObject().withId(instanceId).withName(instanceId)
+        .withFields(new Field().withKey("type").withStringValue(type),
+            new Field().withKey("parent").withRefValue(id),
+            new Field().withKey("@status").withStringValue(end == null ? "CASCADE_FAILED"
+                : "FINISHED"),
+            new Field().withKey("@scheduledStartTime").withStringValue("2016-09-01T02:00:00"));
+    if (start != null) {
+      instance.withFields(new Field().withKey("@actualStartTime").withStringValue(start),
+          new Field().withKey("@headAttempt").withRefValue(attemptId));
+      attempts.put(attemptId, new PipelineObject().withId(attemptId).withName(attemptId)
+          .withFields(new Field().withKey("@actualStartTime").withStringValue(headAttemptStart)));
+    }
+    if (end != null) {
+      instance.withFields(new Field().withKey("@actualEndTime").withStringValue(end));
+    }
+    instances.add(instance);
+  }
+
+}
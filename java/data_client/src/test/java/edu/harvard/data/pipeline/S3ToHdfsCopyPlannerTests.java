@@ -0,0 +1,199 @@
+package edu.harvard.data.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.amazonaws.services.s3.model.S3ObjectId;
+
+import edu.harvard.data.AwsUtils;
+import edu.harvard.data.InMemoryS3;
+import edu.harvard.data.pipeline.S3ToHdfsCopyPlanner.CopyGroup;
+import edu.harvard.data.pipeline.S3ToHdfsCopyPlanner.CopyTask;
+
+// Synthetic indexes with skewed file sizes. Sizes are in megabytes, with the
+// default 16MB small file threshold and 128MB group size.
+public class S3ToHdfsCopyPlannerTests {
+
+  private static final long MB = 1024L * 1024;
+
+  // One huge requests file and hundreds of tiny files. The huge file gets a
+  // task to itself, and the rest are spread evenly over the other tasks.
+  @Test
+  public void hugeFileAndManySmallFiles() {
+    final InputTableIndex index = new InputTableIndex();
+    addFiles(index, "requests", 1, 4000);
+    for (int t = 0; t < 40; t++) {
+      addFiles(index, "table_" + t, 20, 5);
+    }
+    final List<CopyTask> tasks = new S3ToHdfsCopyPlanner(4).plan(index);
+    checkComplete(index, tasks);
+    assertEquals(4, tasks.size());
+
+    final CopyTask largest = largest(tasks);
+    assertEquals(1, largest.getFiles().size());
+    assertEquals(4000 * MB, largest.getBytes());
+    long min = Long.MAX_VALUE;
+    long max = 0;
+    for (final CopyTask task : tasks) {
+      if (task != largest) {
+        min = Math.min(min, task.getBytes());
+        max = Math.max(max, task.getBytes());
+      }
+    }
+    // 4000MB of small files in groups of at most 128MB over three tasks.
+    assertTrue(max - min <= 128 * MB);
+  }
+
+  // Random sizes drawn from a heavy-tailed distribution. The greedy packing
+  // keeps the largest task within a third of the ideal.
+  @Test
+  public void skewedSizesAreBalanced() {
+    final Random random = new Random(42);
+    final InputTableIndex index = new InputTableIndex();
+    long largestFile = 0;
+    for (int t = 0; t < 20; t++) {
+      for (int f = 0; f < 25; f++) {
+        final long size = (long) (MB / Math.pow(random.nextDouble() + 0.0001, 1.5));
+        index.addFile("table_" + t, key("table_" + t, f), size);
+        largestFile = Math.max(largestFile, size);
+      }
+    }
+    for (final int taskCount : new int[] { 2, 4, 8, 16 }) {
+      final List<CopyTask> tasks = new S3ToHdfsCopyPlanner(taskCount).plan(index);
+      checkComplete(index, tasks);
+      long total = 0;
+      for (final CopyTask task : tasks) {
+        total += task.getBytes();
+      }
+      final long ideal = Math.max(total / taskCount, largestFile);
+      assertTrue("tasks: " + taskCount, largest(tasks).getBytes() <= ideal * 4 / 3);
+    }
+  }
+
+  @Test
+  public void smallFilesGroupedByTable() {
+    final InputTableIndex index = new InputTableIndex();
+    addFiles(index, "a", 100, 1);
+    addFiles(index, "b", 300, 1);
+    final List<CopyTask> tasks = new S3ToHdfsCopyPlanner(8).plan(index);
+    checkComplete(index, tasks);
+    // One group for a, three for b.
+    assertEquals(4, tasks.size());
+    for (final CopyTask task : tasks) {
+      for (final CopyGroup group : task.getGroups()) {
+        assertTrue(group.getBytes() <= 128 * MB);
+        for (final S3ObjectId file : group.getFiles()) {
+          assertTrue(file.getKey().startsWith("dump/" + group.getTable() + "/"));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void fewerTasksThanRequested() {
+    final InputTableIndex index = new InputTableIndex();
+    addFiles(index, "a", 2, 100);
+    final List<CopyTask> tasks = new S3ToHdfsCopyPlanner(10).plan(index);
+    assertEquals(2, tasks.size());
+    assertEquals(0, tasks.get(0).getIndex());
+    assertEquals(1, tasks.get(1).getIndex());
+  }
+
+  @Test
+  public void emptyIndex() {
+    assertTrue(new S3ToHdfsCopyPlanner(4).plan(new InputTableIndex()).isEmpty());
+  }
+
+  @Test
+  public void planIsRepeatable() {
+    final InputTableIndex index = new InputTableIndex();
+    addFiles(index, "a", 30, 50);
+    addFiles(index, "b", 30, 50);
+    final List<CopyTask> first = new S3ToHdfsCopyPlanner(4).plan(index);
+    final List<CopyTask> second = new S3ToHdfsCopyPlanner(4).plan(index);
+    for (int i = 0; i < first.size(); i++) {
+      assertEquals(keys(first.get(i).getFiles()), keys(second.get(i).getFiles()));
+    }
+  }
+
+  // The plan read back by the code generator matches the one the pipeline was
+  // set up with.
+  @Test
+  public void storedPlanMatchesTasks() throws IOException {
+    final InputTableIndex index = new InputTableIndex();
+    addFiles(index, "a", 30, 50);
+    addFiles(index, "b", 300, 1);
+    final List<CopyTask> tasks = new S3ToHdfsCopyPlanner(4).plan(index);
+    final AwsUtils aws = new AwsUtils(new InMemoryS3());
+    final S3ObjectId location = AwsUtils.key("working", "plan.json");
+    aws.writeJson(location, new S3ToHdfsCopyPlan(tasks));
+    final S3ToHdfsCopyPlan plan = S3ToHdfsCopyPlan.read(aws, location);
+    assertEquals(tasks.size(), plan.getTaskCount());
+    for (int i = 0; i < tasks.size(); i++) {
+      assertEquals(uris(tasks.get(i).getFiles()), uris(plan.getFiles(i)));
+    }
+  }
+
+  // Every file is copied exactly once.
+  private void checkComplete(final InputTableIndex index, final List<CopyTask> tasks) {
+    final Map<String, Integer> copies = new HashMap<String, Integer>();
+    for (final CopyTask task : tasks) {
+      assertTrue(task.getFiles().size() > 0);
+      for (final S3ObjectId file : task.getFiles()) {
+        final String uri = AwsUtils.uri(file);
+        copies.put(uri, copies.containsKey(uri) ? copies.get(uri) + 1 : 1);
+      }
+    }
+    assertEquals(index.getFileSizes().keySet(), copies.keySet());
+    assertEquals(Collections.singleton(1), new HashSet<Integer>(copies.values()));
+  }
+
+  private CopyTask largest(final List<CopyTask> tasks) {
+    CopyTask largest = tasks.get(0);
+    for (final CopyTask task : tasks) {
+      if (task.getBytes() > largest.getBytes()) {
+        largest = task;
+      }
+    }
+    return largest;
+  }
+
+  private void addFiles(final InputTableIndex index, final String table, final int count,
+      final long sizeMb) {
+    for (int i = 0; i < count; i++) {
+      index.addFile(table, key(table, i), sizeMb * MB);
+    }
+  }
+
+  private S3ObjectId key(final String table, final int file) {
+    return AwsUtils.key("bucket", "dump", table, "part-" + file + ".gz");
+  }
+
+  private List<String> uris(final List<S3ObjectId> files) {
+    final List<String> uris = new ArrayList<String>();
+    for (final S3ObjectId file : files) {
+      uris.add(AwsUtils.uri(file));
+    }
+    return uris;
+  }
+
+  private Set<String> keys(final List<S3ObjectId> files) {
+    final Set<String> keys = new HashSet<String>();
+    for (final S3ObjectId file : files) {
+      keys.add(file.getKey());
+    }
+    return keys;
+  }
+}
@@ -0,0 +1,24 @@
+sudo hive -e "
+  MERGE INTO merged_all_possible_column_types
+  USING (SELECT int_column, text_column, varchar_column, concat_ws(',', coalesce(md5(text_column), '-'), coalesce(md5(varchar_column), '-')) AS fingerprint FROM in_all_possible_column_types) in_all_possible_column_types ON merged_all_possible_column_types.int_column = in_all_possible_column_types.int_column
+  WHEN MATCHED AND merged_all_possible_column_types.fingerprint != in_all_possible_column_types.fingerprint THEN UPDATE SET 
+    text_column=( CASE  WHEN ( split(merged_all_possible_column_types.fingerprint, ',')[0] != split(in_all_possible_column_types.fingerprint, ',')[0] )  THEN in_all_possible_column_types.text_column ELSE merged_all_possible_column_types.text_column END ),
+    varchar_column=( CASE  WHEN ( split(merged_all_possible_column_types.fingerprint, ',')[1] != split(in_all_possible_column_types.fingerprint, ',')[1] )  THEN in_all_possible_column_types.varchar_column ELSE merged_all_possible_column_types.varchar_column END ),
+    time_text_column=( CASE  WHEN ( split(merged_all_possible_column_types.fingerprint, ',')[0] != split(in_all_possible_column_types.fingerprint, ',')[0] )  THEN current_timestamp ELSE merged_all_possible_column_types.time_text_column END ),
+    time_varchar_column=( CASE  WHEN ( split(merged_all_possible_column_types.fingerprint, ',')[1] != split(in_all_possible_column_types.fingerprint, ',')[1] )  THEN current_timestamp ELSE merged_all_possible_column_types.time_varchar_column END ),
+    fingerprint=in_all_possible_column_types.fingerprint
+  WHEN NOT MATCHED THEN
+  INSERT VALUES (
+in_all_possible_column_types.int_column, in_all_possible_column_types.text_column, in_all_possible_column_types.varchar_column, current_timestamp, current_timestamp, in_all_possible_column_types.fingerprint
+    ); 
+
+" >> /home/hadoop/full_text_copy.out 2>&1
+sudo hive -S -e "SELECT int_column,
+text_column,
+varchar_column,
+time_text_column,
+time_varchar_column,
+fingerprint
+ FROM merged_all_possible_column_types;" | java -cp /home/hadoop/code/data_tools.jar edu.harvard.data.io.FullTextExtractor /tmp/full_text all_possible_column_types DecompressedInternal int_column text_column varchar_column
+
+aws s3 cp --recursive /tmp/full_text/ s3://full-text/canvas
@@ -0,0 +1,332 @@
+// This file was generated automatically. Do not edit. 
+
+package edu.harvard.data.integration.bindings.phase0;
+
+import java.sql.Timestamp;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
+
+import org.apache.commons.csv.CSVRecord;
+import edu.harvard.data.DataTable;
+import edu.harvard.data.TableFormat;
+
+public class Phase0AllPossibleColumnTypes implements DataTable {
+
+  private Long bigIntColumn;
+  private Boolean booleanColumn;
+  private Date dateColumn;
+  private Date timestampWithoutTimeZoneColumn;
+  private Timestamp datetimeColumn;
+  private Double doublePrecisionColumn;
+  private Integer intColumn;
+  private Integer integerColumn;
+  private String guidColumn;
+  private String textColumn;
+  private Timestamp timestampColumn;
+  private String varcharColumn;
+  private String characterVaryingColumn;
+
+  public Phase0AllPossibleColumnTypes() {}
+
+  public Phase0AllPossibleColumnTypes(final TableFormat format, final CSVRecord record) throws ParseException {
+    String $bigIntColumn = record.get(0);
+    if ($bigIntColumn != null && $bigIntColumn.length() > 0) {
+        this.bigIntColumn = Long.valueOf($bigIntColumn);
+    }
+    String $booleanColumn = record.get(1);
+    if ($booleanColumn != null && $booleanColumn.length() > 0) {
+        this.booleanColumn = Boolean.valueOf($booleanColumn);
+    }
+    String $dateColumn = record.get(2);
+    if ($dateColumn != null && $dateColumn.length() > 0) {
+        this.dateColumn = format.getDateFormat().parse($dateColumn);
+    }
+    String $timestampWithoutTimeZoneColumn = record.get(3);
+    if ($timestampWithoutTimeZoneColumn != null && $timestampWithoutTimeZoneColumn.length() > 0) {
+        this.timestampWithoutTimeZoneColumn = format.getDateFormat().parse($timestampWithoutTimeZoneColumn);
+    }
+    String $datetimeColumn = record.get(4);
+    if ($datetimeColumn != null && $datetimeColumn.length() > 0) {
+        this.datetimeColumn = Timestamp.valueOf($datetimeColumn);
+    }
+    String $doublePrecisionColumn = record.get(5);
+    if ($doublePrecisionColumn != null && $doublePrecisionColumn.length() > 0) {
+        this.doublePrecisionColumn = Double.valueOf($doublePrecisionColumn);
+    }
+    String $intColumn = record.get(6);
+    if ($intColumn != null && $intColumn.length() > 0) {
+        this.intColumn = Integer.valueOf($intColumn);
+    }
+    String $integerColumn = record.get(7);
+    if ($integerColumn != null && $integerColumn.length() > 0) {
+        this.integerColumn = Integer.valueOf($integerColumn);
+    }
+    this.guidColumn = record.get(8);
+    this.textColumn = record.get(9);
+    String $timestampColumn = record.get(10);
+    if ($timestampColumn != null && $timestampColumn.length() > 0) {
+        this.timestampColumn = Timestamp.valueOf($timestampColumn);
+    }
+    this.varcharColumn = record.get(11);
+    this.characterVaryingColumn = record.get(12);
+  }
+
+  public Phase0AllPossibleColumnTypes(final TableFormat format, final Map<String, Object> map) throws ParseException {
+    if (map != null) {
+      if (map.get("big_int_column") instanceof Integer) {
+        this.bigIntColumn = Long.parseLong(((Integer) map.get("big_int_column")).toString());
+      } else {
+        this.bigIntColumn = (Long) map.get("big_int_column");
+      }
+    }
+    if (map != null) {
+      if (map.get("boolean_column") instanceof Integer) {
+        this.booleanColumn = ((Integer) map.get("boolean_column")) != 0;
+      } else {
+        this.booleanColumn = (Boolean) map.get("boolean_column");
+      }
+    }
+    if (map != null) {
+      String $dateColumn = (String) map.get("date_column");
+      if ($dateColumn != null && $dateColumn.length() > 0) {
+        this.dateColumn = new Timestamp(format.getTimstampFormat().parse(format.cleanTimestampString($dateColumn)).getTime());
+      }
+    }
+    if (map != null) {
+      String $timestampWithoutTimeZoneColumn = (String) map.get("timestamp_without_time_zone_column");
+      if ($timestampWithoutTimeZoneColumn != null && $timestampWithoutTimeZoneColumn.length() > 0) {
+        this.timestampWithoutTimeZoneColumn = new Timestamp(format.getTimstampFormat().parse(format.cleanTimestampString($timestampWithoutTimeZoneColumn)).getTime());
+      }
+    }
+    if (map != null) {
+      String $datetimeColumn = (String) map.get("datetime_column");
+      if ($datetimeColumn != null && $datetimeColumn.length() > 0) {
+        this.datetimeColumn = new Timestamp(format.getTimstampFormat().parse(format.cleanTimestampString($datetimeColumn)).getTime());
+      }
+    }
+    if (map != null) {
+      if (map.get("doublePrecisionColumn") instanceof Double) {
+        this.doublePrecisionColumn = (Double) map.get("double_precision_column");
+      } else {
+       this.doublePrecisionColumn = ((Integer) map.get("double_precision_column")).doubleValue();
+      }
+    }
+    if (map != null) {
+      this.intColumn = (Integer) map.get("int_column");
+    }
+    if (map != null) {
+      this.integerColumn = (Integer) map.get("integer_column");
+    }
+    if (map != null) {
+      this.guidColumn = String.valueOf(map.get("guid_column"));
+    }
+    if (map != null) {
+      this.textColumn = String.valueOf(map.get("text_column"));
+    }
+    if (map != null) {
+      String $timestampColumn = (String) map.get("timestamp_column");
+      if ($timestampColumn != null && $timestampColumn.length() > 0) {
+        this.timestampColumn = new Timestamp(format.getTimstampFormat().parse(format.cleanTimestampString($timestampColumn)).getTime());
+      }
+    }
+    if (map != null) {
+      this.varcharColumn = String.valueOf(map.get("varchar_column"));
+    }
+    if (map != null) {
+      this.characterVaryingColumn = String.valueOf(map.get("character_varying_column"));
+    }
+  }
+
+  public Phase0AllPossibleColumnTypes(
+        Long bigIntColumn,
+        Boolean booleanColumn,
+        Date dateColumn,
+        Date timestampWithoutTimeZoneColumn,
+        Timestamp datetimeColumn,
+        Double doublePrecisionColumn,
+        Integer intColumn,
+        Integer integerColumn,
+        String guidColumn,
+        String textColumn,
+        Timestamp timestampColumn,
+        String varcharColumn,
+        String characterVaryingColumn) {
+    this.bigIntColumn = bigIntColumn;
+    this.booleanColumn = booleanColumn;
+    this.dateColumn = dateColumn;
+    this.timestampWithoutTimeZoneColumn = timestampWithoutTimeZoneColumn;
+    this.datetimeColumn = datetimeColumn;
+    this.doublePrecisionColumn = doublePrecisionColumn;
+    this.intColumn = intColumn;
+    this.integerColumn = integerColumn;
+    this.guidColumn = guidColumn;
+    this.textColumn = textColumn;
+    this.timestampColumn = timestampColumn;
+    this.varcharColumn = varcharColumn;
+    this.characterVaryingColumn = characterVaryingColumn;
+  }
+
+  public Long getBigIntColumn() {
+    return this.bigIntColumn;
+  }
+
+  public void setBigIntColumn(Long bigIntColumn) {
+    this.bigIntColumn = bigIntColumn;
+  }
+
+  public Boolean getBooleanColumn() {
+    return this.booleanColumn;
+  }
+
+  public void setBooleanColumn(Boolean booleanColumn) {
+    this.booleanColumn = booleanColumn;
+  }
+
+  public Date getDateColumn() {
+    return this.dateColumn;
+  }
+
+  public void setDateColumn(Date dateColumn) {
+    this.dateColumn = dateColumn;
+  }
+
+  public Date getTimestampWithoutTimeZoneColumn() {
+    return this.timestampWithoutTimeZoneColumn;
+  }
+
+  public void setTimestampWithoutTimeZoneColumn(Date timestampWithoutTimeZoneColumn) {
+    this.timestampWithoutTimeZoneColumn = timestampWithoutTimeZoneColumn;
+  }
+
+  public Timestamp getDatetimeColumn() {
+    return this.datetimeColumn;
+  }
+
+  public void setDatetimeColumn(Timestamp datetimeColumn) {
+    this.datetimeColumn = datetimeColumn;
+  }
+
+  public Double getDoublePrecisionColumn() {
+    return this.doublePrecisionColumn;
+  }
+
+  public void setDoublePrecisionColumn(Double doublePrecisionColumn) {
+    this.doublePrecisionColumn = doublePrecisionColumn;
+  }
+
+  public Integer getIntColumn() {
+    return this.intColumn;
+  }
+
+  public void setIntColumn(Integer intColumn) {
+    this.intColumn = intColumn;
+  }
+
+  public Integer getIntegerColumn() {
+    return this.integerColumn;
+  }
+
+  public void setIntegerColumn(Integer integerColumn) {
+    this.integerColumn = integerColumn;
+  }
+
+  public String getGuidColumn() {
+    return this.guidColumn;
+  }
+
+  public void setGuidColumn(String guidColumn) {
+    this.guidColumn = guidColumn;
+  }
+
+  public String getTextColumn() {
+    return this.textColumn;
+  }
+
+  public void setTextColumn(String textColumn) {
+    this.textColumn = textColumn;
+  }
+
+  public Timestamp getTimestampColumn() {
+    return this.timestampColumn;
+  }
+
+  public void setTimestampColumn(Timestamp timestampColumn) {
+    this.timestampColumn = timestampColumn;
+  }
+
+  public String getVarcharColumn() {
+    return this.varcharColumn;
+  }
+
+  public void setVarcharColumn(String varcharColumn) {
+    this.varcharColumn = varcharColumn;
+  }
+
+  public String getCharacterVaryingColumn() {
+    return this.characterVaryingColumn;
+  }
+
+  public void setCharacterVaryingColumn(String characterVaryingColumn) {
+    this.characterVaryingColumn = characterVaryingColumn;
+  }
+
+
+  @Override
+  public List<String> getFieldNames() {
+    final List<String> fields = new ArrayList<String>();
+      fields.add("big_int_column");
+      fields.add("boolean_column");
+      fields.add("date_column");
+      fields.add("timestamp_without_time_zone_column");
+      fields.add("datetime_column");
+      fields.add("double_precision_column");
+      fields.add("int_column");
+      fields.add("integer_column");
+      fields.add("guid_column");
+      fields.add("text_column");
+      fields.add("timestamp_column");
+      fields.add("varchar_column");
+      fields.add("character_varying_column");
+    return fields;
+  }
+  @Override
+  public List<Object> getFieldsAsList(final TableFormat formatter) {
+    final List<Object> fields = new ArrayList<Object>();
+    fields.add(bigIntColumn);
+    fields.add(booleanColumn);
+    fields.add(formatter.formatTimestamp(dateColumn));
+    fields.add(formatter.formatTimestamp(timestampWithoutTimeZoneColumn));
+    fields.add(formatter.formatTimestamp(datetimeColumn));
+    fields.add(doublePrecisionColumn);
+    fields.add(intColumn);
+    fields.add(integerColumn);
+    fields.add(guidColumn);
+    fields.add(textColumn);
+    fields.add(formatter.formatTimestamp(timestampColumn));
+    fields.add(varcharColumn);
+    fields.add(characterVaryingColumn);
+    return fields;
+  }
+  @Override
+  public Map<String, Object> getFieldsAsMap() {
+    Map<String, Object> $map = new HashMap<String, Object>();
+    $map.put("big_int_column", bigIntColumn);
+    $map.put("boolean_column", booleanColumn);
+    $map.put("date_column", dateColumn);
+    $map.put("timestamp_without_time_zone_column", timestampWithoutTimeZoneColumn);
+    $map.put("datetime_column", datetimeColumn);
+    $map.put("double_precision_column", doublePrecisionColumn);
+    $map.put("int_column", intColumn);
+    $map.put("integer_column", integerColumn);
+    $map.put("guid_column", guidColumn);
+    $map.put("text_column", textColumn);
+    $map.put("timestamp_column", timestampColumn);
+    $map.put("varchar_column", varcharColumn);
+    $map.put("character_varying_column", characterVaryingColumn);
+    return $map;
+  }
+}
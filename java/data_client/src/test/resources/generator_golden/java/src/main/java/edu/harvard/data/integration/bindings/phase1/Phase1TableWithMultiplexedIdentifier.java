@@ -0,0 +1,68 @@
+// This file was generated automatically. Do not edit. 
+
+package edu.harvard.data.integration.bindings.phase1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
+
+import org.apache.commons.csv.CSVRecord;
+import edu.harvard.data.DataTable;
+import edu.harvard.data.TableFormat;
+
+import edu.harvard.data.integration.bindings.phase0.Phase0TableWithMultiplexedIdentifier;
+
+public class Phase1TableWithMultiplexedIdentifier implements DataTable {
+
+  private String multiplexedIdentifierColumn;
+
+  public Phase1TableWithMultiplexedIdentifier() {}
+
+  public Phase1TableWithMultiplexedIdentifier(final TableFormat format, final CSVRecord record) {
+    this.multiplexedIdentifierColumn = record.get(0);
+  }
+
+  public Phase1TableWithMultiplexedIdentifier(final TableFormat format, final Map<String, Object> map) {
+    if (map != null) {
+      this.multiplexedIdentifierColumn = String.valueOf(map.get("multiplexed_identifier_column"));
+    }
+  }
+
+  public Phase1TableWithMultiplexedIdentifier(Phase0TableWithMultiplexedIdentifier phase0TableWithMultiplexedIdentifier) {
+    this.multiplexedIdentifierColumn = phase0TableWithMultiplexedIdentifier.getMultiplexedIdentifierColumn();
+  }
+
+  public Phase1TableWithMultiplexedIdentifier(
+        String multiplexedIdentifierColumn) {
+    this.multiplexedIdentifierColumn = multiplexedIdentifierColumn;
+  }
+
+  public String getMultiplexedIdentifierColumn() {
+    return this.multiplexedIdentifierColumn;
+  }
+
+  public void setMultiplexedIdentifierColumn(String multiplexedIdentifierColumn) {
+    this.multiplexedIdentifierColumn = multiplexedIdentifierColumn;
+  }
+
+
+  @Override
+  public List<String> getFieldNames() {
+    final List<String> fields = new ArrayList<String>();
+      fields.add("multiplexed_identifier_column");
+    return fields;
+  }
+  @Override
+  public List<Object> getFieldsAsList(final TableFormat formatter) {
+    final List<Object> fields = new ArrayList<Object>();
+    fields.add(multiplexedIdentifierColumn);
+    return fields;
+  }
+  @Override
+  public Map<String, Object> getFieldsAsMap() {
+    Map<String, Object> $map = new HashMap<String, Object>();
+    $map.put("multiplexed_identifier_column", multiplexedIdentifierColumn);
+    return $map;
+  }
+}
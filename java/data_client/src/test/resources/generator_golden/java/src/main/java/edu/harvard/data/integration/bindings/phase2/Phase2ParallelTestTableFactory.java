@@ -0,0 +1,77 @@
+// This file was generated automatically. Do not edit. 
+
+package edu.harvard.data.integration.bindings.phase2;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.amazonaws.services.s3.model.S3ObjectId;
+
+import edu.harvard.data.AwsUtils;
+import edu.harvard.data.DataTable;
+import edu.harvard.data.io.FileTableReader;
+import edu.harvard.data.io.TableWriter;
+import edu.harvard.data.io.S3TableReader;
+import edu.harvard.data.TableFactory;
+import edu.harvard.data.TableFormat;
+import edu.harvard.data.io.TableReader;
+
+public class Phase2ParallelTestTableFactory implements TableFactory {
+
+  @Override
+  public TableReader<? extends DataTable> getTableReader(String table, TableFormat format, File file) throws IOException {
+    switch(table) {
+    case "all_possible_column_types":
+      return new FileTableReader<Phase2AllPossibleColumnTypes>(Phase2AllPossibleColumnTypes.class, format, file);
+    case "like_table":
+      return new FileTableReader<Phase2LikeTable>(Phase2LikeTable.class, format, file);
+    case "like_table_with_additions":
+      return new FileTableReader<Phase2LikeTableWithAdditions>(Phase2LikeTableWithAdditions.class, format, file);
+    case "simple_table":
+      return new FileTableReader<Phase2SimpleTable>(Phase2SimpleTable.class, format, file);
+    case "table_with_identifier":
+      return new FileTableReader<Phase2TableWithIdentifier>(Phase2TableWithIdentifier.class, format, file);
+    case "table_with_multiplexed_identifier":
+      return new FileTableReader<Phase2TableWithMultiplexedIdentifier>(Phase2TableWithMultiplexedIdentifier.class, format, file);
+    }
+    return null;
+  }
+
+  @Override
+  public TableReader<? extends DataTable> getTableReader(final String table, final TableFormat format, final AwsUtils aws, final S3ObjectId obj, final File tempDir) throws IOException {
+    switch(table) {
+    case "all_possible_column_types":
+      return new S3TableReader<Phase2AllPossibleColumnTypes>(aws, Phase2AllPossibleColumnTypes.class, format, obj, tempDir);
+    case "like_table":
+      return new S3TableReader<Phase2LikeTable>(aws, Phase2LikeTable.class, format, obj, tempDir);
+    case "like_table_with_additions":
+      return new S3TableReader<Phase2LikeTableWithAdditions>(aws, Phase2LikeTableWithAdditions.class, format, obj, tempDir);
+    case "simple_table":
+      return new S3TableReader<Phase2SimpleTable>(aws, Phase2SimpleTable.class, format, obj, tempDir);
+    case "table_with_identifier":
+      return new S3TableReader<Phase2TableWithIdentifier>(aws, Phase2TableWithIdentifier.class, format, obj, tempDir);
+    case "table_with_multiplexed_identifier":
+      return new S3TableReader<Phase2TableWithMultiplexedIdentifier>(aws, Phase2TableWithMultiplexedIdentifier.class, format, obj, tempDir);
+    }
+    return null;
+  }
+
+  @Override
+  public TableWriter<? extends DataTable> getTableWriter(String table, TableFormat format, File file) throws IOException {
+    switch(table) {
+    case "all_possible_column_types":
+      return new TableWriter<Phase2AllPossibleColumnTypes>(Phase2AllPossibleColumnTypes.class, format, file);
+    case "like_table":
+      return new TableWriter<Phase2LikeTable>(Phase2LikeTable.class, format, file);
+    case "like_table_with_additions":
+      return new TableWriter<Phase2LikeTableWithAdditions>(Phase2LikeTableWithAdditions.class, format, file);
+    case "simple_table":
+      return new TableWriter<Phase2SimpleTable>(Phase2SimpleTable.class, format, file);
+    case "table_with_identifier":
+      return new TableWriter<Phase2TableWithIdentifier>(Phase2TableWithIdentifier.class, format, file);
+    case "table_with_multiplexed_identifier":
+      return new TableWriter<Phase2TableWithMultiplexedIdentifier>(Phase2TableWithMultiplexedIdentifier.class, format, file);
+    }
+    return null;
+  }
+}
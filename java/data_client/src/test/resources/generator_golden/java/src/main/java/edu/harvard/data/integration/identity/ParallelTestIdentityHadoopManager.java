@@ -0,0 +1,29 @@
+package edu.harvard.data.integration.identity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.hadoop.mapreduce.Mapper;
+import edu.harvard.data.identity.IdentityScrubber;
+import edu.harvard.data.identity.HadoopIdentityKey;
+import org.apache.hadoop.io.Text;
+
+
+public class ParallelTestIdentityHadoopManager {
+
+  public List<String> getIdentityTableNames() {
+    final List<String> names = new ArrayList<String>();
+    return names;
+  }
+
+  public Map<String, Class<? extends Mapper<Object, Text, ?, HadoopIdentityKey>>> getMapperClasses () {
+    final Map<String, Class<? extends Mapper<Object, Text, ?, HadoopIdentityKey>>> classes = new HashMap<String, Class<? extends Mapper<Object, Text, ?, HadoopIdentityKey>>>();
+    return classes;
+  }
+
+  public Map<String, Class<? extends IdentityScrubber<?>>> getScrubberClasses () {
+    final Map<String, Class<? extends IdentityScrubber<?>>> classes = new HashMap<String, Class<? extends IdentityScrubber<?>>>();
+    return classes;
+  }
+}
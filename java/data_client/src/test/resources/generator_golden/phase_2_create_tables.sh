@@ -0,0 +1,11 @@
+sudo mkdir -p /var/log/hive/user/hadoop # Workaround for Hive logging bug
+sudo chown hive:hive -R /var/log/hive
+if ! hadoop fs -test -e /current; then 
+echo "Creating persistent tables..."
+hadoop fs -mkdir /current/all_possible_column_types
+s3-dist-cp --src=s3://full-text/canvas/all_possible_column_types/fulltable --dest=hdfs:///current/all_possible_column_types
+sudo hive -f /home/hadoop/code/phase_2_create_persistent_tables.q >> /home/hadoop/phase_2_create_tables.out 2>&1
+fi
+
+java -cp /home/hadoop/code/data_tools.jar edu.harvard.data.HiveDdlRunner /home/hadoop/code/phase_2_create_tables.q >> /home/hadoop/phase_2_create_tables.out 2>&1
+exit $?
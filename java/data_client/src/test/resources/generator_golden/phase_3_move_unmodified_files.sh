@@ -0,0 +1,5 @@
+set -e
+sudo mkdir -p /var/log/hive/user/hadoop # Workaround for Hive logging bug
+sudo chown hive:hive -R /var/log/hive
+hadoop jar /home/hadoop/code/data_tools.jar edu.harvard.data.MoveUnmodifiedTables hdfs_2 hdfs_3 all_possible_column_types like_table like_table_with_additions simple_table table_with_identifier table_with_multiplexed_identifier &>> /home/hadoop/phase_3_move_unmodified_files.out
+exit 0
@@ -0,0 +1 @@
+UNLOAD ('SELECT * FROM pii.identity_map') TO 's3://working/dataset/run/unloaded_tables/identity_map/' WITH CREDENTIALS AS 'aws_access_key_id=null;aws_secret_access_key=null' DELIMITER '\t' NULL AS '\\N';
@@ -0,0 +1,13 @@
+------- Table pii.identity_map-------
+DROP TABLE IF EXISTS pii_identity_map_stage;
+CREATE TEMPORARY TABLE pii_identity_map_stage (LIKE pii.identity_map);
+COPY pii_identity_map_stage (research_id,huid,xid,canvas_id,canvas_data_id,eppn,active_directory_id) FROM 's3://working/dataset/run/redshift_staging/identity_map/identitymap/' CREDENTIALS 'aws_access_key_id=null;aws_secret_access_key=null' DELIMITER '\t' TRUNCATECOLUMNS GZIP;
+BEGIN TRANSACTION;
+DELETE FROM pii.identity_map USING pii_identity_map_stage WHERE pii.identity_map.research_id = pii_identity_map_stage.research_id;
+INSERT INTO pii.identity_map SELECT * FROM pii_identity_map_stage;
+END TRANSACTION;
+DROP TABLE pii_identity_map_stage;
+VACUUM pii.identity_map;
+ANALYZE pii.identity_map;
+
+
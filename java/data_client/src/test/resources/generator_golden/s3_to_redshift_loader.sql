@@ -0,0 +1,41 @@
+-- This file was automatically generated. Do not manually edit.
+-- See http://docs.aws.amazon.com/redshift/latest/dg/t_updating-inserting-using-staging-tables-.html
+-- for Redshift update strategies.
+
+
+------- Table canvas.all_possible_column_types-------
+TRUNCATE canvas.all_possible_column_types;
+VACUUM canvas.all_possible_column_types;
+ANALYZE canvas.all_possible_column_types;
+COPY canvas.all_possible_column_types (big_int_column,boolean_column,date_column,timestamp_without_time_zone_column,datetime_column,double_precision_column,int_column,integer_column,guid_column,text_column,timestamp_column,varchar_column,character_varying_column) FROM 's3://working/dataset/run/redshift_staging/all_possible_column_types/' CREDENTIALS 'aws_access_key_id=null;aws_secret_access_key=null' DELIMITER '\t' TRUNCATECOLUMNS GZIP;
+VACUUM canvas.all_possible_column_types;
+ANALYZE canvas.all_possible_column_types;
+
+
+------- Table canvas.like_table-------
+TRUNCATE canvas.like_table;
+VACUUM canvas.like_table;
+ANALYZE canvas.like_table;
+COPY canvas.like_table (int_column,string_column) FROM 's3://working/dataset/run/redshift_staging/like_table/' CREDENTIALS 'aws_access_key_id=null;aws_secret_access_key=null' DELIMITER '\t' TRUNCATECOLUMNS GZIP;
+VACUUM canvas.like_table;
+ANALYZE canvas.like_table;
+
+
+------- Table canvas.like_table_with_additions-------
+TRUNCATE canvas.like_table_with_additions;
+VACUUM canvas.like_table_with_additions;
+ANALYZE canvas.like_table_with_additions;
+COPY canvas.like_table_with_additions (int_column,string_column,second_int_column) FROM 's3://working/dataset/run/redshift_staging/like_table_with_additions/' CREDENTIALS 'aws_access_key_id=null;aws_secret_access_key=null' DELIMITER '\t' TRUNCATECOLUMNS GZIP;
+VACUUM canvas.like_table_with_additions;
+ANALYZE canvas.like_table_with_additions;
+
+
+------- Table canvas.simple_table-------
+TRUNCATE canvas.simple_table;
+VACUUM canvas.simple_table;
+ANALYZE canvas.simple_table;
+COPY canvas.simple_table (int_column,string_column) FROM 's3://working/dataset/run/redshift_staging/simple_table/' CREDENTIALS 'aws_access_key_id=null;aws_secret_access_key=null' DELIMITER '\t' TRUNCATECOLUMNS GZIP;
+VACUUM canvas.simple_table;
+ANALYZE canvas.simple_table;
+
+
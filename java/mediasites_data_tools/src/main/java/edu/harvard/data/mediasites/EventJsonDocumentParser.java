@@ -1,11 +1,7 @@
 package edu.harvard.data.mediasites;
 
 import java.sql.Timestamp;
-import java.text.ParseException;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
@@ -14,121 +10,39 @@ import org.apache.logging.log4j.Logger;
 import edu.harvard.data.DataTable;
 import edu.harvard.data.TableFormat;
 import edu.harvard.data.VerificationException;
-import edu.harvard.data.io.JsonDocumentParser;
+import edu.harvard.data.io.DataProductRegistry;
+import edu.harvard.data.io.SingleTableJsonDocumentParser;
 import edu.harvard.data.mediasites.bindings.phase0.Phase0Presentations;
+import edu.harvard.data.mediasites.bindings.phase0.Phase0ViewingSessions;
 import edu.harvard.data.mediasites.bindings.phase0.Phase0ViewingTrends;
 import edu.harvard.data.mediasites.bindings.phase0.Phase0ViewingTrendsUsers;
-import edu.harvard.data.mediasites.bindings.phase0.Phase0ViewingSessions;
 
-public class EventJsonDocumentParser implements JsonDocumentParser {
+public class EventJsonDocumentParser extends SingleTableJsonDocumentParser {
   private static final Logger log = LogManager.getLogger();
 
-  private final TableFormat format;
-  private final boolean verify;
-  private final String dataproduct;
+  // Each Mediasites input file holds exactly one of these data products.
+  static final DataProductRegistry PRODUCTS = new DataProductRegistry()
+      .register("Presentations", Phase0Presentations.class)
+      .register("ViewingTrends", Phase0ViewingTrends.class)
+      .register("ViewingTrendsUsers", Phase0ViewingTrendsUsers.class)
+      .register("ViewingSessions", Phase0ViewingSessions.class);
 
   public EventJsonDocumentParser(final TableFormat format, final boolean verify, final String dataproduct) {
-    this.format = format;
-    this.verify = verify;
-    this.dataproduct = dataproduct;
+    super(format, dataproduct, PRODUCTS.getTableClass(dataproduct), verify);
   }
 
-  @SuppressWarnings("unchecked")
   @Override
-  public Map<String, List<? extends DataTable>> getDocuments(final Map<String, Object> values)
-      throws ParseException, VerificationException {
-    final Map<String, List<? extends DataTable>> tables = new HashMap<String, List<? extends DataTable>>();
-    // Start
-    // Presentations
-    final Phase0Presentations presentation = new Phase0Presentations(format, values);
-    final List<Phase0Presentations> presentations = new ArrayList<Phase0Presentations>();
-    presentations.add(presentation);
-    tables.put("Presentations", presentations);
-    
-    // Viewing Trends
-    final Phase0ViewingTrends viewingtrend = new Phase0ViewingTrends(format, values);
-    final List<Phase0ViewingTrends> viewingtrends = new ArrayList<Phase0ViewingTrends>();
-    viewingtrends.add(viewingtrend);
-    tables.put("ViewingTrends", viewingtrends);    
-    
-    // Viewing Trends Users
-    final Phase0ViewingTrendsUsers viewingtrendsuser = new Phase0ViewingTrendsUsers(format, values);
-    final List<Phase0ViewingTrendsUsers> viewingtrendsusers = new ArrayList<Phase0ViewingTrendsUsers>();
-    viewingtrendsusers.add(viewingtrendsuser);
-    tables.put("ViewingTrendsUsers", viewingtrendsusers);
-
-    // Viewing Sessions
-    final Phase0ViewingSessions viewingsession = new Phase0ViewingSessions(format, values);
-    final List<Phase0ViewingSessions> viewingsessions = new ArrayList<Phase0ViewingSessions>();
-    viewingsessions.add(viewingsession);
-    tables.put("ViewingSessions", viewingsessions);
-
-    
-    // Verification Step (optional)
-    if (verify) {
-    	verifyParser(values, tables);
+  protected void verify(final Map<String, Object> values, final DataTable record)
+      throws VerificationException {
+    final Map<String, Object> parsed = record.getFieldsAsMap();
+    try {
+      compareMaps(values, parsed);
+    } catch (final VerificationException e) {
+      log.error("Failed to verify JSON document. " + e.getMessage());
+      log.error("Original map: " + values);
+      log.error("Parsed map:   " + parsed);
+      throw e;
     }
-    return tables;
-  }
-
-  public void verifyParser(final Map<String, Object> values,
-      final Map<String, List<? extends DataTable>> tables) throws VerificationException {
-    // Start
-	final List<? extends DataTable> presentations = tables.get("Presentations");
-	final List<? extends DataTable> viewingtrends = tables.get("ViewingTrends");
-	final List<? extends DataTable> viewingtrendsusers = tables.get("ViewingTrendsUsers");
-	final List<? extends DataTable> viewingsessions = tables.get("ViewingSessions");
-
-	final Map<String, Object> parsedPresentations = presentations.get(0).getFieldsAsMap();
-	final Map<String, Object> parsedViewingTrends = viewingtrends.get(0).getFieldsAsMap();
-	final Map<String, Object> parsedViewingTrendsUsers = viewingtrendsusers.get(0).getFieldsAsMap();
-	final Map<String, Object> parsedViewingSessions = viewingsessions.get(0).getFieldsAsMap();
-
-	// Presentations
-	if (dataproduct.equals("Presentations")) {
-	    try {
-		    compareMaps(values, parsedPresentations);
-	    } catch (final VerificationException e) {
-	        log.error("Failed to verify JSON document. " + e.getMessage());
-	        log.error("Original map: " + values);
-	        log.error("Parsed map:   " + parsedPresentations);
-	        throw e;			
-	    }
-	}
-	// Viewing Trends
-	else if (dataproduct.equals("ViewingTrends")) {
-
-	    try {
-		    compareMaps(values, parsedViewingTrends);
-	    } catch (final VerificationException e) {
-	        log.error("Failed to verify JSON document. " + e.getMessage());
-	        log.error("Original map: " + values);
-	        log.error("Parsed map:   " + parsedViewingTrends);
-	        throw e;			
-	    }
-	}		
-	// Viewing Trends Users
-	else if (dataproduct.equals("ViewingTrendsUsers")) {
-	    try {
-		    compareMaps(values, parsedViewingTrendsUsers);
-	    } catch (final VerificationException e) {
-	        log.error("Failed to verify JSON document. " + e.getMessage());
-	        log.error("Original map: " + values);
-	        log.error("Parsed map:   " + parsedViewingTrendsUsers);
-	        throw e;			
-	    }
-	}
-	// Viewing Sessions
-	else if (dataproduct.equals("ViewingSessions")) {
-	    try {
-		    compareMaps(values, parsedViewingSessions);
-	    } catch (final VerificationException e) {
-	        log.error("Failed to verify JSON document. " + e.getMessage());
-	        log.error("Original map: " + values);
-	        log.error("Parsed map:   " + parsedViewingSessions);
-	        throw e;			
-	    }
-	}
   }
 
   @SuppressWarnings("unchecked")
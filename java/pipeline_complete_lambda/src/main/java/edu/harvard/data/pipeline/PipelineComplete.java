@@ -53,6 +53,9 @@ public class PipelineComplete implements RequestHandler<SNSEvent, String> {
   private String emrResourceId;
   private final PostMortemReport report;
   private DescribeObjectsResult objectDescriptions;
+  private final Map<String, PipelineObject> componentObjects;
+  private final Map<String, PipelineObject> attemptObjects;
+  private PipelineTimingAnalysis timing;
   private String snsArn;
   private String logGroupName;
   private String logStreamName;
@@ -65,6 +68,8 @@ public class PipelineComplete implements RequestHandler<SNSEvent, String> {
     this.s3Client = new AmazonS3Client();
     this.snsClient = new AmazonSNSClient();
     this.report = new PostMortemReport();
+    this.componentObjects = new HashMap<String, PipelineObject>();
+    this.attemptObjects = new HashMap<String, PipelineObject>();
   }
 
   public static void main(final String[] args) throws IOException {
@@ -127,6 +132,7 @@ public class PipelineComplete implements RequestHandler<SNSEvent, String> {
       getPipelineObjects();
       populateLogs();
       getStepOrder();
+      analyzeTiming();
       report.setEmrUrl(emrUrl());
       final ObjectMapper mapper = new ObjectMapper();
       mapper.enable(SerializationFeature.INDENT_OUTPUT);
@@ -157,6 +163,9 @@ public class PipelineComplete implements RequestHandler<SNSEvent, String> {
     }
     record.setEmrId(emrResourceId);
     record.setPipelineId(pipelineId);
+    if (timing != null) {
+      record.setStepDurations(timing.getStepDurations());
+    }
     record.save();
   }
 
@@ -173,6 +182,7 @@ public class PipelineComplete implements RequestHandler<SNSEvent, String> {
           .describeObjects(new DescribeObjectsRequest()
               .withObjectIds(Collections.singleton(parentId)).withPipelineId(pipelineId))
           .getPipelineObjects().get(0);
+      componentObjects.put(parentId, parentObj);
 
       final PostMortemPipelineObject obj = new PostMortemPipelineObject(pipelineObj);
       obj.setName(parentObj.getName());
@@ -189,6 +199,7 @@ public class PipelineComplete implements RequestHandler<SNSEvent, String> {
               .withObjectIds(Collections.singleton(attempt)).withPipelineId(pipelineId));
       if (!headAttemptObjects.getPipelineObjects().isEmpty()) {
         final PipelineObject attemptObj = headAttemptObjects.getPipelineObjects().get(0);
+        attemptObjects.put(attempt, attemptObj);
         obj.setErrorMessage(getStringField(attemptObj.getFields(), "errorMessage"));
       }
 
@@ -227,6 +238,27 @@ public class PipelineComplete implements RequestHandler<SNSEvent, String> {
     }
   }
 
+  // The timing analysis only adds detail to the report, so a failure here must
+  // not stop the report being written or the completion message being sent.
+  private void analyzeTiming() {
+    try {
+      timing = new PipelineTimingAnalysis(objectDescriptions.getPipelineObjects(),
+          componentObjects, attemptObjects);
+    } catch (final RuntimeException e) {
+      log.error("Failed to analyze pipeline timing", e);
+      return;
+    }
+    try {
+      timing.compareToBaseline(
+          PipelineExecutionRecord.findPreviousRuns(runId, PipelineTimingAnalysis.BASELINE_RUNS));
+    } catch (final RuntimeException e) {
+      log.error("Failed to compare pipeline timing with previous runs", e);
+    }
+    report.setTimingAnalysis(timing);
+    log.info("Critical path: " + timing.getCriticalPath() + " ("
+        + timing.getCriticalPathMillis() + " ms)");
+  }
+
   private void populateLogs() {
     for (final PipelineObject pipelineObj : objectDescriptions.getPipelineObjects()) {
       final PostMortemPipelineObject obj = report.getPipelineObjects().get(pipelineObj.getId());
@@ -1,17 +1,27 @@
 package edu.harvard.data.pipeline;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAttribute;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexRangeKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.TableNameOverride;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
 
 @DynamoDBTable(tableName = "DummyTableName")
 public class PipelineExecutionRecord {
@@ -19,6 +29,11 @@ public class PipelineExecutionRecord {
 
   public enum Status { ProvisioningPhase0, Phase0Running, CreatingPipeline, ProvisioningPipeline, PipelineRunning, Success, Failed }
 
+  // Global secondary index with the dataset as its hash key and the run ID as
+  // its range key, so that the runs of one dataset can be read in time order.
+  // The index must project the status and step_durations attributes.
+  public static final String DATASET_INDEX = "dataset-index";
+
   private static DynamoDBMapper mapper;
   private static DynamoDBMapperConfig mapperConfig;
   private static String tableName;
@@ -31,14 +46,22 @@ public class PipelineExecutionRecord {
   }
 
   public static void init(final String table) {
-    mapper = new DynamoDBMapper(new AmazonDynamoDBClient());
+    init(new AmazonDynamoDBClient(), table);
+  }
+
+  public static void init(final AmazonDynamoDB client, final String table) {
+    mapper = new DynamoDBMapper(client);
     tableName = table;
     mapperConfig = new DynamoDBMapperConfig(new TableNameOverride(tableName));
   }
 
   @DynamoDBHashKey(attributeName = "run_id")
+  @DynamoDBIndexRangeKey(attributeName = "run_id", globalSecondaryIndexName = DATASET_INDEX)
   private String runId;
 
+  @DynamoDBIndexHashKey(attributeName = "dataset", globalSecondaryIndexName = DATASET_INDEX)
+  private String dataset;
+
   @DynamoDBAttribute(attributeName = "run_start")
   private Date runStart;
 
@@ -105,6 +128,9 @@ public class PipelineExecutionRecord {
   @DynamoDBAttribute(attributeName = "status")
   private String status;
 
+  @DynamoDBAttribute(attributeName = "step_durations")
+  private Map<String, Long> stepDurations;
+
   public static PipelineExecutionRecord find(final String runId) {
     if (tableName == null) {
       throw new RuntimeException("PipelineExecutionRecord object saved before init(tableName) method called");
@@ -113,11 +139,70 @@ public class PipelineExecutionRecord {
     return mapper.load(PipelineExecutionRecord.class, runId, mapperConfig);
   }
 
+  /**
+   * Find the most recent successful runs of the same dataset that started
+   * before the given run. Run IDs are formed from the dataset name and the
+   * start time, so runs of a dataset share a prefix and sort by start time.
+   * <P>
+   * The runs are read newest first from the {@link #DATASET_INDEX} index, and
+   * the query stops as soon as enough successful runs have been found. Records
+   * saved before the index was added have no dataset attribute and so are not
+   * found until they are next saved.
+   * <P>
+   * The returned records hold only the attributes projected into the index, so
+   * they must not be passed to {@link #save}.
+   *
+   * @param runId
+   *          the ID of the current run.
+   * @param count
+   *          the maximum number of runs to return.
+   * @return up to {@code count} records, most recent first.
+   */
+  public static List<PipelineExecutionRecord> findPreviousRuns(final String runId,
+      final int count) {
+    if (tableName == null) {
+      throw new RuntimeException("PipelineExecutionRecord object saved before init(tableName) method called");
+    }
+    final List<PipelineExecutionRecord> runs = new ArrayList<PipelineExecutionRecord>();
+    final String dataset = datasetOf(runId);
+    if (dataset == null) {
+      return runs;
+    }
+    final PipelineExecutionRecord hashKey = new PipelineExecutionRecord();
+    hashKey.dataset = dataset;
+    final Condition before = new Condition().withComparisonOperator(ComparisonOperator.LT)
+        .withAttributeValueList(new AttributeValue().withS(runId));
+    final DynamoDBQueryExpression<PipelineExecutionRecord> query;
+    query = new DynamoDBQueryExpression<PipelineExecutionRecord>().withIndexName(DATASET_INDEX)
+        .withConsistentRead(false).withHashKeyValues(hashKey)
+        .withRangeKeyCondition("run_id", before).withScanIndexForward(false).withLimit(count);
+    // Pages are loaded as the results are iterated, so the query reads no
+    // further than the last run returned.
+    for (final PipelineExecutionRecord record : mapper.query(PipelineExecutionRecord.class, query,
+        mapperConfig)) {
+      if (Status.Success.toString().equals(record.getStatus())) {
+        runs.add(record);
+        if (runs.size() == count) {
+          break;
+        }
+      }
+    }
+    return runs;
+  }
+
+  // Run IDs are the dataset name and the start time, separated by the last
+  // underscore.
+  static String datasetOf(final String runId) {
+    final int idx = runId.lastIndexOf("_");
+    return idx > 0 ? runId.substring(0, idx) : null;
+  }
+
   public void save() {
     if (tableName == null) {
       throw new RuntimeException("PipelineExecutionRecord object saved before init(tableName) method called");
     }
     log.info("Saving pipeline run ID " + runId + " to table " + tableName);
+    dataset = datasetOf(runId);
     mapper.save(this, mapperConfig);
   }
 
@@ -297,6 +382,22 @@ public class PipelineExecutionRecord {
     this.emrMasterIp = emrMasterIp;
   }
 
+  public Map<String, Long> getStepDurations() {
+    return stepDurations;
+  }
+
+  public void setStepDurations(final Map<String, Long> stepDurations) {
+    this.stepDurations = stepDurations;
+  }
+
+  public String getDataset() {
+    return dataset;
+  }
+
+  public void setDataset(final String dataset) {
+    this.dataset = dataset;
+  }
+
   public String getWorkingDirectory() {
     return workingDirectory;
   }
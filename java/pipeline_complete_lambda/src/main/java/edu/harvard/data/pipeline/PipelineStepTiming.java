@@ -0,0 +1,139 @@
+package edu.harvard.data.pipeline;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Timing breakdown for a single activity in a completed pipeline run, as
+ * computed by {@link PipelineTimingAnalysis}. All durations are in
+ * milliseconds.
+ * <P>
+ * The time an activity spends between becoming ready to run (when its last
+ * dependency finished) and starting is reported as queued time. The time spent
+ * on failed attempts before the final attempt is reported as retry time, and
+ * the final attempt as running time.
+ */
+public class PipelineStepTiming {
+
+  private final String id;
+  private final String type;
+  private final String status;
+  private final List<String> dependencies;
+  private final Date readyTime;
+  private final Date startTime;
+  private final Date headAttemptStartTime;
+  private final Date endTime;
+  private boolean criticalPath;
+  private Long baselineMillis;
+  private boolean slow;
+
+  public PipelineStepTiming(final String id, final String type, final String status,
+      final List<String> dependencies, final Date readyTime, final Date startTime,
+      final Date headAttemptStartTime, final Date endTime) {
+    this.id = id;
+    this.type = type;
+    this.status = status;
+    this.dependencies = new ArrayList<String>(dependencies);
+    this.readyTime = readyTime;
+    this.startTime = startTime;
+    this.headAttemptStartTime = headAttemptStartTime;
+    this.endTime = endTime;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public String getStatus() {
+    return status;
+  }
+
+  public List<String> getDependencies() {
+    return dependencies;
+  }
+
+  @JsonIgnore
+  public Date getStartTime() {
+    return startTime;
+  }
+
+  @JsonIgnore
+  public Date getEndTime() {
+    return endTime;
+  }
+
+  /**
+   * @return true if the activity started and finished, so that its durations
+   *         are meaningful.
+   */
+  public boolean isComplete() {
+    return startTime != null && endTime != null;
+  }
+
+  public long getQueuedMillis() {
+    if (readyTime == null || startTime == null) {
+      return 0;
+    }
+    return Math.max(0, startTime.getTime() - readyTime.getTime());
+  }
+
+  public long getRetryMillis() {
+    if (startTime == null || headAttemptStartTime == null) {
+      return 0;
+    }
+    return Math.max(0, headAttemptStartTime.getTime() - startTime.getTime());
+  }
+
+  public long getRunningMillis() {
+    if (!isComplete()) {
+      return 0;
+    }
+    return endTime.getTime() - startTime.getTime() - getRetryMillis();
+  }
+
+  /**
+   * @return the total time from the start of the first attempt to the end of
+   *         the final attempt. This is the duration compared against the
+   *         baseline.
+   */
+  public long getTotalMillis() {
+    return getRetryMillis() + getRunningMillis();
+  }
+
+  public boolean isCriticalPath() {
+    return criticalPath;
+  }
+
+  void setCriticalPath(final boolean criticalPath) {
+    this.criticalPath = criticalPath;
+  }
+
+  /**
+   * @return the median total duration of this activity over previous
+   *         successful runs of the same dataset, or null if there are no
+   *         previous runs that include it.
+   */
+  public Long getBaselineMillis() {
+    return baselineMillis;
+  }
+
+  void setBaselineMillis(final Long baselineMillis) {
+    this.baselineMillis = baselineMillis;
+  }
+
+  public boolean isSlow() {
+    return slow;
+  }
+
+  void setSlow(final boolean slow) {
+    this.slow = slow;
+  }
+
+}
@@ -0,0 +1,274 @@
+package edu.harvard.data.pipeline;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.amazonaws.services.datapipeline.model.Field;
+import com.amazonaws.services.datapipeline.model.PipelineObject;
+
+/**
+ * Computes a timing breakdown for a completed pipeline run from the Data
+ * Pipeline object descriptions. For each activity the analysis reports the
+ * queued, retry and running durations (see {@link PipelineStepTiming}), and
+ * identifies the critical path: the chain of activities, each waiting on the
+ * last of its dependencies to finish, that ends with the last activity to
+ * complete. Shortening any activity off this path would not have made the run
+ * finish sooner.
+ * <P>
+ * Activities can also be compared against a baseline taken from the step
+ * durations recorded for previous runs of the same dataset; an activity that
+ * takes substantially longer than its baseline is flagged as slow.
+ */
+public class PipelineTimingAnalysis {
+  private static final Logger log = LogManager.getLogger();
+
+  /**
+   * Number of previous successful runs used to compute the baseline.
+   */
+  public static final int BASELINE_RUNS = 10;
+
+  // A step is slow if it takes SLOW_FACTOR times its baseline, and at least
+  // SLOW_MINIMUM_MILLIS longer. The minimum avoids flagging short steps whose
+  // durations are dominated by scheduling noise.
+  static final double SLOW_FACTOR = 1.5;
+  static final long SLOW_MINIMUM_MILLIS = 5 * 60 * 1000L;
+
+  private static final Set<String> ACTIVITY_TYPES = new HashSet<String>(
+      Arrays.asList("ShellCommandActivity", "EmrActivity", "SqlActivity"));
+
+  private final Map<String, PipelineStepTiming> steps;
+  private final List<String> criticalPath;
+
+  /**
+   * Analyze a pipeline run.
+   *
+   * @param instances
+   *          the instance objects for the run, as returned by DescribeObjects
+   *          for the INSTANCE sphere. Objects that are not activities are
+   *          ignored.
+   * @param components
+   *          the component (definition) objects for the run, indexed by ID.
+   *          Activity dependencies are read from these objects.
+   * @param attempts
+   *          the attempt objects for the run, indexed by ID. Only the head
+   *          attempt of each instance is needed.
+   */
+  public PipelineTimingAnalysis(final List<PipelineObject> instances,
+      final Map<String, PipelineObject> components, final Map<String, PipelineObject> attempts) {
+    this.steps = new LinkedHashMap<String, PipelineStepTiming>();
+    this.criticalPath = new ArrayList<String>();
+
+    final Map<String, PipelineObject> activities = new HashMap<String, PipelineObject>();
+    final Map<String, Date> endTimes = new HashMap<String, Date>();
+    for (final PipelineObject instance : instances) {
+      if (ACTIVITY_TYPES.contains(getStringField(instance, "type"))) {
+        final String componentId = getRefField(instance, "parent");
+        activities.put(componentId, instance);
+        endTimes.put(componentId, getDateField(instance, "@actualEndTime"));
+      }
+    }
+
+    final List<PipelineStepTiming> timings = new ArrayList<PipelineStepTiming>();
+    for (final String id : activities.keySet()) {
+      final PipelineObject instance = activities.get(id);
+      final PipelineObject component = components.get(id);
+      final List<String> dependencies = getRefFields(component == null ? instance : component,
+          "dependsOn");
+      Date ready = getDateField(instance, "@scheduledStartTime");
+      for (final String dependency : dependencies) {
+        final Date end = endTimes.get(dependency);
+        if (end != null && (ready == null || end.after(ready))) {
+          ready = end;
+        }
+      }
+      Date headAttemptStart = null;
+      final PipelineObject attempt = attempts.get(getRefField(instance, "@headAttempt"));
+      if (attempt != null) {
+        headAttemptStart = getDateField(attempt, "@actualStartTime");
+      }
+      timings.add(new PipelineStepTiming(id, getStringField(instance, "type"),
+          getStringField(instance, "@status"), dependencies, ready,
+          getDateField(instance, "@actualStartTime"), headAttemptStart, endTimes.get(id)));
+    }
+    Collections.sort(timings, new Comparator<PipelineStepTiming>() {
+      @Override
+      public int compare(final PipelineStepTiming t1, final PipelineStepTiming t2) {
+        if (t1.getStartTime() == null || t2.getStartTime() == null) {
+          return t1.getStartTime() == null ? (t2.getStartTime() == null ? 0 : 1) : -1;
+        }
+        return t1.getStartTime().compareTo(t2.getStartTime());
+      }
+    });
+    for (final PipelineStepTiming timing : timings) {
+      steps.put(timing.getId(), timing);
+    }
+    findCriticalPath();
+  }
+
+  // Walk back from the last activity to finish, each time following the
+  // dependency that finished last.
+  private void findCriticalPath() {
+    PipelineStepTiming current = null;
+    for (final PipelineStepTiming step : steps.values()) {
+      if (step.isComplete()
+          && (current == null || step.getEndTime().after(current.getEndTime()))) {
+        current = step;
+      }
+    }
+    while (current != null) {
+      current.setCriticalPath(true);
+      criticalPath.add(current.getId());
+      PipelineStepTiming next = null;
+      for (final String dependency : current.getDependencies()) {
+        final PipelineStepTiming step = steps.get(dependency);
+        if (step != null && step.isComplete() && !step.isCriticalPath()
+            && (next == null || step.getEndTime().after(next.getEndTime()))) {
+          next = step;
+        }
+      }
+      current = next;
+    }
+    Collections.reverse(criticalPath);
+  }
+
+  /**
+   * Compare each activity against its median duration in previous runs, and
+   * flag activities that are slow.
+   *
+   * @param previousRuns
+   *          execution records for previous successful runs of the same
+   *          dataset. Records without step durations are ignored.
+   */
+  public void compareToBaseline(final List<PipelineExecutionRecord> previousRuns) {
+    for (final PipelineStepTiming step : steps.values()) {
+      final List<Long> durations = new ArrayList<Long>();
+      for (final PipelineExecutionRecord run : previousRuns) {
+        if (run.getStepDurations() != null && run.getStepDurations().containsKey(step.getId())) {
+          durations.add(run.getStepDurations().get(step.getId()));
+        }
+      }
+      if (!durations.isEmpty() && step.isComplete()) {
+        Collections.sort(durations);
+        final long baseline = durations.get(durations.size() / 2);
+        step.setBaselineMillis(baseline);
+        final long total = step.getTotalMillis();
+        step.setSlow(total > baseline * SLOW_FACTOR && total - baseline >= SLOW_MINIMUM_MILLIS);
+        if (step.isSlow()) {
+          log.warn("Step " + step.getId() + " took " + total + " ms, baseline is " + baseline
+              + " ms");
+        }
+      }
+    }
+  }
+
+  /**
+   * @return timings for every activity in the run, ordered by start time.
+   */
+  public List<PipelineStepTiming> getSteps() {
+    return new ArrayList<PipelineStepTiming>(steps.values());
+  }
+
+  public PipelineStepTiming getStep(final String id) {
+    return steps.get(id);
+  }
+
+  /**
+   * @return the IDs of the activities on the critical path, in execution
+   *         order.
+   */
+  public List<String> getCriticalPath() {
+    return criticalPath;
+  }
+
+  /**
+   * @return the sum of queued, retry and running time for the activities on
+   *         the critical path.
+   */
+  public long getCriticalPathMillis() {
+    long total = 0;
+    for (final String id : criticalPath) {
+      total += steps.get(id).getQueuedMillis() + steps.get(id).getTotalMillis();
+    }
+    return total;
+  }
+
+  public List<String> getSlowSteps() {
+    final List<String> slow = new ArrayList<String>();
+    for (final PipelineStepTiming step : steps.values()) {
+      if (step.isSlow()) {
+        slow.add(step.getId());
+      }
+    }
+    return slow;
+  }
+
+  /**
+   * @return the total duration of each completed activity, to be stored with
+   *         the execution record and used as the baseline for later runs.
+   */
+  public Map<String, Long> getStepDurations() {
+    final Map<String, Long> durations = new HashMap<String, Long>();
+    for (final PipelineStepTiming step : steps.values()) {
+      if (step.isComplete()) {
+        durations.put(step.getId(), step.getTotalMillis());
+      }
+    }
+    return durations;
+  }
+
+  private static Date getDateField(final PipelineObject obj, final String key) {
+    final String value = getStringField(obj, key);
+    if (value == null) {
+      return null;
+    }
+    // Data Pipeline reports times in UTC, without a zone designator.
+    final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    try {
+      return format.parse(value);
+    } catch (final ParseException e) {
+      log.warn("Can't parse " + key + " value " + value + " for " + obj.getId());
+      return null;
+    }
+  }
+
+  private static String getStringField(final PipelineObject obj, final String key) {
+    for (final Field field : obj.getFields()) {
+      if (field.getKey().equals(key)) {
+        return field.getStringValue();
+      }
+    }
+    return null;
+  }
+
+  private static String getRefField(final PipelineObject obj, final String key) {
+    final List<String> refs = getRefFields(obj, key);
+    return refs.isEmpty() ? null : refs.get(0);
+  }
+
+  private static List<String> getRefFields(final PipelineObject obj, final String key) {
+    final List<String> refs = new ArrayList<String>();
+    for (final Field field : obj.getFields()) {
+      if (field.getKey().equals(key) && field.getRefValue() != null) {
+        refs.add(field.getRefValue());
+      }
+    }
+    return refs;
+  }
+
+}
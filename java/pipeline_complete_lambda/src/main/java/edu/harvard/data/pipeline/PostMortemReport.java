@@ -15,6 +15,7 @@ public class PostMortemReport {
   private String failure;
   private PipelineObject pipelineDefinition;
   private PipelineDescription pipelineDescription;
+  private PipelineTimingAnalysis timing;
 
   public PostMortemReport() {
     this.pipelineObjects = new HashMap<String, PostMortemPipelineObject>();
@@ -68,4 +69,36 @@ public class PostMortemReport {
   public List<String> getSteps() {
     return steps;
   }
+
+  public void setTimingAnalysis(final PipelineTimingAnalysis timing) {
+    this.timing = timing;
+  }
+
+  public List<PipelineStepTiming> getStepTimings() {
+    if (timing == null) {
+      return new ArrayList<PipelineStepTiming>();
+    }
+    return timing.getSteps();
+  }
+
+  public List<String> getCriticalPath() {
+    if (timing == null) {
+      return new ArrayList<String>();
+    }
+    return timing.getCriticalPath();
+  }
+
+  public long getCriticalPathMillis() {
+    if (timing == null) {
+      return 0;
+    }
+    return timing.getCriticalPathMillis();
+  }
+
+  public List<String> getSlowSteps() {
+    if (timing == null) {
+      return new ArrayList<String>();
+    }
+    return timing.getSlowSteps();
+  }
 }
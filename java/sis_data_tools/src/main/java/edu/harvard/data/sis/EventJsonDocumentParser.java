@@ -1,11 +1,7 @@
 package edu.harvard.data.sis;
 
 import java.sql.Timestamp;
-import java.text.ParseException;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
@@ -14,146 +10,42 @@ import org.apache.logging.log4j.Logger;
 import edu.harvard.data.DataTable;
 import edu.harvard.data.TableFormat;
 import edu.harvard.data.VerificationException;
-import edu.harvard.data.io.JsonDocumentParser;
+import edu.harvard.data.io.DataProductRegistry;
+import edu.harvard.data.io.SingleTableJsonDocumentParser;
 import edu.harvard.data.sis.bindings.phase0.Phase0Classes;
 import edu.harvard.data.sis.bindings.phase0.Phase0CourseCatalog;
+import edu.harvard.data.sis.bindings.phase0.Phase0CourseEnroll;
 import edu.harvard.data.sis.bindings.phase0.Phase0CourseMap;
 import edu.harvard.data.sis.bindings.phase0.Phase0PrimeCourseEnroll;
-import edu.harvard.data.sis.bindings.phase0.Phase0CourseEnroll;
 
 
-public class EventJsonDocumentParser implements JsonDocumentParser {
+public class EventJsonDocumentParser extends SingleTableJsonDocumentParser {
   private static final Logger log = LogManager.getLogger();
 
-  private final TableFormat format;
-  private final boolean verify;
-  private final String dataproduct;
+  // Each SIS input file holds exactly one of these data products.
+  static final DataProductRegistry PRODUCTS = new DataProductRegistry()
+      .register("CourseCatalog", Phase0CourseCatalog.class)
+      .register("Classes", Phase0Classes.class)
+      .register("CourseMap", Phase0CourseMap.class)
+      .register("PrimeCourseEnroll", Phase0PrimeCourseEnroll.class)
+      .register("CourseEnroll", Phase0CourseEnroll.class);
 
   public EventJsonDocumentParser(final TableFormat format, final boolean verify, final String dataproduct) {
-    this.format = format;
-    this.verify = verify;
-    this.dataproduct = dataproduct;
+    super(format, dataproduct, PRODUCTS.getTableClass(dataproduct), verify);
   }
 
-  @SuppressWarnings("unchecked")
   @Override
-  public Map<String, List<? extends DataTable>> getDocuments(final Map<String, Object> values)
-      throws ParseException, VerificationException {
-    final Map<String, List<? extends DataTable>> tables = new HashMap<String, List<? extends DataTable>>();
-    // Start
-    // Course Catalogs
-    final Phase0CourseCatalog coursecatalog = new Phase0CourseCatalog(format, values);
-    final List<Phase0CourseCatalog> coursecatalogs = new ArrayList<Phase0CourseCatalog>();
-    coursecatalogs.add(coursecatalog);
-    tables.put("CourseCatalog", coursecatalogs);
-
-    // Classes
-    final Phase0Classes cclass = new Phase0Classes(format, values);
-    final List<Phase0Classes> classes = new ArrayList<Phase0Classes>();
-    classes.add(cclass);
-    tables.put("Classes", classes);
-
-    // CourseMap
-    final Phase0CourseMap cmap = new Phase0CourseMap(format, values);
-    final List<Phase0CourseMap> coursemap = new ArrayList<Phase0CourseMap>();
-    coursemap.add(cmap);
-    tables.put("CourseMap", coursemap);    
-    
-    // Prime Course Enroll
-    final Phase0PrimeCourseEnroll primecourseenroll = new Phase0PrimeCourseEnroll(format, values);
-    final List<Phase0PrimeCourseEnroll> primecourseenrollments = new ArrayList<Phase0PrimeCourseEnroll>();
-    primecourseenrollments.add(primecourseenroll);
-    tables.put("PrimeCourseEnroll", primecourseenrollments);
-
-    // Course Enroll
-    final Phase0CourseEnroll courseenroll = new Phase0CourseEnroll(format, values);
-    final List<Phase0CourseEnroll> courseenrollments = new ArrayList<Phase0CourseEnroll>();
-    courseenrollments.add(courseenroll);
-    tables.put("CourseEnroll", courseenrollments);    
-    
-    // Verification Step (optional)
-    if (verify) {
-    	verifyParser(values, tables);
+  protected void verify(final Map<String, Object> values, final DataTable record)
+      throws VerificationException {
+    final Map<String, Object> parsed = record.getFieldsAsMap();
+    try {
+      compareMaps(values, parsed);
+    } catch (final VerificationException e) {
+      log.error("Failed to verify JSON document. " + e.getMessage());
+      log.error("Original map: " + values);
+      log.error("Parsed map:   " + parsed);
+      throw e;
     }
-    return tables;
-  }
-
-  public void verifyParser(final Map<String, Object> values,
-      final Map<String, List<? extends DataTable>> tables) throws VerificationException {
-    // Start
-	final List<? extends DataTable> coursecatalogs = tables.get("CourseCatalog");
-	final List<? extends DataTable> classes = tables.get("Classes");
-	final List<? extends DataTable> coursemap = tables.get("CourseMap");
-	final List<? extends DataTable> primecourseenrollments = tables.get("PrimeCourseEnroll");
-	final List<? extends DataTable> courseenrollments = tables.get("CourseEnroll");
-
-	final Map<String, Object> parsedCourseCatalogs = coursecatalogs.get(0).getFieldsAsMap();
-	final Map<String, Object> parsedClasses = classes.get(0).getFieldsAsMap();
-	final Map<String, Object> parsedCourseMap = coursemap.get(0).getFieldsAsMap();
-	final Map<String, Object> parsedPrimeCourseEnrollments = primecourseenrollments.get(0).getFieldsAsMap();
-	final Map<String, Object> parsedCourseEnrollments = courseenrollments.get(0).getFieldsAsMap();
-	
-	// Course Catalogs
-	if (dataproduct.equals("CourseCatalog")) {
-		
-	    try {
-		    compareMaps(values, parsedCourseCatalogs);
-	    } catch (final VerificationException e) {
-	        log.error("Failed to verify JSON document. " + e.getMessage());
-	        log.error("Original map: " + values);
-	        log.error("Parsed map:   " + parsedCourseCatalogs);
-	        throw e;			
-	    }
-	}
-	// Classes
-	else if (dataproduct.equals("Classes")) {
-		
-		try {	
-			compareMaps(values, parsedClasses);		
-		} catch (final VerificationException e) {
-		    log.error("Failed to verify JSON document. " + e.getMessage());
-		    log.error("Original map: " + values);
-		    log.error("Parsed map:   " + parsedClasses);
-		    throw e;				
-		}
-	}
-	// CourseMap
-	else if (dataproduct.equals("CourseMap")) {
-		
-		try {
-			compareMaps(values, parsedCourseMap);
-		} catch (final VerificationException e) {
-		    log.error("Failed to verify JSON document. " + e.getMessage());
-		    log.error("Original map: " + values);
-		    log.error("Parsed map:   " + parsedCourseMap);
-		    throw e;
-		}
-	}
-	// Prime Course Enroll
-	else if (dataproduct.equals("PrimeCourseEnroll")) {
-
-		try {
-			compareMaps(values, parsedPrimeCourseEnrollments);
-		} catch (final VerificationException e) {
-		    log.error("Failed to verify JSON document. " + e.getMessage());
-		    log.error("Original map: " + values);
-		    log.error("Parsed map:   " + parsedPrimeCourseEnrollments);
-		    throw e;			
-		}
-	}
-	// Course Enroll
-	else if (dataproduct.equals("CourseEnroll")) {
-
-		try {
-			compareMaps(values, parsedCourseEnrollments);
-		} catch (final VerificationException e) {
-		    log.error("Failed to verify JSON document. " + e.getMessage());
-		    log.error("Original map: " + values);
-		    log.error("Parsed map:   " + parsedCourseEnrollments);
-		    throw e;			
-		}
-	}	
-	
   }
 
   @SuppressWarnings("unchecked")
@@ -241,7 +133,7 @@ public class EventJsonDocumentParser implements JsonDocumentParser {
 	    }
 	    return value;
   }
-  
+
   private String convertToString(final Object object) {
     if (object instanceof Timestamp) {
       return format.formatTimestamp(new Date(((Timestamp) object).getTime()));
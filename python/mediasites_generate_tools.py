@@ -27,6 +27,12 @@ JAVA_BINDINGS_DIR = "{0}/java".format(GENERATED_CODE_DIR)
 
 SCHEMA_JSON_DIR = "{0}/schema".format(GIT_BASE)
 
+DATA_TOOLS_JAR = "{0}/data_tools.jar".format(GENERATED_CODE_DIR)
+# Written by the generator when the data tools jar was not in the cache. See
+# java/data_client/src/main/java/edu/harvard/data/generator/GeneratorCache.java
+GENERATOR_CACHE_FILE = "{0}/generator_cache_location".format(GENERATED_CODE_DIR)
+GENERATOR_VERSION_PROPERTY = "edu.harvard.data.generator.version"
+
 def check_return_code(return_code):
     if return_code != 0:
         sys.exit(return_code)
@@ -39,13 +45,27 @@ def compile_java(code_dir):
     print "Return code: {0}".format(process.returncode)
     check_return_code(process.returncode)
 
+def git_commit():
+    return subprocess.check_output(['git', 'rev-parse', 'HEAD'], cwd=GIT_BASE).strip()
+
 def clean_up_files():
     os.rename(
         "{0}/target/mediasites_data_tools-1.0.0.jar".format(DATA_TOOLS_DIR),
-        "{0}/data_tools.jar".format(GENERATED_CODE_DIR)
+        DATA_TOOLS_JAR
     )
     shutil.rmtree("{0}/java".format(GENERATED_CODE_DIR))
 
+# A failed upload only means that the next cluster has to compile the jar again.
+def cache_data_tools():
+    if os.path.exists(GENERATOR_CACHE_FILE):
+        with open(GENERATOR_CACHE_FILE) as f:
+            location = f.read().strip()
+        command = ['aws', 's3', 'cp', DATA_TOOLS_JAR, location]
+        print "Running {0}".format(command)
+        process = subprocess.Popen(command)
+        process.wait()
+        print "Return code: {0}".format(process.returncode)
+
 def run_generator():
     generator_classpath = "{0}:{1}:{2}".format(
         "{0}/target/mediasites_data_client-1.0.0.jar".format(MEDIASITES_DATA_CLIENT_DIR),
@@ -54,7 +74,9 @@ def run_generator():
     )
     main_class = "edu.harvard.data.mediasites.MediasitesCodeGenerator"
     command = [
-        'java', '-cp', generator_classpath, main_class,
+        'java',
+        '-D{0}={1}'.format(GENERATOR_VERSION_PROPERTY, git_commit()),
+        '-cp', generator_classpath, main_class,
         CURRENT_SCHEMA,
         CONFIG_PATHS,
         GIT_BASE,
@@ -71,7 +93,11 @@ compile_java(PIPELINE_COMPLETE_DIR)
 compile_java(DATA_CLIENT_DIR)
 compile_java(MEDIASITES_DATA_CLIENT_DIR)
 run_generator()
-compile_java(JAVA_BINDINGS_DIR)
-compile_java(DATA_TOOLS_DIR)
+if os.path.exists(DATA_TOOLS_JAR):
+    print "Using cached {0}".format(DATA_TOOLS_JAR)
+else:
+    compile_java(JAVA_BINDINGS_DIR)
+    compile_java(DATA_TOOLS_DIR)
 
-clean_up_files()
+    clean_up_files()
+    cache_data_tools()